@@ -0,0 +1,55 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sample data with the shape of what the SDK records and sends
+ */
+class BenchmarkData {
+    static final String[] EVENT_KEYS = new String[] { "purchase", "level_up", "button_click", "share", "search" };
+
+    //2022-01-01 10:00:00 UTC
+    static final long TIMESTAMP = 1641031200000L;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns a request like the ones created by the connection queue, with a short events payload
+     */
+    @NonNull static String createRequest(int index) {
+        return "app_key=c2a4f0d6b2e1e3b7a8d9f0e1c2b3a4d5e6f7a8b9"
+            + "&timestamp=" + (TIMESTAMP + index)
+            + "&hour=10&dow=6&tz=120"
+            + "&sdk_version=21.11.2&sdk_name=java-native-android"
+            + "&device_id=4f9a1c2e-8b7d-4e6f-a5b3-c2d1e0f9a8b7"
+            + "&events=%5B%7B%22key%22%3A%22purchase%22%2C%22count%22%3A1%2C%22timestamp%22%3A" + (TIMESTAMP + index)
+            + "%2C%22hour%22%3A10%2C%22dow%22%3A6%2C%22sum%22%3A4.99%7D%5D";
+    }
+
+    /**
+     * Returns a segmentation with string, integer, double and boolean values
+     */
+    @NonNull static Map<String, Object> createSegmentation(int size) {
+        Map<String, Object> segmentation = new HashMap<>();
+        for (int a = 0; a < size; a++) {
+            switch (a % 4) {
+                case 0:
+                    segmentation.put("string_" + a, "value \"" + a + "\" ünicode");
+                    break;
+                case 1:
+                    segmentation.put("int_" + a, a * 1000);
+                    break;
+                case 2:
+                    segmentation.put("double_" + a, a * 1.25);
+                    break;
+                default:
+                    segmentation.put("bool_" + a, a % 8 == 3);
+                    break;
+            }
+        }
+        return segmentation;
+    }
+}
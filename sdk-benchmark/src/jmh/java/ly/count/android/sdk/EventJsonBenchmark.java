@@ -0,0 +1,57 @@
+package ly.count.android.sdk;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serializing and parsing a single event, with the JSON object tree and with the streaming "EventJson"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventJsonBenchmark {
+    @Param({ "0", "4", "16" })
+    int segmentationSize;
+
+    Event event;
+    String json;
+    final StringBuilder sb = new StringBuilder(512);
+
+    @Setup
+    public void setUp() {
+        UtilsTime.Instant instant = UtilsTime.Instant.get(BenchmarkData.TIMESTAMP);
+        event = CountlyStore.createEvent("purchase", segmentationSize == 0 ? null : BenchmarkData.createSegmentation(segmentationSize), 3, 4.99, 12.5, instant.timestampMs, instant.hour, instant.dow);
+        json = EventJson.toJSONString(event);
+    }
+
+    @Benchmark
+    public String toJSON() {
+        return event.toJSON().toString();
+    }
+
+    @Benchmark
+    public int eventJsonWrite() {
+        sb.setLength(0);
+        EventJson.write(event, sb);
+        return sb.length();
+    }
+
+    @Benchmark
+    public Event fromJSON() throws JSONException {
+        return Event.fromJSON(new JSONObject(json));
+    }
+
+    @Benchmark
+    public Event eventJsonRead() throws JSONException {
+        return EventJson.read(json);
+    }
+}
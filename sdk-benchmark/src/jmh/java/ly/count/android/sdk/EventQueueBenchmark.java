@@ -0,0 +1,112 @@
+package ly.count.android.sdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Recording events and turning the event queue into a request payload.
+ *
+ * Every invocation works on a whole queue of events, so the results are the time per queue and not per event.
+ * The event store is created directly, without the event limit of "CountlyStore", so that all queue sizes fit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventQueueBenchmark {
+    @Param({ "10", "100", "1000" })
+    int queueSize;
+
+    InMemoryContext context;
+    ModuleLog L;
+    EventStore eventStore;
+    EventAggregator eventAggregator;
+    EventRingBuffer eventRingBuffer;
+    EventRingBuffer.Consumer ringBufferConsumer;
+    Map<String, Object> segmentation;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = new InMemoryContext();
+        L = new ModuleLog();
+        eventStore = new EventStore(new File(context.getFilesDir(), "events"), queueSize, L);
+        eventAggregator = new EventAggregator(eventStore, queueSize, L);
+        eventRingBuffer = new EventRingBuffer(queueSize, EventOverflowPolicy.BLOCK);
+        segmentation = BenchmarkData.createSegmentation(4);
+
+        //the same as what the event consumer thread does with the buffered events
+        ringBufferConsumer = new EventRingBuffer.Consumer() {
+            @Override
+            public void onEvent(String key, Map<String, Object> segmentation, int count, double sum, double dur, long timestamp) {
+                UtilsTime.Instant instant = UtilsTime.Instant.get(timestamp);
+                eventStore.recordEventToEventQueue(key, segmentation, count, sum, dur, instant.timestampMs, instant.hour, instant.dow);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.deleteFiles();
+    }
+
+    /**
+     * Empties the queue before the invocations that record events
+     * and fills it before the invocations that read it
+     */
+    @Setup(Level.Invocation)
+    public void resetQueue(BenchmarkParams params) {
+        eventStore.getEventsForRequestAndEmptyEventQueue();
+        if (params.getBenchmark().endsWith(".getEventsForRequestAndEmptyEventQueue")) {
+            recordEvents();
+        }
+    }
+
+    @Benchmark
+    public int recordEvents() {
+        UtilsTime.Instant instant = UtilsTime.Instant.get(BenchmarkData.TIMESTAMP);
+        for (int a = 0; a < queueSize; a++) {
+            eventStore.recordEventToEventQueue(BenchmarkData.EVENT_KEYS[a % BenchmarkData.EVENT_KEYS.length], segmentation, 1, a, 0, instant.timestampMs + a, instant.hour, instant.dow);
+        }
+        return eventStore.getEventQueueSize();
+    }
+
+    /**
+     * Recording repeated events through the aggregator, which stores one event per key
+     */
+    @Benchmark
+    public int recordEventsAggregated() {
+        UtilsTime.Instant instant = UtilsTime.Instant.get(BenchmarkData.TIMESTAMP);
+        for (int a = 0; a < queueSize; a++) {
+            eventAggregator.recordEventToEventQueue(BenchmarkData.EVENT_KEYS[a % BenchmarkData.EVENT_KEYS.length], segmentation, 1, a, 0, instant.timestampMs + a, instant.hour, instant.dow);
+        }
+        return eventAggregator.flush();
+    }
+
+    /**
+     * Publishing events to the ring buffer and draining them into the event queue
+     */
+    @Benchmark
+    public int recordEventsRingBuffer() {
+        for (int a = 0; a < queueSize; a++) {
+            eventRingBuffer.publish(BenchmarkData.EVENT_KEYS[a % BenchmarkData.EVENT_KEYS.length], segmentation, 1, a, 0, BenchmarkData.TIMESTAMP + a);
+        }
+        return eventRingBuffer.drain(ringBufferConsumer);
+    }
+
+    @Benchmark
+    public String getEventsForRequestAndEmptyEventQueue() {
+        return eventStore.getEventsForRequestAndEmptyEventQueue();
+    }
+}
@@ -0,0 +1,64 @@
+package ly.count.android.sdk;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Adding and reading requests in a full request queue.
+ *
+ * The queue limit is set to the queue size, so every added request also removes the oldest one,
+ * the same as on a device that is offline for a longer time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestQueueBenchmark {
+    @Param({ "10", "100", "1000" })
+    int queueSize;
+
+    InMemoryContext context;
+    CountlyStore store;
+    String[] requests;
+    int requestIndex = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = new InMemoryContext();
+        store = new CountlyStore(context, new ModuleLog());
+        store.setLimits(queueSize);
+
+        //a few more than the queue size, so that the same request is not added twice in a row
+        requests = new String[queueSize + 7];
+        for (int a = 0; a < requests.length; a++) {
+            requests[a] = BenchmarkData.createRequest(a);
+        }
+        for (int a = 0; a < queueSize; a++) {
+            store.addRequest(requests[a]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.deleteFiles();
+    }
+
+    @Benchmark
+    public void addRequest() {
+        store.addRequest(requests[requestIndex]);
+        requestIndex = (requestIndex + 1) % requests.length;
+    }
+
+    @Benchmark
+    public String[] getRequests() {
+        return store.getRequests();
+    }
+}
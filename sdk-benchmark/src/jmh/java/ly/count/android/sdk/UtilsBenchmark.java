@@ -0,0 +1,48 @@
+package ly.count.android.sdk;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Helpers that are called for every request or event
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilsBenchmark {
+    String saltedRequest;
+    RequestBuilder requestBuilder;
+
+    @Setup
+    public void setUp() {
+        //the checksum is calculated over the request data and the salt
+        saltedRequest = BenchmarkData.createRequest(0) + "salt_value";
+        requestBuilder = new RequestBuilder();
+    }
+
+    @Benchmark
+    public String sha256Hash() {
+        return UtilsNetworking.sha256Hash(saltedRequest);
+    }
+
+    @Benchmark
+    public UtilsTime.Instant getCurrentInstant() {
+        return UtilsTime.getCurrentInstant();
+    }
+
+    @Benchmark
+    public long currentTimestampMs() {
+        return UtilsTime.currentTimestampMs();
+    }
+
+    @Benchmark
+    public String commonRequestData() {
+        return requestBuilder.startRequest("appkey123", "22.02.0", "java-native-android").append("&events=%5B%5D").toString();
+    }
+}
@@ -0,0 +1,72 @@
+package ly.count.android.sdk;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Context that provides what the SDK storage needs on a plain JVM.
+ *
+ * Shared preferences are kept in memory, the files directory is a new temporary directory.
+ * Every other call fails, because there is no base context.
+ */
+class InMemoryContext extends ContextWrapper {
+    private final Map<String, SharedPreferences> preferences = new HashMap<>();
+    private final File filesDir;
+
+    InMemoryContext() throws IOException {
+        super(null);
+        filesDir = File.createTempFile("countly", "");
+        if (!filesDir.delete() || !filesDir.mkdirs()) {
+            throw new IOException("Could not create the files directory [" + filesDir + "]");
+        }
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return "ly.count.android.benchmark";
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences prefs = preferences.get(name);
+        if (prefs == null) {
+            prefs = new InMemorySharedPreferences();
+            preferences.put(name, prefs);
+        }
+        return prefs;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    /**
+     * Deletes the files directory and everything in it
+     */
+    void deleteFiles() {
+        delete(filesDir);
+    }
+
+    private static void delete(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
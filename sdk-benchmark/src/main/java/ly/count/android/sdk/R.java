@@ -0,0 +1,27 @@
+package ly.count.android.sdk;
+
+/**
+ * Stand-in for the resource class that the Android plugin generates for the SDK.
+ *
+ * The SDK sources are compiled here as plain Java, so there are no generated resources.
+ * Only the resources that the SDK code refers to are declared. Their values are never resolved,
+ * because the benchmarks don't show the star rating dialog.
+ */
+public final class R {
+    private R() {
+    }
+
+    public static final class id {
+        public static final int ratingBar = 0x7f010001;
+
+        private id() {
+        }
+    }
+
+    public static final class layout {
+        public static final int star_rating_layout = 0x7f020001;
+
+        private layout() {
+        }
+    }
+}
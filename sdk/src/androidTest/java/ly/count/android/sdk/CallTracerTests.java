@@ -0,0 +1,172 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CallTracerTests {
+
+    void call(CallTracer tracer, String name) {
+        CallTrace trace = tracer.begin(name);
+        tracer.lockAcquired(trace);
+        tracer.end(trace);
+    }
+
+    /**
+     * When tracing is disabled, nothing should be recorded
+     */
+    @Test
+    public void disabled() {
+        CallTracer tracer = new CallTracer();
+        assertNull(tracer.begin("Events.recordEvent"));
+        tracer.lockAcquired(null);
+        tracer.end(null);
+
+        assertEquals(0, tracer.getTraces().size());
+        assertEquals(0, tracer.getTracedCallCount());
+    }
+
+    @Test
+    public void traceCall() throws InterruptedException {
+        CallTracer tracer = new CallTracer();
+        tracer.enable(1, 10);
+
+        CallTrace trace = tracer.begin("Events.recordEvent");
+        assertNotNull(trace);
+        Thread.sleep(2);
+        tracer.lockAcquired(trace);
+        tracer.end(trace);
+
+        List<CallTrace> traces = tracer.getTraces();
+        assertEquals(1, traces.size());
+        assertEquals("Events.recordEvent", traces.get(0).getName());
+        assertEquals(Thread.currentThread().getId(), traces.get(0).getThreadId());
+        assertEquals(Thread.currentThread().getName(), traces.get(0).getThreadName());
+        assertTrue(traces.get(0).getLockWaitNanos() >= 2 * 1000 * 1000);
+        assertTrue(traces.get(0).getDurationNanos() >= traces.get(0).getLockWaitNanos());
+    }
+
+    /**
+     * Only every "sampleRate"-th call should be traced
+     */
+    @Test
+    public void sampling() {
+        CallTracer tracer = new CallTracer();
+        tracer.enable(4, 100);
+
+        for (int a = 0; a < 20; a++) {
+            call(tracer, "Views.recordView");
+        }
+
+        assertEquals(5, tracer.getTraces().size());
+        assertEquals(5, tracer.getTracedCallCount());
+    }
+
+    /**
+     * Calls made from inside a traced call should not be traced on their own
+     */
+    @Test
+    public void nestedCalls() {
+        CallTracer tracer = new CallTracer();
+        tracer.enable(1, 10);
+
+        CallTrace outer = tracer.begin("Events.endEvent");
+        call(tracer, "Events.endEvent");
+        call(tracer, "Events.recordEvent");
+        tracer.end(outer);
+        call(tracer, "Events.recordEvent");
+
+        List<CallTrace> traces = tracer.getTraces();
+        assertEquals(2, traces.size());
+        assertEquals("Events.endEvent", traces.get(0).getName());
+        assertEquals("Events.recordEvent", traces.get(1).getName());
+    }
+
+    /**
+     * Only the most recent traces should be kept
+     */
+    @Test
+    public void traceLimit() {
+        CallTracer tracer = new CallTracer();
+        tracer.enable(1, 3);
+
+        for (int a = 0; a < 5; a++) {
+            call(tracer, "Apm.startTrace" + a);
+        }
+
+        List<CallTrace> traces = tracer.getTraces();
+        assertEquals(3, traces.size());
+        assertEquals("Apm.startTrace2", traces.get(0).getName());
+        assertEquals("Apm.startTrace4", traces.get(2).getName());
+        assertEquals(5, tracer.getTracedCallCount());
+
+        tracer.disable();
+        assertEquals(0, tracer.getTraces().size());
+        assertFalse(tracer.isEnabled());
+    }
+
+    /**
+     * Calls from different threads should be traced with their own thread
+     */
+    @Test
+    public void multipleThreads() throws InterruptedException {
+        final CallTracer tracer = new CallTracer();
+        tracer.enable(1, 10);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                call(tracer, "Crashes.recordHandledException");
+                done.countDown();
+            }
+        }, "tracer-test-thread");
+        thread.start();
+        done.await();
+        call(tracer, "Events.recordEvent");
+
+        List<CallTrace> traces = tracer.getTraces();
+        assertEquals(2, traces.size());
+        assertEquals("tracer-test-thread", traces.get(0).getThreadName());
+        assertEquals(thread.getId(), traces.get(0).getThreadId());
+        assertFalse(traces.get(0).isMainThread());
+        assertEquals(Thread.currentThread().getId(), traces.get(1).getThreadId());
+    }
+
+    /**
+     * The export should contain a thread name entry for every thread and a complete event for every call
+     */
+    @Test
+    public void exportTraceEvents() throws JSONException {
+        CallTracer tracer = new CallTracer();
+        tracer.enable(1, 10);
+        call(tracer, "Events.recordEvent");
+        call(tracer, "Views.recordView");
+
+        JSONObject export = new JSONObject(tracer.exportTraceEvents());
+        JSONArray events = export.getJSONArray("traceEvents");
+        assertEquals(3, events.length());
+
+        assertEquals("thread_name", events.getJSONObject(0).getString("name"));
+        assertEquals("M", events.getJSONObject(0).getString("ph"));
+        assertEquals(Thread.currentThread().getName(), events.getJSONObject(0).getJSONObject("args").getString("name"));
+
+        JSONObject event = events.getJSONObject(2);
+        assertEquals("Views.recordView", event.getString("name"));
+        assertEquals("X", event.getString("ph"));
+        assertEquals(Thread.currentThread().getId(), event.getLong("tid"));
+        assertTrue(event.getDouble("dur") >= 0);
+        assertTrue(event.getJSONObject("args").has("lockWaitUs"));
+    }
+}
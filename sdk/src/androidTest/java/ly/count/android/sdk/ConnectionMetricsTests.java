@@ -0,0 +1,80 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.net.Socket;
+import javax.net.ssl.SSLSocketFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class ConnectionMetricsTests {
+
+    /**
+     * Without any requests the reuse ratio should be 0
+     */
+    @Test
+    public void emptyMetrics() {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        assertEquals(0, metrics.getRequestCount());
+        assertEquals(0, metrics.getHandshakeCount());
+        assertEquals(0, metrics.getReuseRatio(), 0.0001);
+    }
+
+    /**
+     * Reuse ratio is the share of requests that did not need a handshake
+     */
+    @Test
+    public void reuseRatio() {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        for (int a = 0; a < 4; a++) {
+            metrics.onRequest();
+        }
+        metrics.onHandshake();
+
+        assertEquals(4, metrics.getRequestCount());
+        assertEquals(1, metrics.getHandshakeCount());
+        assertEquals(0.75, metrics.getReuseRatio(), 0.0001);
+
+        //more handshakes than requests should not produce a negative ratio
+        metrics.onHandshake();
+        metrics.onHandshake();
+        metrics.onHandshake();
+        metrics.onHandshake();
+        assertEquals(0, metrics.getReuseRatio(), 0.0001);
+
+        metrics.reset();
+        assertEquals(0, metrics.getRequestCount());
+        assertEquals(0, metrics.getHandshakeCount());
+    }
+
+    /**
+     * Every socket that is created through the metered factory should be counted as a handshake
+     * and the call should be passed to the wrapped factory
+     */
+    @Test
+    public void meteredFactoryCountsSockets() throws IOException {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        SSLSocketFactory delegate = mock(SSLSocketFactory.class);
+        Socket socket = mock(Socket.class);
+        when(delegate.createSocket(any(Socket.class), anyString(), anyInt(), anyBoolean())).thenReturn(socket);
+        when(delegate.getDefaultCipherSuites()).thenReturn(new String[] { "a" });
+
+        MeteredSSLSocketFactory factory = new MeteredSSLSocketFactory(delegate, metrics);
+        assertEquals(socket, factory.createSocket(mock(Socket.class), "host", 443, true));
+        factory.createSocket("host", 443);
+
+        assertEquals(2, metrics.getHandshakeCount());
+        assertEquals("a", factory.getDefaultCipherSuites()[0]);
+        verify(delegate).createSocket("host", 443);
+    }
+}
@@ -29,11 +29,24 @@ import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static ly.count.android.sdk.UtilsNetworking.sha256Hash;
 import static org.junit.Assert.assertEquals;
@@ -42,7 +55,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -99,6 +114,22 @@ public class ConnectionProcessorTests {
         assertEquals(new URL(connectionProcessor.getServerURL() + "/i?" + eventData + "&checksum256=" + sha256Hash(eventData + null)), urlConnection.getURL());
     }
 
+    /**
+     * Compressed responses should only be requested when request compression is enabled
+     *
+     * @throws IOException
+     */
+    @Test
+    public void urlConnectionAcceptEncoding() throws IOException {
+        URLConnection urlConnection = connectionProcessor.urlConnectionForServerRequest("blahblahblah", null);
+        assertNull(urlConnection.getRequestProperty("Accept-Encoding"));
+
+        connectionProcessor.setCompressionThreshold(100);
+        urlConnection = connectionProcessor.urlConnectionForServerRequest("blahblahblah", null);
+        assertEquals("gzip", urlConnection.getRequestProperty("Accept-Encoding"));
+        assertNull(urlConnection.getRequestProperty("Content-Encoding"));
+    }
+
     /**
      * Make sure that a correct url is generated
      * With salt provided and no custom endpoint
@@ -233,7 +264,8 @@ public class ConnectionProcessorTests {
         assertTrue(testInputStream.fullyRead());
         verify(mockStore).removeRequest(eventData);
         assertTrue(testInputStream.closed);
-        verify(mockURLConnection).disconnect();
+        //successful connections are kept for reuse
+        verify(mockURLConnection, times(0)).disconnect();
     }
 
     @Test
@@ -281,7 +313,8 @@ public class ConnectionProcessorTests {
         assertTrue(testInputStream.fullyRead());
         verify(mockStore, times(0)).removeRequest(eventData);
         assertTrue(testInputStream.closed);
-        verify(mockURLConnection).disconnect();
+        //the response was fully read, so the connection can still be reused
+        verify(mockURLConnection, times(0)).disconnect();
     }
 
     @Test
@@ -304,7 +337,7 @@ public class ConnectionProcessorTests {
         verify(mockURLConnection).getResponseCode();
         verify(mockStore, times(1)).removeRequest(eventData);
         assertTrue(testInputStream.closed);
-        verify(mockURLConnection).disconnect();
+        verify(mockURLConnection, times(0)).disconnect();
     }
 
     @Test
@@ -334,7 +367,640 @@ public class ConnectionProcessorTests {
         verify(mockStore).removeRequest(eventData2);
         assertTrue(testInputStream1.closed);
         assertTrue(testInputStream2.closed);
-        verify(mockURLConnection, times(2)).disconnect();
+        verify(mockURLConnection, times(0)).disconnect();
+    }
+
+    /**
+     * Only consecutive requests from the start of the queue that don't change the device ID
+     * or upload a picture should be collected for a bulk request
+     */
+    @Test
+    public void collectBulkRequests() {
+        connectionProcessor.setBulkRequestLimits(3, 1000);
+
+        String[] stored = new String[] { "a=1", "a=2", "a=3", "a=4" };
+        assertEquals(Arrays.asList("a=1", "a=2", "a=3"), connectionProcessor.collectBulkRequests(stored));
+
+        stored = new String[] { "a=1", "a=2&device_id=new", "a=3" };
+        assertEquals(Arrays.asList("a=1"), connectionProcessor.collectBulkRequests(stored));
+
+        stored = new String[] { "a=1&override_id=old", "a=2" };
+        assertEquals(0, connectionProcessor.collectBulkRequests(stored).size());
+
+        stored = new String[] { "a=1", "a=2&picturePath=abc" };
+        assertEquals(Arrays.asList("a=1"), connectionProcessor.collectBulkRequests(stored));
+    }
+
+    /**
+     * The byte limit should limit the bulk request, but the first request is always collected
+     */
+    @Test
+    public void collectBulkRequestsByteLimit() {
+        connectionProcessor.setBulkRequestLimits(10, 9);
+
+        String[] stored = new String[] { "a=1111", "a=2", "a=3" };
+        assertEquals(Arrays.asList("a=1111", "a=2"), connectionProcessor.collectBulkRequests(stored));
+
+        stored = new String[] { "a=1111111111", "a=2" };
+        assertEquals(Arrays.asList("a=1111111111"), connectionProcessor.collectBulkRequests(stored));
+    }
+
+    /**
+     * Every request should be converted to a object of its decoded parameters with the current device ID
+     */
+    @Test
+    public void createBulkPayload() throws JSONException {
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+
+        JSONArray payload = connectionProcessor.createBulkPayload(Arrays.asList("app_key=abc&events=%5B%7B%22key%22%3A%22a%22%7D%5D", "app_key=abc&begin_session=1"));
+
+        assertEquals(2, payload.length());
+        assertEquals("abc", payload.getJSONObject(0).getString("app_key"));
+        assertEquals("[{\"key\":\"a\"}]", payload.getJSONObject(0).getString("events"));
+        assertEquals(testDeviceId, payload.getJSONObject(0).getString("device_id"));
+        assertEquals("1", payload.getJSONObject(1).getString("begin_session"));
+        assertEquals(testDeviceId, payload.getJSONObject(1).getString("device_id"));
+    }
+
+    /**
+     * With bulk requests enabled, stored requests should be sent in a single call
+     * and removed together after a successful response
+     */
+    @Test
+    public void testRun_bulkRequestSuccess() throws IOException {
+        final String eventData1 = "a=1";
+        final String eventData2 = "a=2";
+        connectionProcessor.setBulkRequestLimits(10, 1000);
+        connectionProcessor = spy(connectionProcessor);
+        when(mockStore.getRequests()).thenReturn(new String[] { eventData1, eventData2 }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        final HttpURLConnection mockURLConnection = mock(HttpURLConnection.class);
+        final CountlyResponseStream testInputStream = new CountlyResponseStream("Success");
+        when(mockURLConnection.getInputStream()).thenReturn(testInputStream);
+        when(mockURLConnection.getResponseCode()).thenReturn(200);
+        doReturn(mockURLConnection).when(connectionProcessor).urlConnectionForServerRequest(anyString(), eq(ConnectionProcessor.BULK_ENDPOINT));
+        connectionProcessor.run();
+
+        verify(mockStore, times(2)).getRequests();
+        verify(connectionProcessor, times(1)).urlConnectionForServerRequest(anyString(), eq(ConnectionProcessor.BULK_ENDPOINT));
+        verify(connectionProcessor, times(0)).urlConnectionForServerRequest(anyString(), isNull(String.class));
+        verify(mockStore).removeRequests(Arrays.asList(eventData1, eventData2));
+        verify(mockStore, times(0)).removeRequest(anyString());
+        assertTrue(testInputStream.closed);
+        verify(mockURLConnection, times(0)).disconnect();
+    }
+
+    /**
+     * If the bulk request fails, nothing should be removed
+     */
+    @Test
+    public void testRun_bulkRequestFailure() throws IOException {
+        connectionProcessor.setBulkRequestLimits(10, 1000);
+        connectionProcessor = spy(connectionProcessor);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        final HttpURLConnection mockURLConnection = mock(HttpURLConnection.class);
+        when(mockURLConnection.getInputStream()).thenReturn(new CountlyResponseStream("Success"));
+        when(mockURLConnection.getResponseCode()).thenReturn(500);
+        doReturn(mockURLConnection).when(connectionProcessor).urlConnectionForServerRequest(anyString(), eq(ConnectionProcessor.BULK_ENDPOINT));
+        connectionProcessor.run();
+
+        verify(mockStore, times(1)).getRequests();
+        verify(mockStore, times(0)).removeRequests(ArgumentMatchers.<String>anyList());
+        verify(mockStore, times(0)).removeRequest(anyString());
+    }
+
+    /**
+     * Transport that answers bulk requests with the given response codes in order and accepts all single requests
+     */
+    private static class BulkTransport implements CountlyTransport {
+        final int[] bulkResponseCodes;
+        int bulkCalls = 0;
+        int singleCalls = 0;
+
+        BulkTransport(int... bulkResponseCodes) {
+            this.bulkResponseCodes = bulkResponseCodes;
+        }
+
+        @Override
+        public synchronized Response execute(Request request) throws IOException {
+            byte[] success = "{\"result\":\"Success\"}".getBytes("UTF-8");
+            if (request.url.toString().contains(ConnectionProcessor.BULK_ENDPOINT)) {
+                int code = bulkResponseCodes[Math.min(bulkCalls, bulkResponseCodes.length - 1)];
+                bulkCalls++;
+                return new Response(code, null, code == 200 ? success : null);
+            }
+            singleCalls++;
+            return new Response(200, null, success);
+        }
+    }
+
+    /**
+     * If a bulk request is rejected, only its requests should be sent one by one,
+     * the following requests are sent in bulk again
+     */
+    @Test
+    public void testRun_bulkRequestRejectedFallsBackForBatch() throws IOException {
+        BulkTransport transport = new BulkTransport(400, 200);
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setBulkRequestLimits(2, 1000);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2", "a=3", "a=4" }, new String[] { "a=1", "a=2", "a=3", "a=4" }, new String[] { "a=2", "a=3", "a=4" },
+            new String[] { "a=3", "a=4" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        assertEquals(2, transport.bulkCalls);
+        assertEquals(2, transport.singleCalls);
+        verify(mockStore).removeRequest("a=1");
+        verify(mockStore).removeRequest("a=2");
+        verify(mockStore).removeRequests(Arrays.asList("a=3", "a=4"));
+    }
+
+    /**
+     * If the server has no bulk endpoint, the rest of the queue should be sent one by one
+     */
+    @Test
+    public void testRun_bulkEndpointUnsupported() throws IOException {
+        BulkTransport transport = new BulkTransport(404);
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setBulkRequestLimits(2, 1000);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2", "a=3", "a=4" }, new String[] { "a=1", "a=2", "a=3", "a=4" }, new String[] { "a=2", "a=3", "a=4" },
+            new String[] { "a=3", "a=4" }, new String[] { "a=4" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        assertEquals(1, transport.bulkCalls);
+        assertEquals(4, transport.singleCalls);
+        verify(mockStore, times(0)).removeRequests(ArgumentMatchers.<String>anyList());
+    }
+
+    /**
+     * Transport that records the performed requests and answers all of them with the same response
+     */
+    private static class FakeTransport implements CountlyTransport {
+        final List<Request> requests = new ArrayList<>();
+        Response response;
+
+        FakeTransport(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public synchronized Response execute(Request request) {
+            requests.add(request);
+            return response;
+        }
+    }
+
+    /**
+     * With a custom transport set, requests should be performed with it
+     * and not with the built-in HttpURLConnection
+     */
+    @Test
+    public void testRun_customTransport() throws IOException {
+        ConnectionProcessor.salt = null;
+        final String eventData = "blahblahblah";
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8")));
+        connectionProcessor.setTransport(transport);
+        connectionProcessor = spy(connectionProcessor);
+        when(mockStore.getRequests()).thenReturn(new String[] { eventData }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        verify(connectionProcessor, times(0)).urlConnectionForServerRequest(anyString(), isNull(String.class));
+        verify(mockStore).removeRequest(eventData);
+
+        assertEquals(1, transport.requests.size());
+        CountlyTransport.Request request = transport.requests.get(0);
+        String sentData = eventData + "&device_id=" + testDeviceId;
+        assertEquals("GET", request.method);
+        assertEquals(new URL(connectionProcessor.getServerURL() + "/i?" + sentData + "&checksum256=" + sha256Hash(sentData + null)), request.url);
+        assertNull(request.body);
+        assertEquals(30000, request.connectTimeout);
+        assertEquals(30000, request.readTimeout);
+    }
+
+    /**
+     * A failed response from a custom transport should leave the request in the queue
+     */
+    @Test
+    public void testRun_customTransportFailure() throws IOException {
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(500, null, null));
+        connectionProcessor.setTransport(transport);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        assertEquals(1, transport.requests.size());
+        verify(mockStore, times(1)).getRequests();
+        verify(mockStore, times(0)).removeRequest(anyString());
+    }
+
+    /**
+     * Gzip encoded responses of a custom transport should be decoded by the SDK
+     */
+    @Test
+    public void customTransportCompressedResponse() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Encoding", "gzip");
+        byte[] body = UtilsNetworking.gzip("{\"result\":\"Success\"}".getBytes("UTF-8"));
+        connectionProcessor.setTransport(new FakeTransport(new CountlyTransport.Response(200, headers, body)));
+
+        CountlyTransport.Response response = connectionProcessor.executeRequest("a=1", null);
+        assertEquals(200, response.code);
+        assertEquals("{\"result\":\"Success\"}", response.getBodyString());
+    }
+
+    /**
+     * Long requests should be sent as a POST body, compressed when compression is enabled
+     */
+    @Test
+    public void createRequestPostBody() throws IOException {
+        ConnectionProcessor.salt = null;
+        StringBuilder sb = new StringBuilder("a=");
+        for (int a = 0; a < 2100; a++) {
+            sb.append('b');
+        }
+        final String eventData = sb.toString();
+        final String expectedBody = eventData + "&checksum256=" + sha256Hash(eventData + null);
+
+        CountlyTransport.Request request = connectionProcessor.createRequest(eventData, null);
+        assertEquals("POST", request.method);
+        assertEquals(new URL(connectionProcessor.getServerURL() + "/i"), request.url);
+        assertEquals(expectedBody, new String(request.body, "UTF-8"));
+        assertNull(request.headers.get("Content-Encoding"));
+
+        connectionProcessor.setCompressionThreshold(100);
+        request = connectionProcessor.createRequest(eventData, null);
+        assertEquals("gzip", request.headers.get("Content-Encoding"));
+        assertEquals("gzip", request.headers.get("Accept-Encoding"));
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Encoding", "gzip");
+        assertEquals(expectedBody, new String(UtilsNetworking.decodeResponseBody(new CountlyTransport.Response(200, headers, request.body)), "UTF-8"));
+    }
+
+    /**
+     * After a failed request the queue should be backed off,
+     * the request from the server to retry later should be honoured
+     */
+    @Test
+    public void testRun_failureBacksOff() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Retry-After", "120");
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(503, headers, null));
+        RequestBackoff backoff = mock(RequestBackoff.class);
+        when(backoff.canAttempt(ArgumentMatchers.anyLong())).thenReturn(true);
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setRequestBackoff(backoff);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        assertEquals(1, transport.requests.size());
+        verify(backoff).onFailure(ArgumentMatchers.anyLong(), eq(120000L));
+        verify(backoff, times(0)).onSuccess();
+        verify(mockStore, times(0)).removeRequest(anyString());
+    }
+
+    /**
+     * Sent bytes, response codes, delivery latency and failed attempts should be recorded
+     * and the diagnostics listener notified once after the run
+     */
+    @Test
+    public void testRun_diagnostics() throws IOException {
+        final byte[] success = "{\"result\":\"Success\"}".getBytes("UTF-8");
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(200, null, success)) {
+            @Override
+            public synchronized Response execute(Request request) {
+                requests.add(request);
+                return requests.size() == 1 ? response : new Response(503, null, null);
+            }
+        };
+        DiagnosticsMetrics metrics = new DiagnosticsMetrics();
+        final List<DiagnosticsMetrics> notified = new ArrayList<>();
+        metrics.setListener(new DiagnosticsListener() {
+            @Override public void onRequestQueueProcessed(DiagnosticsMetrics diagnostics) {
+                notified.add(diagnostics);
+            }
+        });
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setDiagnosticsMetrics(metrics);
+        final long timestamp = UtilsTime.currentTimestampMs() - 5000;
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1&timestamp=" + timestamp, "a=2" }, new String[] { "a=2" });
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        assertEquals(2, transport.requests.size());
+        assertEquals(2, metrics.getRequestAttemptCount());
+        assertEquals(1, metrics.getFailedAttemptCount());
+        assertEquals(1, metrics.getRetryCount());
+        assertEquals(0, metrics.getConnectionErrorCount());
+        assertEquals(1L, (long) metrics.getStatusCodeCounts().get(200));
+        assertEquals(1L, (long) metrics.getStatusCodeCounts().get(503));
+        assertEquals(success.length, metrics.getBytesReceived());
+        assertEquals(ConnectionProcessor.getApproximateRequestSize(transport.requests.get(0)) + ConnectionProcessor.getApproximateRequestSize(transport.requests.get(1)), metrics.getBytesSent());
+        assertEquals(1, metrics.getDeliveryLatencyHistogram().getCount());
+        assertTrue(metrics.getDeliveryLatencyHistogram().getMax() >= 5000);
+
+        assertEquals(1, notified.size());
+        assertSame(metrics, notified.get(0));
+    }
+
+    /**
+     * While backing off, no requests should be sent
+     */
+    @Test
+    public void testRun_backingOff() throws IOException {
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8")));
+        RequestBackoff backoff = mock(RequestBackoff.class);
+        when(backoff.canAttempt(ArgumentMatchers.anyLong())).thenReturn(false);
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setRequestBackoff(backoff);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        assertEquals(0, transport.requests.size());
+        verify(mockStore, times(0)).removeRequest(anyString());
+    }
+
+    /**
+     * A request that is rejected too many times should be quarantined and the following requests sent
+     */
+    @Test
+    public void testRun_badRequestQuarantined() throws IOException {
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(400, null, null));
+        RequestBackoff backoff = mock(RequestBackoff.class);
+        when(backoff.canAttempt(ArgumentMatchers.anyLong())).thenReturn(true);
+        when(mockStore.addBadRequestAttempt("a=1")).thenReturn(1, 2);
+        when(mockStore.addBadRequestAttempt("a=2")).thenReturn(1);
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setRequestBackoff(backoff);
+        connectionProcessor.setMaxBadRequestAttempts(2);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2" }, new String[] { "a=1", "a=2" }, new String[] { "a=2" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+
+        //first attempt, the request is kept and the queue backed off
+        connectionProcessor.run();
+        verify(mockStore, times(0)).quarantineRequest(anyString());
+        verify(backoff, times(1)).onFailure(ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong());
+
+        //second attempt, the request is quarantined and the next one is sent
+        transport.requests.clear();
+        connectionProcessor.run();
+        verify(mockStore).quarantineRequest("a=1");
+        verify(mockStore, times(0)).removeRequest(anyString());
+        assertEquals(2, transport.requests.size());
+        verify(mockStore).addBadRequestAttempt("a=2");
+    }
+
+    /**
+     * Without the retry policy, a request that is rejected too many times should still be quarantined
+     * so that it doesn't block the queue forever
+     */
+    @Test
+    public void testRun_badRequestQuarantinedWithoutBackoff() throws IOException {
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(400, null, null));
+        countBadRequestAttempts();
+        connectionProcessor.setTransport(transport);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1" });
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+
+        for (int a = 1; a < ConnectionProcessor.DEFAULT_MAX_BAD_REQUEST_ATTEMPTS; a++) {
+            connectionProcessor.run();
+            verify(mockStore, times(0)).quarantineRequest(anyString());
+        }
+
+        //the last allowed attempt quarantines it
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1" }, new String[0]);
+        connectionProcessor.run();
+        verify(mockStore).quarantineRequest("a=1");
+        assertEquals(ConnectionProcessor.DEFAULT_MAX_BAD_REQUEST_ATTEMPTS, transport.requests.size());
+    }
+
+    /**
+     * Keeps the bad request attempt counts of the mocked store in memory
+     */
+    private void countBadRequestAttempts() {
+        final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+        when(mockStore.addBadRequestAttempt(anyString())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                String request = invocation.getArgument(0);
+                Integer previous = attempts.get(request);
+                int count = previous == null ? 1 : previous + 1;
+                attempts.put(request, count);
+                return count;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                attempts.clear();
+                return null;
+            }
+        }).when(mockStore).clearBadRequestAttempts();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                attempts.remove((String) invocation.getArgument(0));
+                return null;
+            }
+        }).when(mockStore).quarantineRequest(anyString());
+    }
+
+    /**
+     * A successful request should reset the backoff
+     */
+    @Test
+    public void testRun_successResetsBackoff() throws IOException {
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8")));
+        RequestBackoff backoff = mock(RequestBackoff.class);
+        when(backoff.canAttempt(ArgumentMatchers.anyLong())).thenReturn(true);
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setRequestBackoff(backoff);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        verify(mockStore).removeRequest("a=1");
+        verify(backoff).onSuccess();
+        verify(backoff, times(0)).onFailure(ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong());
+    }
+
+    @Test
+    public void requiresOrdering() {
+        assertFalse(ConnectionProcessor.requiresOrdering("app_key=a&events=%5B%5D"));
+        assertFalse(ConnectionProcessor.requiresOrdering("app_key=a&apm=%7B%7D"));
+        assertTrue(ConnectionProcessor.requiresOrdering("app_key=a&begin_session=1"));
+        assertTrue(ConnectionProcessor.requiresOrdering("app_key=a&session_duration=60"));
+        assertTrue(ConnectionProcessor.requiresOrdering("app_key=a&end_session=1"));
+        assertTrue(ConnectionProcessor.requiresOrdering("app_key=a&device_id=new"));
+        assertTrue(ConnectionProcessor.requiresOrdering("app_key=a&override_id=old"));
+    }
+
+    /**
+     * Concurrent requests are collected up to the worker count and only up to the first request that requires ordering
+     */
+    @Test
+    public void collectParallelRequests() {
+        connectionProcessor.setParallelWorkers(null, 3);
+
+        assertEquals(Arrays.asList("a=1", "a=2", "a=3"), connectionProcessor.collectParallelRequests(new String[] { "a=1", "a=2", "a=3", "a=4" }));
+        assertEquals(Arrays.asList("a=1"), connectionProcessor.collectParallelRequests(new String[] { "a=1", "a=2&begin_session=1", "a=3" }));
+        assertEquals(0, connectionProcessor.collectParallelRequests(new String[] { "a=1&end_session=1", "a=2" }).size());
+    }
+
+    /**
+     * Independent requests should be sent concurrently, requests that require ordering only after them
+     */
+    @Test
+    public void testRun_parallelRequests() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8")));
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setParallelWorkers(executor, 2);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2", "a=3&begin_session=1" }, new String[] { "a=3&begin_session=1" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+        executor.shutdown();
+
+        //the concurrent requests are removed together
+        verify(mockStore).removeRequests(Arrays.asList("a=1", "a=2"));
+        verify(mockStore, times(0)).removeRequest("a=1");
+        verify(mockStore).removeRequest("a=3&begin_session=1");
+        assertEquals(3, transport.requests.size());
+        assertTrue(transport.requests.get(2).url.toString().contains("begin_session=1"));
+    }
+
+    /**
+     * If the workers reject the requests, they should be sent from the processor one at a time
+     */
+    @Test
+    public void testRun_parallelRequestsRejected() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.shutdown();
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8")));
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setParallelWorkers(executor, 2);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+
+        verify(mockStore).removeRequests(Arrays.asList("a=1", "a=2"));
+        assertEquals(2, transport.requests.size());
+    }
+
+    /**
+     * If one of the concurrent requests fails, the accepted ones should still be removed
+     */
+    @Test
+    public void testRun_parallelRequestsPartialFailure() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        final CountlyTransport.Response success = new CountlyTransport.Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8"));
+        CountlyTransport transport = new CountlyTransport() {
+            @Override
+            public Response execute(Request request) {
+                return request.url.toString().contains("a=2") ? new Response(500, null, null) : success;
+            }
+        };
+        RequestBackoff backoff = mock(RequestBackoff.class);
+        when(backoff.canAttempt(ArgumentMatchers.anyLong())).thenReturn(true);
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setRequestBackoff(backoff);
+        connectionProcessor.setParallelWorkers(executor, 2);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+        connectionProcessor.run();
+        executor.shutdown();
+
+        verify(mockStore, times(1)).getRequests();
+        verify(mockStore).removeRequests(Arrays.asList("a=1"));
+        verify(mockStore, times(0)).removeRequest(anyString());
+        verify(backoff, times(1)).onFailure(ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong());
+        verify(backoff, times(0)).onSuccess();
+    }
+
+    /**
+     * If the processor is interrupted while waiting for concurrent requests,
+     * the requests that the server still accepts should be removed so that they are not sent again
+     */
+    @Test
+    public void testRun_parallelRequestsInterrupted() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountlyTransport.Response success = new CountlyTransport.Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8"));
+        CountlyTransport transport = new CountlyTransport() {
+            @Override
+            public Response execute(Request request) {
+                started.countDown();
+                //like a real connection, the request is not aborted by interrupting the thread
+                while (true) {
+                    try {
+                        release.await();
+                        return success;
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        };
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setParallelWorkers(executor, 2);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+
+        Thread processorThread = new Thread(connectionProcessor);
+        processorThread.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        processorThread.interrupt();
+        processorThread.join(5000);
+        assertFalse(processorThread.isAlive());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        //nothing was accepted before the round was closed, the late workers remove their own requests
+        verify(mockStore).removeRequests(new ArrayList<String>());
+        verify(mockStore).removeRequest("a=1");
+        verify(mockStore).removeRequest("a=2");
+    }
+
+    /**
+     * Concurrent requests that keep getting rejected should all be quarantined,
+     * and the queue should be backed off once per round, not once per rejected request
+     */
+    @Test
+    public void testRun_parallelBadRequestsQuarantined() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        FakeTransport transport = new FakeTransport(new CountlyTransport.Response(400, null, null));
+        StorageProvider backoffStorage = mock(StorageProvider.class);
+        when(backoffStorage.getRequestBackoffState()).thenReturn("");
+        //no random delay, so that every run can send
+        RequestBackoff backoff = new RequestBackoff(backoffStorage, 1000, 60000, new RequestBackoffTests.FixedRandom(0), moduleLog);
+        countBadRequestAttempts();
+        connectionProcessor.setTransport(transport);
+        connectionProcessor.setRequestBackoff(backoff);
+        connectionProcessor.setMaxBadRequestAttempts(3);
+        connectionProcessor.setParallelWorkers(executor, 2);
+        when(mockStore.getRequests()).thenReturn(new String[] { "a=1", "a=2" }, new String[] { "a=1", "a=2" }, new String[] { "a=1", "a=2" }, new String[0]);
+        when(mockDeviceId.getCurrentId()).thenReturn(testDeviceId);
+
+        connectionProcessor.run();
+        connectionProcessor.run();
+        verify(mockStore, times(0)).quarantineRequest(anyString());
+        assertEquals(2, backoff.getFailureCount());
+
+        //on the third round both requests have reached the attempt limit
+        connectionProcessor.run();
+        executor.shutdown();
+
+        verify(mockStore).quarantineRequest("a=1");
+        verify(mockStore).quarantineRequest("a=2");
+        verify(mockStore, times(0)).removeRequest(anyString());
+        assertEquals(6, transport.requests.size());
+        assertEquals(0, backoff.getFailureCount());
     }
 
     private static class TestInputStream2 extends InputStream {
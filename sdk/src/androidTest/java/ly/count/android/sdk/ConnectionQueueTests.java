@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -39,6 +40,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static androidx.test.InstrumentationRegistry.getContext;
 import static org.junit.Assert.assertEquals;
@@ -49,7 +52,10 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -468,6 +474,73 @@ public class ConnectionQueueTests {
     //    verifyZeroInteractions(connQ.getExecutor());
     //}
 
+    /**
+     * Ticks from several threads at the same time should start only one connection processor
+     */
+    @Test
+    public void testTick_concurrentTicksStartOneProcessor() throws InterruptedException {
+        when(connQ.storageProvider.getRequestQueueSize()).thenReturn(1);
+        final Future<?> runningFuture = mock(Future.class);
+        when(runningFuture.isDone()).thenReturn(false);
+        when(connQ.getExecutor().submit(any(Runnable.class))).thenAnswer(new Answer<Future<?>>() {
+            @Override public Future<?> answer(InvocationOnMock invocation) {
+                return runningFuture;
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int a = 0; a < threads.length; a++) {
+            threads[a] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ignored) {
+                        return;
+                    }
+                    connQ.tick();
+                }
+            });
+            threads[a].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        verify(connQ.getExecutor(), times(1)).submit(any(Runnable.class));
+        assertSame(runningFuture, connQ.getConnectionProcessorFuture());
+    }
+
+    /**
+     * A tick while backing off should schedule a retry for the end of the backoff instead of waiting for the next timer tick
+     */
+    @Test
+    public void testTick_retryAfterBackoff() {
+        when(connQ.storageProvider.getRequestQueueSize()).thenReturn(1);
+        RequestBackoff backoff = mock(RequestBackoff.class);
+        when(backoff.canAttempt(anyLong())).thenReturn(false, true);
+        when(backoff.getNextAttemptTimestamp()).thenReturn(UtilsTime.currentTimestampMs() + 200);
+        connQ.setRequestBackoff(backoff);
+
+        connQ.tick();
+        verify(connQ.getExecutor(), times(0)).submit(any(Runnable.class));
+
+        //the scheduled retry ticks again once the backoff has ended
+        verify(connQ.getExecutor(), timeout(5000).times(1)).submit(any(Runnable.class));
+        connQ.setRequestBackoff(null);
+    }
+
+    /**
+     * The request queue should be drained on its own single thread lane, not on the lane of immediate requests
+     */
+    @Test
+    public void testEnsureExecutor_requestQueueLane() {
+        freshConnQ.ensureExecutor();
+        assertSame(Countly.sharedInstance().getScheduler().lane(CountlyScheduler.Lane.REQUEST_QUEUE), freshConnQ.getExecutor());
+        assertEquals(1, CountlyScheduler.Lane.REQUEST_QUEUE.threads);
+    }
+
     @Test
     public void testPrepareCommonRequest() {
         // 0 - test default common request
@@ -6,6 +6,8 @@ import android.content.Context;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -157,6 +159,12 @@ public class CountlyConfigTests {
         config.setStarRatingDisableAskingForEachAppVersion(true);
         config.setApplication(app);
         config.setRecordAppStartTime(true);
+        config.enableDeferredInit();
+        config.setRecordInitPhaseDurations(true);
+        config.enableRemoteConfigBackgroundRefresh(3600, 60);
+        Executor executor = Executors.newSingleThreadExecutor();
+        config.setExecutor(executor);
+        config.setRequestRetryPolicy(10, 600, 3);
         config.setDisableLocation();
         config.setLocation("CC", "city", "loc", "ip");
         config.setMetricOverride(metricOverride);
@@ -211,6 +219,15 @@ public class CountlyConfigTests {
         Assert.assertTrue(config.starRatingDisableAskingForEachAppVersion);
         Assert.assertEquals(app, config.application);
         Assert.assertTrue(config.recordAppStartTime);
+        Assert.assertTrue(config.deferredInitEnabled);
+        Assert.assertTrue(config.recordInitPhaseDurations);
+        Assert.assertEquals(3600, config.remoteConfigRefreshTtl);
+        Assert.assertEquals(60, config.remoteConfigMinimumFetchInterval);
+        Assert.assertSame(executor, config.executor);
+        Assert.assertTrue(config.requestRetryPolicyEnabled);
+        Assert.assertEquals(10, config.requestRetryBaseDelay);
+        Assert.assertEquals(600, config.requestRetryMaxDelay);
+        Assert.assertEquals(3, config.maxBadRequestAttempts);
         Assert.assertTrue(config.disableLocation);
         Assert.assertEquals("CC", config.locationCountyCode);
         Assert.assertEquals("city", config.locationCity);
@@ -287,6 +304,12 @@ public class CountlyConfigTests {
         Assert.assertFalse(config.starRatingShownAutomatically);
         Assert.assertFalse(config.starRatingDisableAskingForEachAppVersion);
         Assert.assertFalse(config.recordAppStartTime);
+        Assert.assertFalse(config.deferredInitEnabled);
+        Assert.assertFalse(config.recordInitPhaseDurations);
+        Assert.assertEquals(0, config.remoteConfigRefreshTtl);
+        Assert.assertEquals(0, config.remoteConfigMinimumFetchInterval);
+        Assert.assertNull(config.executor);
+        Assert.assertFalse(config.requestRetryPolicyEnabled);
         Assert.assertFalse(config.disableLocation);
         Assert.assertNull(config.locationCountyCode);
         Assert.assertNull(config.locationCity);
@@ -0,0 +1,215 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class CountlySchedulerTests {
+    CountlyScheduler scheduler;
+
+    /**
+     * Blocks every task until it is released
+     */
+    static class BlockingTask implements Runnable {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override public void run() {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        scheduler = new CountlyScheduler();
+    }
+
+    SchedulerLaneMetrics metrics(String name) {
+        for (SchedulerLaneMetrics laneMetrics : scheduler.getMetrics()) {
+            if (laneMetrics.getName().equals(name)) {
+                return laneMetrics;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tasks should run on named threads with the priority of their lane
+     */
+    @Test
+    public void laneThreads() throws Exception {
+        final Thread[] threads = new Thread[2];
+        scheduler.lane(CountlyScheduler.Lane.MEDIA).submit(new Runnable() {
+            @Override public void run() {
+                threads[0] = Thread.currentThread();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        scheduler.timers().schedule(new Runnable() {
+            @Override public void run() {
+                threads[1] = Thread.currentThread();
+            }
+        }, 10, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+
+        assertEquals("Countly-media-1", threads[0].getName());
+        assertEquals(Thread.MIN_PRIORITY, threads[0].getPriority());
+        assertTrue(threads[0].isDaemon());
+        assertEquals("Countly-timers-1", threads[1].getName());
+        assertEquals(Thread.NORM_PRIORITY, threads[1].getPriority());
+    }
+
+    /**
+     * Once all threads are busy and the queue is full, new tasks should be rejected
+     */
+    @Test
+    public void boundedQueue() throws InterruptedException {
+        CountlyScheduler.LaneExecutor media = scheduler.lane(CountlyScheduler.Lane.MEDIA);
+        BlockingTask task = new BlockingTask();
+        int limit = CountlyScheduler.Lane.MEDIA.threads + CountlyScheduler.Lane.MEDIA.queueCapacity;
+        for (int a = 0; a < limit; a++) {
+            media.execute(task);
+        }
+        assertTrue(task.started.await(5, TimeUnit.SECONDS));
+
+        try {
+            media.execute(task);
+            fail("The task should have been rejected");
+        } catch (RejectedExecutionException ignored) {
+        }
+
+        SchedulerLaneMetrics full = metrics("media");
+        assertEquals(limit, full.getSubmittedTasks());
+        assertEquals(1, full.getRejectedTasks());
+        assertEquals(1, full.getRunningTasks());
+        assertEquals(CountlyScheduler.Lane.MEDIA.queueCapacity, full.getQueuedTasks());
+
+        task.release.countDown();
+        for (int a = 0; a < 50 && metrics("media").getCompletedTasks() < limit; a++) {
+            Thread.sleep(20);
+        }
+
+        SchedulerLaneMetrics done = metrics("media");
+        assertEquals(limit, task.runs.get());
+        assertEquals(limit, done.getCompletedTasks());
+        assertEquals(0, done.getQueuedTasks());
+        assertEquals(0, done.getRunningTasks());
+        assertTrue(done.getMaxQueuedTasks() >= CountlyScheduler.Lane.MEDIA.queueCapacity - 1);
+
+        //there is room again
+        media.execute(new Runnable() {
+            @Override public void run() {
+            }
+        });
+    }
+
+    /**
+     * The network and media lanes should run on the executor of the host app if one is set,
+     * the request queue, parallel sending and timers should not
+     */
+    @Test
+    public void hostExecutor() throws Exception {
+        final AtomicInteger hostTasks = new AtomicInteger();
+        scheduler.setExecutor(new Executor() {
+            @Override public void execute(Runnable command) {
+                hostTasks.incrementAndGet();
+                command.run();
+            }
+        });
+
+        final Thread[] threads = new Thread[1];
+        scheduler.lane(CountlyScheduler.Lane.NETWORK).submit(new Runnable() {
+            @Override public void run() {
+                threads[0] = Thread.currentThread();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        scheduler.lane(CountlyScheduler.Lane.MEDIA).submit(new Runnable() {
+            @Override public void run() {
+            }
+        }).get(5, TimeUnit.SECONDS);
+        scheduler.lane(CountlyScheduler.Lane.PARALLEL_SEND).submit(new Runnable() {
+            @Override public void run() {
+                threads[0] = Thread.currentThread();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals("Countly-parallel-send-1", threads[0].getName());
+        scheduler.lane(CountlyScheduler.Lane.REQUEST_QUEUE).submit(new Runnable() {
+            @Override public void run() {
+                threads[0] = Thread.currentThread();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals("Countly-request-queue-1", threads[0].getName());
+        scheduler.timers().submit(new Runnable() {
+            @Override public void run() {
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, hostTasks.get());
+        assertEquals(1, metrics("network").getCompletedTasks());
+
+        scheduler.setExecutor(null);
+        scheduler.lane(CountlyScheduler.Lane.NETWORK).submit(new Runnable() {
+            @Override public void run() {
+                threads[0] = Thread.currentThread();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(2, hostTasks.get());
+        assertEquals("Countly-network-1", threads[0].getName());
+    }
+
+    /**
+     * More threads can be given to a lane, but not less than its default
+     */
+    @Test
+    public void setThreads() throws InterruptedException {
+        CountlyScheduler.LaneExecutor network = scheduler.lane(CountlyScheduler.Lane.NETWORK);
+        network.setThreads(1);
+        assertEquals(CountlyScheduler.Lane.NETWORK.threads, network.getThreads());
+
+        network.setThreads(5);
+        assertEquals(5, network.getThreads());
+
+        BlockingTask task = new BlockingTask();
+        for (int a = 0; a < 5; a++) {
+            network.execute(task);
+        }
+        for (int a = 0; a < 50 && task.runs.get() < 5; a++) {
+            Thread.sleep(20);
+        }
+        assertEquals(5, task.runs.get());
+        assertEquals(5, metrics("network").getRunningTasks());
+        task.release.countDown();
+    }
+
+    /**
+     * There should be metrics for every lane
+     */
+    @Test
+    public void metricsForAllLanes() {
+        List<SchedulerLaneMetrics> metrics = scheduler.getMetrics();
+        assertEquals(CountlyScheduler.Lane.values().length, metrics.size());
+        for (CountlyScheduler.Lane lane : CountlyScheduler.Lane.values()) {
+            SchedulerLaneMetrics laneMetrics = metrics(lane.laneName);
+            assertNotNull(lane.laneName, laneMetrics);
+            assertEquals(0, laneMetrics.getSubmittedTasks());
+            assertEquals(lane.threads, laneMetrics.getThreads());
+        }
+    }
+}
@@ -225,8 +225,7 @@ public class CountlyStoreTests {
         event2.count = 1;
 
         final String joinedEventsWithBadJSON = event1.toJSON().toString() + ":::blah:::" + event2.toJSON().toString();
-        final SharedPreferences prefs = getContext().getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
-        prefs.edit().putString("EVENTS", joinedEventsWithBadJSON).commit();
+        store.setEventData(joinedEventsWithBadJSON);
 
         final List<Event> expected = new ArrayList<>(2);
         expected.add(event1);
@@ -253,8 +252,7 @@ public class CountlyStoreTests {
         event2.count = 1;
 
         final String joinedEventsWithBadJSON = event1.toJSON().toString() + ":::{\"key\":null}:::" + event2.toJSON().toString();
-        final SharedPreferences prefs = getContext().getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
-        prefs.edit().putString("EVENTS", joinedEventsWithBadJSON).commit();
+        store.setEventData(joinedEventsWithBadJSON);
 
         final List<Event> expected = new ArrayList<>(2);
         expected.add(event1);
@@ -347,7 +345,7 @@ public class CountlyStoreTests {
         event1.count = 42;
         event1.sum = 3.2;
         event1.dur = 10.0d;
-        event1.segmentation = new HashMap<>(2);
+        event1.segmentation = new EventSegmentation(2);
         event1.segmentation.put("segKey1", "segValue1");
         event1.segmentation.put("segKey2", "segValue2");
 
@@ -401,11 +399,118 @@ public class CountlyStoreTests {
         store.addRequest("blah");
         UtilsTime.Instant instant = UtilsTime.getCurrentInstant();
         store.recordEventToEventQueue("eventKey", null, 1, 0.0d, 10.0d, instant.timestampMs, instant.hour, instant.dow);
-        assertTrue(prefs.contains("EVENTS"));
-        assertTrue(prefs.contains("CONNECTIONS"));
+        //requests and events are stored in journals and not in the preferences
+        assertFalse(prefs.contains("EVENTS"));
+        assertFalse(prefs.contains("CONNECTIONS"));
+        assertEquals(1, store.getRequests().length);
+        assertEquals(1, store.getEventQueueSize());
         store.clear();
         assertFalse(prefs.contains("EVENTS"));
         assertFalse(prefs.contains("CONNECTIONS"));
+        assertEquals(0, store.getRequests().length);
+        assertEquals(0, store.getEventQueueSize());
+        assertFalse(sp.anythingSetInStorage());
+    }
+
+    /**
+     * Requests that are added to the store should survive the store being recreated
+     */
+    @Test
+    public void requestsPersistAcrossStoreInstances() {
+        store.addRequest("blah1");
+        store.addRequest("blah2");
+        store.addRequest("blah3");
+        store.removeRequest("blah1");
+
+        CountlyStore store2 = new CountlyStore(getContext(), mock(ModuleLog.class));
+        assertTrue(Arrays.equals(new String[] { "blah2", "blah3" }, store2.getRequests()));
+        assertEquals(2, store2.getRequestQueueSize());
+        assertEquals("blah2" + CountlyStore.DELIMITER + "blah3", store2.getRequestQueueRaw());
+    }
+
+    /**
+     * Removing multiple requests should remove the first match of each of them
+     */
+    @Test
+    public void removeRequests() {
+        store.addRequest("a");
+        store.addRequest("b");
+        store.addRequest("c");
+        store.addRequest("d");
+
+        sp.removeRequests(Arrays.asList("a", "b"));
+        assertTrue(Arrays.equals(new String[] { "c", "d" }, store.getRequests()));
+
+        //not at the start of the queue
+        sp.removeRequests(Arrays.asList("d", "x"));
+        assertTrue(Arrays.equals(new String[] { "c" }, store.getRequests()));
+
+        CountlyStore store2 = new CountlyStore(getContext(), mock(ModuleLog.class));
+        assertTrue(Arrays.equals(new String[] { "c" }, store2.getRequests()));
+    }
+
+    /**
+     * When the request queue is full, the oldest requests should be removed
+     */
+    @Test
+    public void addRequestOverLimit() {
+        store.setLimits(2);
+        store.addRequest("blah1");
+        store.addRequest("blah2");
+        store.addRequest("blah3");
+        assertTrue(Arrays.equals(new String[] { "blah2", "blah3" }, store.getRequests()));
+
+        store.addRequest("blah4");
+        assertTrue(Arrays.equals(new String[] { "blah3", "blah4" }, store.getRequests()));
+    }
+
+    /**
+     * Recorded events should survive the store being recreated
+     */
+    @Test
+    public void eventsPersistAcrossStoreInstances() {
+        store.recordEventToEventQueue("a", null, 1, 0.0d, 0.0d, 20L, 1, 2);
+        store.recordEventToEventQueue("b", null, 1, 0.0d, 0.0d, 10L, 1, 2);
+
+        CountlyStore store2 = new CountlyStore(getContext(), mock(ModuleLog.class));
+        assertEquals(2, store2.getEventQueueSize());
+        final List<Event> events = store2.getEventList();
+        assertEquals("b", events.get(0).key);
+        assertEquals("a", events.get(1).key);
+    }
+
+    /**
+     * Legacy events are only reported if they are stored in the preferences
+     */
+    @Test
+    public void legacyEvents() {
+        final SharedPreferences prefs = getContext().getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
+        assertEquals(0, sp.getLegacyEvents().length);
+
+        prefs.edit().putString("EVENTS", "aa" + CountlyStore.DELIMITER + "bb").commit();
+        assertTrue(Arrays.equals(new String[] { "aa", "bb" }, sp.getLegacyEvents()));
+        assertEquals(0, store.getEventQueueSize());
+
+        sp.clearLegacyEvents();
+        assertEquals(0, sp.getLegacyEvents().length);
+        assertFalse(prefs.contains("EVENTS"));
+    }
+
+    /**
+     * Legacy requests are only reported if they are stored in the preferences
+     */
+    @Test
+    public void legacyRequests() {
+        final SharedPreferences prefs = getContext().getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
+        assertEquals(0, sp.getLegacyRequests().length);
+
+        prefs.edit().putString("CONNECTIONS", "aa" + CountlyStore.DELIMITER + "bb").commit();
+        assertTrue(Arrays.equals(new String[] { "aa", "bb" }, sp.getLegacyRequests()));
+        assertEquals(0, store.getRequests().length);
+
+        sp.clearLegacyRequests();
+        assertEquals(0, sp.getLegacyRequests().length);
+        assertFalse(prefs.contains("CONNECTIONS"));
     }
 
     @Test
@@ -485,6 +590,106 @@ public class CountlyStoreTests {
         assertEquals("123", sp.getRemoteConfigValues());
     }
 
+    /**
+     * Quarantining a request should move it out of the request queue
+     */
+    @Test
+    public void quarantineRequest() {
+        assertEquals(0, store.getQuarantinedRequestCount());
+        store.addRequest("a=1");
+        store.addRequest("a=2");
+
+        store.quarantineRequest("a=1");
+        assertEquals(1, store.getQuarantinedRequestCount());
+        assertEquals("a=1", store.getQuarantinedRequests()[0]);
+        assertEquals(1, store.getRequests().length);
+        assertEquals("a=2", store.getRequests()[0]);
+
+        String[] drained = store.drainQuarantinedRequests();
+        assertEquals(1, drained.length);
+        assertEquals("a=1", drained[0]);
+        assertEquals(0, store.getQuarantinedRequestCount());
+        assertEquals(1, store.getRequests().length);
+    }
+
+    /**
+     * When the quarantine is full, the oldest quarantined requests should be deleted
+     */
+    @Test
+    public void quarantineRequestOverLimit() {
+        for (int a = 0; a < CountlyStore.MAX_QUARANTINED_REQUESTS + 5; a++) {
+            store.quarantineRequest("a=" + a);
+        }
+
+        String[] quarantined = store.getQuarantinedRequests();
+        assertEquals(CountlyStore.MAX_QUARANTINED_REQUESTS, quarantined.length);
+        assertEquals("a=5", quarantined[0]);
+        assertEquals("a=" + (CountlyStore.MAX_QUARANTINED_REQUESTS + 4), quarantined[quarantined.length - 1]);
+    }
+
+    /**
+     * The rejected attempts of every request should be counted separately and survive a new store instance
+     */
+    @Test
+    public void badRequestAttempts() {
+        assertEquals(1, store.addBadRequestAttempt("a=1"));
+        assertEquals(1, store.addBadRequestAttempt("a=2"));
+        assertEquals(2, store.addBadRequestAttempt("a=1"));
+        assertEquals(2, store.getBadRequestAttemptCount());
+
+        CountlyStore restored = new CountlyStore(getContext(), mock(ModuleLog.class));
+        assertEquals(3, restored.addBadRequestAttempt("a=1"));
+        assertEquals(2, restored.addBadRequestAttempt("a=2"));
+
+        restored.clearBadRequestAttempts();
+        assertEquals(0, restored.getBadRequestAttemptCount());
+        assertEquals(1, restored.addBadRequestAttempt("a=1"));
+    }
+
+    /**
+     * Only a limited amount of bad request counts should be kept, the oldest ones are dropped
+     */
+    @Test
+    public void badRequestAttemptsBounded() {
+        store.addBadRequestAttempt("a=0");
+        store.addBadRequestAttempt("a=0");
+        for (int a = 1; a <= CountlyStore.MAX_BAD_REQUESTS; a++) {
+            assertEquals(1, store.addBadRequestAttempt("a=" + a));
+        }
+        assertEquals(CountlyStore.MAX_BAD_REQUESTS, store.getBadRequestAttemptCount());
+
+        //the count of the oldest request was dropped
+        assertEquals(1, store.addBadRequestAttempt("a=0"));
+    }
+
+    /**
+     * Quarantining a request should drop its attempt count, so that it starts over if it's retried
+     */
+    @Test
+    public void quarantineRequestDropsBadRequestAttempts() {
+        store.addRequest("a=1");
+        store.addBadRequestAttempt("a=1");
+        store.addBadRequestAttempt("a=2");
+
+        store.quarantineRequest("a=1");
+        assertEquals(1, store.getBadRequestAttemptCount());
+        assertEquals(1, store.addBadRequestAttempt("a=1"));
+    }
+
+    /**
+     * Validate that the setter and getter for the request backoff state is working as expected
+     */
+    @Test
+    public void setGetRequestBackoffState() {
+        assertEquals("", sp.getRequestBackoffState());
+
+        sp.setRequestBackoffState("{\"f\":1}");
+        assertEquals("{\"f\":1}", sp.getRequestBackoffState());
+
+        store.clear();
+        assertEquals("", sp.getRequestBackoffState());
+    }
+
     /**
      * Validate that the setter and getter for star rating preferences is working as expected
      */
@@ -537,6 +742,39 @@ public class CountlyStoreTests {
         assertTrue(Arrays.equals(new String[] { "blah2", "blah3" }, store.getRequests()));
     }
 
+    /**
+     * Queue depths and write durations should be recorded,
+     * requests that are deleted because the queue is full should be counted as dropped
+     */
+    @Test
+    public void diagnostics() {
+        DiagnosticsMetrics metrics = new DiagnosticsMetrics();
+        store.setDiagnosticsMetrics(metrics);
+        store.setLimits(2);
+
+        store.addRequest("blah1");
+        store.addRequest("blah2");
+        assertEquals(2, metrics.getRequestQueueDepth());
+        assertEquals(0, metrics.getDroppedRequestCount());
+
+        store.addRequest("blah3");
+        assertEquals(2, metrics.getRequestQueueDepth());
+        assertEquals(1, metrics.getDroppedRequestCount());
+        assertEquals(3, metrics.getRequestQueueDepthHistogram().getCount());
+
+        store.removeRequest("blah2");
+        assertEquals(1, metrics.getRequestQueueDepth());
+
+        store.recordEventToEventQueue("eventKey", null, 1, 0, 0, 1, 2, 3);
+        store.recordEventToEventQueue("eventKey", null, 1, 0, 0, 1, 2, 3);
+        assertEquals(2, metrics.getEventQueueDepth());
+        assertEquals(2, metrics.getEventQueueDepthHistogram().getMax());
+
+        store.getEventsForRequestAndEmptyEventQueue();
+        assertEquals(0, metrics.getEventQueueDepth());
+        assertEquals(6, metrics.getStoreWriteLatencyHistogram().getCount());
+    }
+
     /*
     @Test
     public void addConnectionMaxRequests() {
@@ -21,16 +21,20 @@ THE SOFTWARE.
 */
 package ly.count.android.sdk;
 
+import android.app.Application;
+import android.content.ComponentCallbacks;
 import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 
 import static androidx.test.InstrumentationRegistry.getContext;
 import static org.junit.Assert.assertEquals;
@@ -101,6 +105,25 @@ public class CountlyTests {
         verify(mUninitedCountly).init(cc);
     }
 
+    /**
+     * The callbacks that invalidate the cached device metrics should be registered once per init and removed on halt
+     */
+    @Test
+    public void testInit_componentCallbacksUnregisteredOnHalt() {
+        Application app = mock(Application.class);
+        mUninitedCountly.init((new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").setApplication(app));
+        ArgumentCaptor<ComponentCallbacks> callbacks = ArgumentCaptor.forClass(ComponentCallbacks.class);
+        verify(app, times(1)).registerComponentCallbacks(callbacks.capture());
+
+        mUninitedCountly.halt();
+        verify(app, times(1)).unregisterComponentCallbacks(callbacks.getValue());
+
+        mUninitedCountly.init((new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").setApplication(app));
+        verify(app, times(2)).registerComponentCallbacks(callbacks.getValue());
+        mUninitedCountly.halt();
+        verify(app, times(2)).unregisterComponentCallbacks(callbacks.getValue());
+    }
+
     @Test
     public void testInit_nullContext() {
         try {
@@ -265,6 +288,39 @@ public class CountlyTests {
         assertSame(mUninitedCountly.getConnectionQueue().getStorageProvider(), mUninitedCountly.countlyStore);
     }
 
+    /**
+     * With deferred init the SDK should be usable right after init,
+     * the request queue is only sent after the background part has finished
+     */
+    @Test
+    public void testInit_deferred() throws Exception {
+        //keep the timer thread busy so that the deferred init can't run yet
+        final CountDownLatch timerBlocker = new CountDownLatch(1);
+        mUninitedCountly.getTimerService().submit(new Runnable() {
+            @Override public void run() {
+                try {
+                    timerBlocker.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+
+        mUninitedCountly.init((new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").enableDeferredInit());
+
+        Assert.assertTrue(mUninitedCountly.isInitialized());
+        Assert.assertTrue(mUninitedCountly.getConnectionQueue().deferredInitPending);
+        mUninitedCountly.events().recordEvent("key");
+        assertEquals(1, mUninitedCountly.countlyStore.getEvents().length);
+
+        timerBlocker.countDown();
+        mUninitedCountly.getTimerService().submit(new Runnable() {
+            @Override public void run() {
+            }
+        }).get();
+
+        assertFalse(mUninitedCountly.getConnectionQueue().deferredInitPending);
+    }
+
     @Test
     public void testHalt_notInitialized() {
         mUninitedCountly.halt();
@@ -44,6 +44,8 @@ import static androidx.test.InstrumentationRegistry.getContext;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -291,6 +293,62 @@ public class DeviceInfoTests {
         assertEquals(expected, DeviceInfo.getMetrics(getContext(), metricOverride));
     }
 
+    /**
+     * The metrics should be reused until the configuration or the override changes
+     */
+    @Test
+    public void testGetMetrics_cached() throws UnsupportedEncodingException {
+        final Locale defaultLocale = Locale.getDefault();
+        try {
+            DeviceInfo.onConfigurationChanged();
+            final String metrics = DeviceInfo.getMetrics(getContext(), null);
+            assertSame(metrics, DeviceInfo.getMetrics(getContext(), null));
+
+            //a changed locale is picked up also without the configuration callbacks
+            Locale.setDefault(new Locale("ab", "CD"));
+            final String localeChanged = DeviceInfo.getMetrics(getContext(), null);
+            assertTrue(localeChanged.contains(URLEncoder.encode("\"_locale\":\"ab_CD\"", "UTF-8")));
+            assertSame(localeChanged, DeviceInfo.getMetrics(getContext(), null));
+
+            Map<String, String> metricOverride = new HashMap<>();
+            metricOverride.put("_locale", "ef_GH");
+            final String overridden = DeviceInfo.getMetrics(getContext(), metricOverride);
+            assertTrue(overridden.contains(URLEncoder.encode("\"_locale\":\"ef_GH\"", "UTF-8")));
+            assertSame(overridden, DeviceInfo.getMetrics(getContext(), new HashMap<>(metricOverride)));
+
+            //changing the provided override map should not return the old result
+            metricOverride.put("_locale", "ij_KL");
+            assertTrue(DeviceInfo.getMetrics(getContext(), metricOverride).contains(URLEncoder.encode("\"_locale\":\"ij_KL\"", "UTF-8")));
+        } finally {
+            Locale.setDefault(defaultLocale);
+            DeviceInfo.onConfigurationChanged();
+        }
+    }
+
+    /**
+     * A changed carrier should be picked up without a configuration change
+     */
+    @Test
+    public void testGetMetrics_carrierChanged() throws UnsupportedEncodingException {
+        try {
+            DeviceInfo.onConfigurationChanged();
+            //collects the values that are cached, later calls only read the carrier from the context
+            DeviceInfo.getMetrics(getContext(), null);
+
+            final TelephonyManager mockTelephonyManager = mock(TelephonyManager.class);
+            when(mockTelephonyManager.getNetworkOperatorName()).thenReturn("Verizon", "Verizon", "Vodafone");
+            final Context mockContext = mock(Context.class);
+            when(mockContext.getSystemService(Context.TELEPHONY_SERVICE)).thenReturn(mockTelephonyManager);
+
+            final String metrics = DeviceInfo.getMetrics(mockContext, null);
+            assertTrue(metrics.contains(URLEncoder.encode("\"_carrier\":\"Verizon\"", "UTF-8")));
+            assertSame(metrics, DeviceInfo.getMetrics(mockContext, null));
+            assertTrue(DeviceInfo.getMetrics(mockContext, null).contains(URLEncoder.encode("\"_carrier\":\"Vodafone\"", "UTF-8")));
+        } finally {
+            DeviceInfo.onConfigurationChanged();
+        }
+    }
+
     @Test
     public void testFillJSONIfValuesNotEmpty_noValues() {
         final JSONObject mockJSON = mock(JSONObject.class);
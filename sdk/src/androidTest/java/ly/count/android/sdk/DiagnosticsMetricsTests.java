@@ -0,0 +1,132 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class DiagnosticsMetricsTests {
+
+    /**
+     * Without any recorded values everything should be 0
+     */
+    @Test
+    public void emptyMetrics() {
+        DiagnosticsMetrics metrics = new DiagnosticsMetrics();
+        assertEquals(0, metrics.getRequestQueueDepth());
+        assertEquals(0, metrics.getEventQueueDepth());
+        assertEquals(0, metrics.getRequestAttemptCount());
+        assertEquals(0, metrics.getFailureRate(), 0.0001);
+        assertEquals(0, metrics.getDeliveryLatencyHistogram().getCount());
+        assertEquals(0, metrics.getDeliveryLatencyHistogram().getMax());
+        assertEquals(0, metrics.getDeliveryLatencyHistogram().getPercentile(50));
+        assertEquals(0, metrics.getStatusCodeCounts().size());
+    }
+
+    /**
+     * Values should be counted in the first bucket with a bound that is not smaller,
+     * larger values in the overflow bucket
+     */
+    @Test
+    public void histogramBuckets() {
+        DiagnosticsHistogram histogram = new DiagnosticsHistogram(new long[] { 10, 100, 1000 });
+        histogram.record(1);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(1000);
+        histogram.record(5000);
+
+        assertArrayEquals(new long[] { 2, 1, 1, 1 }, histogram.getBucketCounts());
+        assertEquals(5, histogram.getCount());
+        assertEquals(6022, histogram.getSum());
+        assertEquals(5000, histogram.getMax());
+        assertEquals(1204.4, histogram.getMean(), 0.0001);
+
+        assertEquals(10, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(40));
+        assertEquals(100, histogram.getPercentile(60));
+        assertEquals(1000, histogram.getPercentile(80));
+        assertEquals(5000, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertArrayEquals(new long[] { 0, 0, 0, 0 }, histogram.getBucketCounts());
+    }
+
+    @Test
+    public void exponentialBounds() {
+        assertArrayEquals(new long[] { 1, 2, 4, 8 }, DiagnosticsHistogram.exponentialBounds(1, 8));
+        assertArrayEquals(new long[] { 16, 32, 50 }, DiagnosticsHistogram.exponentialBounds(16, 50));
+    }
+
+    /**
+     * Failure rate is the share of failed attempts, retries are only counted if the request stays in the queue
+     */
+    @Test
+    public void attemptsAndFailures() {
+        DiagnosticsMetrics metrics = new DiagnosticsMetrics();
+        metrics.onAttemptSucceeded();
+        metrics.onAttemptSucceeded();
+        metrics.onAttemptFailed(true, true);
+        metrics.onAttemptFailed(false, false);
+
+        assertEquals(4, metrics.getRequestAttemptCount());
+        assertEquals(2, metrics.getFailedAttemptCount());
+        assertEquals(1, metrics.getRetryCount());
+        assertEquals(1, metrics.getConnectionErrorCount());
+        assertEquals(0.5, metrics.getFailureRate(), 0.0001);
+
+        metrics.reset();
+        assertEquals(0, metrics.getRequestAttemptCount());
+        assertEquals(0, metrics.getFailureRate(), 0.0001);
+    }
+
+    @Test
+    public void statusCodesAndBytes() {
+        DiagnosticsMetrics metrics = new DiagnosticsMetrics();
+        metrics.onHttpRequestSent(300, 100);
+        metrics.onHttpResponseReceived(200, 20);
+        metrics.onHttpRequestSent(500, 200);
+        metrics.onHttpResponseReceived(200, 20);
+        metrics.onHttpRequestSent(400, 150);
+        metrics.onHttpResponseReceived(503, 0);
+
+        assertEquals(1200, metrics.getBytesSent());
+        assertEquals(40, metrics.getBytesReceived());
+        assertEquals(3, metrics.getRequestPayloadHistogram().getCount());
+
+        Map<Integer, Long> codes = metrics.getStatusCodeCounts();
+        assertEquals(2, codes.size());
+        assertEquals(2L, (long) codes.get(200));
+        assertEquals(1L, (long) codes.get(503));
+    }
+
+    /**
+     * Requests without a timestamp should not be counted in the delivery latency
+     */
+    @Test
+    public void deliveryLatency() {
+        DiagnosticsMetrics metrics = new DiagnosticsMetrics();
+        metrics.onRequestDelivered(1000, 1500);
+        metrics.onRequestDelivered(-1, 1500);
+        metrics.onRequestDelivered(2000, 1500);
+
+        assertEquals(2, metrics.getDeliveryLatencyHistogram().getCount());
+        assertEquals(500, metrics.getDeliveryLatencyHistogram().getMax());
+        assertEquals(500, metrics.getDeliveryLatencyHistogram().getSum());
+    }
+
+    @Test
+    public void requestTimestamp() {
+        assertEquals(1584698900123L, ConnectionProcessor.getRequestTimestamp("app_key=abc&timestamp=1584698900123&hour=3"));
+        assertEquals(1584698900123L, ConnectionProcessor.getRequestTimestamp("timestamp=1584698900123&hour=3"));
+        assertEquals(12, ConnectionProcessor.getRequestTimestamp("app_key=abc&timestamp=12"));
+        assertEquals(-1, ConnectionProcessor.getRequestTimestamp("app_key=abc&hour=3"));
+        assertEquals(-1, ConnectionProcessor.getRequestTimestamp("app_key=abc&timestamp=&hour=3"));
+        assertEquals(-1, ConnectionProcessor.getRequestTimestamp("app_key=abc&event_timestamp=12"));
+    }
+}
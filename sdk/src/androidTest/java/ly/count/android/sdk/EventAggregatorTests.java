@@ -0,0 +1,151 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@RunWith(AndroidJUnit4.class)
+public class EventAggregatorTests {
+    EventQueueProvider eventQueue;
+    EventAggregator aggregator;
+
+    //2022-01-01 10:00:00 UTC
+    final long hourStart = 1641031200000L;
+
+    @Before
+    public void setUp() {
+        eventQueue = mock(EventQueueProvider.class);
+        aggregator = new EventAggregator(eventQueue, 3, mock(ModuleLog.class));
+    }
+
+    @Test
+    public void sameKeyAndSegmentationCombined() {
+        Map<String, Object> segm1 = new HashMap<>();
+        segm1.put("a", "b");
+        segm1.put("c", 1);
+        Map<String, Object> segm2 = new HashMap<>();
+        segm2.put("c", 1);
+        segm2.put("a", "b");
+
+        aggregator.recordEventToEventQueue("key", segm1, 1, 2.0, 3.0, hourStart + 10, 10, 6);
+        aggregator.recordEventToEventQueue("key", segm2, 2, 3.0, 4.0, hourStart + 20, 10, 6);
+        aggregator.recordEventToEventQueue("key", null, 1, 0, 0, hourStart + 30, 10, 6);
+        aggregator.recordEventToEventQueue("key", new HashMap<String, Object>(), 4, 0, 0, hourStart + 40, 10, 6);
+
+        verifyNoMoreInteractions(eventQueue);
+        assertEquals(2, aggregator.getPendingCount());
+
+        assertEquals(2, aggregator.flush());
+        verify(eventQueue).recordEventToEventQueue(eq("key"), eq(segm1), eq(3), eq(5.0), eq(7.0), eq(hourStart + 10), eq(10), eq(6));
+        verify(eventQueue).recordEventToEventQueue(eq("key"), isNull(Map.class), eq(5), eq(0.0), eq(0.0), eq(hourStart + 30), eq(10), eq(6));
+        assertEquals(0, aggregator.getPendingCount());
+        assertEquals(4, aggregator.getRecordedCount());
+        assertEquals(2, aggregator.getStoredCount());
+
+        //nothing left to flush
+        assertEquals(0, aggregator.flush());
+        verifyNoMoreInteractions(eventQueue);
+    }
+
+    @Test
+    public void differentSegmentationOrKeyNotCombined() {
+        Map<String, Object> segm1 = new HashMap<>();
+        segm1.put("a", "b");
+        Map<String, Object> segm2 = new HashMap<>();
+        segm2.put("a", "c");
+
+        aggregator.recordEventToEventQueue("key", segm1, 1, 0, 0, hourStart, 10, 6);
+        aggregator.recordEventToEventQueue("key", segm2, 1, 0, 0, hourStart, 10, 6);
+        aggregator.recordEventToEventQueue("key2", segm1, 1, 0, 0, hourStart, 10, 6);
+
+        assertEquals(3, aggregator.flush());
+        verify(eventQueue, times(3)).recordEventToEventQueue(anyString(), any(Map.class), eq(1), anyDouble(), anyDouble(), anyLong(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void differentHourNotCombined() {
+        aggregator.recordEventToEventQueue("key", null, 1, 0, 0, hourStart, 10, 6);
+        aggregator.recordEventToEventQueue("key", null, 1, 0, 0, hourStart + 60 * 60 * 1000, 11, 6);
+
+        assertEquals(2, aggregator.flush());
+        verify(eventQueue).recordEventToEventQueue(eq("key"), isNull(Map.class), eq(1), eq(0.0), eq(0.0), eq(hourStart), eq(10), eq(6));
+        verify(eventQueue).recordEventToEventQueue(eq("key"), isNull(Map.class), eq(1), eq(0.0), eq(0.0), eq(hourStart + 60 * 60 * 1000), eq(11), eq(6));
+    }
+
+    @Test
+    public void internalEventsPassedThrough() {
+        aggregator.recordEventToEventQueue(ModuleViews.VIEW_EVENT_KEY, null, 1, 0, 0, hourStart, 10, 6);
+        aggregator.recordEventToEventQueue(ModuleViews.VIEW_EVENT_KEY, null, 1, 0, 0, hourStart, 10, 6);
+
+        verify(eventQueue, times(2)).recordEventToEventQueue(eq(ModuleViews.VIEW_EVENT_KEY), isNull(Map.class), eq(1), eq(0.0), eq(0.0), eq(hourStart), eq(10), eq(6));
+        assertEquals(0, aggregator.getPendingCount());
+    }
+
+    /**
+     * Changing the recorded segmentation afterwards doesn't change the combined event
+     */
+    @Test
+    public void segmentationCopied() {
+        Map<String, Object> segm = new HashMap<>();
+        segm.put("a", "b");
+        aggregator.recordEventToEventQueue("key", segm, 1, 0, 0, hourStart, 10, 6);
+        segm.put("a", "changed");
+
+        aggregator.flush();
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("a", "b");
+        verify(eventQueue).recordEventToEventQueue(eq("key"), eq(expected), eq(1), eq(0.0), eq(0.0), eq(hourStart), eq(10), eq(6));
+    }
+
+    @Test
+    public void flushedWhenMaxAggregatesReached() {
+        aggregator.recordEventToEventQueue("k1", null, 1, 0, 0, hourStart, 10, 6);
+        aggregator.recordEventToEventQueue("k2", null, 1, 0, 0, hourStart, 10, 6);
+        aggregator.recordEventToEventQueue("k3", null, 1, 0, 0, hourStart, 10, 6);
+        verifyNoMoreInteractions(eventQueue);
+
+        //combining into a existing event doesn't flush
+        aggregator.recordEventToEventQueue("k3", null, 1, 0, 0, hourStart, 10, 6);
+        verifyNoMoreInteractions(eventQueue);
+
+        aggregator.recordEventToEventQueue("k4", null, 1, 0, 0, hourStart, 10, 6);
+        verify(eventQueue, times(3)).recordEventToEventQueue(anyString(), isNull(Map.class), anyInt(), anyDouble(), anyDouble(), anyLong(), anyInt(), anyInt());
+        verify(eventQueue).recordEventToEventQueue(eq("k3"), isNull(Map.class), eq(2), eq(0.0), eq(0.0), eq(hourStart), eq(10), eq(6));
+        assertEquals(1, aggregator.getPendingCount());
+    }
+
+    @Test
+    public void countOverflowStartsNewEvent() {
+        aggregator.recordEventToEventQueue("key", null, Integer.MAX_VALUE - 1, 0, 0, hourStart, 10, 6);
+        aggregator.recordEventToEventQueue("key", null, 5, 0, 0, hourStart + 1, 10, 6);
+
+        verify(eventQueue).recordEventToEventQueue(eq("key"), isNull(Map.class), eq(Integer.MAX_VALUE - 1), eq(0.0), eq(0.0), eq(hourStart), eq(10), eq(6));
+        aggregator.flush();
+        verify(eventQueue).recordEventToEventQueue(eq("key"), isNull(Map.class), eq(5), eq(0.0), eq(0.0), eq(hourStart + 1), eq(10), eq(6));
+    }
+
+    @Test
+    public void clearDiscards() {
+        aggregator.recordEventToEventQueue("key", null, 1, 0, 0, hourStart, 10, 6);
+        aggregator.clear();
+        assertEquals(0, aggregator.flush());
+        verifyNoMoreInteractions(eventQueue);
+    }
+}
@@ -0,0 +1,183 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class EventJsonTests {
+
+    static Event createEvent(String key) {
+        Event event = new Event();
+        event.key = key;
+        event.count = 3;
+        event.sum = 4.5;
+        event.dur = 0;
+        event.timestamp = 1641031200123L;
+        event.hour = 10;
+        event.dow = 6;
+        return event;
+    }
+
+    static Event createSegmentedEvent() {
+        Event event = createEvent("seg\"key/\\\n\u0001 ü");
+        event.segmentation = new EventSegmentation();
+        event.segmentation.put("s1", "value");
+        event.segmentation.put("s2", "quote \" slash / tab \t ünicode 😀");
+        event.segmentation.put("i1", 42);
+        event.segmentation.put("i2", -7);
+        event.segmentation.put("d1", 1.25);
+        event.segmentation.put("d2", 3.0);
+        event.segmentation.put("d3", -0.0);
+        event.segmentation.put("d4", 1e20);
+        event.segmentation.put("b1", true);
+        event.segmentation.put("b2", false);
+        event.dur = 12.5;
+        return event;
+    }
+
+    /**
+     * The writer produces exactly the same JSON as "toJSON"
+     */
+    @Test
+    public void writeSameAsToJSON() {
+        List<Event> events = new ArrayList<>();
+        events.add(createEvent("simple"));
+        events.add(createSegmentedEvent());
+
+        Event noKey = createEvent(null);
+        events.add(noKey);
+
+        Event emptySegmentation = createEvent("empty");
+        emptySegmentation.segmentation = new EventSegmentation();
+        events.add(emptySegmentation);
+
+        Event wholeSum = createEvent("whole");
+        wholeSum.sum = 10;
+        wholeSum.dur = 3;
+        events.add(wholeSum);
+
+        Event nanSum = createEvent("nan");
+        nanSum.sum = Double.NaN;
+        nanSum.dur = 5;
+        events.add(nanSum);
+
+        Event infiniteDur = createEvent("inf");
+        infiniteDur.dur = Double.POSITIVE_INFINITY;
+        events.add(infiniteDur);
+
+        Event nanSegment = createEvent("nanSegment");
+        nanSegment.segmentation = new EventSegmentation();
+        nanSegment.segmentation.put("a", "b");
+        nanSegment.segmentation.put("d", Double.NaN);
+        events.add(nanSegment);
+
+        StringBuilder sb = new StringBuilder();
+        for (Event event : events) {
+            sb.setLength(0);
+            EventJson.write(event, sb);
+            assertEquals(event.toJSON().toString(), sb.toString());
+            assertEquals(event.toJSON().toString(), EventJson.toJSONString(event));
+        }
+    }
+
+    /**
+     * The reader produces the same event as "fromJSON"
+     */
+    @Test
+    public void readSameAsFromJSON() throws JSONException {
+        Event original = createSegmentedEvent();
+        String json = EventJson.toJSONString(original);
+
+        Event expected = Event.fromJSON(new JSONObject(json));
+        Event actual = EventJson.read(json);
+
+        assertEventsEqual(expected, actual);
+        assertEquals(original.key, actual.key);
+    }
+
+    @Test
+    public void readHandwrittenJSON() throws JSONException {
+        String[] inputs = new String[] {
+            "{\"key\":\"a\"}",
+            " { \"key\" : \"a\" , \"count\" : \"5\" , \"sum\" : 2 , \"timestamp\" : 1641031200123 , \"hour\" : 1.9 } ",
+            "{\"key\":\"a\",\"segmentation\":{}}",
+            "{\"key\":\"a\",\"segmentation\":{\"n\":null,\"l\":12345678901,\"o\":{\"x\":[1,2]},\"t\":TRUE,\"e\":1e3}}",
+            "{\"key\":\"a\\u00fc\\/\",\"other\":[1,{\"y\":\"z\"}],\"dur\":null,\"count\":2}",
+            "{\"key\":5,\"count\":2}",
+        };
+
+        for (String input : inputs) {
+            assertEventsEqual(Event.fromJSON(new JSONObject(input)), EventJson.read(input));
+        }
+    }
+
+    @Test
+    public void readMissingKey() throws JSONException {
+        assertNull(EventJson.read("{}"));
+        assertNull(EventJson.read("{\"key\":null}"));
+        assertNull(EventJson.read("{\"key\":\"\"}"));
+        assertNull(EventJson.read("{\"count\":1}"));
+    }
+
+    @Test
+    public void readInvalidJSON() {
+        String[] inputs = new String[] { "", "blah", "[]", "{\"key\":\"a\"", "{\"key\" \"a\"}", "{\"key\":\"a\",\"segmentation\":5}", "{\"key\":\"a\\" };
+
+        for (String input : inputs) {
+            try {
+                EventJson.read(input);
+                fail("Expected JSONException for [" + input + "]");
+            } catch (JSONException ignored) {
+                // success
+            }
+        }
+    }
+
+    /**
+     * Inline URL encoding produces the same result as the platform URL encoder
+     */
+    @Test
+    public void appendUrlEncoded() throws Exception {
+        String[] inputs = new String[] { "", "abcXYZ019.-*_", " ", "[{\"key\":\"a b\",\"c\":1}]", "~!@#$%^&()+=`'<>?,/;:|", "ü€😀", "\u0000\u007f\u0080߿ࠀ￿" };
+        for (String input : inputs) {
+            StringBuilder sb = new StringBuilder();
+            EventJson.appendUrlEncoded(input, sb);
+            assertEquals(URLEncoder.encode(input, "UTF-8"), sb.toString());
+        }
+
+        Random random = new Random(1234);
+        for (int a = 0; a < 200; a++) {
+            char[] chars = new char[random.nextInt(30)];
+            for (int b = 0; b < chars.length; b++) {
+                chars[b] = (char) random.nextInt(0xD7FF);
+            }
+            String input = new String(chars);
+            StringBuilder sb = new StringBuilder();
+            EventJson.appendUrlEncoded(input, sb);
+            assertEquals(URLEncoder.encode(input, "UTF-8"), sb.toString());
+        }
+    }
+
+    static void assertEventsEqual(Event expected, Event actual) {
+        assertEquals(expected.key, actual.key);
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.sum, actual.sum, 0.0000001);
+        assertEquals(expected.dur, actual.dur, 0.0000001);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.hour, actual.hour);
+        assertEquals(expected.dow, actual.dow);
+        assertEquals(expected.segmentation, actual.segmentation);
+    }
+}
@@ -0,0 +1,225 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class EventRingBufferTests {
+
+    /**
+     * Consumer that keeps the keys of all received events
+     */
+    static class CollectingConsumer implements EventRingBuffer.Consumer {
+        final List<String> keys = new ArrayList<>();
+        Map<String, Object> lastSegmentation;
+        int lastCount;
+        double lastSum;
+        double lastDur;
+        long lastTimestamp;
+
+        @Override
+        public void onEvent(@NonNull String key, Map<String, Object> segmentation, int count, double sum, double dur, long timestamp) {
+            keys.add(key);
+            lastSegmentation = segmentation;
+            lastCount = count;
+            lastSum = sum;
+            lastDur = dur;
+            lastTimestamp = timestamp;
+        }
+    }
+
+    @Test
+    public void capacityRoundedUp() {
+        assertEquals(16, new EventRingBuffer(16, EventOverflowPolicy.DROP_NEWEST).capacity());
+        assertEquals(32, new EventRingBuffer(17, EventOverflowPolicy.DROP_NEWEST).capacity());
+        assertEquals(2, new EventRingBuffer(1, EventOverflowPolicy.DROP_NEWEST).capacity());
+    }
+
+    @Test
+    public void publishAndPoll() {
+        EventRingBuffer buffer = new EventRingBuffer(4, EventOverflowPolicy.DROP_NEWEST);
+        CollectingConsumer consumer = new CollectingConsumer();
+        Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("a", 1);
+
+        assertFalse(buffer.poll(consumer));
+        assertTrue(buffer.publish("key", segmentation, 3, 4.5, 6.5, 1234L));
+        assertEquals(1, buffer.size());
+
+        assertTrue(buffer.poll(consumer));
+        assertEquals(0, buffer.size());
+        assertEquals(1, consumer.keys.size());
+        assertEquals("key", consumer.keys.get(0));
+        assertSame(segmentation, consumer.lastSegmentation);
+        assertEquals(3, consumer.lastCount);
+        assertEquals(4.5, consumer.lastSum, 0.0001);
+        assertEquals(6.5, consumer.lastDur, 0.0001);
+        assertEquals(1234L, consumer.lastTimestamp);
+        assertFalse(buffer.poll(consumer));
+    }
+
+    /**
+     * Events come out in the order they were published, also after the positions wrap around
+     */
+    @Test
+    public void drainKeepsOrder() {
+        EventRingBuffer buffer = new EventRingBuffer(4, EventOverflowPolicy.DROP_NEWEST);
+        CollectingConsumer consumer = new CollectingConsumer();
+
+        for (int round = 0; round < 3; round++) {
+            for (int a = 0; a < 3; a++) {
+                assertTrue(buffer.publish("e" + round + a, null, 1, 0, 0, 0));
+            }
+            assertEquals(3, buffer.drain(consumer));
+        }
+
+        assertEquals(9, consumer.keys.size());
+        for (int round = 0; round < 3; round++) {
+            for (int a = 0; a < 3; a++) {
+                assertEquals("e" + round + a, consumer.keys.get(round * 3 + a));
+            }
+        }
+    }
+
+    @Test
+    public void overflowDropNewest() {
+        EventRingBuffer buffer = new EventRingBuffer(4, EventOverflowPolicy.DROP_NEWEST);
+        for (int a = 0; a < 4; a++) {
+            assertTrue(buffer.publish("e" + a, null, 1, 0, 0, 0));
+        }
+
+        assertFalse(buffer.publish("e4", null, 1, 0, 0, 0));
+        assertFalse(buffer.publish("e5", null, 1, 0, 0, 0));
+        assertEquals(2, buffer.getDroppedCount());
+
+        CollectingConsumer consumer = new CollectingConsumer();
+        assertEquals(4, buffer.drain(consumer));
+        assertEquals("e0", consumer.keys.get(0));
+        assertEquals("e3", consumer.keys.get(3));
+    }
+
+    @Test
+    public void overflowDropOldest() {
+        EventRingBuffer buffer = new EventRingBuffer(4, EventOverflowPolicy.DROP_OLDEST);
+        for (int a = 0; a < 6; a++) {
+            assertTrue(buffer.publish("e" + a, null, 1, 0, 0, 0));
+        }
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(4, buffer.size());
+
+        CollectingConsumer consumer = new CollectingConsumer();
+        assertEquals(4, buffer.drain(consumer));
+        assertEquals("e2", consumer.keys.get(0));
+        assertEquals("e5", consumer.keys.get(3));
+    }
+
+    /**
+     * A blocked recording thread continues once the consumer makes space
+     */
+    @Test
+    public void overflowBlock() throws InterruptedException {
+        final EventRingBuffer buffer = new EventRingBuffer(2, EventOverflowPolicy.BLOCK);
+        assertTrue(buffer.publish("e0", null, 1, 0, 0, 0));
+        assertTrue(buffer.publish("e1", null, 1, 0, 0, 0));
+
+        final boolean[] published = new boolean[] { false };
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                published[0] = buffer.publish("e2", null, 1, 0, 0, 0);
+            }
+        });
+        producer.start();
+
+        Thread.sleep(50);
+        assertTrue(producer.isAlive());
+
+        CollectingConsumer consumer = new CollectingConsumer();
+        assertTrue(buffer.poll(consumer));
+        producer.join(2000);
+
+        assertFalse(producer.isAlive());
+        assertTrue(published[0]);
+        assertEquals(0, buffer.getDroppedCount());
+        assertEquals(2, buffer.drain(consumer));
+        assertEquals("e2", consumer.keys.get(2));
+    }
+
+    /**
+     * If nothing is consuming, a blocked recording thread gives up eventually
+     */
+    @Test
+    public void overflowBlockTimesOut() {
+        EventRingBuffer buffer = new EventRingBuffer(2, EventOverflowPolicy.BLOCK);
+        assertTrue(buffer.publish("e0", null, 1, 0, 0, 0));
+        assertTrue(buffer.publish("e1", null, 1, 0, 0, 0));
+        assertFalse(buffer.publish("e2", null, 1, 0, 0, 0));
+        assertEquals(1, buffer.getDroppedCount());
+    }
+
+    /**
+     * Events published from multiple threads while consuming are all received exactly once
+     */
+    @Test
+    public void multipleProducers() throws InterruptedException {
+        final int producerCount = 4;
+        final int eventsPerProducer = 5000;
+        final EventRingBuffer buffer = new EventRingBuffer(64, EventOverflowPolicy.BLOCK);
+
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            final int producerId = p;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int a = 0; a < eventsPerProducer; a++) {
+                        buffer.publish(producerId + "_" + a, null, 1, 0, 0, a);
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        CollectingConsumer consumer = new CollectingConsumer();
+        while (consumer.keys.size() < producerCount * eventsPerProducer) {
+            if (buffer.drain(consumer) == 0) {
+                buffer.awaitEvents(1000 * 1000L);
+            }
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertEquals(0, buffer.getDroppedCount());
+        assertEquals(producerCount * eventsPerProducer, consumer.keys.size());
+        Set<String> unique = new HashSet<>(consumer.keys);
+        assertEquals(producerCount * eventsPerProducer, unique.size());
+
+        //events of a single producer keep their order
+        int[] lastIndex = new int[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            lastIndex[p] = -1;
+        }
+        for (String key : consumer.keys) {
+            String[] parts = key.split("_");
+            int producerId = Integer.parseInt(parts[0]);
+            int index = Integer.parseInt(parts[1]);
+            assertEquals(lastIndex[producerId] + 1, index);
+            lastIndex[producerId] = index;
+        }
+    }
+}
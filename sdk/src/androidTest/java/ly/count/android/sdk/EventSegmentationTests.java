@@ -0,0 +1,117 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class EventSegmentationTests {
+
+    @Test
+    public void putAndGet() {
+        EventSegmentation segm = new EventSegmentation(1);
+        assertTrue(segm.isEmpty());
+
+        segm.put("s", "value");
+        segm.put("i", 42);
+        segm.put("d", 4.25);
+        segm.put("b", true);
+
+        assertEquals(4, segm.size());
+        assertEquals("value", segm.getString("s"));
+        assertEquals(42, (int) segm.getInt("i"));
+        assertEquals(4.25, segm.getDouble("d"), 0.0000001);
+        assertEquals(true, segm.getBoolean("b"));
+
+        //a value is only returned for the matching type
+        assertNull(segm.getInt("s"));
+        assertNull(segm.getString("i"));
+        assertNull(segm.getBoolean("d"));
+        assertNull(segm.get("missing"));
+
+        //entries keep the order in which they were added
+        assertEquals("s", segm.keyAt(0));
+        assertEquals("i", segm.keyAt(1));
+        assertEquals("d", segm.keyAt(2));
+        assertEquals("b", segm.keyAt(3));
+    }
+
+    @Test
+    public void putReplacesValueAndType() {
+        EventSegmentation segm = new EventSegmentation();
+        segm.put("k", "value");
+        segm.put("k", 5);
+
+        assertEquals(1, segm.size());
+        assertNull(segm.getString("k"));
+        assertEquals(5, (int) segm.getInt("k"));
+
+        segm.put("k", "again");
+        assertEquals("again", segm.get("k"));
+    }
+
+    @Test
+    public void fromMapAndToMap() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("s", "value");
+        values.put("i", 42);
+        values.put("d", 4.25);
+        values.put("b", false);
+        values.put("f", 1.5f);
+        values.put("o", new Object());
+
+        EventSegmentation segm = EventSegmentation.fromMap(values);
+        assertEquals(4, segm.size());
+        assertFalse(segm.containsKey("f"));
+        assertFalse(segm.containsKey("o"));
+
+        values.remove("f");
+        values.remove("o");
+        assertEquals(values, segm.toMap());
+    }
+
+    @Test
+    public void equalsIgnoresOrder() {
+        EventSegmentation segm1 = new EventSegmentation();
+        segm1.put("a", "1");
+        segm1.put("b", 2);
+        segm1.put("c", 3.5);
+
+        EventSegmentation segm2 = new EventSegmentation();
+        segm2.put("c", 3.5);
+        segm2.put("a", "1");
+        segm2.put("b", 2);
+
+        assertEquals(segm1, segm2);
+        assertEquals(segm1.hashCode(), segm2.hashCode());
+
+        //the same value with a different type is a different segmentation
+        segm2.put("b", 2.0);
+        assertNotEquals(segm1, segm2);
+
+        segm2.put("b", 2);
+        assertEquals(segm1, segm2);
+
+        segm2.put("d", true);
+        assertNotEquals(segm1, segm2);
+        assertNotEquals(segm2, segm1);
+    }
+
+    @Test
+    public void emptyNotEqualToNull() {
+        Event event1 = new Event();
+        Event event2 = new Event();
+        event1.segmentation = new EventSegmentation();
+
+        assertNotEquals(event1, event2);
+        assertNotEquals(event1.hashCode(), event2.hashCode());
+    }
+}
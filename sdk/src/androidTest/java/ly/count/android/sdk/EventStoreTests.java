@@ -0,0 +1,135 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static androidx.test.InstrumentationRegistry.getContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(AndroidJUnit4.class)
+public class EventStoreTests {
+    File directory;
+    ModuleLog mockLog;
+    EventStore store;
+
+    @Before
+    public void setUp() {
+        mockLog = mock(ModuleLog.class);
+        directory = new File(getContext().getFilesDir(), "event_store_test");
+        store = new EventStore(directory, 100, mockLog);
+        store.clear();
+    }
+
+    @After
+    public void tearDown() {
+        store.clear();
+    }
+
+    Event createEvent(String key, long timestamp) {
+        Event event = new Event();
+        event.key = key;
+        event.timestamp = timestamp;
+        event.count = 1;
+        return event;
+    }
+
+    String encoded(String json) throws UnsupportedEncodingException {
+        return URLEncoder.encode(json, "UTF-8");
+    }
+
+    /**
+     * Draining a empty store should produce a empty array
+     */
+    @Test
+    public void drainEmpty() throws UnsupportedEncodingException {
+        assertEquals(0, store.getEventQueueSize());
+        assertEquals(encoded("[]"), store.getEventsForRequestAndEmptyEventQueue());
+        assertFalse(store.exists());
+    }
+
+    /**
+     * Recorded events should be returned in the order they were recorded
+     * and they should be available after reloading the store
+     */
+    @Test
+    public void recordAndReload() {
+        store.recordEventToEventQueue("a", null, 1, 2.0d, 3.0d, 100L, 4, 5);
+        store.addEvent(createEvent("b", 200L));
+
+        assertEquals(2, store.getEventQueueSize());
+        assertTrue(store.exists());
+
+        EventStore reloaded = new EventStore(directory, 100, mockLog);
+        String[] events = reloaded.getEvents();
+        assertEquals(2, events.length);
+        Assert.assertTrue(events[0].contains("\"key\":\"a\""));
+        Assert.assertEquals(createEvent("b", 200L).toJSON().toString(), events[1]);
+    }
+
+    /**
+     * The drained payload should be ordered by timestamp, keep the recording order for equal timestamps
+     * and leave the store empty
+     */
+    @Test
+    public void drainOrdersByTimestamp() throws UnsupportedEncodingException {
+        Event e1 = createEvent("e1", 300L);
+        Event e2 = createEvent("e2", 100L);
+        Event e3 = createEvent("e3", 300L);
+        Event e4 = createEvent("e4", 200L);
+        store.addEvent(e1);
+        store.addEvent(e2);
+        store.addEvent(e3);
+        store.addEvent(e4);
+
+        String expected = "[" + e2.toJSON() + "," + e4.toJSON() + "," + e1.toJSON() + "," + e3.toJSON() + "]";
+        assertEquals(encoded(expected), store.getEventsForRequestAndEmptyEventQueue());
+        assertEquals(0, store.getEventQueueSize());
+        assertEquals(0, new EventStore(directory, 100, mockLog).getEventQueueSize());
+    }
+
+    /**
+     * Events over the limit should be dropped
+     */
+    @Test
+    public void limitIsRespected() {
+        EventStore limited = new EventStore(directory, 2, mockLog);
+        limited.addEvent(createEvent("a", 1L));
+        limited.addEvent(createEvent("b", 2L));
+        limited.addEvent(createEvent("c", 3L));
+
+        assertEquals(2, limited.getEventQueueSize());
+    }
+
+    /**
+     * Replacing the events should drop the previous ones
+     */
+    @Test
+    public void replaceEvents() {
+        store.addEvent(createEvent("a", 1L));
+
+        List<Event> events = new ArrayList<>();
+        events.add(createEvent("x", 5L));
+        events.add(createEvent("y", 6L));
+        store.replaceEvents(events);
+
+        String[] stored = new EventStore(directory, 100, mockLog).getEvents();
+        assertEquals(2, stored.length);
+        assertEquals(events.get(0).toJSON().toString(), stored[0]);
+        assertEquals(events.get(1).toJSON().toString(), stored[1]);
+
+        store.replaceEventsRaw(new String[] { "q", "w" });
+        Assert.assertArrayEquals(new String[] { "q", "w" }, store.getEvents());
+    }
+}
@@ -86,12 +86,12 @@ public class EventTests {
         assertEquals(event2, event1);
         assertEquals(event1.hashCode(), event2.hashCode());
 
-        event1.segmentation = new HashMap<>();
+        event1.segmentation = new EventSegmentation();
         assertNotEquals(event1, event2);
         assertNotEquals(event2, event1);
         assertTrue(event1.hashCode() != event2.hashCode());
 
-        event2.segmentation = new HashMap<>();
+        event2.segmentation = new EventSegmentation();
         assertEquals(event1, event2);
         assertEquals(event2, event1);
         assertEquals(event1.hashCode(), event2.hashCode());
@@ -135,10 +135,7 @@ public class EventTests {
         event.timestamp = 1234;
         event.count = 42;
         event.sum = 3.2;
-        event.segmentation = new HashMap<>();
-        event.segmentationInt = new HashMap<>();
-        event.segmentationDouble = new HashMap<>();
-        event.segmentationBoolean = new HashMap<>();
+        event.segmentation = new EventSegmentation();
         final JSONObject jsonObj = event.toJSON();
         assertEquals(7, jsonObj.length());
         assertEquals(event.key, jsonObj.getString("key"));
@@ -155,14 +152,11 @@ public class EventTests {
         event.timestamp = 1234;
         event.count = 42;
         event.sum = 3.2;
-        event.segmentation = new HashMap<>();
-        event.segmentationInt = new HashMap<>();
-        event.segmentationDouble = new HashMap<>();
-        event.segmentationBoolean = new HashMap<>();
+        event.segmentation = new EventSegmentation();
         event.segmentation.put("segkey", "segvalue");
-        event.segmentationInt.put("segkey1", 123);
-        event.segmentationDouble.put("segkey2", 544.43d);
-        event.segmentationBoolean.put("segkey3", true);
+        event.segmentation.put("segkey1", 123);
+        event.segmentation.put("segkey2", 544.43d);
+        event.segmentation.put("segkey3", true);
         final JSONObject jsonObj = event.toJSON();
         assertEquals(7, jsonObj.length());
         assertEquals(event.key, jsonObj.getString("key"));
@@ -170,10 +164,10 @@ public class EventTests {
         assertEquals(event.count, jsonObj.getInt("count"));
         assertEquals(event.sum, jsonObj.getDouble("sum"), 0.0000001);
         assertEquals(4, jsonObj.getJSONObject("segmentation").length());
-        assertEquals(event.segmentation.get("segkey"), jsonObj.getJSONObject("segmentation").getString("segkey"));
-        assertEquals(event.segmentationInt.get("segkey1").intValue(), jsonObj.getJSONObject("segmentation").getInt("segkey1"));
-        assertEquals(event.segmentationDouble.get("segkey2").doubleValue(), jsonObj.getJSONObject("segmentation").getDouble("segkey2"), 0.0001d);
-        assertEquals(event.segmentationBoolean.get("segkey3").booleanValue(), jsonObj.getJSONObject("segmentation").getBoolean("segkey3"));
+        assertEquals(event.segmentation.getString("segkey"), jsonObj.getJSONObject("segmentation").getString("segkey"));
+        assertEquals(event.segmentation.getInt("segkey1").intValue(), jsonObj.getJSONObject("segmentation").getInt("segkey1"));
+        assertEquals(event.segmentation.getDouble("segkey2").doubleValue(), jsonObj.getJSONObject("segmentation").getDouble("segkey2"), 0.0001d);
+        assertEquals(event.segmentation.getBoolean("segkey3").booleanValue(), jsonObj.getJSONObject("segmentation").getBoolean("segkey3"));
     }
 
     @Test
@@ -183,7 +177,7 @@ public class EventTests {
         event.timestamp = 1234;
         event.count = 42;
         event.sum = Double.NaN;
-        event.segmentation = new HashMap<>();
+        event.segmentation = new EventSegmentation();
         event.segmentation.put("segkey", "segvalue");
         final JSONObject jsonObj = event.toJSON();
         assertEquals(6, jsonObj.length());
@@ -191,7 +185,7 @@ public class EventTests {
         assertEquals(event.timestamp, jsonObj.getInt("timestamp"));
         assertEquals(event.count, jsonObj.getInt("count"));
         assertEquals(1, jsonObj.getJSONObject("segmentation").length());
-        assertEquals(event.segmentation.get("segkey"), jsonObj.getJSONObject("segmentation").getString("segkey"));
+        assertEquals(event.segmentation.getString("segkey"), jsonObj.getJSONObject("segmentation").getString("segkey"));
     }
 
     @Test
@@ -311,13 +305,13 @@ public class EventTests {
         expected.timestamp = 1234;
         expected.count = 42;
         expected.sum = 3.2;
-        expected.segmentation = new HashMap<>();
+        expected.segmentation = new EventSegmentation();
         final JSONObject jsonObj = new JSONObject();
         jsonObj.put("key", expected.key);
         jsonObj.put("timestamp", expected.timestamp);
         jsonObj.put("count", expected.count);
         jsonObj.put("sum", expected.sum);
-        jsonObj.put("segmentation", new JSONObject(expected.segmentation));
+        jsonObj.put("segmentation", new JSONObject(expected.segmentation.toMap()));
         final Event actual = Event.fromJSON(jsonObj);
         assertEquals(expected, actual);
         assertEquals(expected.count, actual.count);
@@ -331,14 +325,14 @@ public class EventTests {
         expected.timestamp = 1234;
         expected.count = 42;
         expected.sum = 3.2;
-        expected.segmentation = new HashMap<>();
+        expected.segmentation = new EventSegmentation();
         expected.segmentation.put("segkey", "segvalue");
         final JSONObject jsonObj = new JSONObject();
         jsonObj.put("key", expected.key);
         jsonObj.put("timestamp", expected.timestamp);
         jsonObj.put("count", expected.count);
         jsonObj.put("sum", expected.sum);
-        jsonObj.put("segmentation", new JSONObject(expected.segmentation));
+        jsonObj.put("segmentation", new JSONObject(expected.segmentation.toMap()));
         final Event actual = Event.fromJSON(jsonObj);
         assertEquals(expected, actual);
         assertEquals(expected.count, actual.count);
@@ -352,14 +346,11 @@ public class EventTests {
         expected.timestamp = 1234;
         expected.count = 42;
         expected.sum = 3.2;
-        expected.segmentation = new HashMap<>();
+        expected.segmentation = new EventSegmentation();
         expected.segmentation.put("sk1", "vall");
-        expected.segmentationDouble = new HashMap<>();
-        expected.segmentationDouble.put("sk2", 334.33d);
-        expected.segmentationInt = new HashMap<>();
-        expected.segmentationInt.put("segkey", 1234);
-        expected.segmentationBoolean = new HashMap<>();
-        expected.segmentationBoolean.put("sk3", true);
+        expected.segmentation.put("sk2", 334.33d);
+        expected.segmentation.put("segkey", 1234);
+        expected.segmentation.put("sk3", true);
 
         final Map<Object, Object> valueMap = new HashMap<>();
         valueMap.put("segkey", 1234);
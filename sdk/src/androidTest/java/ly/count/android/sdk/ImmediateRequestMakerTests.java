@@ -0,0 +1,169 @@
+package ly.count.android.sdk;
+
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(AndroidJUnit4.class)
+public class ImmediateRequestMakerTests {
+    ConnectionProcessor cp;
+    BlockingTransport transport;
+    ModuleLog L;
+
+    /**
+     * Answers every request with the same response once it is released
+     */
+    static class BlockingTransport implements CountlyTransport {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Request> requests = new ArrayList<>();
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            synchronized (this) {
+                requests.add(request);
+            }
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted");
+            }
+            return new Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8"));
+        }
+
+        synchronized int requestCount() {
+            return requests.size();
+        }
+    }
+
+    /**
+     * Stores the received response
+     */
+    static class Receiver implements ImmediateRequestMaker.InternalFeedbackRatingCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        JSONObject response;
+        Thread thread;
+
+        @Override public void callback(JSONObject checkResponse) {
+            response = checkResponse;
+            thread = Thread.currentThread();
+            done.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        L = mock(ModuleLog.class);
+        transport = new BlockingTransport();
+        cp = new ConnectionProcessor("http://server", mock(CountlyStore.class), mock(DeviceId.class), null, null, L);
+        cp.setTransport(transport);
+    }
+
+    /**
+     * Parameters that change with every request should not be part of the key
+     */
+    @Test
+    public void callKey() {
+        String key = ImmediateRequestMaker.callKey("/o/sdk", "app_key=a&timestamp=1&hour=2&dow=3&tz=60&method=feedback");
+        assertEquals(key, ImmediateRequestMaker.callKey("/o/sdk", "app_key=a&timestamp=5&hour=6&dow=0&tz=60&method=feedback"));
+        assertNotEquals(key, ImmediateRequestMaker.callKey("/o/sdk", "app_key=a&timestamp=1&hour=2&dow=3&tz=60&method=fetch_remote_config"));
+        assertNotEquals(key, ImmediateRequestMaker.callKey("/o/feedback/widget", "app_key=a&timestamp=1&hour=2&dow=3&tz=60&method=feedback"));
+    }
+
+    /**
+     * The callback should be called on the main thread with the parsed response
+     */
+    @Test
+    public void execute() throws InterruptedException {
+        Receiver receiver = new Receiver();
+        transport.release.countDown();
+        new ImmediateRequestMaker().execute("a=1", "/o/sdk", cp, false, receiver, L);
+
+        assertTrue(receiver.done.await(5, TimeUnit.SECONDS));
+        assertEquals("Success", receiver.response.optString("result"));
+        assertTrue(receiver.thread.getName(), receiver.thread == Looper.getMainLooper().getThread());
+    }
+
+    /**
+     * Identical requests that are made while one is in progress should receive its response
+     */
+    @Test
+    public void combineIdenticalRequests() throws InterruptedException {
+        Receiver first = new Receiver();
+        Receiver second = new Receiver();
+        Receiver other = new Receiver();
+        new ImmediateRequestMaker().execute("timestamp=1&method=a", "/o/sdk", cp, false, first, L);
+        new ImmediateRequestMaker().execute("timestamp=2&method=a", "/o/sdk", cp, false, second, L);
+        new ImmediateRequestMaker().execute("timestamp=3&method=b", "/o/sdk", cp, false, other, L);
+        transport.release.countDown();
+
+        assertTrue(first.done.await(5, TimeUnit.SECONDS));
+        assertTrue(second.done.await(5, TimeUnit.SECONDS));
+        assertTrue(other.done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, transport.requestCount());
+        assertEquals("Success", second.response.optString("result"));
+    }
+
+    /**
+     * A request that does not finish before its deadline should get a null response
+     */
+    @Test
+    public void deadline() throws InterruptedException {
+        Receiver receiver = new Receiver();
+        new ImmediateRequestMaker(200).execute("a=deadline", "/o/sdk", cp, false, receiver, L);
+
+        assertTrue(receiver.done.await(5, TimeUnit.SECONDS));
+        assertNull(receiver.response);
+        transport.release.countDown();
+    }
+
+    /**
+     * A cancelled request should not call its callback, the other identical requests should still get the response
+     */
+    @Test
+    public void cancel() throws InterruptedException {
+        Receiver cancelled = new Receiver();
+        Receiver waiting = new Receiver();
+        ImmediateRequestMaker request = new ImmediateRequestMaker();
+        request.execute("a=cancel", "/o/sdk", cp, false, cancelled, L);
+        new ImmediateRequestMaker().execute("a=cancel", "/o/sdk", cp, false, waiting, L);
+        request.cancel();
+        transport.release.countDown();
+
+        assertTrue(waiting.done.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelled.done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, transport.requestCount());
+    }
+
+    /**
+     * Delayed requests should be started after the delay and not be combined
+     */
+    @Test
+    public void delayed() throws InterruptedException {
+        Receiver first = new Receiver();
+        Receiver second = new Receiver();
+        transport.release.countDown();
+        long start = System.currentTimeMillis();
+        new ImmediateRequestMaker().execute("a=delayed", "/o/sdk", cp, true, first, L);
+        new ImmediateRequestMaker().execute("a=delayed", "/o/sdk", cp, true, second, L);
+
+        assertTrue(first.done.await(5, TimeUnit.SECONDS));
+        assertTrue(second.done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= ImmediateRequestMaker.DELAY_MS);
+        assertEquals(2, transport.requestCount());
+    }
+}
@@ -5,6 +5,7 @@ import android.content.res.Configuration;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.After;
 import org.junit.Assert;
@@ -44,7 +45,7 @@ public class MigrationHelperTests {
     ModuleLog mockLog;
     CountlyStore cs;
     StorageProvider sp;
-    final int latestSchemaVersion = 1;
+    final int latestSchemaVersion = 3;
 
     @Before
     public void setUp() {
@@ -80,7 +81,7 @@ public class MigrationHelperTests {
     @Test
     public void validateDataSchemaVersion() {
         MigrationHelper mh = new MigrationHelper(sp, mockLog);
-        assertEquals(1, mh.DATA_SCHEMA_VERSIONS);
+        assertEquals(3, mh.DATA_SCHEMA_VERSIONS);
     }
 
     /**
@@ -90,6 +91,7 @@ public class MigrationHelperTests {
     public void setInitialSchemaVersionEmpty() {
         StorageProvider spMock = mock(StorageProvider.class);
         when(spMock.anythingSetInStorage()).thenReturn(false);
+        when(spMock.isJournalAvailable()).thenReturn(true);
 
         MigrationHelper mh = new MigrationHelper(spMock, mockLog);
         mh.setInitialSchemaVersion();
@@ -98,6 +100,41 @@ public class MigrationHelperTests {
         verify(spMock).setDataSchemaVersion(mh.DATA_SCHEMA_VERSIONS);
     }
 
+    /**
+     * If the SDK has no data but the journals are not available, the queues are stored in the preferences
+     * and the initial schema version should be set to the one before moving them to the journals
+     */
+    @Test
+    public void setInitialSchemaVersionEmptyNoJournal() {
+        StorageProvider spMock = mock(StorageProvider.class);
+        when(spMock.anythingSetInStorage()).thenReturn(false);
+        when(spMock.isJournalAvailable()).thenReturn(false);
+
+        MigrationHelper mh = new MigrationHelper(spMock, mockLog);
+        mh.setInitialSchemaVersion();
+
+        verify(spMock).setDataSchemaVersion(1);
+    }
+
+    /**
+     * If the journals are not available, the queues should stay in the preferences
+     * and the schema version should not be raised, so that they are moved on a later init
+     */
+    @Test
+    public void migrationWaitsForJournal() {
+        StorageProvider spMock = mock(StorageProvider.class);
+        when(spMock.getDataSchemaVersion()).thenReturn(1);
+        when(spMock.isJournalAvailable()).thenReturn(false);
+
+        MigrationHelper mh = new MigrationHelper(spMock, mockLog);
+        mh.doWork(new HashMap<String, Object>());
+
+        verify(spMock, never()).setDataSchemaVersion(anyInt());
+        verify(spMock, never()).getLegacyRequests();
+        verify(spMock, never()).clearLegacyRequests();
+        verify(spMock, never()).getLegacyEvents();
+    }
+
     /**
      * If the SDK has data in storage, the initial schema version should be set to 0
      */
@@ -444,4 +481,91 @@ public class MigrationHelperTests {
         Assert.assertEquals("cd", countly.deviceId().getID());
         Assert.assertEquals(DeviceIdType.DEVELOPER_SUPPLIED, countly.deviceId().getType());
     }
+
+    /**
+     * Requests that are stored in the preferences should be moved to the request journal.
+     * Legacy requests are older and are therefore placed before requests that are already in the journal.
+     */
+    @Test
+    public void performMigration1to2_legacyRequests() {
+        cs.clear();
+        cs.addRequest("new1");
+        getContext().getSharedPreferences("COUNTLY_STORE", android.content.Context.MODE_PRIVATE).edit().putString("CONNECTIONS", "old1" + CountlyStore.DELIMITER + "old2").commit();
+        cs.setDataSchemaVersion(1);
+
+        MigrationHelper mh = new MigrationHelper(cs, mockLog);
+        mh.doWork(new HashMap<String, Object>());
+
+        assertEquals(latestSchemaVersion, cs.getDataSchemaVersion());
+        Assert.assertArrayEquals(new String[] { "old1", "old2", "new1" }, cs.getRequests());
+        assertEquals(0, cs.getLegacyRequests().length);
+
+        //requests should be readable from a fresh store
+        CountlyStore cs2 = new CountlyStore(getContext(), mockLog);
+        Assert.assertArrayEquals(new String[] { "old1", "old2", "new1" }, cs2.getRequests());
+    }
+
+    /**
+     * If there are no requests in the preferences, the migration should not change the request queue
+     */
+    @Test
+    public void performMigration1to2_noLegacyRequests() {
+        cs.clear();
+        cs.addRequest("new1");
+        cs.setDataSchemaVersion(1);
+
+        MigrationHelper mh = new MigrationHelper(cs, mockLog);
+        mh.doWork(new HashMap<String, Object>());
+
+        assertEquals(latestSchemaVersion, cs.getDataSchemaVersion());
+        Assert.assertArrayEquals(new String[] { "new1" }, cs.getRequests());
+    }
+
+    /**
+     * Events that are stored in the preferences should be moved to the event journal.
+     * Events that fail to parse are dropped.
+     */
+    @Test
+    public void performMigration2to3_legacyEvents() {
+        cs.clear();
+        final Event event1 = new Event();
+        event1.key = "old1";
+        event1.timestamp = 10;
+        final Event event2 = new Event();
+        event2.key = "old2";
+        event2.timestamp = 20;
+        cs.recordEventToEventQueue("new1", null, 1, 0.0d, 0.0d, 30, 1, 1);
+        getContext().getSharedPreferences("COUNTLY_STORE", android.content.Context.MODE_PRIVATE).edit()
+            .putString("EVENTS", event1.toJSON().toString() + CountlyStore.DELIMITER + "blah" + CountlyStore.DELIMITER + event2.toJSON().toString()).commit();
+        cs.setDataSchemaVersion(2);
+
+        MigrationHelper mh = new MigrationHelper(cs, mockLog);
+        mh.doWork(new HashMap<String, Object>());
+
+        assertEquals(latestSchemaVersion, cs.getDataSchemaVersion());
+        assertEquals(0, cs.getLegacyEvents().length);
+
+        CountlyStore cs2 = new CountlyStore(getContext(), mockLog);
+        List<Event> events = cs2.getEventList();
+        assertEquals(3, events.size());
+        assertEquals("old1", events.get(0).key);
+        assertEquals("old2", events.get(1).key);
+        assertEquals("new1", events.get(2).key);
+    }
+
+    /**
+     * If there are no events in the preferences, the migration should not change the event queue
+     */
+    @Test
+    public void performMigration2to3_noLegacyEvents() {
+        cs.clear();
+        cs.recordEventToEventQueue("new1", null, 1, 0.0d, 0.0d, 30, 1, 1);
+        cs.setDataSchemaVersion(2);
+
+        MigrationHelper mh = new MigrationHelper(cs, mockLog);
+        mh.doWork(new HashMap<String, Object>());
+
+        assertEquals(latestSchemaVersion, cs.getDataSchemaVersion());
+        assertEquals(1, cs.getEventQueueSize());
+    }
 }
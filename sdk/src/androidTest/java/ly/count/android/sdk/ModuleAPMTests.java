@@ -11,6 +11,7 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 
 import static androidx.test.InstrumentationRegistry.getContext;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -171,6 +172,22 @@ public class ModuleAPMTests {
         Assert.assertTrue((stop.getValue() - start.getValue()) < 100);
     }
 
+    /**
+     * Every init phase should be recorded as a custom trace
+     */
+    @Test
+    public void initPhaseDurations() {
+        RequestQueueProvider rqp = mock(RequestQueueProvider.class);
+        CountlyConfig config = (new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").setLoggingEnabled(true).setRecordInitPhaseDurations(true);
+        config.requestQueueProvider = rqp;
+        Countly countly = new Countly().init(config);
+
+        for (String phase : new String[] { "storage", "migration", "modules", "networking", "init_finished", "deferred" }) {
+            verify(rqp).sendAPMCustomTrace(eq(ModuleAPM.initPhaseTraceKeyPrefix + phase), any(Long.class), any(Long.class), any(Long.class), eq(""));
+        }
+        countly.halt();
+    }
+
     @Test
     public void cancelTrace() {
         mCountly.apm().startTrace("11");
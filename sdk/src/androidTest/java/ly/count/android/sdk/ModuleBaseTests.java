@@ -30,7 +30,19 @@ public class ModuleBaseTests {
     //making sure all needed modules are added
     @Test
     public void checkup() {
-        Assert.assertEquals(14, mCountly.modules.size());
+        Assert.assertEquals(13, mCountly.modules.size());
+    }
+
+    //feedback and user profile are only created when they are first used
+    @Test
+    public void modulesCreatedOnFirstUse() {
+        Assert.assertNull(mCountly.moduleFeedback);
+        Assert.assertNull(mCountly.moduleUserProfile);
+
+        Assert.assertNotNull(mCountly.feedback());
+        Assert.assertNotNull(mCountly.userProfile());
+        Assert.assertSame(mCountly.moduleFeedback.feedbackInterface, mCountly.feedback());
+        Assert.assertEquals(15, mCountly.modules.size());
     }
 
     //just making sure nothing throws exceptions
@@ -2,6 +2,7 @@ package ly.count.android.sdk;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.After;
 import org.junit.Assert;
@@ -353,6 +354,117 @@ public class ModuleEventsTests {
         Assert.assertEquals(1, captD, 0.1d);
     }
 
+    /**
+     * With the ring buffer enabled, recorded events reach the event queue once the buffer is drained
+     * and keep the timestamp of when they were recorded
+     */
+    @Test
+    public void recordEvent_ringBuffer() {
+        mCountly.halt();
+        eventQueueProvider = mock(EventQueueProvider.class);
+        mCountly = new Countly();
+        config = (new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").setLoggingEnabled(true).enableEventRingBuffer(32, EventOverflowPolicy.DROP_NEWEST);
+        config.eventQueueProvider = eventQueueProvider;
+        mCountly.init(config);
+
+        Assert.assertNotNull(mCountly.moduleEvents.eventRingBuffer);
+
+        Map<String, Object> segm = new HashMap<>();
+        segm.put("a", "b");
+        long before = System.currentTimeMillis();
+        mCountly.events().recordEvent(eventKey, segm, 2, 3.0d, 4.0d);
+
+        mCountly.moduleEvents.drainEventRingBuffer();
+        Assert.assertEquals(0, mCountly.moduleEvents.eventRingBuffer.size());
+
+        ArgumentCaptor<Long> arg1 = ArgumentCaptor.forClass(Long.class);
+        verify(eventQueueProvider).recordEventToEventQueue(eq(eventKey), eq(segm), eq(2), eq(3.0d), eq(4.0d), arg1.capture(), any(Integer.class), any(Integer.class));
+        Assert.assertTrue(arg1.getValue() >= before);
+    }
+
+    /**
+     * With the ring buffer enabled, changing the segmentation map after recording should not change the recorded event,
+     * and halting should stop the consumer thread
+     */
+    @Test
+    public void recordEvent_ringBufferCopiesSegmentation() {
+        mCountly.halt();
+        eventQueueProvider = mock(EventQueueProvider.class);
+        mCountly = new Countly();
+        config = (new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").setLoggingEnabled(true).enableEventRingBuffer(32, EventOverflowPolicy.DROP_NEWEST);
+        config.eventQueueProvider = eventQueueProvider;
+        mCountly.init(config);
+
+        Map<String, Object> segm = new HashMap<>();
+        segm.put("a", "b");
+        mCountly.events().recordEvent(eventKey, segm, 1, 0.0d, 0.0d);
+        segm.put("a", "c");
+        segm.put("d", "e");
+
+        mCountly.moduleEvents.drainEventRingBuffer();
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("a", "b");
+        verify(eventQueueProvider).recordEventToEventQueue(eq(eventKey), eq(expected), eq(1), eq(0.0d), eq(0.0d), any(Long.class), any(Integer.class), any(Integer.class));
+
+        Thread consumerThread = mCountly.moduleEvents.eventConsumerThread;
+        Assert.assertNotNull(consumerThread);
+        ModuleEvents moduleEvents = mCountly.moduleEvents;
+        mCountly.halt();
+        Assert.assertFalse(consumerThread.isAlive());
+        Assert.assertNull(moduleEvents.eventRingBuffer);
+    }
+
+    /**
+     * With aggregation enabled, repeated events are stored as a single event when events are sent
+     */
+    @Test
+    public void recordEvent_aggregated() {
+        mCountly.halt();
+        eventQueueProvider = mock(EventQueueProvider.class);
+        mCountly = new Countly();
+        config = (new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").setLoggingEnabled(true).enableEventAggregation();
+        config.eventQueueProvider = eventQueueProvider;
+        mCountly.init(config);
+
+        Map<String, Object> segm = new HashMap<>();
+        segm.put("a", "b");
+        mCountly.events().recordEvent(eventKey, segm, 1, 2.0d);
+        mCountly.events().recordEvent(eventKey, segm, 2, 3.0d);
+
+        verify(eventQueueProvider, times(0)).recordEventToEventQueue(any(String.class), any(Map.class), any(Integer.class), any(Double.class), any(Double.class), any(Long.class), any(Integer.class), any(Integer.class));
+
+        mCountly.moduleRequestQueue.sendEventsIfNeeded(true);
+        verify(eventQueueProvider).recordEventToEventQueue(eq(eventKey), eq(segm), eq(3), eq(5.0d), eq(0.0d), any(Long.class), any(Integer.class), any(Integer.class));
+    }
+
+    /**
+     * With call tracing enabled, every public call should be traced once,
+     * also if it delegates to other public calls
+     */
+    @Test
+    public void recordEvent_callTracing() {
+        mCountly.halt();
+        mCountly = new Countly();
+        config = (new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").setLoggingEnabled(true).enableCallTracing(1, 10);
+        config.eventQueueProvider = eventQueueProvider;
+        mCountly.init(config);
+
+        mCountly.events().recordEvent(eventKey);
+        mCountly.events().startEvent(eventKey);
+        mCountly.events().endEvent(eventKey);
+
+        List<CallTrace> traces = mCountly.diagnostics().getCallTraces();
+        Assert.assertEquals(3, traces.size());
+        Assert.assertEquals("Events.recordEvent", traces.get(0).getName());
+        Assert.assertEquals("Events.startEvent", traces.get(1).getName());
+        Assert.assertEquals("Events.endEvent", traces.get(2).getName());
+        for (CallTrace trace : traces) {
+            Assert.assertEquals(Thread.currentThread().getId(), trace.getThreadId());
+            Assert.assertTrue(trace.getDurationNanos() >= trace.getLockWaitNanos());
+        }
+    }
+
     @Test
     public void recordEventInternalProcessedTest() {
         EventQueueProvider eqp = TestUtils.setEventQueueProviderToMock(mCountly, mock(EventQueueProvider.class));
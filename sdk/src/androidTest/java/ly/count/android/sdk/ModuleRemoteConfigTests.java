@@ -1,7 +1,13 @@
 package ly.count.android.sdk;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -231,4 +237,252 @@ public class ModuleRemoteConfigTests {
         Assert.assertNotNull(vals.get("t"));
         Assert.assertEquals(0, ((JSONObject) vals.get("t")).length());
     }
+
+    /**
+     * Values should be read from the snapshot and only be saved when they change
+     */
+    @Test
+    public void snapshotSavedOnlyOnChange() throws Exception {
+        countlyStore.clear();
+        countlyStore.setRemoteConfigValues("{\"a\": 5}");
+        CountlyConfig cc = new CountlyConfig(getContext(), "aaa", "http://www.aa.bb");
+        Countly countly = new Countly();
+        countly.init(cc);
+
+        RemoteConfigSnapshot snapshot = countly.remoteConfig().getSnapshot();
+        Assert.assertEquals(5, snapshot.getLong("a", 0));
+        Assert.assertEquals(5, countly.remoteConfig().getValueForKey("a"));
+
+        countly.moduleRemoteConfig.mergeCheckResponseIntoCurrentValues(false, new JSONObject("{\"b\": true}"));
+        Assert.assertEquals(1, snapshot.size());
+        Assert.assertTrue(countly.remoteConfig().getSnapshot().getBoolean("b", false));
+        Assert.assertEquals("{\"a\": 5}", countlyStore.getRemoteConfigValues());
+        Assert.assertEquals("{\"b\":true}", countlyStore.getRemoteConfigDelta());
+
+        //storage is not written again if the same values are received
+        countlyStore.setRemoteConfigValues("not changed");
+        countly.moduleRemoteConfig.mergeCheckResponseIntoCurrentValues(false, new JSONObject("{\"b\": true}"));
+        Assert.assertEquals("not changed", countlyStore.getRemoteConfigValues());
+
+        countly.remoteConfig().clearStoredValues();
+        Assert.assertTrue(countly.remoteConfig().getSnapshot().isEmpty());
+        Assert.assertEquals("", countlyStore.getRemoteConfigValues());
+    }
+
+    /**
+     * Partial updates should only save the changed values as a delta,
+     * which is applied when the values are loaded again
+     */
+    @Test
+    public void partialUpdateSavedAsDelta() throws Exception {
+        countlyStore.clear();
+        CountlyConfig cc = new CountlyConfig(getContext(), "aaa", "http://www.aa.bb");
+        Countly countly = new Countly();
+        countly.init(cc);
+
+        countly.moduleRemoteConfig.mergeCheckResponseIntoCurrentValues(true, new JSONObject("{\"a\": 1, \"b\": 2, \"c\": 3, \"d\": 4}"));
+        Assert.assertEquals("", countlyStore.getRemoteConfigDelta());
+
+        //"a" did not change, only "b" is saved
+        countly.moduleRemoteConfig.mergeCheckResponseIntoCurrentValues(false, new JSONObject("{\"a\": 1, \"b\": {\"x\": 1}}"));
+        Assert.assertEquals("{\"a\":1,\"b\":2,\"c\":3,\"d\":4}", countlyStore.getRemoteConfigValues());
+        Assert.assertEquals("{\"b\":{\"x\":1}}", countlyStore.getRemoteConfigDelta());
+
+        //the same JSON value is not saved again
+        countly.moduleRemoteConfig.mergeCheckResponseIntoCurrentValues(false, new JSONObject("{\"b\": {\"x\": 1}, \"e\": 5}"));
+        Assert.assertEquals("{\"b\":{\"x\":1},\"e\":5}", countlyStore.getRemoteConfigDelta());
+
+        Countly countly2 = new Countly();
+        countly2.init(new CountlyConfig(getContext(), "aaa", "http://www.aa.bb"));
+        RemoteConfigSnapshot snapshot = countly2.remoteConfig().getSnapshot();
+        Assert.assertEquals(5, snapshot.size());
+        Assert.assertEquals(1, snapshot.getJSONObject("b").optInt("x"));
+        Assert.assertEquals(5, snapshot.getLong("e", 0));
+
+        //once the delta grows too large, all values are saved again
+        countly2.moduleRemoteConfig.mergeCheckResponseIntoCurrentValues(false, new JSONObject("{\"c\": 30, \"f\": 6}"));
+        Assert.assertEquals("", countlyStore.getRemoteConfigDelta());
+        Assert.assertEquals(6, RemoteConfigSnapshot.fromJSON(new JSONObject(countlyStore.getRemoteConfigValues())).getLong("f", 0));
+    }
+
+    /**
+     * Stand-in for the remote config endpoint of the server.
+     * It answers with an entity tag and responds with "304 Not Modified" if the request has a matching "If-None-Match" header.
+     */
+    static class RemoteConfigServer implements CountlyTransport {
+        final List<Request> requests = new ArrayList<>();
+        String values;
+        String eTag;
+
+        RemoteConfigServer(String values, String eTag) {
+            this.values = values;
+            this.eTag = eTag;
+        }
+
+        @Override
+        public synchronized Response execute(Request request) throws IOException {
+            if (!request.url.getPath().equals("/o/sdk")) {
+                return new Response(200, null, "{\"result\":\"Success\"}".getBytes("UTF-8"));
+            }
+
+            requests.add(request);
+            Map<String, String> headers = new HashMap<>();
+            headers.put("ETag", eTag);
+
+            if (eTag.equals(request.headers.get("If-None-Match"))) {
+                return new Response(304, headers, null);
+            }
+            return new Response(200, headers, values.getBytes("UTF-8"));
+        }
+    }
+
+    /**
+     * A request with a matching entity tag should result in a "not modified" response without a parsed body
+     */
+    @Test
+    public void conditionalRequest() throws Exception {
+        RemoteConfigServer server = new RemoteConfigServer("{\"a\": 1}", "\"v1\"");
+        ConnectionProcessor cp = new ConnectionProcessor("http://server", mock(CountlyStore.class), mock(DeviceId.class), null, null, mock(ModuleLog.class));
+        cp.setTransport(server);
+
+        ImmediateRequestMaker.ConditionalRequest first = new ImmediateRequestMaker.ConditionalRequest(null);
+        JSONObject response = ImmediateRequestMaker.performRequest("method=fetch_remote_config", "/o/sdk", cp, first, mock(ModuleLog.class));
+        Assert.assertEquals(1, response.getInt("a"));
+        Assert.assertFalse(first.notModified);
+        Assert.assertEquals("\"v1\"", first.eTag);
+        Assert.assertNull(server.requests.get(0).headers.get("If-None-Match"));
+
+        ImmediateRequestMaker.ConditionalRequest second = new ImmediateRequestMaker.ConditionalRequest(first.eTag);
+        Assert.assertNull(ImmediateRequestMaker.performRequest("method=fetch_remote_config", "/o/sdk", cp, second, mock(ModuleLog.class)));
+        Assert.assertTrue(second.notModified);
+        Assert.assertEquals("\"v1\"", server.requests.get(1).headers.get("If-None-Match"));
+
+        server.eTag = "\"v2\"";
+        ImmediateRequestMaker.ConditionalRequest third = new ImmediateRequestMaker.ConditionalRequest(first.eTag);
+        Assert.assertNotNull(ImmediateRequestMaker.performRequest("method=fetch_remote_config", "/o/sdk", cp, third, mock(ModuleLog.class)));
+        Assert.assertFalse(third.notModified);
+        Assert.assertEquals("\"v2\"", third.eTag);
+    }
+
+    /**
+     * Full updates should store the entity tag and send it with the next full update,
+     * partial updates should not be conditional
+     */
+    @Test
+    public void conditionalUpdate() throws Exception {
+        countlyStore.clear();
+        RemoteConfigServer server = new RemoteConfigServer("{\"a\": 1}", "\"v1\"");
+        CountlyConfig cc = new CountlyConfig(getContext(), "aaa", "http://www.aa.bb").setTransport(server);
+        Countly countly = new Countly();
+        countly.init(cc);
+
+        update(countly, null);
+        Assert.assertEquals("\"v1\"", countlyStore.getRemoteConfigETag());
+        Assert.assertEquals(1, countly.remoteConfig().getValueForKey("a"));
+
+        //values were not saved again
+        countlyStore.setRemoteConfigValues("{\"a\": 2}");
+        update(countly, null);
+        Assert.assertEquals("\"v1\"", server.requests.get(1).headers.get("If-None-Match"));
+        Assert.assertEquals("{\"a\": 2}", countlyStore.getRemoteConfigValues());
+        Assert.assertEquals(1, countly.remoteConfig().getValueForKey("a"));
+
+        update(countly, new String[] { "a" });
+        Assert.assertNull(server.requests.get(2).headers.get("If-None-Match"));
+
+        //clearing the values also removes the entity tag
+        countly.remoteConfig().clearStoredValues();
+        Assert.assertNull(countlyStore.getRemoteConfigETag());
+    }
+
+    void update(Countly countly, String[] keysOnly) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        RemoteConfigCallback callback = new RemoteConfigCallback() {
+            @Override public void callback(String error) {
+                Assert.assertNull(error);
+                done.countDown();
+            }
+        };
+
+        if (keysOnly == null) {
+            countly.remoteConfig().update(callback);
+        } else {
+            countly.remoteConfig().updateForKeysOnly(keysOnly, callback);
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Stale values should be updated in the background, but not more often than the minimum fetch interval
+     */
+    @Test
+    public void backgroundRefresh() throws Exception {
+        countlyStore.clear();
+        RemoteConfigServer server = new RemoteConfigServer("{\"a\": 1}", "\"v1\"");
+        CountlyConfig cc = new CountlyConfig(getContext(), "aaa", "http://www.aa.bb").setTransport(server).enableRemoteConfigBackgroundRefresh(60, 10);
+        Countly countly = new Countly();
+        countly.init(cc);
+
+        //there were no values, they are updated at init
+        awaitRequests(server, 1);
+        Assert.assertEquals(1, countly.remoteConfig().getSnapshot().getLong("a", 0));
+        Assert.assertTrue(countlyStore.getRemoteConfigUpdateTimestamp() > 0);
+
+        //values are fresh
+        countly.moduleRemoteConfig.refreshIfStale("test");
+        //values are stale, but the minimum fetch interval has not passed
+        countlyStore.setRemoteConfigUpdateTimestamp(UtilsTime.currentTimestampMs() - 61 * 1000);
+        countly.moduleRemoteConfig.refreshIfStale("test");
+        Assert.assertEquals(1, server.requests.size());
+
+        countly.moduleRemoteConfig.lastFetchAttemptMs -= 10 * 1000;
+        countly.moduleRemoteConfig.refreshIfStale("test");
+        awaitRequests(server, 2);
+        Assert.assertEquals("\"v1\"", server.requests.get(1).headers.get("If-None-Match"));
+    }
+
+    /**
+     * Full updates that are started while one is in progress should wait for it
+     */
+    @Test
+    public void combinedUpdates() throws Exception {
+        countlyStore.clear();
+        final CountDownLatch respond = new CountDownLatch(1);
+        RemoteConfigServer server = new RemoteConfigServer("{\"a\": 1}", "\"v1\"") {
+            @Override public Response execute(Request request) throws IOException {
+                try {
+                    respond.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                return super.execute(request);
+            }
+        };
+        Countly countly = new Countly();
+        countly.init(new CountlyConfig(getContext(), "aaa", "http://www.aa.bb").setTransport(server));
+
+        final CountDownLatch done = new CountDownLatch(3);
+        RemoteConfigCallback callback = new RemoteConfigCallback() {
+            @Override public void callback(String error) {
+                Assert.assertNull(error);
+                done.countDown();
+            }
+        };
+        countly.remoteConfig().update(callback);
+        countly.remoteConfig().update(callback);
+        countly.remoteConfig().update(callback);
+        respond.countDown();
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, server.requests.size());
+        Assert.assertFalse(countly.moduleRemoteConfig.fullUpdateInProgress);
+    }
+
+    void awaitRequests(RemoteConfigServer server, int count) throws InterruptedException {
+        for (int a = 0; a < 50 && server.requests.size() < count; a++) {
+            Thread.sleep(100);
+        }
+        //the values are saved on the main thread after the response was received
+        Thread.sleep(200);
+        Assert.assertEquals(count, server.requests.size());
+    }
 }
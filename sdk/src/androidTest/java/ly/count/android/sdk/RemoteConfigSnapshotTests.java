@@ -0,0 +1,118 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class RemoteConfigSnapshotTests {
+
+    RemoteConfigSnapshot snapshot() throws JSONException {
+        return RemoteConfigSnapshot.fromJSON(new JSONObject("{\"b\": true, \"bs\": \"false\", \"l\": 123, \"d\": 33.44, \"ls\": \"77\", \"s\": \"fg\", \"o\": {\"x\": 1}, \"a\": [1, 2], \"n\": null}"));
+    }
+
+    @Test
+    public void empty() {
+        RemoteConfigSnapshot snapshot = RemoteConfigSnapshot.fromJSON(new JSONObject());
+        assertSame(RemoteConfigSnapshot.EMPTY, snapshot);
+        assertTrue(snapshot.isEmpty());
+        assertNull(snapshot.getValue("a"));
+        assertEquals(0, snapshot.getAllValues().size());
+    }
+
+    @Test
+    public void typedValues() throws JSONException {
+        RemoteConfigSnapshot snapshot = snapshot();
+        assertEquals(9, snapshot.size());
+
+        assertTrue(snapshot.getBoolean("b", false));
+        assertFalse(snapshot.getBoolean("bs", true));
+        assertEquals(123, snapshot.getLong("l", 0));
+        assertEquals(77, snapshot.getLong("ls", 0));
+        assertEquals(33, snapshot.getLong("d", 0));
+        assertEquals(33.44, snapshot.getDouble("d", 0), 0.0001);
+        assertEquals(123.0, snapshot.getDouble("l", 0), 0.0001);
+        assertEquals("fg", snapshot.getString("s", null));
+        assertEquals("123", snapshot.getString("l", null));
+        assertEquals(1, snapshot.getJSONObject("o").optInt("x"));
+        assertEquals(2, snapshot.getJSONArray("a").length());
+        assertEquals(123, snapshot.getValue("l"));
+    }
+
+    /**
+     * Missing values, nulls and values of a different type should return the default values
+     */
+    @Test
+    public void defaultValues() throws JSONException {
+        RemoteConfigSnapshot snapshot = snapshot();
+
+        assertTrue(snapshot.getBoolean("missing", true));
+        assertTrue(snapshot.getBoolean("s", true));
+        assertEquals(5, snapshot.getLong("s", 5));
+        assertEquals(5.5, snapshot.getDouble("b", 5.5), 0.0001);
+        assertEquals("def", snapshot.getString("n", "def"));
+        assertEquals("def", snapshot.getString(null, "def"));
+        assertNull(snapshot.getJSONObject("a"));
+        assertNull(snapshot.getJSONArray("o"));
+
+        assertTrue(snapshot.containsKey("n"));
+        assertSame(JSONObject.NULL, snapshot.getValue("n"));
+        assertSame(JSONObject.NULL, snapshot.getAllValues().get("n"));
+    }
+
+    /**
+     * The snapshot should not change when the source object or the returned map are changed
+     */
+    @Test
+    public void immutable() throws JSONException {
+        JSONObject source = new JSONObject("{\"a\": 1}");
+        RemoteConfigSnapshot snapshot = RemoteConfigSnapshot.fromJSON(source);
+        source.put("b", 2);
+        assertEquals(1, snapshot.size());
+
+        Map<String, Object> values = snapshot.getAllValues();
+        try {
+            values.put("c", 3);
+            fail("Values should not be modifiable");
+        } catch (UnsupportedOperationException ignored) {
+        }
+        assertEquals(1, snapshot.size());
+    }
+
+    /**
+     * Changing returned JSON objects and arrays should not change the snapshot or what it persists
+     */
+    @Test
+    public void jsonValuesAreCopies() throws JSONException {
+        RemoteConfigSnapshot snapshot = snapshot();
+        snapshot.getJSONObject("o").put("x", 2);
+        snapshot.getJSONArray("a").put(3);
+        ((JSONObject) snapshot.getValue("o")).put("y", 3);
+        ((JSONObject) snapshot.getAllValues().get("o")).put("z", 4);
+
+        assertEquals("{\"x\":1}", snapshot.getJSONObject("o").toString());
+        assertEquals(2, snapshot.getJSONArray("a").length());
+        assertEquals("{\"x\":1}", snapshot.toJSON().getJSONObject("o").toString());
+    }
+
+    @Test
+    public void toJSON() throws JSONException {
+        JSONObject json = snapshot().toJSON();
+        RemoteConfigSnapshot snapshot = RemoteConfigSnapshot.fromJSON(new JSONObject(json.toString()));
+
+        assertEquals(9, snapshot.size());
+        assertEquals(33.44, snapshot.getDouble("d", 0), 0.0001);
+        assertNotNull(snapshot.getJSONObject("o"));
+    }
+}
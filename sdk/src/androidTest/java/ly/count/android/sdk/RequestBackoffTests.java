@@ -0,0 +1,186 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class RequestBackoffTests {
+    StorageProvider storageProvider;
+    ModuleLog moduleLog;
+    String storedState;
+
+    @Before
+    public void setUp() {
+        moduleLog = mock(ModuleLog.class);
+        storageProvider = mock(StorageProvider.class);
+        storedState = "";
+
+        //keep the stored state in memory so that it can be loaded again
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                storedState = invocation.getArgument(0);
+                return null;
+            }
+        }).when(storageProvider).setRequestBackoffState(anyString());
+        when(storageProvider.getRequestBackoffState()).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return storedState;
+            }
+        });
+    }
+
+    /**
+     * Random that always returns the same value
+     */
+    static class FixedRandom extends Random {
+        double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+    RequestBackoff createBackoff(Random random) {
+        return new RequestBackoff(storageProvider, 1000, 60000, random, moduleLog);
+    }
+
+    /**
+     * The backoff window should double with every failure until it reaches the maximum delay
+     */
+    @Test
+    public void backoffWindow() {
+        RequestBackoff backoff = createBackoff(new Random());
+
+        assertEquals(1000, backoff.getBackoffWindow(0));
+        assertEquals(1000, backoff.getBackoffWindow(1));
+        assertEquals(2000, backoff.getBackoffWindow(2));
+        assertEquals(32000, backoff.getBackoffWindow(6));
+        assertEquals(60000, backoff.getBackoffWindow(7));
+        assertEquals(60000, backoff.getBackoffWindow(100));
+    }
+
+    /**
+     * After a failure requests should not be attempted until the picked delay has passed
+     */
+    @Test
+    public void failureDelaysAttempts() {
+        FixedRandom random = new FixedRandom(0.5);
+        RequestBackoff backoff = createBackoff(random);
+
+        assertTrue(backoff.canAttempt(10000));
+
+        assertEquals(500, backoff.onFailure(10000, -1));
+        assertEquals(1, backoff.getFailureCount());
+        assertFalse(backoff.canAttempt(10499));
+        assertTrue(backoff.canAttempt(10500));
+
+        assertEquals(1000, backoff.onFailure(20000, -1));
+        assertEquals(2000, backoff.onFailure(30000, -1));
+        assertEquals(32000, backoff.getNextAttemptTimestamp());
+
+        backoff.onSuccess();
+        assertEquals(0, backoff.getFailureCount());
+        assertTrue(backoff.canAttempt(0));
+    }
+
+    /**
+     * The delay requested by the server should be used as the minimum delay, but not exceed the maximum delay
+     */
+    @Test
+    public void retryAfterIsHonoured() {
+        FixedRandom random = new FixedRandom(0.1);
+        RequestBackoff backoff = createBackoff(random);
+
+        assertEquals(5000, backoff.onFailure(0, 5000));
+        assertEquals(60000, backoff.onFailure(0, 600000));
+
+        //a smaller requested delay than the random one doesn't shorten it
+        random.value = 0.9;
+        assertEquals(3600, backoff.onFailure(0, 10));
+    }
+
+    @Test
+    public void parseRetryAfter() {
+        assertEquals(-1, RequestBackoff.parseRetryAfter(null, 0));
+        assertEquals(-1, RequestBackoff.parseRetryAfter("", 0));
+        assertEquals(-1, RequestBackoff.parseRetryAfter("soon", 0));
+        assertEquals(-1, RequestBackoff.parseRetryAfter("-5", 0));
+        assertEquals(120000, RequestBackoff.parseRetryAfter(" 120 ", 0));
+
+        //Sun, 06 Nov 1994 08:49:37 GMT
+        long date = 784111777000L;
+        assertEquals(30000, RequestBackoff.parseRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", date - 30000));
+        assertEquals(0, RequestBackoff.parseRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", date + 30000));
+    }
+
+    /**
+     * The state should survive creating a new instance with the same storage
+     */
+    @Test
+    public void statePersisted() {
+        FixedRandom random = new FixedRandom(0.5);
+        RequestBackoff backoff = createBackoff(random);
+        backoff.onFailure(1000, -1);
+        backoff.onFailure(1000, -1);
+
+        RequestBackoff restored = createBackoff(random);
+        assertEquals(2, restored.getFailureCount());
+        assertEquals(2000, restored.getNextAttemptTimestamp());
+        assertFalse(restored.canAttempt(1999));
+    }
+
+    /**
+     * If the device clock was moved back, the stored attempt time should not block requests longer than the maximum delay
+     */
+    @Test
+    public void clockMovedBack() {
+        RequestBackoff backoff = createBackoff(new Random());
+        backoff.onFailure(1000000, 50000);
+        assertFalse(backoff.canAttempt(1000000));
+        assertTrue(backoff.canAttempt(0));
+    }
+
+    /**
+     * Successful requests without a preceding failure should not write to storage
+     */
+    @Test
+    public void successWithoutFailure() {
+        RequestBackoff backoff = createBackoff(new Random());
+        backoff.onSuccess();
+        backoff.onSuccess();
+        verify(storageProvider, times(0)).setRequestBackoffState(anyString());
+    }
+
+    /**
+     * A corrupted stored state should be ignored
+     */
+    @Test
+    public void corruptedState() {
+        storedState = "{{";
+        RequestBackoff backoff = createBackoff(new Random());
+        assertEquals(0, backoff.getFailureCount());
+        assertTrue(backoff.canAttempt(0));
+    }
+}
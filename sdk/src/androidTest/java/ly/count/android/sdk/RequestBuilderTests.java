@@ -0,0 +1,123 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RequestBuilderTests {
+    TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+        RequestBuilder.onTimeZoneChanged();
+    }
+
+    static Map<String, String> parse(String request) {
+        Map<String, String> params = new HashMap<>();
+        for (String part : request.split("&")) {
+            String[] pair = part.split("=", 2);
+            params.put(pair[0], pair[1]);
+        }
+        return params;
+    }
+
+    @Test
+    public void commonData() {
+        RequestBuilder builder = new RequestBuilder();
+        Map<String, String> params = parse(builder.startRequest("app key", "21.11.2", "java-native-android").toString());
+
+        assertEquals(7, params.size());
+        assertEquals(UtilsNetworking.urlEncodeString("app key"), params.get("app_key"));
+        assertEquals("21.11.2", params.get("sdk_version"));
+        assertEquals("java-native-android", params.get("sdk_name"));
+        assertEquals("" + DeviceInfo.getTimezoneOffset(), params.get("tz"));
+    }
+
+    /**
+     * Hour, day of week and offset should match the ones from the calendar,
+     * also for time zones that are not offset by whole hours
+     */
+    @Test
+    public void timeZones() {
+        RequestBuilder builder = new RequestBuilder();
+
+        for (String zone : new String[] { "UTC", "America/St_Johns", "Asia/Kathmandu", "Pacific/Kiritimati", "Pacific/Pago_Pago", "Europe/Tallinn" }) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            RequestBuilder.onTimeZoneChanged();
+
+            Map<String, String> params = parse(builder.startRequest("appkey", "1", "name").toString());
+            UtilsTime.Instant instant = UtilsTime.Instant.get(Long.parseLong(params.get("timestamp")));
+
+            assertEquals(zone, "" + instant.hour, params.get("hour"));
+            assertEquals(zone, "" + instant.dow, params.get("dow"));
+            assertEquals(zone, "" + DeviceInfo.getTimezoneOffset(), params.get("tz"));
+        }
+    }
+
+    /**
+     * After a time zone change notification the new offset should be used right away
+     */
+    @Test
+    public void timeZoneChanged() {
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kathmandu"));
+        RequestBuilder.onTimeZoneChanged();
+
+        RequestBuilder builder = new RequestBuilder();
+        String first = parse(builder.startRequest("appkey", "1", "name").toString()).get("tz");
+        assertEquals("345", first);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        RequestBuilder.onTimeZoneChanged();
+        assertEquals("0", parse(builder.startRequest("appkey", "1", "name").toString()).get("tz"));
+    }
+
+    /**
+     * A change of the SDK name or version should be used right away
+     */
+    @Test
+    public void sdkInfoChanged() {
+        RequestBuilder builder = new RequestBuilder();
+        builder.startRequest("appkey", "1", "name");
+
+        Map<String, String> params = parse(builder.startRequest("appkey2", "2", "other").toString());
+        assertEquals("appkey2", params.get("app_key"));
+        assertEquals("2", params.get("sdk_version"));
+        assertEquals("other", params.get("sdk_name"));
+    }
+
+    /**
+     * The builder of a thread is reused, unless it has grown too large
+     */
+    @Test
+    public void builderReused() {
+        RequestBuilder builder = new RequestBuilder();
+        StringBuilder first = builder.startRequest("appkey", "1", "name");
+        String firstRequest = first.append("&events=abc").toString();
+        StringBuilder second = builder.startRequest("appkey", "1", "name");
+        assertSame(first, second);
+        assertTrue(firstRequest.endsWith("&events=abc"));
+        assertTrue(second.toString().endsWith("&sdk_name=name"));
+
+        for (int a = 0; a < RequestBuilder.MAX_POOLED_CAPACITY; a++) {
+            second.append('a');
+        }
+        assertNotSame(second, builder.startRequest("appkey", "1", "name"));
+    }
+}
@@ -0,0 +1,290 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static androidx.test.InstrumentationRegistry.getContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(AndroidJUnit4.class)
+public class RequestJournalTests {
+    File directory;
+    ModuleLog mockLog;
+
+    @Before
+    public void setUp() {
+        mockLog = mock(ModuleLog.class);
+        directory = new File(getContext().getFilesDir(), "request_journal_test");
+        new RequestJournal(directory, mockLog).clear();
+    }
+
+    @After
+    public void tearDown() {
+        new RequestJournal(directory, mockLog).clear();
+    }
+
+    RequestJournal reload() {
+        return new RequestJournal(directory, mockLog);
+    }
+
+    /**
+     * A fresh journal should be empty and should not exist on disk
+     */
+    @Test
+    public void emptyJournal() {
+        RequestJournal journal = reload();
+        assertEquals(0, journal.size());
+        assertTrue(journal.isEmpty());
+        assertNull(journal.peek());
+        assertNull(journal.removeFirst());
+        assertFalse(journal.remove("a"));
+        assertFalse(journal.exists());
+    }
+
+    /**
+     * Appended requests should be returned in order and survive a reload
+     */
+    @Test
+    public void appendAndReload() {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.append("b");
+        journal.append("c=ü&d=:::");
+
+        assertTrue(journal.exists());
+        Assert.assertArrayEquals(new String[] { "a", "b", "c=ü&d=:::" }, journal.getRequests());
+        Assert.assertArrayEquals(new String[] { "a", "b", "c=ü&d=:::" }, reload().getRequests());
+    }
+
+    /**
+     * Removing the oldest request should move the head and the result should survive a reload
+     */
+    @Test
+    public void removeFirstAndReload() {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.append("b");
+        journal.append("c");
+
+        assertEquals("a", journal.removeFirst());
+        assertEquals("b", journal.peek());
+        Assert.assertArrayEquals(new String[] { "b", "c" }, reload().getRequests());
+
+        journal.removeFirst();
+        journal.removeFirst();
+        assertTrue(journal.isEmpty());
+        assertEquals(0, reload().size());
+
+        //appending after the journal was drained
+        journal.append("d");
+        Assert.assertArrayEquals(new String[] { "d" }, reload().getRequests());
+    }
+
+    /**
+     * Removing a request from the middle should keep the order of the rest
+     */
+    @Test
+    public void removeFromMiddle() {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.append("b");
+        journal.append("c");
+
+        assertTrue(journal.remove("b"));
+        assertFalse(journal.remove("x"));
+        Assert.assertArrayEquals(new String[] { "a", "c" }, journal.getRequests());
+        Assert.assertArrayEquals(new String[] { "a", "c" }, reload().getRequests());
+
+        journal.append("d");
+        Assert.assertArrayEquals(new String[] { "a", "c", "d" }, reload().getRequests());
+    }
+
+    /**
+     * Replacing the journal should drop the previous requests
+     */
+    @Test
+    public void replace() {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.replace(Arrays.asList("x", "y"));
+        Assert.assertArrayEquals(new String[] { "x", "y" }, journal.getRequests());
+        Assert.assertArrayEquals(new String[] { "x", "y" }, reload().getRequests());
+
+        journal.clear();
+        assertFalse(journal.exists());
+        assertEquals(0, reload().size());
+    }
+
+    /**
+     * After a segment is full a new one is started and consumed segments are deleted
+     */
+    @Test
+    public void segmentRollover() {
+        char[] chars = new char[RequestJournal.SEGMENT_MAX_BYTES / 3];
+        Arrays.fill(chars, 'q');
+        String big = new String(chars);
+
+        RequestJournal journal = reload();
+        for (int a = 0; a < 7; a++) {
+            journal.append(a + big);
+        }
+
+        assertTrue(segmentCount() > 1);
+        int segmentsBefore = segmentCount();
+
+        for (int a = 0; a < 6; a++) {
+            assertEquals(a + big, journal.removeFirst());
+        }
+
+        assertTrue(segmentCount() < segmentsBefore);
+        RequestJournal reloaded = reload();
+        assertEquals(1, reloaded.size());
+        assertEquals(6 + big, reloaded.peek());
+    }
+
+    /**
+     * A partially written record at the end of a segment should be ignored and cut off
+     */
+    @Test
+    public void truncatedRecord() throws IOException {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.append("b");
+
+        File segment = new File(directory, RequestJournal.SEGMENT_PREFIX + 0);
+        long validLength = segment.length();
+
+        FileOutputStream out = new FileOutputStream(segment, true);
+        out.write(new byte[] { 0, 0, 0, 10, 'x', 'y' });
+        out.close();
+
+        RequestJournal reloaded = reload();
+        Assert.assertArrayEquals(new String[] { "a", "b" }, reloaded.getRequests());
+        assertEquals(validLength, segment.length());
+
+        reloaded.append("c");
+        Assert.assertArrayEquals(new String[] { "a", "b", "c" }, reload().getRequests());
+    }
+
+    /**
+     * Removing multiple requests from the start should only work if they match the oldest requests
+     */
+    @Test
+    public void removeFirstMultiple() {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.append("b");
+        journal.append("c");
+
+        assertFalse(journal.removeFirst(Arrays.asList("b", "c")));
+        assertFalse(journal.removeFirst(Arrays.asList("a", "b", "c", "d")));
+        assertEquals(3, journal.size());
+
+        assertTrue(journal.removeFirst(Arrays.asList("a", "b")));
+        Assert.assertArrayEquals(new String[] { "c" }, journal.getRequests());
+        Assert.assertArrayEquals(new String[] { "c" }, reload().getRequests());
+    }
+
+    /**
+     * Removing multiple requests should delete segments that are fully consumed
+     */
+    @Test
+    public void removeFirstMultipleAcrossSegments() {
+        char[] chars = new char[RequestJournal.SEGMENT_MAX_BYTES / 3];
+        Arrays.fill(chars, 'q');
+        String big = new String(chars);
+
+        RequestJournal journal = reload();
+        java.util.List<String> toRemove = new java.util.ArrayList<>();
+        for (int a = 0; a < 7; a++) {
+            journal.append(a + big);
+            if (a < 6) {
+                toRemove.add(a + big);
+            }
+        }
+        int segmentsBefore = segmentCount();
+
+        assertTrue(journal.removeFirst(toRemove));
+        assertTrue(segmentCount() < segmentsBefore);
+
+        RequestJournal reloaded = reload();
+        assertEquals(1, reloaded.size());
+        assertEquals(6 + big, reloaded.peek());
+    }
+
+    /**
+     * A rewrite that was interrupted before the head was moved should be dropped and the old requests kept
+     */
+    @Test
+    public void interruptedRewriteBeforeCommit() throws IOException {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.append("b");
+
+        writeRecords(new File(directory, RequestJournal.COMPACT_FILE_NAME), "x");
+
+        Assert.assertArrayEquals(new String[] { "a", "b" }, reload().getRequests());
+        assertFalse(new File(directory, RequestJournal.COMPACT_FILE_NAME).exists());
+    }
+
+    /**
+     * A rewrite that was interrupted after the head was moved should be finished on load
+     */
+    @Test
+    public void interruptedRewriteAfterCommit() throws IOException {
+        RequestJournal journal = reload();
+        journal.append("a");
+        journal.append("b");
+        journal.sync();
+
+        writeRecords(new File(directory, RequestJournal.COMPACT_FILE_NAME), "x", "y");
+        DataOutputStream head = new DataOutputStream(new FileOutputStream(new File(directory, RequestJournal.HEAD_FILE_NAME)));
+        head.writeInt(5);
+        head.writeLong(0);
+        head.close();
+
+        RequestJournal reloaded = reload();
+        Assert.assertArrayEquals(new String[] { "x", "y" }, reloaded.getRequests());
+        assertFalse(new File(directory, RequestJournal.COMPACT_FILE_NAME).exists());
+        assertEquals(1, segmentCount());
+
+        reloaded.append("z");
+        Assert.assertArrayEquals(new String[] { "x", "y", "z" }, reload().getRequests());
+    }
+
+    void writeRecords(File file, String... requests) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        for (String request : requests) {
+            byte[] data = request.getBytes("UTF-8");
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        out.close();
+    }
+
+    int segmentCount() {
+        File[] files = directory.listFiles();
+        int count = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(RequestJournal.SEGMENT_PREFIX)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
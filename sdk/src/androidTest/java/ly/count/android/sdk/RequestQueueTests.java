@@ -157,4 +157,29 @@ public class RequestQueueTests {
             Assert.assertEquals(wantedRes.get(a), resRequests.get(a));
         }
     }
+
+    /**
+     * Quarantined requests should be visible through the request queue interface,
+     * and can be either drained or moved back to the queue
+     */
+    @Test
+    public void quarantinedRequests() {
+        CountlyStore store = mCountly.countlyStore;
+        store.addRequest("a=1");
+        store.addRequest("a=2");
+        store.quarantineRequest("a=1");
+
+        Assert.assertEquals(1, mCountly.requestQueue().getQuarantinedRequestCount());
+        Assert.assertArrayEquals(new String[] { "a=1" }, mCountly.requestQueue().getQuarantinedRequests());
+        Assert.assertArrayEquals(new String[] { "a=2" }, store.getRequests());
+
+        mCountly.requestQueue().retryQuarantinedRequests();
+        Assert.assertEquals(0, mCountly.requestQueue().getQuarantinedRequestCount());
+        Assert.assertArrayEquals(new String[] { "a=2", "a=1" }, store.getRequests());
+
+        store.quarantineRequest("a=2");
+        Assert.assertArrayEquals(new String[] { "a=2" }, mCountly.requestQueue().drainQuarantinedRequests());
+        Assert.assertEquals(0, mCountly.requestQueue().getQuarantinedRequestCount());
+        Assert.assertArrayEquals(new String[] { "a=1" }, store.getRequests());
+    }
 }
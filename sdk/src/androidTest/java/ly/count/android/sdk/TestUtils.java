@@ -115,7 +115,7 @@ public class TestUtils {
     }
 
     public static Map<String, Object> combineSegmentation(Event event) {
-        return combineSegmentation(event.segmentation, event.segmentationInt, event.segmentationDouble, event.segmentationBoolean);
+        return event.segmentation == null ? new HashMap<String, Object>() : event.segmentation.toMap();
     }
 
     public static Map<String, Object> combineSegmentation(Map<String, String> sString, Map<String, Integer> sInteger, Map<String, Double> sDouble, Map<String, Boolean> sBoolean) {
@@ -1,6 +1,9 @@
 package ly.count.android.sdk;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -66,4 +69,23 @@ public class UtilsNetworkingTest {
             Assert.assertEquals(UtilsNetworking.sha256Hash(list_a[a]), list_b[a]);
         }
     }
+
+    /**
+     * Compressed data should be decoded to the original value when the response is marked as gzip encoded
+     */
+    @Test
+    public void gzipAndDecodeResponse() throws IOException {
+        String original = "app_key=abc&events=%5B%7B%22key%22%3A%22a%22%7D%5D&events=%5B%7B%22key%22%3A%22a%22%7D%5D";
+        byte[] compressed = UtilsNetworking.gzip(original.getBytes("UTF-8"));
+        Assert.assertNotEquals(original.length(), compressed.length);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("content-encoding", "gzip");
+        byte[] decoded = UtilsNetworking.decodeResponseBody(new CountlyTransport.Response(200, headers, compressed));
+        Assert.assertEquals(original, new String(decoded, "UTF-8"));
+
+        //not encoded responses are returned as is
+        byte[] plain = original.getBytes("UTF-8");
+        Assert.assertSame(plain, UtilsNetworking.decodeResponseBody(new CountlyTransport.Response(200, null, plain)));
+    }
 }
@@ -0,0 +1,73 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A single traced call of a public SDK method
+ */
+public class CallTrace {
+    @NonNull final String name;
+    @NonNull final String threadName;
+    final long threadId;
+    final boolean mainThread;
+    final long startNs;
+    //0 if the call did not wait for the SDK lock
+    long lockAcquiredNs = 0;
+    long endNs = 0;
+
+    CallTrace(@NonNull String name, @NonNull Thread thread, boolean mainThread, long startNs) {
+        this.name = name;
+        this.threadName = thread.getName();
+        this.threadId = thread.getId();
+        this.mainThread = mainThread;
+        this.startNs = startNs;
+    }
+
+    /**
+     * @return the traced method, as "Interface.method"
+     */
+    public @NonNull String getName() {
+        return name;
+    }
+
+    public @NonNull String getThreadName() {
+        return threadName;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    /**
+     * @return true if the call was made on the main thread of the app
+     */
+    public boolean isMainThread() {
+        return mainThread;
+    }
+
+    /**
+     * @return "System.nanoTime" at the start of the call
+     */
+    public long getStartNanos() {
+        return startNs;
+    }
+
+    /**
+     * @return the duration of the whole call, including the time spent waiting for the SDK lock
+     */
+    public long getDurationNanos() {
+        return endNs - startNs;
+    }
+
+    /**
+     * @return the time spent waiting for the SDK lock, 0 if the call did not take it
+     */
+    public long getLockWaitNanos() {
+        return lockAcquiredNs == 0 ? 0 : lockAcquiredNs - startNs;
+    }
+
+    @Override
+    public String toString() {
+        return "CallTrace{" + name + ", thread:[" + threadName + "], main:[" + mainThread + "], duration:[" + getDurationNanos() / 1000 + " us], lock wait:[" + getLockWaitNanos() / 1000 + " us]}";
+    }
+}
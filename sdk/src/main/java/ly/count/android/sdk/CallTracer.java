@@ -0,0 +1,182 @@
+package ly.count.android.sdk;
+
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Measures the calls of the public SDK interfaces.
+ *
+ * Every traced method calls "begin" before taking the SDK lock, "lockAcquired" once it holds it and "end" when it returns.
+ * When tracing is disabled, "begin" returns null and the other calls return immediately.
+ * Calls that are made from inside another traced call are covered by the outer one and are not traced on their own.
+ */
+class CallTracer {
+    //returned for calls that are counted but not traced
+    private static final CallTrace NOT_SAMPLED = new CallTrace("", Thread.currentThread(), false, 0);
+
+    private static class ThreadState {
+        int depth = 0;
+        int callsUntilSample = 1;
+    }
+
+    private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+        @Override protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    private volatile boolean enabled = false;
+    private volatile int sampleRate = 1;
+    private int maxTraces = 1000;
+
+    private final ArrayDeque<CallTrace> traces = new ArrayDeque<>();
+    private long tracedCallCount = 0;
+
+    /**
+     * @param sampleRate every "sampleRate"-th call of a thread is traced
+     * @param maxTraces the amount of kept traces, after that the oldest ones are replaced
+     */
+    synchronized void enable(int sampleRate, int maxTraces) {
+        this.sampleRate = sampleRate;
+        this.maxTraces = maxTraces;
+        while (traces.size() > maxTraces) {
+            traces.removeFirst();
+        }
+        enabled = true;
+    }
+
+    synchronized void disable() {
+        enabled = false;
+        clear();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called at the start of a traced method, before the SDK lock is taken
+     *
+     * @param name name of the method, as "Interface.method"
+     * @return the trace that has to be passed to the other calls, null if tracing is disabled
+     */
+    @Nullable CallTrace begin(@NonNull String name) {
+        if (!enabled) {
+            return null;
+        }
+
+        final ThreadState state = threadState.get();
+        if (state.depth++ > 0) {
+            return NOT_SAMPLED;
+        }
+        if (--state.callsUntilSample > 0) {
+            return NOT_SAMPLED;
+        }
+        state.callsUntilSample = sampleRate;
+
+        final Looper mainLooper = Looper.getMainLooper();
+        final Thread thread = Thread.currentThread();
+        return new CallTrace(name, thread, mainLooper != null && mainLooper.getThread() == thread, System.nanoTime());
+    }
+
+    /**
+     * Called as soon as the traced method holds the SDK lock
+     */
+    void lockAcquired(@Nullable CallTrace trace) {
+        if (trace != null && trace != NOT_SAMPLED) {
+            trace.lockAcquiredNs = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called when the traced method returns or throws
+     */
+    void end(@Nullable CallTrace trace) {
+        if (trace == null) {
+            return;
+        }
+
+        threadState.get().depth--;
+        if (trace == NOT_SAMPLED) {
+            return;
+        }
+
+        trace.endNs = System.nanoTime();
+        synchronized (this) {
+            if (!enabled) {
+                return;
+            }
+            if (traces.size() >= maxTraces) {
+                traces.removeFirst();
+            }
+            traces.addLast(trace);
+            tracedCallCount++;
+        }
+    }
+
+    /**
+     * @return the kept traces, from the oldest to the most recent one
+     */
+    synchronized @NonNull List<CallTrace> getTraces() {
+        return new ArrayList<>(traces);
+    }
+
+    /**
+     * @return the amount of traced calls, including the ones that were replaced by more recent ones
+     */
+    synchronized long getTracedCallCount() {
+        return tracedCallCount;
+    }
+
+    synchronized void clear() {
+        traces.clear();
+        tracedCallCount = 0;
+    }
+
+    /**
+     * Exports the kept traces in the Trace Event Format that can be opened with "chrome://tracing" or Perfetto.
+     * Every call is a complete event, the time spent waiting for the SDK lock is in its arguments.
+     */
+    @NonNull String exportTraceEvents() throws JSONException {
+        final List<CallTrace> snapshot = getTraces();
+        final JSONArray events = new JSONArray();
+        final List<Long> namedThreads = new ArrayList<>();
+
+        for (CallTrace trace : snapshot) {
+            if (!namedThreads.contains(trace.threadId)) {
+                namedThreads.add(trace.threadId);
+                final JSONObject metadata = new JSONObject();
+                metadata.put("name", "thread_name");
+                metadata.put("ph", "M");
+                metadata.put("pid", 0);
+                metadata.put("tid", trace.threadId);
+                metadata.put("args", new JSONObject().put("name", trace.threadName));
+                events.put(metadata);
+            }
+
+            final JSONObject args = new JSONObject();
+            args.put("lockWaitUs", trace.getLockWaitNanos() / 1000.0);
+            args.put("mainThread", trace.mainThread);
+
+            final JSONObject event = new JSONObject();
+            event.put("name", trace.name);
+            event.put("cat", "countly");
+            event.put("ph", "X");
+            event.put("ts", trace.startNs / 1000.0);
+            event.put("dur", trace.getDurationNanos() / 1000.0);
+            event.put("pid", 0);
+            event.put("tid", trace.threadId);
+            event.put("args", args);
+            events.put(event);
+        }
+
+        return new JSONObject().put("traceEvents", events).put("displayTimeUnit", "ms").toString();
+    }
+}
@@ -0,0 +1,55 @@
+package ly.count.android.sdk;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters that show how well server connections are reused.
+ *
+ * Every new secure socket that the SDK opens requires a full TCP and TLS handshake.
+ * Requests that are sent over an already open, pooled connection skip that.
+ * Only secure (HTTPS) requests are counted, because for them the SDK controls the socket factory.
+ */
+public class ConnectionMetrics {
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong handshakeCount = new AtomicLong();
+
+    void onRequest() {
+        requestCount.incrementAndGet();
+    }
+
+    void onHandshake() {
+        handshakeCount.incrementAndGet();
+    }
+
+    /**
+     * @return the amount of HTTPS requests that have been started
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the amount of new secure connections that have been opened, each of them performed a handshake
+     */
+    public long getHandshakeCount() {
+        return handshakeCount.get();
+    }
+
+    /**
+     * @return the share of requests, from 0 to 1, that were sent over a reused connection
+     */
+    public double getReuseRatio() {
+        long requests = requestCount.get();
+        if (requests == 0) {
+            return 0;
+        }
+
+        long handshakes = Math.min(handshakeCount.get(), requests);
+        return (double) (requests - handshakes) / requests;
+    }
+
+    void reset() {
+        requestCount.set(0);
+        handshakeCount.set(0);
+    }
+}
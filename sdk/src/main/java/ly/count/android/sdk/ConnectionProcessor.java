@@ -21,20 +21,32 @@ THE SOFTWARE.
 */
 package ly.count.android.sdk;
 
-import java.io.BufferedWriter;
+import androidx.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -49,45 +61,168 @@ public class ConnectionProcessor implements Runnable {
     private static final int CONNECT_TIMEOUT_IN_MILLISECONDS = 30000;
     private static final int READ_TIMEOUT_IN_MILLISECONDS = 30000;
 
+    static final String BULK_ENDPOINT = "/i/bulk";
+
     private final StorageProvider storageProvider_;
     private final DeviceId deviceId_;
     private final String serverURL_;
-    private final SSLContext sslContext_;
+    private final SSLSocketFactory sslSocketFactory_;
 
     private final Map<String, String> requestHeaderCustomValues_;
 
+    //if set to more than 1, consecutive requests are combined into a single bulk request
+    private int bulkMaxRequestCount_ = 0;
+    private int bulkMaxByteSize_ = 0;
+    //requests of a bulk request that could not be sent in bulk, they are sent one by one
+    private final Set<String> bulkFallbackRequests_ = new HashSet<>();
+
+    //POST bodies of at least this size are gzip compressed, negative values disable compression
+    private int compressionThreshold_ = -1;
+
+    private ConnectionMetrics connectionMetrics_ = null;
+
+    //if set, traffic, response codes and request outcomes are recorded in it
+    private DiagnosticsMetrics diagnostics_ = null;
+
+    //if set, requests are performed with it instead of the built-in HttpURLConnection transport
+    private CountlyTransport transport_ = null;
+
     protected static String salt;
 
     ModuleLog L;
 
     private enum RequestResult {
         OK,         // success
-        RETRY       // retry MAX_RETRIES_BEFORE_SLEEP before switching to SLEEP
+        RETRY,      // retry after backing off
+        BAD_REQUEST // the server rejected the request, it is quarantined after too many attempts
     }
 
-    ConnectionProcessor(final String serverURL, final StorageProvider storageProvider, final DeviceId deviceId, final SSLContext sslContext, final Map<String, String> requestHeaderCustomValues, ModuleLog logModule) {
+    //if set, failed requests are retried with exponential backoff
+    private RequestBackoff requestBackoff_ = null;
+    //called after the backoff was extended by a failure, so that the retry can be scheduled
+    private Runnable backoffListener_ = null;
+
+    //requests that the server rejected this many times are quarantined, also without the backoff
+    private int maxBadRequestAttempts_ = DEFAULT_MAX_BAD_REQUEST_ATTEMPTS;
+    static final int DEFAULT_MAX_BAD_REQUEST_ATTEMPTS = 5;
+
+    //if more than 1, independent requests are sent concurrently by that many workers
+    private int parallelWorkerCount_ = 0;
+    private ExecutorService workerExecutor_ = null;
+
+    /**
+     * Result of a sent request
+     */
+    private static class SendResult {
+        final RequestResult result;
+        //delay requested by the server, negative if none
+        final long retryAfterMs;
+        final int responseCode;
+
+        SendResult(RequestResult result, long retryAfterMs, int responseCode) {
+            this.result = result;
+            this.retryAfterMs = retryAfterMs;
+            this.responseCode = responseCode;
+        }
+    }
+
+    ConnectionProcessor(final String serverURL, final StorageProvider storageProvider, final DeviceId deviceId, final SSLSocketFactory sslSocketFactory, final Map<String, String> requestHeaderCustomValues, ModuleLog logModule) {
         serverURL_ = serverURL;
         storageProvider_ = storageProvider;
         deviceId_ = deviceId;
-        sslContext_ = sslContext;
+        sslSocketFactory_ = sslSocketFactory;
         requestHeaderCustomValues_ = requestHeaderCustomValues;
         L = logModule;
     }
 
-    synchronized public URLConnection urlConnectionForServerRequest(String requestData, final String customEndpoint) throws IOException {
+    /**
+     * Enables sending multiple stored requests in a single call to the bulk endpoint
+     *
+     * @param maxRequestCount maximum amount of requests in a single bulk request, values less than 2 disable bulk requests
+     * @param maxByteSize maximum combined size of the requests in a single bulk request
+     */
+    void setBulkRequestLimits(int maxRequestCount, int maxByteSize) {
+        bulkMaxRequestCount_ = maxRequestCount;
+        bulkMaxByteSize_ = maxByteSize;
+    }
+
+    /**
+     * Enables gzip compression of request bodies
+     *
+     * @param threshold minimum size of the request body in bytes for it to be compressed, negative values disable compression
+     */
+    void setCompressionThreshold(int threshold) {
+        compressionThreshold_ = threshold;
+    }
+
+    void setConnectionMetrics(ConnectionMetrics metrics) {
+        connectionMetrics_ = metrics;
+    }
+
+    void setDiagnosticsMetrics(DiagnosticsMetrics diagnostics) {
+        diagnostics_ = diagnostics;
+    }
+
+    boolean isCompressionEnabled() {
+        return compressionThreshold_ >= 0;
+    }
+
+    void setTransport(CountlyTransport transport) {
+        transport_ = transport;
+    }
+
+    void setRequestBackoff(RequestBackoff requestBackoff) {
+        requestBackoff_ = requestBackoff;
+    }
+
+    void setBackoffListener(Runnable backoffListener) {
+        backoffListener_ = backoffListener;
+    }
+
+    /**
+     * @param maxBadRequestAttempts amount of times a request can be rejected as a bad request before it is quarantined
+     */
+    void setMaxBadRequestAttempts(int maxBadRequestAttempts) {
+        maxBadRequestAttempts_ = maxBadRequestAttempts;
+    }
+
+    /**
+     * Enables sending independent requests concurrently
+     *
+     * @param workerExecutor executor that runs the concurrent requests, it should have at least "workerCount" threads
+     * @param workerCount maximum amount of requests sent at the same time, values less than 2 disable concurrent sending
+     */
+    void setParallelWorkers(ExecutorService workerExecutor, int workerCount) {
+        workerExecutor_ = workerExecutor;
+        parallelWorkerCount_ = workerCount;
+    }
+
+    /**
+     * Creates the transport request for the given request data.
+     * Adds the checksum, decides between HTTP GET and POST, and prepares the possibly compressed body.
+     *
+     * @param requestData the request data that is sent
+     * @param customEndpoint endpoint to use, if null then "/i" is used
+     */
+    CountlyTransport.Request createRequest(String requestData, final String customEndpoint) throws IOException {
+        return createRequest(requestData, customEndpoint, null);
+    }
+
+    /**
+     * @param extraHeaders headers that are only added to this request, can be null
+     */
+    CountlyTransport.Request createRequest(String requestData, final String customEndpoint, @Nullable final Map<String, String> extraHeaders) throws IOException {
         String urlEndpoint = "/i";
         if (customEndpoint != null) {
             urlEndpoint = customEndpoint;
         }
 
-        boolean usingHttpPost = (requestData.contains("&crash=") || requestData.length() >= 2048 || Countly.sharedInstance().isHttpPostForced());
+        boolean usingHttpPost = (requestData.contains("&crash=") || requestData.length() >= 2048 || Countly.sharedInstance().isHttpPostForced() || BULK_ENDPOINT.equals(urlEndpoint));
 
-        long approximateDateSize = 0L;
         String urlStr = serverURL_ + urlEndpoint;
         if (usingHttpPost) {
             String checksum = UtilsNetworking.sha256Hash(requestData + salt);
             requestData += "&checksum256=" + checksum;
-            approximateDateSize += requestData.length();
             L.v("[Connection Processor] The following checksum was added:[" + checksum + "]");
         } else {
             urlStr += "?" + requestData;
@@ -95,22 +230,14 @@ public class ConnectionProcessor implements Runnable {
             urlStr += "&checksum256=" + checksum;
             L.v("[Connection Processor] The following checksum was added:[" + checksum + "]");
         }
-        approximateDateSize += urlStr.length();
 
         final URL url = new URL(urlStr);
-        final HttpURLConnection conn;
-        if (Countly.publicKeyPinCertificates == null && Countly.certificatePinCertificates == null) {
-            conn = (HttpURLConnection) url.openConnection();
-        } else {
-            HttpsURLConnection c = (HttpsURLConnection) url.openConnection();
-            c.setSSLSocketFactory(sslContext_.getSocketFactory());
-            conn = c;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        if (isCompressionEnabled()) {
+            //setting this explicitly turns off the transparent decompression, responses are decoded when they are read
+            headers.put("Accept-Encoding", "gzip");
         }
-        conn.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLISECONDS);
-        conn.setReadTimeout(READ_TIMEOUT_IN_MILLISECONDS);
-        conn.setUseCaches(false);
-        conn.setDoInput(true);
-        conn.setRequestMethod("GET");
 
         if (requestHeaderCustomValues_ != null) {
             //if there are custom header values, add them
@@ -119,11 +246,18 @@ public class ConnectionProcessor implements Runnable {
                 String key = entry.getKey();
                 String value = entry.getValue();
                 if (key != null && value != null && !key.isEmpty()) {
-                    conn.addRequestProperty(key, value);
+                    headers.put(key, value);
                 }
             }
         }
 
+        if (extraHeaders != null) {
+            headers.putAll(extraHeaders);
+        }
+
+        String method = "GET";
+        byte[] body = null;
+
         String picturePath = ModuleUserProfile.getPicturePathFromQuery(url);
         L.v("[Connection Processor] Got picturePath: " + picturePath);
         //Log.v(Countly.TAG, "Used url: " + urlStr);
@@ -131,55 +265,98 @@ public class ConnectionProcessor implements Runnable {
             //Uploading files:
             //http://stackoverflow.com/questions/2793150/how-to-use-java-net-urlconnection-to-fire-and-handle-http-requests
 
-            File binaryFile = new File(picturePath);
-            conn.setDoOutput(true);
             // Just generate some unique random value.
             String boundary = Long.toHexString(System.currentTimeMillis());
-            // Line separator required by multipart/form-data.
-            String CRLF = "\r\n";
-            String charset = "UTF-8";
-            conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-            OutputStream output = conn.getOutputStream();
-            PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, charset), true);
-            // Send binary file.
-            writer.append("--").append(boundary).append(CRLF);
-            writer.append("Content-Disposition: form-data; name=\"binaryFile\"; filename=\"").append(binaryFile.getName()).append("\"").append(CRLF);
-            writer.append("Content-Type: ").append(URLConnection.guessContentTypeFromName(binaryFile.getName())).append(CRLF);
-            writer.append("Content-Transfer-Encoding: binary").append(CRLF);
-            writer.append(CRLF).flush();
-            FileInputStream fileInputStream = new FileInputStream(binaryFile);
-            byte[] buffer = new byte[1024];
-            int len;
-            try {
-                while ((len = fileInputStream.read(buffer)) != -1) {
-                    output.write(buffer, 0, len);
-                    approximateDateSize += len;
-                }
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
-            output.flush(); // Important before continuing with writer!
-            writer.append(CRLF).flush(); // CRLF is important! It indicates end of boundary.
-            fileInputStream.close();
-
-            // End of multipart/form-data.
-            writer.append("--").append(boundary).append("--").append(CRLF).flush();
+            method = "POST";
+            headers.put("Content-Type", "multipart/form-data; boundary=" + boundary);
+            body = createMultipartBody(new File(picturePath), boundary);
         } else {
             if (usingHttpPost) {
-                conn.setDoOutput(true);
-                conn.setRequestMethod("POST");
-                OutputStream os = conn.getOutputStream();
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
-                writer.write(requestData);
-                writer.flush();
-                writer.close();
-                os.close();
+                method = "POST";
+                body = requestData.getBytes("UTF-8");
+
+                if (isCompressionEnabled() && requestData.length() >= compressionThreshold_) {
+                    byte[] compressed = UtilsNetworking.gzip(body);
+                    L.v("[Connection Processor] Compressing request body, [" + body.length + " B] -> [" + compressed.length + " B]");
+                    body = compressed;
+
+                    headers.put("Content-Encoding", "gzip");
+                    headers.put("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+                }
             } else {
                 L.v("[Connection Processor] Using HTTP GET");
-                conn.setDoOutput(false);
             }
         }
 
+        L.v("[Connection Processor] Using HTTP POST: [" + usingHttpPost + "] forced:[" + Countly.sharedInstance().isHttpPostForced() + "] length:[" + (requestData.length() >= 2048) + "] crash:[" + requestData.contains("&crash=") + "]");
+        return new CountlyTransport.Request(method, url, headers, body, CONNECT_TIMEOUT_IN_MILLISECONDS, READ_TIMEOUT_IN_MILLISECONDS);
+    }
+
+    /**
+     * Creates a multipart/form-data body that uploads the given file
+     */
+    private byte[] createMultipartBody(final File binaryFile, final String boundary) throws IOException {
+        // Line separator required by multipart/form-data.
+        String CRLF = "\r\n";
+        String charset = "UTF-8";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, charset), true);
+        // Send binary file.
+        writer.append("--").append(boundary).append(CRLF);
+        writer.append("Content-Disposition: form-data; name=\"binaryFile\"; filename=\"").append(binaryFile.getName()).append("\"").append(CRLF);
+        writer.append("Content-Type: ").append(URLConnection.guessContentTypeFromName(binaryFile.getName())).append(CRLF);
+        writer.append("Content-Transfer-Encoding: binary").append(CRLF);
+        writer.append(CRLF).flush();
+        FileInputStream fileInputStream = new FileInputStream(binaryFile);
+        byte[] buffer = new byte[1024];
+        int len;
+        try {
+            while ((len = fileInputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, len);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        writer.append(CRLF).flush(); // CRLF is important! It indicates end of boundary.
+        fileInputStream.close();
+
+        // End of multipart/form-data.
+        writer.append("--").append(boundary).append("--").append(CRLF).flush();
+        return output.toByteArray();
+    }
+
+    /**
+     * Creates the connection for the given request data with the built-in "HttpURLConnection" transport
+     * and writes the request body. The connection is not yet connected.
+     */
+    public URLConnection urlConnectionForServerRequest(String requestData, final String customEndpoint) throws IOException {
+        return urlConnectionForServerRequest(requestData, customEndpoint, null);
+    }
+
+    URLConnection urlConnectionForServerRequest(String requestData, final String customEndpoint, @Nullable final Map<String, String> extraHeaders) throws IOException {
+        final CountlyTransport.Request request = createRequest(requestData, customEndpoint, extraHeaders);
+
+        final HttpURLConnection conn;
+        if (Countly.publicKeyPinCertificates == null && Countly.certificatePinCertificates == null) {
+            conn = (HttpURLConnection) request.url.openConnection();
+            if (sslSocketFactory_ != null && conn instanceof HttpsURLConnection) {
+                //using the shared factory so that the pooled connection can be reused
+                ((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory_);
+            }
+        } else {
+            HttpsURLConnection c = (HttpsURLConnection) request.url.openConnection();
+            c.setSSLSocketFactory(sslSocketFactory_);
+            conn = c;
+        }
+
+        if (connectionMetrics_ != null && conn instanceof HttpsURLConnection) {
+            connectionMetrics_.onRequest();
+        }
+
+        HttpURLConnectionTransport.prepareConnection(conn, request);
+
+        long approximateDateSize = request.url.toString().length() + (request.body == null ? 0 : request.body.length);
+
         //calculating header field size
         int headerIndex = 0;
         while (true) {
@@ -191,12 +368,114 @@ public class ConnectionProcessor implements Runnable {
             approximateDateSize += key.getBytes("US-ASCII").length + value.getBytes("US-ASCII").length + 2L;
         }
 
-        L.v("[Connection Processor] Using HTTP POST: [" + usingHttpPost + "] forced:[" + Countly.sharedInstance().isHttpPostForced() + "] length:[" + (requestData.length() >= 2048) + "] crash:[" + requestData.contains("&crash=") + "] | Approx data size: [" + approximateDateSize + " B]");
+        L.v("[Connection Processor] Approx data size: [" + approximateDateSize + " B]");
+
+        if (diagnostics_ != null) {
+            diagnostics_.onHttpRequestSent(approximateDateSize, getPayloadSize(request));
+        }
         return conn;
     }
 
+    /**
+     * Performs the request with the custom transport, if one is set, otherwise with the built-in "HttpURLConnection" transport.
+     * The returned response body is already decoded.
+     *
+     * @param requestData the request data that is sent
+     * @param customEndpoint endpoint to use, if null then "/i" is used
+     * @throws IOException if the request could not be performed
+     */
+    CountlyTransport.Response executeRequest(final String requestData, final String customEndpoint) throws IOException {
+        return executeRequest(requestData, customEndpoint, null);
+    }
+
+    /**
+     * @param extraHeaders headers that are only added to this request, can be null
+     */
+    CountlyTransport.Response executeRequest(final String requestData, final String customEndpoint, @Nullable final Map<String, String> extraHeaders) throws IOException {
+        final CountlyTransport.Response response;
+        if (transport_ != null) {
+            final CountlyTransport.Request request = createRequest(requestData, customEndpoint, extraHeaders);
+            if (diagnostics_ != null) {
+                diagnostics_.onHttpRequestSent(getApproximateRequestSize(request), getPayloadSize(request));
+            }
+            response = transport_.execute(request);
+        } else {
+            response = HttpURLConnectionTransport.readResponse((HttpURLConnection) urlConnectionForServerRequest(requestData, customEndpoint, extraHeaders));
+        }
+
+        if (diagnostics_ != null) {
+            diagnostics_.onHttpResponseReceived(response.code, response.body.length);
+        }
+
+        return new CountlyTransport.Response(response.code, response.headers, UtilsNetworking.decodeResponseBody(response));
+    }
+
+    /**
+     * Returns the size of the request line, headers and body, without the protocol overhead
+     */
+    static long getApproximateRequestSize(final CountlyTransport.Request request) {
+        long size = request.method.length() + request.url.toString().length() + (request.body == null ? 0 : request.body.length);
+        for (Map.Entry<String, String> header : request.headers.entrySet()) {
+            size += header.getKey().length() + header.getValue().length() + 2L;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size of the body, or of the query for requests without a body
+     */
+    static long getPayloadSize(final CountlyTransport.Request request) {
+        if (request.body != null) {
+            return request.body.length;
+        }
+        final String query = request.url.getQuery();
+        return query == null ? 0 : query.length();
+    }
+
+    /**
+     * Returns the creation timestamp of a stored request in milliseconds, or -1 if it has none
+     */
+    static long getRequestTimestamp(final String request) {
+        int start = request.indexOf("&timestamp=");
+        if (start < 0) {
+            if (!request.startsWith("timestamp=")) {
+                return -1;
+            }
+            start = 0;
+        } else {
+            start += 1;
+        }
+        start += "timestamp=".length();
+
+        long timestamp = 0;
+        int index = start;
+        while (index < request.length() && index - start < 19) {
+            final char c = request.charAt(index);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            timestamp = timestamp * 10 + (c - '0');
+            index++;
+        }
+        return index == start ? -1 : timestamp;
+    }
+
     @Override
     public void run() {
+        final long attemptsBefore = diagnostics_ == null ? 0 : diagnostics_.getRequestAttemptCount();
+
+        processRequestQueue();
+
+        if (diagnostics_ != null && diagnostics_.getListener() != null && diagnostics_.getRequestAttemptCount() != attemptsBefore) {
+            try {
+                diagnostics_.getListener().onRequestQueueProcessed(diagnostics_);
+            } catch (Exception e) {
+                L.e("[Connection Processor] Diagnostics listener threw an exception [" + e + "]");
+            }
+        }
+    }
+
+    private void processRequestQueue() {
         while (true) {
             final String[] storedEvents = storageProvider_.getRequests();
             int storedEventCount = storedEvents == null ? 0 : storedEvents.length;
@@ -236,6 +515,76 @@ public class ConnectionProcessor implements Runnable {
                 break;
             }
 
+            if (requestBackoff_ != null && !requestBackoff_.canAttempt(UtilsTime.currentTimestampMs())) {
+                L.d("[Connection Processor] Backing off after failed requests, next attempt at [" + requestBackoff_.getNextAttemptTimestamp() + "]");
+                break;
+            }
+
+            if (bulkMaxRequestCount_ > 1 && !bulkFallbackRequests_.contains(storedEvents[0]) && !(Countly.sharedInstance().isDeviceAppCrawler() && Countly.sharedInstance().ifShouldIgnoreCrawlers())) {
+                final List<String> bulkRequests = collectBulkRequests(storedEvents);
+
+                if (bulkRequests.size() > 1) {
+                    final String bulkData;
+                    try {
+                        bulkData = "requests=" + UtilsNetworking.urlEncodeString(createBulkPayload(bulkRequests).toString());
+                    } catch (JSONException e) {
+                        L.w("[Connection Processor] Failed to create bulk request, sending its requests one by one [" + e + "]");
+                        bulkFallbackRequests_.addAll(bulkRequests);
+                        continue;
+                    }
+
+                    L.d("[Connection Processor] Sending [" + bulkRequests.size() + "] requests in a single bulk request");
+
+                    try {
+                        final SendResult sRes = sendRequest(bulkData, BULK_ENDPOINT);
+                        final RequestResult rRes = sRes.result;
+                        if (rRes == RequestResult.OK) {
+                            //the server has accepted all of them, remove them in one step
+                            storageProvider_.removeRequests(bulkRequests);
+                            recordDelivery(bulkRequests);
+                            onRequestSucceeded();
+                            continue;
+                        } else if (isBulkEndpointUnsupported(sRes.responseCode)) {
+                            //the server can't handle bulk requests, don't try again during this run
+                            L.w("[Connection Processor] Bulk endpoint is not supported by the server, code:[" + sRes.responseCode + "], falling back to single requests");
+                            recordFailedAttempt(true, false);
+                            bulkMaxRequestCount_ = 0;
+                            continue;
+                        } else if (rRes == RequestResult.BAD_REQUEST) {
+                            //send them one by one so that the rejected request can be found
+                            L.w("[Connection Processor] Bulk request was rejected, sending its requests one by one");
+                            recordFailedAttempt(true, false);
+                            bulkFallbackRequests_.addAll(bulkRequests);
+                            continue;
+                        }
+                        recordFailedAttempt(true, false);
+                        onRequestFailed(sRes.retryAfterMs);
+                    } catch (Exception e) {
+                        L.w("[Connection Processor] Got exception while trying to submit bulk request with [" + bulkRequests.size() + "] requests [" + e + "]");
+                        recordFailedAttempt(true, true);
+                        onRequestFailed(-1);
+                    }
+
+                    // will retry later
+                    // stop processing, let next tick take care of retrying
+                    break;
+                }
+            }
+
+            if (parallelWorkerCount_ > 1 && workerExecutor_ != null && !(Countly.sharedInstance().isDeviceAppCrawler() && Countly.sharedInstance().ifShouldIgnoreCrawlers())) {
+                final List<String> parallelRequests = collectParallelRequests(storedEvents);
+
+                if (parallelRequests.size() > 1) {
+                    if (sendParallelRequests(parallelRequests)) {
+                        continue;
+                    }
+
+                    // will retry later
+                    // stop processing, let next tick take care of retrying
+                    break;
+                }
+            }
+
             boolean deviceIdOverride = storedEvents[0].contains("&override_id="); //if the sendable data contains a override tag
             boolean deviceIdChange = storedEvents[0].contains("&device_id="); //if the sendable data contains a device_id tag. In this case it means that we will have to change the stored device ID
 
@@ -280,79 +629,9 @@ public class ConnectionProcessor implements Runnable {
 
             if (!(Countly.sharedInstance().isDeviceAppCrawler() && Countly.sharedInstance().ifShouldIgnoreCrawlers())) {
                 //continue with sending the request to the server
-                URLConnection conn = null;
-                InputStream connInputStream = null;
                 try {
-                    // initialize and open connection
-                    conn = urlConnectionForServerRequest(eventData, null);
-                    conn.connect();
-
-                    int responseCode = 0;
-                    String responseString = "";
-                    if (conn instanceof HttpURLConnection) {
-                        final HttpURLConnection httpConn = (HttpURLConnection) conn;
-
-                        try {
-                            //assume there will be no error
-                            connInputStream = httpConn.getInputStream();
-                        } catch (Exception ex) {
-                            //in case of exception, assume there was a error in the request and change streams
-                            connInputStream = httpConn.getErrorStream();
-                        }
-
-                        responseCode = httpConn.getResponseCode();
-                        responseString = Utils.inputStreamToString(connInputStream);
-                    }
-
-                    L.d("[Connection Processor] code:[" + responseCode + "], response:[" + responseString + "], response size:[" + responseString.length() + " B], request: " + eventData);
-
-                    final RequestResult rRes;
-
-                    if (responseCode >= 200 && responseCode < 300) {
-
-                        if (responseString.isEmpty()) {
-                            L.v("[Connection Processor] Response was empty, will retry");
-                            rRes = RequestResult.RETRY;
-                        } else {
-                            JSONObject jsonObject;
-                            try {
-                                jsonObject = new JSONObject(responseString);
-                            } catch (JSONException ex) {
-                                //failed to parse, so not a valid json
-                                jsonObject = null;
-                                L.e("[Connection Processor] Failed to parse response [" + responseString + "].");
-                            }
-
-                            if (jsonObject == null) {
-                                //received unparseable response, retrying
-                                L.v("[Connection Processor] Response was a unknown, will retry");
-                                rRes = RequestResult.RETRY;
-                            } else {
-                                if (jsonObject.has("result")) {
-                                    //contains result entry
-                                    L.v("[Connection Processor] Response was a success");
-                                    rRes = RequestResult.OK;
-                                } else {
-                                    L.v("[Connection Processor] Response does not contain 'result', will retry");
-                                    rRes = RequestResult.RETRY;
-                                }
-                            }
-                        }
-                    } else if (responseCode >= 300 && responseCode < 400) {
-                        //assume redirect
-                        L.d("[Connection Processor] Encountered redirect, will retry");
-                        rRes = RequestResult.RETRY;
-                    } else if (responseCode == 400 || responseCode == 404) {
-                        L.w("[Connection Processor] Bad request, will still retry");
-                        rRes = RequestResult.RETRY;
-                    } else if (responseCode > 400) {
-                        //server down, try again later
-                        L.d("[Connection Processor] Server is down, will retry");
-                        rRes = RequestResult.RETRY;
-                    } else {
-                        L.d("[Connection Processor] Bad response code, will retry");
-                        rRes = RequestResult.RETRY;
-                    }
+                    final SendResult sRes = sendRequest(eventData, null);
+                    final RequestResult rRes = sRes.result;
 
                     // an 'if' needs to be used here so that a 'switch' statement does not 'eat' the 'break' call
                     // that is used to get out of the request loop
@@ -360,6 +639,8 @@ public class ConnectionProcessor implements Runnable {
                         // successfully submitted event data to Count.ly server, so remove
                         // this one from the stored events collection
                         storageProvider_.removeRequest(storedEvents[0]);
+                        recordDelivery(Collections.singletonList(storedEvents[0]));
+                        onRequestSucceeded();
 
                         if (deviceIdChange) {
                             deviceId_.changeToId(DeviceIdType.DEVELOPER_SUPPLIED, newId, false);
@@ -369,27 +650,24 @@ public class ConnectionProcessor implements Runnable {
                             L.v("[Connection Processor] Device ID changed, change:[" + deviceIdChange + "] | override:[" + deviceIdOverride + "]");
                             Countly.sharedInstance().notifyDeviceIdChange();
                         }
+                    } else if (rRes == RequestResult.BAD_REQUEST && shouldQuarantine(storedEvents[0])) {
+                        // the server keeps rejecting this request, move it out of the queue so that it doesn't block the requests behind it
+                        L.w("[Connection Processor] Request was rejected too many times, moving it to quarantine: [" + storedEvents[0] + "]");
+                        storageProvider_.quarantineRequest(storedEvents[0]);
+                        recordFailedAttempt(false, false);
                     } else {
                         // will retry later
                         // warning was logged above, stop processing, let next tick take care of retrying
+                        recordFailedAttempt(true, false);
+                        onRequestFailed(sRes.retryAfterMs);
                         break;
                     }
                 } catch (Exception e) {
                     L.w("[Connection Processor] Got exception while trying to submit event data: [" + eventData + "] [" + e + "]");
                     // if exception occurred, stop processing, let next tick take care of retrying
+                    recordFailedAttempt(true, true);
+                    onRequestFailed(-1);
                     break;
-                } finally {
-                    // free connection resources
-                    if (conn instanceof HttpURLConnection) {
-                        try {
-                            if (connInputStream != null) {
-                                connInputStream.close();
-                            }
-                        } catch (Throwable ignored) {
-                        }
-
-                        ((HttpURLConnection) conn).disconnect();
-                    }
                 }
             } else {
                 //device is identified as a app crawler and nothing is sent to the server
@@ -401,6 +679,331 @@ public class ConnectionProcessor implements Runnable {
         }
     }
 
+    /**
+     * Sends the given request data to the server and classifies the response.
+     *
+     * @param requestData the full request data that is sent
+     * @param customEndpoint endpoint to use, if null then "/i" is used
+     * @return the classified result of the request
+     * @throws IOException if the connection failed
+     */
+    private SendResult sendRequest(final String requestData, final String customEndpoint) throws IOException {
+        final CountlyTransport.Response response = executeRequest(requestData, customEndpoint);
+        final int responseCode = response.code;
+        final String responseString = response.getBodyString();
+
+        L.d("[Connection Processor] code:[" + responseCode + "], response:[" + responseString + "], response size:[" + responseString.length() + " B], request: " + requestData);
+
+        return new SendResult(classifyResponse(responseCode, responseString), RequestBackoff.parseRetryAfter(response.getHeader("Retry-After"), UtilsTime.currentTimestampMs()), responseCode);
+    }
+
+    private RequestResult classifyResponse(final int responseCode, final String responseString) {
+        final RequestResult rRes;
+
+        if (responseCode >= 200 && responseCode < 300) {
+
+            if (responseString.isEmpty()) {
+                L.v("[Connection Processor] Response was empty, will retry");
+                rRes = RequestResult.RETRY;
+            } else {
+                JSONObject jsonObject;
+                try {
+                    jsonObject = new JSONObject(responseString);
+                } catch (JSONException ex) {
+                    //failed to parse, so not a valid json
+                    jsonObject = null;
+                    L.e("[Connection Processor] Failed to parse response [" + responseString + "].");
+                }
+
+                if (jsonObject == null) {
+                    //received unparseable response, retrying
+                    L.v("[Connection Processor] Response was a unknown, will retry");
+                    rRes = RequestResult.RETRY;
+                } else {
+                    if (jsonObject.has("result")) {
+                        //contains result entry
+                        L.v("[Connection Processor] Response was a success");
+                        rRes = RequestResult.OK;
+                    } else {
+                        L.v("[Connection Processor] Response does not contain 'result', will retry");
+                        rRes = RequestResult.RETRY;
+                    }
+                }
+            }
+        } else if (responseCode >= 300 && responseCode < 400) {
+            //assume redirect
+            L.d("[Connection Processor] Encountered redirect, will retry");
+            rRes = RequestResult.RETRY;
+        } else if (responseCode == 400 || responseCode == 413) {
+            L.w("[Connection Processor] Bad request, will still retry");
+            rRes = RequestResult.BAD_REQUEST;
+        } else if (responseCode == 404) {
+            L.w("[Connection Processor] Endpoint not found, will still retry");
+            rRes = RequestResult.RETRY;
+        } else if (responseCode > 400) {
+            //server down, try again later
+            L.d("[Connection Processor] Server is down, will retry");
+            rRes = RequestResult.RETRY;
+        } else {
+            L.d("[Connection Processor] Bad response code, will retry");
+            rRes = RequestResult.RETRY;
+        }
+
+        return rRes;
+    }
+
+    /**
+     * Returns true if the request has to be sent only after all previous requests have been sent
+     * and before any following request is sent.
+     * This is the case for session requests and requests that change or merge the device ID.
+     */
+    static boolean requiresOrdering(final String request) {
+        return request.contains("&device_id=") || request.contains("&override_id=") || request.contains("&begin_session=") || request.contains("&session_duration=") || request.contains("&end_session=");
+    }
+
+    /**
+     * Collects the consecutive requests from the start of the queue that can be sent concurrently,
+     * at most one for every worker. Collection stops at the first request that requires ordering.
+     */
+    List<String> collectParallelRequests(final String[] storedRequests) {
+        final List<String> parallelRequests = new ArrayList<>();
+
+        for (String request : storedRequests) {
+            if (parallelRequests.size() >= parallelWorkerCount_ || requiresOrdering(request)) {
+                break;
+            }
+            parallelRequests.add(request);
+        }
+
+        return parallelRequests;
+    }
+
+    /**
+     * Sends the given requests concurrently and waits for all of them to finish.
+     * Accepted requests are removed in a single batch after the round, in queue order, also if some of the others failed
+     * or if the processor is interrupted while waiting. A worker that is accepted only after the round was closed
+     * removes its request itself, so that it is not sent again.
+     *
+     * @return true if all requests were handled and processing can continue
+     */
+    private boolean sendParallelRequests(final List<String> requests) {
+        final String deviceIdParam = "&device_id=" + UtilsNetworking.urlEncodeString(deviceId_.getCurrentId());
+        L.d("[Connection Processor] Sending [" + requests.size() + "] requests concurrently");
+
+        //guarded by itself, the last element marks that the round is closed
+        final boolean[] accepted = new boolean[requests.size() + 1];
+
+        final List<Future<SendResult>> futures = new ArrayList<>(requests.size());
+        for (int a = 0; a < requests.size(); a++) {
+            final String request = requests.get(a);
+            final int index = a;
+            final Callable<SendResult> send = new Callable<SendResult>() {
+                @Override
+                public SendResult call() throws Exception {
+                    final SendResult sRes = sendRequest(request + deviceIdParam, null);
+                    if (sRes.result == RequestResult.OK) {
+                        boolean roundClosed;
+                        synchronized (accepted) {
+                            roundClosed = accepted[requests.size()];
+                            accepted[index] = true;
+                        }
+                        if (roundClosed) {
+                            storageProvider_.removeRequest(request);
+                        }
+                        recordDelivery(Collections.singletonList(request));
+                    }
+                    return sRes;
+                }
+            };
+
+            try {
+                futures.add(workerExecutor_.submit(send));
+            } catch (RejectedExecutionException e) {
+                //the workers are busy, send it on this thread like without parallel sending
+                L.w("[Connection Processor] Could not start a concurrent request, sending it from the processor");
+                final FutureTask<SendResult> inline = new FutureTask<>(send);
+                inline.run();
+                futures.add(inline);
+            }
+        }
+
+        //the queue is backed off once for the whole round, not for every failed request
+        boolean failed = false;
+        long retryAfterMs = -1;
+
+        for (int a = 0; a < requests.size(); a++) {
+            final String request = requests.get(a);
+            final SendResult sRes;
+            try {
+                sRes = futures.get(a).get();
+            } catch (InterruptedException e) {
+                //requests that were not started yet are not sent, the ones that are running remove themselves if they are accepted later
+                L.w("[Connection Processor] Interrupted while waiting for concurrent requests");
+                for (int b = a; b < futures.size(); b++) {
+                    futures.get(b).cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                failed = true;
+                break;
+            } catch (ExecutionException e) {
+                L.w("[Connection Processor] Got exception while trying to submit request data: [" + request + "] [" + e.getCause() + "]");
+                recordFailedAttempt(true, true);
+                failed = true;
+                continue;
+            }
+
+            //accepted requests are removed together after the round
+            if (sRes.result == RequestResult.BAD_REQUEST && shouldQuarantine(request)) {
+                L.w("[Connection Processor] Request was rejected too many times, moving it to quarantine: [" + request + "]");
+                storageProvider_.quarantineRequest(request);
+                recordFailedAttempt(false, false);
+            } else if (sRes.result != RequestResult.OK) {
+                recordFailedAttempt(true, false);
+                failed = true;
+                retryAfterMs = Math.max(retryAfterMs, sRes.retryAfterMs);
+            }
+        }
+
+        final List<String> acceptedRequests = new ArrayList<>(requests.size());
+        synchronized (accepted) {
+            accepted[requests.size()] = true;
+            for (int a = 0; a < requests.size(); a++) {
+                if (accepted[a]) {
+                    acceptedRequests.add(requests.get(a));
+                }
+            }
+        }
+        storageProvider_.removeRequests(acceptedRequests);
+
+        if (!failed) {
+            onRequestSucceeded();
+        } else {
+            onRequestFailed(retryAfterMs);
+        }
+
+        return !failed;
+    }
+
+    /**
+     * Records a successful attempt that delivered the given requests
+     */
+    private void recordDelivery(final List<String> deliveredRequests) {
+        if (diagnostics_ == null) {
+            return;
+        }
+
+        diagnostics_.onAttemptSucceeded();
+        final long now = UtilsTime.currentTimestampMs();
+        for (String request : deliveredRequests) {
+            diagnostics_.onRequestDelivered(getRequestTimestamp(request), now);
+        }
+    }
+
+    private void recordFailedAttempt(boolean willRetry, boolean connectionError) {
+        if (diagnostics_ != null) {
+            diagnostics_.onAttemptFailed(willRetry, connectionError);
+        }
+    }
+
+    /**
+     * Counts a attempt of a request that the server rejected as a bad request.
+     * This only counts the attempts of the request, the queue is backed off once per sending round.
+     *
+     * @return true if the request has failed too many times and should not be retried
+     */
+    private boolean shouldQuarantine(final String request) {
+        final int attempts = storageProvider_.addBadRequestAttempt(request);
+        L.d("[Connection Processor] Bad request, attempt [" + attempts + "] out of [" + maxBadRequestAttempts_ + "]");
+        return attempts >= maxBadRequestAttempts_;
+    }
+
+    private void onRequestSucceeded() {
+        storageProvider_.clearBadRequestAttempts();
+        if (requestBackoff_ != null) {
+            requestBackoff_.onSuccess();
+        }
+    }
+
+    /**
+     * Backs off the queue after a failed request
+     *
+     * @param retryAfterMs delay requested by the server, negative if none
+     */
+    private void onRequestFailed(long retryAfterMs) {
+        if (requestBackoff_ != null) {
+            requestBackoff_.onFailure(UtilsTime.currentTimestampMs(), retryAfterMs);
+            if (backoffListener_ != null) {
+                backoffListener_.run();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the response code shows that the server has no bulk endpoint,
+     * other failures are retried in bulk after backing off
+     */
+    static boolean isBulkEndpointUnsupported(int responseCode) {
+        return responseCode == 404 || responseCode == 405 || responseCode == 501;
+    }
+
+    /**
+     * Collects the consecutive requests from the start of the queue that can be sent in a single bulk request.
+     * Collection stops at the first request that changes or merges the device ID, or uploads a picture,
+     * because those have to be sent on their own.
+     */
+    List<String> collectBulkRequests(final String[] storedRequests) {
+        final List<String> bulkRequests = new ArrayList<>();
+        long byteSize = 0;
+
+        for (String request : storedRequests) {
+            if (bulkRequests.size() >= bulkMaxRequestCount_) {
+                break;
+            }
+
+            if (request.contains("&override_id=") || request.contains("&device_id=") || request.contains("&" + ModuleUserProfile.PICTURE_PATH_KEY + "=")) {
+                break;
+            }
+
+            byteSize += request.length();
+            if (!bulkRequests.isEmpty() && byteSize > bulkMaxByteSize_) {
+                break;
+            }
+
+            bulkRequests.add(request);
+        }
+
+        return bulkRequests;
+    }
+
+    /**
+     * Converts the stored requests into the JSON array that is expected by the bulk endpoint.
+     * Every request becomes a object of its decoded parameters, the current device ID is added to each of them.
+     */
+    JSONArray createBulkPayload(final List<String> requests) throws JSONException {
+        final JSONArray payload = new JSONArray();
+        final String deviceId = deviceId_.getCurrentId();
+
+        for (String request : requests) {
+            final JSONObject params = new JSONObject();
+            for (String pair : request.split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+
+                final int idx = pair.indexOf('=');
+                if (idx < 0) {
+                    params.put(UtilsNetworking.urlDecodeString(pair), "");
+                } else {
+                    params.put(UtilsNetworking.urlDecodeString(pair.substring(0, idx)), UtilsNetworking.urlDecodeString(pair.substring(idx + 1)));
+                }
+            }
+            params.put("device_id", deviceId);
+            payload.put(params);
+        }
+
+        return payload;
+    }
+
     // for unit testing
     String getServerURL() {
         return serverURL_;
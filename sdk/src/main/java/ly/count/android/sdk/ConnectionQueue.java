@@ -26,19 +26,23 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 
 /**
  * ConnectionQueue queues session and event data and periodically sends that data to
  * a Count.ly server on a background thread.
  *
- * None of the methods in this class are synchronized because access to this class is
+ * Most of the methods in this class are not synchronized because access to this class is
  * controlled by the Countly singleton, which is synchronized.
+ * "tick" is the exception, it is also called from the timer and the request queue module,
+ * and it must never start a second ConnectionProcessor while one is still running.
  *
  * NOTE: This class is only public to facilitate unit testing, because
  * of this bug in dexmaker: https://code.google.com/p/dexmaker/issues/detail?id=34
@@ -48,12 +52,48 @@ class ConnectionQueue implements RequestQueueProvider {
     private Context context_;
     private Future<?> connectionProcessorFuture_;
     private DeviceId deviceId_;
-    private SSLContext sslContext_;
+    private volatile SSLSocketFactory sslSocketFactory_;
+    private final ConnectionMetrics connectionMetrics_ = new ConnectionMetrics();
+    private final DiagnosticsMetrics diagnosticsMetrics_ = new DiagnosticsMetrics();
     BaseInfoProvider baseInfoProvider;
 
     private Map<String, String> requestHeaderCustomValues;
     Map<String, String> metricOverride = null;
 
+    //bulk requests are disabled by default
+    int bulkMaxRequestCount = 0;
+    int bulkMaxByteSize = 0;
+
+    //request compression is disabled by default
+    int compressionThreshold = -1;
+
+    //if null, the built-in HttpURLConnection transport is used
+    CountlyTransport transport = null;
+
+    //if null, failed requests are retried on every tick
+    RequestBackoff requestBackoff = null;
+
+    //one-shot tick at the end of the backoff, so that a retry doesn't wait for the next timer tick
+    private ScheduledFuture<?> backoffRetryFuture_ = null;
+    private long backoffRetryTimestamp_ = 0;
+    //the retry is checked again after this long if the processor that failed has not finished yet
+    static final long BACKOFF_RETRY_MIN_DELAY_MS = 100;
+
+    //rejected requests are quarantined after this many attempts, with or without the backoff
+    int maxBadRequestAttempts = ConnectionProcessor.DEFAULT_MAX_BAD_REQUEST_ATTEMPTS;
+
+    //requests are sent one at a time by default
+    int parallelWorkerCount = 0;
+
+    //set while the deferred part of init is running, requests are only stored until it finishes
+    volatile boolean deferredInitPending = false;
+
+    private final RequestBuilder requestBuilder = new RequestBuilder();
+    private ExecutorService workerExecutor_;
+
+    //if null, the scheduler of the Countly instance is used
+    private CountlyScheduler scheduler_;
+
     protected ModuleLog L;
     protected ConsentProvider consentProvider;//link to the consent module
     StorageProvider storageProvider;
@@ -62,6 +102,17 @@ class ConnectionQueue implements RequestQueueProvider {
         baseInfoProvider = bip;
     }
 
+    void setScheduler(CountlyScheduler scheduler) {
+        scheduler_ = scheduler;
+    }
+
+    @NonNull CountlyScheduler getScheduler() {
+        if (scheduler_ == null) {
+            scheduler_ = Countly.sharedInstance().getScheduler();
+        }
+        return scheduler_;
+    }
+
     void setStorageProvider(StorageProvider sp) {
         storageProvider = sp;
     }
@@ -78,18 +129,35 @@ class ConnectionQueue implements RequestQueueProvider {
         context_ = context;
     }
 
+    /**
+     * Creates the socket factory that is shared by all requests.
+     * A single instance is needed so that pooled connections can be reused between requests.
+     * If pinning is set, the factory uses the pinned certificates.
+     */
     void setupSSLContext() {
+        SSLSocketFactory factory;
         if (Countly.publicKeyPinCertificates == null && Countly.certificatePinCertificates == null) {
-            sslContext_ = null;
+            factory = HttpsURLConnection.getDefaultSSLSocketFactory();
         } else {
             try {
                 TrustManager[] tm = { new CertificateTrustManager(Countly.publicKeyPinCertificates, Countly.certificatePinCertificates) };
-                sslContext_ = SSLContext.getInstance("TLS");
-                sslContext_.init(null, tm, null);
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, tm, null);
+                factory = sslContext.getSocketFactory();
             } catch (Throwable e) {
                 throw new IllegalStateException(e);
             }
         }
+
+        sslSocketFactory_ = new MeteredSSLSocketFactory(factory, connectionMetrics_);
+    }
+
+    @NonNull public ConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics_;
+    }
+
+    @NonNull public DiagnosticsMetrics getDiagnosticsMetrics() {
+        return diagnosticsMetrics_;
     }
 
     DeviceId getDeviceId() {
@@ -104,6 +172,37 @@ class ConnectionQueue implements RequestQueueProvider {
         requestHeaderCustomValues = headerCustomValues;
     }
 
+    void setBulkRequestLimits(int maxRequestCount, int maxByteSize) {
+        bulkMaxRequestCount = maxRequestCount;
+        bulkMaxByteSize = maxByteSize;
+    }
+
+    void setCompressionThreshold(int threshold) {
+        compressionThreshold = threshold;
+    }
+
+    void setParallelWorkerCount(int workerCount) {
+        parallelWorkerCount = workerCount;
+    }
+
+    void setRequestBackoff(@Nullable RequestBackoff backoff) {
+        requestBackoff = backoff;
+    }
+
+    void setTransport(@Nullable CountlyTransport customTransport) {
+        transport = customTransport;
+    }
+
+    /**
+     * Returns the custom transport if one is set, otherwise a transport that uses "HttpURLConnection"
+     */
+    @NonNull CountlyTransport getTransport() {
+        if (transport != null) {
+            return transport;
+        }
+        return new HttpURLConnectionTransport(null);
+    }
+
     protected void setMetricOverride(Map<String, String> metricOverride) {
         if (L.logEnabled()) {
             if (metricOverride != null) {
@@ -152,17 +251,14 @@ class ConnectionQueue implements RequestQueueProvider {
         L.d("[Connection Queue] beginSession");
 
         boolean dataAvailable = false;//will only send data if there is something valuable to send
-        String data = prepareCommonRequestData();
+        final StringBuilder data = startRequest();
 
         if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
             //add session data if consent given
-            data += "&begin_session=1"
-                + "&metrics=" + DeviceInfo.getMetrics(context_, metricOverride);//can be only sent with begin session
+            data.append("&begin_session=1")
+                .append("&metrics=").append(DeviceInfo.getMetrics(context_, metricOverride));//can be only sent with begin session
 
-            String locationData = prepareLocationData(locationDisabled, locationCountryCode, locationCity, locationGpsCoordinates, locationIpAddress);
-            if (!locationData.isEmpty()) {
-                data += locationData;
-            }
+            appendLocationData(data, locationDisabled, locationCountryCode, locationCity, locationGpsCoordinates, locationIpAddress);
 
             dataAvailable = true;
         }
@@ -170,7 +266,7 @@ class ConnectionQueue implements RequestQueueProvider {
         Countly.sharedInstance().isBeginSessionSent = true;
 
         if (dataAvailable) {
-            addRequestToQueue(data);
+            addRequestToQueue(data.toString());
             tick();
         }
     }
@@ -188,15 +284,15 @@ class ConnectionQueue implements RequestQueueProvider {
 
         if (duration > 0) {
             boolean dataAvailable = false;//will only send data if there is something valuable to send
-            String data = prepareCommonRequestData();
+            final StringBuilder data = startRequest();
 
             if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
-                data += "&session_duration=" + duration;
+                data.append("&session_duration=").append(duration);
                 dataAvailable = true;
             }
 
             if (dataAvailable) {
-                addRequestToQueue(data);
+                addRequestToQueue(data.toString());
                 tick();
             }
         }
@@ -212,16 +308,16 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
-        String data = prepareCommonRequestData();
+        final StringBuilder data = startRequest();
 
         if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
-            data += "&session_duration=" + duration;
+            data.append("&session_duration=").append(duration);
         }
 
         // !!!!! THIS SHOULD ALWAYS BE ADDED AS THE LAST FIELD, OTHERWISE MERGING BREAKS !!!!!
-        data += "&device_id=" + UtilsNetworking.urlEncodeString(deviceId);
+        data.append("&device_id=").append(UtilsNetworking.urlEncodeString(deviceId));
 
-        addRequestToQueue(data);
+        addRequestToQueue(data.toString());
         tick();
     }
 
@@ -234,18 +330,18 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
-        final String data = prepareCommonRequestData()
-            + "&token_session=1"
-            + "&android_token=" + UtilsNetworking.urlEncodeString(token)
-            + "&token_provider=" + provider
-            + "&test_mode=" + (mode == Countly.CountlyMessagingMode.TEST ? 2 : 0)
-            + "&locale=" + UtilsNetworking.urlEncodeString(DeviceInfo.getLocale());
+        final String data = startRequest()
+            .append("&token_session=1")
+            .append("&android_token=").append(UtilsNetworking.urlEncodeString(token))
+            .append("&token_provider=").append(provider)
+            .append("&test_mode=").append(mode == Countly.CountlyMessagingMode.TEST ? 2 : 0)
+            .append("&locale=").append(UtilsNetworking.urlEncodeString(DeviceInfo.getLocale()))
+            .toString();
 
         L.d("[Connection Queue] Waiting for 10 seconds before adding token request to queue");
 
         // To ensure begin_session will be fully processed by the server before token_session
-        final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
-        worker.schedule(new Runnable() {
+        getScheduler().timers().schedule(new Runnable() {
             @Override
             public void run() {
                 L.d("[Connection Queue] Finished waiting 10 seconds adding token request");
@@ -271,24 +367,24 @@ class ConnectionQueue implements RequestQueueProvider {
         L.d("[Connection Queue] endSession");
 
         boolean dataAvailable = false;//will only send data if there is something valuable to send
-        String data = prepareCommonRequestData();
+        final StringBuilder data = startRequest();
 
         if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
-            data += "&end_session=1";
+            data.append("&end_session=1");
             if (duration > 0) {
-                data += "&session_duration=" + duration;
+                data.append("&session_duration=").append(duration);
             }
             dataAvailable = true;
         }
 
         if (deviceIdOverride != null && consentProvider.anyConsentGiven()) {
             //if no consent is given, device ID override is not sent
-            data += "&override_id=" + UtilsNetworking.urlEncodeString(deviceIdOverride);
+            data.append("&override_id=").append(UtilsNetworking.urlEncodeString(deviceIdOverride));
             dataAvailable = true;
         }
 
         if (dataAvailable) {
-            addRequestToQueue(data);
+            addRequestToQueue(data.toString());
             tick();
         }
     }
@@ -300,11 +396,11 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] sendLocation");
 
-        String data = prepareCommonRequestData();
+        final StringBuilder data = startRequest();
 
-        data += prepareLocationData(locationDisabled, locationCountryCode, locationCity, locationGpsCoordinates, locationIpAddress);
+        appendLocationData(data, locationDisabled, locationCountryCode, locationCity, locationGpsCoordinates, locationIpAddress);
 
-        addRequestToQueue(data);
+        addRequestToQueue(data.toString());
 
         tick();
     }
@@ -328,8 +424,7 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
-        String data = prepareCommonRequestData() + userdata;
-        addRequestToQueue(data);
+        addRequestToQueue(startRequest().append(userdata).toString());
         tick();
     }
 
@@ -347,9 +442,9 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
-        String param = "&aid=" + UtilsNetworking.urlEncodeString(attributionObj);
-
-        String data = prepareCommonRequestData() + param;
+        final String data = startRequest()
+            .append("&aid=").append(UtilsNetworking.urlEncodeString(attributionObj))
+            .toString();
         addRequestToQueue(data);
 
         tick();
@@ -369,9 +464,9 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
-        String res = "&attribution_data=" + UtilsNetworking.urlEncodeString(attributionData);
-
-        String data = prepareCommonRequestData() + res;
+        final String data = startRequest()
+            .append("&attribution_data=").append(UtilsNetworking.urlEncodeString(attributionData))
+            .toString();
         addRequestToQueue(data);
 
         tick();
@@ -386,22 +481,22 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
-        String res = "";
-
-        if (!campaignID.isEmpty()) {
-            res += "&campaign_id=" + UtilsNetworking.urlEncodeString(campaignID);
-        }
-        if (userID != null && !userID.isEmpty()) {
-            res += "&campaign_user=" + UtilsNetworking.urlEncodeString(userID);
-        }
+        final boolean campaignIdSet = !campaignID.isEmpty();
+        final boolean userIdSet = userID != null && !userID.isEmpty();
 
-        if (res.length() == 0) {
+        if (!campaignIdSet && !userIdSet) {
             L.w("[Connection Queue] sendDirectAttributionLegacy, attribution not sent, both campaign ID and user ID are either null or empty");
             return;
         }
 
-        String data = prepareCommonRequestData() + res;
-        addRequestToQueue(data);
+        final StringBuilder data = startRequest();
+        if (campaignIdSet) {
+            data.append("&campaign_id=").append(UtilsNetworking.urlEncodeString(campaignID));
+        }
+        if (userIdSet) {
+            data.append("&campaign_user=").append(UtilsNetworking.urlEncodeString(userID));
+        }
+        addRequestToQueue(data.toString());
 
         tick();
     }
@@ -421,8 +516,9 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
-        final String data = prepareCommonRequestData()
-            + "&crash=" + UtilsNetworking.urlEncodeString(crashData);
+        final String data = startRequest()
+            .append("&crash=").append(UtilsNetworking.urlEncodeString(crashData))
+            .toString();
 
         addRequestToQueue(data);
 
@@ -443,8 +539,9 @@ class ConnectionQueue implements RequestQueueProvider {
         ///CONSENT FOR EVENTS IS CHECKED ON EVENT CREATION//
         ////////////////////////////////////////////////////
 
-        final String data = prepareCommonRequestData()
-            + "&events=" + events;
+        final String data = startRequest()
+            .append("&events=").append(events)
+            .toString();
 
         addRequestToQueue(data);
         tick();
@@ -454,8 +551,9 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] sendConsentChanges");
 
-        final String data = prepareCommonRequestData()
-            + "&consent=" + UtilsNetworking.urlEncodeString(formattedConsentChanges);
+        final String data = startRequest()
+            .append("&consent=").append(UtilsNetworking.urlEncodeString(formattedConsentChanges))
+            .toString();
 
         addRequestToQueue(data);
 
@@ -478,9 +576,10 @@ class ConnectionQueue implements RequestQueueProvider {
 
         String apmData = "{\"type\":\"device\",\"name\":\"" + key + "\", \"apm_metrics\":{\"duration\": " + durationMs + customMetrics + "}, \"stz\": " + startMs + ", \"etz\": " + endMs + "}";
 
-        final String data = prepareCommonRequestData()
-            + "&count=1"
-            + "&apm=" + UtilsNetworking.urlEncodeString(apmData);
+        final String data = startRequest()
+            .append("&count=1")
+            .append("&apm=").append(UtilsNetworking.urlEncodeString(apmData))
+            .toString();
 
         addRequestToQueue(data);
 
@@ -504,9 +603,10 @@ class ConnectionQueue implements RequestQueueProvider {
         String apmMetrics = "{\"response_time\": " + responseTimeMs + ", \"response_payload_size\":" + responsePayloadSize + ", \"response_code\":" + responseCode + ", \"request_payload_size\":" + requestPayloadSize + "}";
         String apmData = "{\"type\":\"network\",\"name\":\"" + networkTraceKey + "\", \"apm_metrics\":" + apmMetrics + ", \"stz\": " + startMs + ", \"etz\": " + endMs + "}";
 
-        final String data = prepareCommonRequestData()
-            + "&count=1"
-            + "&apm=" + UtilsNetworking.urlEncodeString(apmData);
+        final String data = startRequest()
+            .append("&count=1")
+            .append("&apm=").append(UtilsNetworking.urlEncodeString(apmData))
+            .toString();
 
         addRequestToQueue(data);
 
@@ -527,9 +627,10 @@ class ConnectionQueue implements RequestQueueProvider {
 
         String apmData = "{\"type\":\"device\",\"name\":\"app_start\", \"apm_metrics\":{\"duration\": " + durationMs + "}, \"stz\": " + startMs + ", \"etz\": " + endMs + "}";
 
-        final String data = prepareCommonRequestData()
-            + "&count=1"
-            + "&apm=" + UtilsNetworking.urlEncodeString(apmData);
+        final String data = startRequest()
+            .append("&count=1")
+            .append("&apm=").append(UtilsNetworking.urlEncodeString(apmData))
+            .toString();
 
         addRequestToQueue(data);
 
@@ -550,99 +651,109 @@ class ConnectionQueue implements RequestQueueProvider {
 
         String apmData = "{\"type\":\"device\",\"name\":\"" + eventName + "\", \"apm_metrics\":{\"duration\": " + durationMs + "}, \"stz\": " + startMs + ", \"etz\": " + endMs + "}";
 
-        final String data = prepareCommonRequestData()
-            + "&count=1"
-            + "&apm=" + UtilsNetworking.urlEncodeString(apmData);
+        final String data = startRequest()
+            .append("&count=1")
+            .append("&apm=").append(UtilsNetworking.urlEncodeString(apmData))
+            .toString();
 
         addRequestToQueue(data);
 
         tick();
     }
 
-    String prepareCommonRequestData() {
-        UtilsTime.Instant instant = UtilsTime.getCurrentInstant();
-
-        return "app_key=" + UtilsNetworking.urlEncodeString(baseInfoProvider.getAppKey())
-            + "&timestamp=" + instant.timestampMs
-            + "&hour=" + instant.hour
-            + "&dow=" + instant.dow
-            + "&tz=" + DeviceInfo.getTimezoneOffset()
-            + "&sdk_version=" + Countly.sharedInstance().COUNTLY_SDK_VERSION_STRING
-            + "&sdk_name=" + Countly.sharedInstance().COUNTLY_SDK_NAME;
+    /**
+     * Starts a request with the common request data.
+     * The returned builder is reused by the next request of the same thread,
+     * so it has to be turned into a String before another request is started.
+     */
+    @NonNull StringBuilder startRequest() {
+        return requestBuilder.startRequest(baseInfoProvider.getAppKey(), String.valueOf(Countly.sharedInstance().COUNTLY_SDK_VERSION_STRING), String.valueOf(Countly.sharedInstance().COUNTLY_SDK_NAME));
     }
 
-    private String prepareLocationData(boolean locationDisabled, String locationCountryCode, String locationCity, String locationGpsCoordinates, String locationIpAddress) {
-        String data = "";
+    String prepareCommonRequestData() {
+        return startRequest().toString();
+    }
 
+    private void appendLocationData(@NonNull StringBuilder data, boolean locationDisabled, String locationCountryCode, String locationCity, String locationGpsCoordinates, String locationIpAddress) {
         if (locationDisabled || !consentProvider.getConsent(Countly.CountlyFeatureNames.location)) {
             //if location is disabled or consent not given, send empty location info
             //this way it is cleared server side and geoip is not used
             //do this only if allowed
-            data += "&location=";
+            data.append("&location=");
         } else {
             //if we get here, location consent was given
             //location should be sent, add all the fields we have
 
             if (locationGpsCoordinates != null && !locationGpsCoordinates.isEmpty()) {
-                data += "&location=" + UtilsNetworking.urlEncodeString(locationGpsCoordinates);
+                data.append("&location=").append(UtilsNetworking.urlEncodeString(locationGpsCoordinates));
             }
 
             if (locationCity != null && !locationCity.isEmpty()) {
-                data += "&city=" + UtilsNetworking.urlEncodeString(locationCity);
+                data.append("&city=").append(UtilsNetworking.urlEncodeString(locationCity));
             }
 
             if (locationCountryCode != null && !locationCountryCode.isEmpty()) {
-                data += "&country_code=" + UtilsNetworking.urlEncodeString(locationCountryCode);
+                data.append("&country_code=").append(UtilsNetworking.urlEncodeString(locationCountryCode));
             }
 
             if (locationIpAddress != null && !locationIpAddress.isEmpty()) {
-                data += "&ip=" + UtilsNetworking.urlEncodeString(locationIpAddress);
+                data.append("&ip=").append(UtilsNetworking.urlEncodeString(locationIpAddress));
             }
         }
-        return data;
     }
 
     public String prepareRemoteConfigRequest(String keysInclude, String keysExclude) {
-        String data = prepareCommonRequestData()
-            + "&method=fetch_remote_config"
-            + "&device_id=" + UtilsNetworking.urlEncodeString(deviceId_.getCurrentId());
+        final StringBuilder data = startRequest()
+            .append("&method=fetch_remote_config")
+            .append("&device_id=").append(UtilsNetworking.urlEncodeString(deviceId_.getCurrentId()));
 
         if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
             //add session data if consent given
-            data += "&metrics=" + DeviceInfo.getMetrics(context_, metricOverride);
+            data.append("&metrics=").append(DeviceInfo.getMetrics(context_, metricOverride));
         }
 
         //add key filters
         if (keysInclude != null) {
-            data += "&keys=" + UtilsNetworking.urlEncodeString(keysInclude);
+            data.append("&keys=").append(UtilsNetworking.urlEncodeString(keysInclude));
         } else if (keysExclude != null) {
-            data += "&omit_keys=" + UtilsNetworking.urlEncodeString(keysExclude);
+            data.append("&omit_keys=").append(UtilsNetworking.urlEncodeString(keysExclude));
         }
 
-        return data;
+        return data.toString();
     }
 
     public String prepareRatingWidgetRequest(String widgetId) {
-        String data = prepareCommonRequestData()
-            + "&widget_id=" + UtilsNetworking.urlEncodeString(widgetId)
-            + "&device_id=" + UtilsNetworking.urlEncodeString(deviceId_.getCurrentId());
-        return data;
+        return startRequest()
+            .append("&widget_id=").append(UtilsNetworking.urlEncodeString(widgetId))
+            .append("&device_id=").append(UtilsNetworking.urlEncodeString(deviceId_.getCurrentId()))
+            .toString();
     }
 
     public String prepareFeedbackListRequest() {
-        String data = prepareCommonRequestData()
-            + "&method=feedback"
-            + "&device_id=" + UtilsNetworking.urlEncodeString(deviceId_.getCurrentId());
+        return startRequest()
+            .append("&method=feedback")
+            .append("&device_id=").append(UtilsNetworking.urlEncodeString(deviceId_.getCurrentId()))
+            .toString();
+    }
 
-        return data;
+    /**
+     * Sets the executor that sends independent requests concurrently.
+     * The connection processor waits for the workers, so they have their own lane that never shares threads with it.
+     */
+    void ensureWorkerExecutor() {
+        if (workerExecutor_ == null) {
+            workerExecutor_ = getScheduler().lane(CountlyScheduler.Lane.PARALLEL_SEND);
+        }
     }
 
     /**
-     * Ensures that an executor has been created for ConnectionProcessor instances to be submitted to.
+     * Ensures that an executor has been set for ConnectionProcessor instances to be submitted to.
+     * The request queue lane has a single thread, so stored requests are sent in order
+     * and immediate requests on the network lane don't wait for the queue to drain.
      */
     void ensureExecutor() {
         if (executor_ == null) {
-            executor_ = Executors.newSingleThreadExecutor();
+            executor_ = getScheduler().lane(CountlyScheduler.Lane.REQUEST_QUEUE);
         }
     }
 
@@ -651,8 +762,10 @@ class ConnectionQueue implements RequestQueueProvider {
      * process the local connection queue data.
      * Does nothing if there is connection queue data or if a ConnectionProcessor
      * is already running.
+     * Synchronized, because two ticks that both see a finished ConnectionProcessor
+     * would otherwise start two of them, which would send the same stored requests twice.
      */
-    public void tick() {
+    public synchronized void tick() {
         L.v("[Connection Queue] tick, Not empty:[" + !isRequestQueueEmpty() + "], Has processor:[" + (connectionProcessorFuture_ == null) + "], Done or null:[" + (connectionProcessorFuture_ == null
             || connectionProcessorFuture_.isDone()) + "]");
 
@@ -661,14 +774,99 @@ class ConnectionQueue implements RequestQueueProvider {
             return;
         }
 
+        if (deferredInitPending) {
+            L.v("[Connection Queue] tick, waiting for the deferred init to finish");
+            return;
+        }
+
+        if (requestBackoff != null && !requestBackoff.canAttempt(UtilsTime.currentTimestampMs())) {
+            L.v("[Connection Queue] tick, backing off after failed requests until [" + requestBackoff.getNextAttemptTimestamp() + "]");
+            scheduleBackoffRetry();
+            return;
+        }
+
         if (!isRequestQueueEmpty() && (connectionProcessorFuture_ == null || connectionProcessorFuture_.isDone())) {
             ensureExecutor();
-            connectionProcessorFuture_ = executor_.submit(createConnectionProcessor());
+            try {
+                connectionProcessorFuture_ = executor_.submit(createConnectionProcessor());
+            } catch (RejectedExecutionException ex) {
+                //the request queue lane is full, the next tick tries again
+                L.w("[Connection Queue] tick, could not start the connection processor, " + ex.getMessage());
+            }
         }
     }
 
+    /**
+     * Schedules a tick for the time the backoff ends.
+     * A retry that is already scheduled for that time is kept, one for a different time is replaced.
+     */
+    synchronized void scheduleBackoffRetry() {
+        if (requestBackoff == null) {
+            return;
+        }
+
+        final long nextAttempt = requestBackoff.getNextAttemptTimestamp();
+        if (backoffRetryFuture_ != null && !backoffRetryFuture_.isDone()) {
+            if (backoffRetryTimestamp_ == nextAttempt) {
+                return;
+            }
+            backoffRetryFuture_.cancel(false);
+        }
+
+        final long delay = Math.max(nextAttempt - UtilsTime.currentTimestampMs(), BACKOFF_RETRY_MIN_DELAY_MS);
+        try {
+            backoffRetryFuture_ = getScheduler().timers().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onBackoffRetry();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            backoffRetryTimestamp_ = nextAttempt;
+        } catch (RejectedExecutionException ex) {
+            //the SDK is shutting down, the next init ticks again
+            L.w("[Connection Queue] Could not schedule the retry after backing off, " + ex.getMessage());
+        }
+    }
+
+    void onBackoffRetry() {
+        final boolean processorRunning;
+        synchronized (this) {
+            backoffRetryFuture_ = null;
+            processorRunning = connectionProcessorFuture_ != null && !connectionProcessorFuture_.isDone();
+        }
+
+        if (processorRunning) {
+            //the processor that failed may still be finishing, check again unless it has already succeeded since
+            if (requestBackoff != null && requestBackoff.getFailureCount() > 0) {
+                scheduleBackoffRetry();
+            }
+            return;
+        }
+
+        L.d("[Connection Queue] Backoff ended, retrying the stored requests");
+        tick();
+    }
+
     public ConnectionProcessor createConnectionProcessor() {
-        return new ConnectionProcessor(baseInfoProvider.getServerURL(), storageProvider, deviceId_, sslContext_, requestHeaderCustomValues, L);
+        ConnectionProcessor cp = new ConnectionProcessor(baseInfoProvider.getServerURL(), storageProvider, deviceId_, sslSocketFactory_, requestHeaderCustomValues, L);
+        cp.setConnectionMetrics(connectionMetrics_);
+        cp.setDiagnosticsMetrics(diagnosticsMetrics_);
+        cp.setBulkRequestLimits(bulkMaxRequestCount, bulkMaxByteSize);
+        cp.setCompressionThreshold(compressionThreshold);
+        cp.setTransport(transport);
+        cp.setRequestBackoff(requestBackoff);
+        cp.setBackoffListener(new Runnable() {
+            @Override
+            public void run() {
+                scheduleBackoffRetry();
+            }
+        });
+        cp.setMaxBadRequestAttempts(maxBadRequestAttempts);
+        if (parallelWorkerCount > 1) {
+            ensureWorkerExecutor();
+            cp.setParallelWorkers(workerExecutor_, parallelWorkerCount);
+        }
+        return cp;
     }
 
     public boolean queueContainsTemporaryIdItems() {
@@ -692,12 +890,7 @@ class ConnectionQueue implements RequestQueueProvider {
      * Returns true if no requests are current stored, false otherwise.
      */
     boolean isRequestQueueEmpty() {
-        String rawRequestQueue = storageProvider.getRequestQueueRaw();
-        if (rawRequestQueue.length() > 0) {
-            return false;
-        } else {
-            return true;
-        }
+        return storageProvider.getRequestQueueSize() == 0;
     }
 
     // for unit testing
@@ -709,11 +902,11 @@ class ConnectionQueue implements RequestQueueProvider {
         executor_ = executor;
     }
 
-    Future<?> getConnectionProcessorFuture() {
+    synchronized Future<?> getConnectionProcessorFuture() {
         return connectionProcessorFuture_;
     }
 
-    void setConnectionProcessorFuture(final Future<?> connectionProcessorFuture) {
+    synchronized void setConnectionProcessorFuture(final Future<?> connectionProcessorFuture) {
         connectionProcessorFuture_ = connectionProcessorFuture;
     }
 }
@@ -24,15 +24,17 @@ package ly.count.android.sdk;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.Application;
+import android.content.ComponentCallbacks;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.os.Bundle;
-import java.util.ArrayList;
+import androidx.annotation.NonNull;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -134,9 +136,24 @@ public class Countly {
     }
 
     ConnectionQueue connectionQueue_;
+    private final CountlyScheduler scheduler_;
     private final ScheduledExecutorService timerService_;
     private ScheduledFuture<?> timerFuture = null;
     private int activityCount_;
+    //invalidates the cached device metrics, registered on init and unregistered on halt
+    private Application componentCallbacksApplication_ = null;
+    private final ComponentCallbacks componentCallbacks_ = new ComponentCallbacks() {
+        @Override
+        public void onConfigurationChanged(Configuration configuration) {
+            //orientation and locale are part of the configuration
+            DeviceInfo.onConfigurationChanged();
+        }
+
+        @Override
+        public void onLowMemory() {
+
+        }
+    };
     boolean disableUpdateSessionRequests_ = false;//todo, move to module after 'setDisableUpdateSessionRequests' is removed
 
     boolean sdkIsInitialised = false;
@@ -153,7 +170,8 @@ public class Countly {
     Context context_;
 
     //Internal modules for functionality grouping
-    List<ModuleBase> modules = new ArrayList<>();
+    //modules that are created on first use are added while other threads may be iterating
+    List<ModuleBase> modules = new CopyOnWriteArrayList<>();
     ModuleCrash moduleCrash = null;
     ModuleEvents moduleEvents = null;
     ModuleViews moduleViews = null;
@@ -168,6 +186,10 @@ public class Countly {
     ModuleRequestQueue moduleRequestQueue = null;
     ModuleAttribution moduleAttribution = null;
     ModuleUserProfile moduleUserProfile = null;
+    ModuleDiagnostics moduleDiagnostics = null;
+
+    //measures the calls of the public module interfaces, disabled by default
+    final CallTracer callTracer = new CallTracer();
 
     //reference to countly store
     CountlyStore countlyStore;
@@ -232,12 +254,14 @@ public class Countly {
      * Creates a new ConnectionQueue and initializes the session timer.
      */
     Countly() {
-        timerService_ = Executors.newSingleThreadScheduledExecutor();
+        scheduler_ = new CountlyScheduler();
+        timerService_ = scheduler_.timers();
         staticInit();
     }
 
     private void staticInit() {
         connectionQueue_ = new ConnectionQueue();
+        connectionQueue_.setScheduler(scheduler_);
         Countly.userData = new UserData(connectionQueue_);
         startTimerService(timerService_, timerFuture, TIMER_DELAY_IN_SECONDS);
     }
@@ -379,6 +403,7 @@ public class Countly {
             L.d("[Init] About to init internal systems");
 
             config_ = config;
+            final InitPhaseTimer initPhases = new InitPhaseTimer();
 
             // Have a look at the SDK limit values
             if (config.maxKeyLength != null) {
@@ -462,6 +487,8 @@ public class Countly {
             }
             L.d("[Init] request queue size set to [" + config.maxRequestQueueSize + "]");
             countlyStore.setLimits(config.maxRequestQueueSize);
+            countlyStore.setDiagnosticsMetrics(connectionQueue_.getDiagnosticsMetrics());
+            countlyStore.setJournalSyncTimer(scheduler_.timers());
 
             if (config.storageProvider == null) {
                 // outside of tests this should be null
@@ -481,6 +508,7 @@ public class Countly {
             } else {
                 L.d("[Init] Custom request queue provider was provided");
             }
+            initPhases.phaseFinished("storage");
 
             if (config.tamperingProtectionSalt != null) {
                 L.d("[Init] Parameter tampering protection salt set");
@@ -507,6 +535,7 @@ public class Countly {
                 L.e("[Init] SDK failed while performing data migration. SDK is not capable to initialize.");
                 return this;
             }
+            initPhases.phaseFinished("migration");
 
             //initialise modules
             moduleRequestQueue = new ModuleRequestQueue(this, config);
@@ -520,9 +549,9 @@ public class Countly {
             moduleRemoteConfig = new ModuleRemoteConfig(this, config);
             moduleAPM = new ModuleAPM(this, config);
             moduleLocation = new ModuleLocation(this, config);
-            moduleFeedback = new ModuleFeedback(this, config);
             moduleAttribution = new ModuleAttribution(this, config);
-            moduleUserProfile = new ModuleUserProfile(this, config);
+            //feedback and user profile have no lifecycle hooks, they are created on first use
+            moduleDiagnostics = new ModuleDiagnostics(this, config);
 
             modules.clear();
             modules.add(moduleRequestQueue);
@@ -536,9 +565,8 @@ public class Countly {
             modules.add(moduleRemoteConfig);
             modules.add(moduleAPM);
             modules.add(moduleLocation);
-            modules.add(moduleFeedback);
             modules.add(moduleAttribution);
-            modules.add(moduleUserProfile);
+            modules.add(moduleDiagnostics);
 
             if(config.testModuleListener != null) {
                 modules.add(config.testModuleListener);
@@ -556,6 +584,7 @@ public class Countly {
             requestQueueProvider = config.requestQueueProvider;
 
             L.i("[Init] Finished initialising modules");
+            initPhases.phaseFinished("modules");
 
             if (config.customNetworkRequestHeaders != null) {
                 L.i("[Countly] Calling addCustomNetworkRequestHeaders");
@@ -610,12 +639,112 @@ public class Countly {
             connectionQueue_.L = L;
             connectionQueue_.consentProvider = moduleConsent;
             connectionQueue_.setStorageProvider(config.storageProvider);
-            connectionQueue_.setupSSLContext();
+            //without pinning the default factory is used, creating it can be left to the deferred init
+            final boolean deferSSLContext = config.deferredInitEnabled && publicKeyPinCertificates == null && certificatePinCertificates == null;
+            if (!deferSSLContext) {
+                connectionQueue_.setupSSLContext();
+            }
             connectionQueue_.setBaseInfoProvider(config.baseInfoProvider);
             connectionQueue_.setDeviceId(config.deviceIdProvider.getDeviceIdInstance());
             connectionQueue_.setRequestHeaderCustomValues(requestHeaderCustomValues);
             connectionQueue_.setMetricOverride(config.metricOverride);
             connectionQueue_.setContext(context_);
+            RequestBuilder.registerTimeZoneReceiver(context_);
+
+            if (config.bulkRequestsEnabled) {
+                if (config.bulkMaxRequestCount < 2) {
+                    L.e("[Init] provided bulk request count is less than 2. Replacing it with 2.");
+                    config.bulkMaxRequestCount = 2;
+                }
+                if (config.bulkMaxByteSize < 1) {
+                    L.e("[Init] provided bulk request size is less than 1. Replacing it with 1.");
+                    config.bulkMaxByteSize = 1;
+                }
+                L.d("[Init] Enabling bulk requests, max count:[" + config.bulkMaxRequestCount + "], max size:[" + config.bulkMaxByteSize + " B]");
+                connectionQueue_.setBulkRequestLimits(config.bulkMaxRequestCount, config.bulkMaxByteSize);
+            }
+
+            if (config.requestCompressionEnabled) {
+                if (config.requestCompressionThreshold < 0) {
+                    L.e("[Init] provided request compression threshold is less than 0. Replacing it with 0.");
+                    config.requestCompressionThreshold = 0;
+                }
+                L.d("[Init] Enabling request compression for requests of at least [" + config.requestCompressionThreshold + " B]");
+                connectionQueue_.setCompressionThreshold(config.requestCompressionThreshold);
+            }
+
+            if (config.transport != null) {
+                L.d("[Init] Using a custom transport [" + config.transport.getClass().getName() + "]");
+                if (publicKeyPinCertificates != null || certificatePinCertificates != null) {
+                    L.w("[Init] A custom transport is used, the provided public key or certificate pinning will not be applied to its connections");
+                }
+                connectionQueue_.setTransport(config.transport);
+            }
+
+            if (config.requestRetryPolicyEnabled) {
+                if (config.requestRetryBaseDelay < 1) {
+                    L.e("[Init] provided request retry base delay is less than 1. Replacing it with 1.");
+                    config.requestRetryBaseDelay = 1;
+                }
+                if (config.requestRetryMaxDelay < config.requestRetryBaseDelay) {
+                    L.e("[Init] provided request retry max delay is less than the base delay. Replacing it with [" + config.requestRetryBaseDelay + "].");
+                    config.requestRetryMaxDelay = config.requestRetryBaseDelay;
+                }
+                L.d("[Init] Enabling the request retry policy, base delay:[" + config.requestRetryBaseDelay + " s], max delay:[" + config.requestRetryMaxDelay + " s]");
+                connectionQueue_.setRequestBackoff(new RequestBackoff(config.storageProvider, config.requestRetryBaseDelay * 1000L, config.requestRetryMaxDelay * 1000L, new Random(), L));
+            }
+
+            if (config.maxBadRequestAttempts < 1) {
+                L.e("[Init] provided bad request attempt count is less than 1. Replacing it with 1.");
+                config.maxBadRequestAttempts = 1;
+            }
+            connectionQueue_.maxBadRequestAttempts = config.maxBadRequestAttempts;
+
+            if (config.parallelRequestWorkers != 0) {
+                if (config.parallelRequestWorkers < 2) {
+                    L.e("[Init] provided parallel request worker count is less than 2. Replacing it with 2.");
+                    config.parallelRequestWorkers = 2;
+                }
+                L.d("[Init] Enabling parallel request sending with [" + config.parallelRequestWorkers + "] workers");
+                connectionQueue_.setParallelWorkerCount(config.parallelRequestWorkers);
+                scheduler_.lane(CountlyScheduler.Lane.PARALLEL_SEND).setThreads(config.parallelRequestWorkers);
+            }
+
+            if (config.executor != null) {
+                L.d("[Init] Running background work on the provided executor");
+            }
+            scheduler_.setExecutor(config.executor);
+
+            if (config.eventRingBufferCapacity != 0) {
+                if (config.eventRingBufferCapacity < 16) {
+                    L.e("[Init] provided event ring buffer capacity is less than 16. Replacing it with 16.");
+                    config.eventRingBufferCapacity = 16;
+                }
+                if (config.eventOverflowPolicy == null) {
+                    L.e("[Init] provided event overflow policy is 'null'. Replacing it with 'DROP_OLDEST'.");
+                    config.eventOverflowPolicy = EventOverflowPolicy.DROP_OLDEST;
+                }
+                L.d("[Init] Enabling the event ring buffer with capacity [" + config.eventRingBufferCapacity + "] and overflow policy [" + config.eventOverflowPolicy + "]");
+            }
+
+            if (config.callTracingEnabled) {
+                if (config.callTracingSampleRate < 1) {
+                    L.e("[Init] provided call tracing sample rate is less than 1. Replacing it with 1.");
+                    config.callTracingSampleRate = 1;
+                }
+                if (config.callTracingMaxTraces < 1) {
+                    L.e("[Init] provided call tracing trace limit is less than 1. Replacing it with 1.");
+                    config.callTracingMaxTraces = 1;
+                }
+                L.d("[Init] Enabling call tracing, sample rate:[" + config.callTracingSampleRate + "], max traces:[" + config.callTracingMaxTraces + "]");
+                callTracer.enable(config.callTracingSampleRate, config.callTracingMaxTraces);
+            }
+
+            if (config.deferredInitEnabled) {
+                //requests are only stored until the deferred init has finished
+                connectionQueue_.deferredInitPending = true;
+            }
+            initPhases.phaseFinished("networking");
 
             sdkIsInitialised = true;
             //AFTER THIS POINT THE SDK IS COUNTED AS INITIALISED
@@ -693,24 +822,24 @@ public class Countly {
                         }
                     }
                 });
-/*
-                config.application.registerComponentCallbacks(new ComponentCallbacks() {
-                    @Override
-                    public void onConfigurationChanged(Configuration configuration) {
-
-                    }
 
-                    @Override
-                    public void onLowMemory() {
-
-                    }
-                });
- */
+                if (componentCallbacksApplication_ == null) {
+                    componentCallbacksApplication_ = config.application;
+                    componentCallbacksApplication_.registerComponentCallbacks(componentCallbacks_);
+                }
             }
 
             for (ModuleBase module : modules) {
                 module.initFinished(config);
             }
+            initPhases.phaseFinished("init_finished");
+
+            if (config.deferredInitEnabled) {
+                L.d("[Init] Deferring the rest of init to a background thread");
+                startDeferredInit(config, initPhases, deferSSLContext);
+            } else {
+                finishInit(config, initPhases);
+            }
 
             L.i("[Init] Finished initialising SDK");
         } else {
@@ -734,6 +863,67 @@ public class Countly {
         return sdkIsInitialised;
     }
 
+    /**
+     * Runs the deferred part of init on the timer thread.
+     * Until it has finished, the request queue is not sent.
+     */
+    void startDeferredInit(@NonNull final CountlyConfig config, @NonNull final InitPhaseTimer initPhases, final boolean setupSSLContext) {
+        final ConnectionQueue connectionQueue = connectionQueue_;
+
+        timerService_.submit(new Runnable() {
+            @Override public void run() {
+                initPhases.restart();
+                if (setupSSLContext) {
+                    //no request is sent before this is done, so it does not need the SDK lock
+                    connectionQueue.setupSSLContext();
+                    initPhases.phaseFinished("ssl_context");
+                }
+
+                synchronized (Countly.this) {
+                    if (!sdkIsInitialised || connectionQueue_ != connectionQueue) {
+                        L.d("[Init] SDK was halted before the deferred init, skipping it");
+                        return;
+                    }
+                }
+
+                //modules take the SDK lock only around the parts that need it,
+                //so calls from the app are not blocked while crash dumps are read
+                finishInit(config, initPhases);
+
+                synchronized (Countly.this) {
+                    if (!sdkIsInitialised || connectionQueue_ != connectionQueue) {
+                        L.d("[Init] SDK was halted during the deferred init");
+                        return;
+                    }
+
+                    connectionQueue.deferredInitPending = false;
+                    L.d("[Init] Finished the deferred init");
+                    requestQueueProvider.tick();
+                }
+            }
+        });
+    }
+
+    /**
+     * Performs the init work that is not needed for recording data.
+     * It can run without holding the SDK lock, modules synchronize their "initDeferred" themselves.
+     */
+    void finishInit(@NonNull CountlyConfig config, @NonNull InitPhaseTimer initPhases) {
+        for (ModuleBase module : modules) {
+            module.initDeferred(config);
+        }
+        initPhases.phaseFinished("deferred");
+
+        if (config.recordInitPhaseDurations) {
+            synchronized (this) {
+                if (moduleAPM != null) {
+                    L.d("[Init] Recording init phase durations");
+                    moduleAPM.recordInitPhases(initPhases.getPhases());
+                }
+            }
+        }
+    }
+
     /**
      * Immediately disables session &amp; event tracking and clears any stored session &amp; event data.
      * This API is useful if your app has a tracking opt-out switch, and you want to immediately
@@ -755,6 +945,12 @@ public class Countly {
         }
 
         activityCount_ = 0;
+        ImmediateRequestMaker.cancelAll();
+
+        if (componentCallbacksApplication_ != null) {
+            componentCallbacksApplication_.unregisterComponentCallbacks(componentCallbacks_);
+            componentCallbacksApplication_ = null;
+        }
 
         for (ModuleBase module : modules) {
             module.halt();
@@ -772,7 +968,10 @@ public class Countly {
         moduleDeviceId = null;
         moduleLocation = null;
         moduleFeedback = null;
+        moduleUserProfile = null;
         moduleRequestQueue = null;
+        moduleDiagnostics = null;
+        callTracer.disable();
 
         COUNTLY_SDK_VERSION_STRING = DEFAULT_COUNTLY_SDK_VERSION_STRING;
         COUNTLY_SDK_NAME = DEFAULT_COUNTLY_SDK_NAME;
@@ -862,6 +1061,8 @@ public class Countly {
 
     public synchronized void onConfigurationChanged(Configuration newConfig) {
         L.d("Calling [onConfigurationChanged]");
+        DeviceInfo.onConfigurationChanged();
+
         if (!isInitialized()) {
             L.e("init must be called before onConfigurationChanged");
             return;
@@ -892,6 +1093,8 @@ public class Countly {
                 if (!moduleSessions.manualSessionControlEnabled) {
                     moduleSessions.updateSessionInternal();
                 }
+
+                moduleRemoteConfig.refreshIfStale("timer");
             }
 
             //on every timer tick we collect all events and attempt to send requests
@@ -1089,6 +1292,18 @@ public class Countly {
         return moduleRequestQueue.requestQueueInterface.isHttpPostForced();
     }
 
+    /**
+     * Returns the transport that is used for the HTTP calls of the SDK.
+     *
+     * @return the custom transport if one was provided during init, otherwise the default one
+     */
+    @NonNull CountlyTransport getTransport() {
+        if (connectionQueue_ == null) {
+            return new HttpURLConnectionTransport(null);
+        }
+        return connectionQueue_.getTransport();
+    }
+
     /**
      * Return if current device is detected as a app crawler
      *
@@ -1270,7 +1485,7 @@ public class Countly {
             return null;
         }
 
-        return moduleFeedback.feedbackInterface;
+        return getModuleFeedback().feedbackInterface;
     }
 
     public ModuleRequestQueue.RequestQueue requestQueue() {
@@ -1306,7 +1521,38 @@ public class Countly {
             return null;
         }
 
-        return moduleUserProfile.userProfileInterface;
+        return getModuleUserProfile().userProfileInterface;
+    }
+
+    /**
+     * Creates the feedback module on first use, it is not needed for recording data
+     */
+    synchronized @NonNull ModuleFeedback getModuleFeedback() {
+        if (moduleFeedback == null) {
+            moduleFeedback = new ModuleFeedback(this, config_);
+            modules.add(moduleFeedback);
+        }
+        return moduleFeedback;
+    }
+
+    /**
+     * Creates the user profile module on first use, it is not needed for recording data
+     */
+    synchronized @NonNull ModuleUserProfile getModuleUserProfile() {
+        if (moduleUserProfile == null) {
+            moduleUserProfile = new ModuleUserProfile(this, config_);
+            modules.add(moduleUserProfile);
+        }
+        return moduleUserProfile;
+    }
+
+    public ModuleDiagnostics.Diagnostics diagnostics() {
+        if (!isInitialized()) {
+            L.e("Countly.sharedInstance().init must be called before accessing diagnostics");
+            return null;
+        }
+
+        return moduleDiagnostics.diagnosticsInterface;
     }
 
     public static void applicationOnCreate() {
@@ -1321,6 +1567,10 @@ public class Countly {
         return timerService_;
     }
 
+    @NonNull CountlyScheduler getScheduler() {
+        return scheduler_;
+    }
+
     long getPrevSessionDurationStartTime() {
         return moduleSessions.prevSessionDurationStartTime_;
     }
@@ -3,6 +3,7 @@ package ly.count.android.sdk;
 import android.app.Application;
 import android.content.Context;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class CountlyConfig {
 
@@ -178,6 +179,43 @@ public class CountlyConfig {
 
     int maxRequestQueueSize = 1000;
 
+    boolean bulkRequestsEnabled = false;
+    int bulkMaxRequestCount = 50;
+    int bulkMaxByteSize = 100 * 1024;
+
+    boolean requestCompressionEnabled = false;
+    int requestCompressionThreshold = 0;
+
+    CountlyTransport transport = null;
+
+    boolean requestRetryPolicyEnabled = false;
+    int requestRetryBaseDelay = 5;
+    int requestRetryMaxDelay = 30 * 60;
+    int maxBadRequestAttempts = ConnectionProcessor.DEFAULT_MAX_BAD_REQUEST_ATTEMPTS;
+
+    int parallelRequestWorkers = 0;
+
+    Executor executor = null;
+
+    int eventRingBufferCapacity = 0;
+
+    EventOverflowPolicy eventOverflowPolicy = EventOverflowPolicy.DROP_OLDEST;
+
+    boolean eventAggregationEnabled = false;
+
+    DiagnosticsListener diagnosticsListener = null;
+
+    boolean callTracingEnabled = false;
+    int callTracingSampleRate = 1;
+    int callTracingMaxTraces = 1000;
+
+    boolean deferredInitEnabled = false;
+
+    boolean recordInitPhaseDurations = false;
+
+    long remoteConfigRefreshTtl = 0;
+    long remoteConfigMinimumFetchInterval = 0;
+
     ModuleLog.LogCallback providedLogCallback;
 
     String daCampaignType = null;
@@ -493,6 +531,22 @@ public class CountlyConfig {
         return this;
     }
 
+    /**
+     * Keeps the remote config values fresh by updating them in the background.
+     * Values older than "ttlSeconds" are updated when the app comes to the foreground,
+     * while it stays in the foreground and at init. The current values are always returned right away,
+     * also while an update is running. Automatic updates are not done more often than "minimumFetchIntervalSeconds".
+     *
+     * @param ttlSeconds how long the values are considered fresh after they were downloaded
+     * @param minimumFetchIntervalSeconds the minimum time between two automatic updates, also if they failed
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableRemoteConfigBackgroundRefresh(long ttlSeconds, long minimumFetchIntervalSeconds) {
+        remoteConfigRefreshTtl = ttlSeconds;
+        remoteConfigMinimumFetchInterval = minimumFetchIntervalSeconds;
+        return this;
+    }
+
     /**
      * Set if consent should be required
      *
@@ -856,6 +910,187 @@ public class CountlyConfig {
         return this;
     }
 
+    /**
+     * Enables sending multiple queued requests to the server in a single call to the "/i/bulk" endpoint.
+     * This reduces the amount of network round trips when a lot of requests have been queued, for example after being offline.
+     * Requests that change the device ID or upload a profile picture are still sent on their own.
+     * If the server rejects a bulk call, its requests are sent one by one. If the server has no bulk endpoint, requests are sent one by one until the next flush.
+     *
+     * @param maxRequestCount maximum amount of requests combined into a single call. Minimum value is "2".
+     * @param maxByteSize maximum combined size of the requests in a single call. Minimum value is "1".
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableBulkRequests(int maxRequestCount, int maxByteSize) {
+        bulkRequestsEnabled = true;
+        bulkMaxRequestCount = maxRequestCount;
+        bulkMaxByteSize = maxByteSize;
+        return this;
+    }
+
+    /**
+     * Enables gzip compression of request bodies that are sent with HTTP POST.
+     * Compressed requests are sent with the "Content-Encoding: gzip" header,
+     * so the server, or a proxy in front of it, has to support decoding them.
+     * Compressed server responses will also be accepted.
+     *
+     * @param minimumSizeBytes request bodies smaller than this are sent uncompressed. Minimum value is "0".
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableRequestCompression(int minimumSizeBytes) {
+        requestCompressionEnabled = true;
+        requestCompressionThreshold = minimumSizeBytes;
+        return this;
+    }
+
+    /**
+     * Sets a custom transport that is used to perform all HTTP calls of the SDK instead of "HttpURLConnection".
+     * This allows using a different HTTP engine, for example one with HTTP/2 support and its own connection pool.
+     * Certificate pinning and the connection metrics only apply to the default transport.
+     *
+     * @param transport the transport to use, if null the default one is used
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setTransport(CountlyTransport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Enables retrying failed requests with exponential backoff and sets how it's done.
+     * Without it, failed requests are retried on every timer tick.
+     * After every consecutive failure, the SDK waits for a random delay before sending requests again.
+     * The upper bound of that delay starts at the base delay and is doubled with every failure, up to the maximum delay.
+     * If the server provides a "Retry-After" header, at least that long is waited.
+     * Requests that the server keeps rejecting with a "400" or "413" response code are moved to a quarantine after the given amount of attempts,
+     * so that they don't block the requests behind them. This is done also without the retry policy, after 5 attempts.
+     * They can be inspected and retried through "Countly.sharedInstance().requestQueue()".
+     *
+     * @param baseDelaySeconds upper bound of the delay after the first failure, in seconds. Minimum value is "1".
+     * @param maxDelaySeconds maximum delay between attempts, in seconds. Can't be less than the base delay.
+     * @param maxBadRequestAttempts amount of times a rejected request is sent before it's quarantined. Minimum value is "1".
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setRequestRetryPolicy(int baseDelaySeconds, int maxDelaySeconds, int maxBadRequestAttempts) {
+        requestRetryPolicyEnabled = true;
+        requestRetryBaseDelay = baseDelaySeconds;
+        requestRetryMaxDelay = maxDelaySeconds;
+        this.maxBadRequestAttempts = maxBadRequestAttempts;
+        return this;
+    }
+
+    /**
+     * Enables sending independent requests concurrently, which speeds up sending a large queue, for example after being offline.
+     * Session requests and requests that change the device ID are still sent in order,
+     * only after all previous requests were sent and before any following ones.
+     * Other requests, like events, may reach the server in a different order than they were recorded.
+     *
+     * @param workerCount maximum amount of requests that are sent at the same time. Minimum value is "2".
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableParallelRequestSending(int workerCount) {
+        parallelRequestWorkers = workerCount;
+        return this;
+    }
+
+    /**
+     * Sets the executor that runs the network and media work of the SDK, like immediate requests and downloading push media.
+     * This allows the SDK to share the thread pool of the app instead of starting its own threads.
+     * The SDK still limits how many of its tasks wait at the same time,
+     * and keeps its own threads for timers, for draining the request queue and for parallel request sending,
+     * so that stored requests are always sent one at a time and in order.
+     *
+     * @param executor the executor to use, if null the SDK's own threads are used
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Enables a bounded in-memory buffer in front of the event queue.
+     * Recording a event then only publishes it to the buffer without locking,
+     * validating and persisting it is done on a background thread.
+     * This lowers the cost of "recordEvent" calls for apps that record a lot of events from many threads.
+     * A segmentation map that is passed to "recordEvent" should not be modified afterwards.
+     *
+     * @param capacity maximum amount of buffered events, rounded up to a power of two. Minimum value is "16".
+     * @param overflowPolicy what should happen when a event is recorded while the buffer is full
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableEventRingBuffer(int capacity, EventOverflowPolicy overflowPolicy) {
+        eventRingBufferCapacity = capacity;
+        eventOverflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * Enables combining repeated custom events before they are stored.
+     * Events with the same key and the same segmentation that are recorded within the same hour
+     * are sent as a single event with the summed count, sum and duration, and the timestamp of the first one.
+     * Combined events are stored in the event queue every time events are sent, for example on every timer tick.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableEventAggregation() {
+        eventAggregationEnabled = true;
+        return this;
+    }
+
+    /**
+     * Sets the listener that receives the SDK diagnostics every time the request queue has finished sending.
+     * The diagnostics are also available through "Countly.sharedInstance().diagnostics()".
+     *
+     * @param listener the listener to notify, it is called on a background thread
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setDiagnosticsListener(DiagnosticsListener listener) {
+        diagnosticsListener = listener;
+        return this;
+    }
+
+    /**
+     * Enables tracing the calls of the events, views, crashes, APM, user profile and remote config interfaces.
+     * For every traced call the duration, the time spent waiting for the SDK lock and the calling thread are recorded.
+     * The traces are available through "Countly.sharedInstance().diagnostics()" and can be exported in the Trace Event Format.
+     *
+     * @param sampleRate every "sampleRate"-th call of a thread is traced, 1 traces every call
+     * @param maxTraces the amount of kept traces, after that the oldest ones are replaced
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableCallTracing(int sampleRate, int maxTraces) {
+        callTracingEnabled = true;
+        callTracingSampleRate = sampleRate;
+        callTracingMaxTraces = maxTraces;
+        return this;
+    }
+
+    /**
+     * Moves the init work that is not needed for recording data to a background thread.
+     * The SDK can be used right after init returns, created requests are kept in the request queue
+     * and sending them starts once the background part has finished.
+     * The background part sets up the SSL context if no pinning is used, checks for native crash dumps
+     * and does the automatic remote config update.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableDeferredInit() {
+        deferredInitEnabled = true;
+        return this;
+    }
+
+    /**
+     * Enable the recording of the duration of every SDK init phase.
+     * They are recorded as APM custom traces with the "countly_init_" prefix.
+     *
+     * @param recordInitPhaseDurations
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setRecordInitPhaseDurations(boolean recordInitPhaseDurations) {
+        this.recordInitPhaseDurations = recordInitPhaseDurations;
+        return this;
+    }
+
     /**
      * Report direct user attribution
      *
@@ -0,0 +1,245 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All background work of the SDK runs here, on a few named lanes.
+ * Every lane has its own threads, thread priority and a bounded number of waiting tasks,
+ * so that slow media downloads can't hold back requests and a flood of tasks can't grow memory without limit.
+ *
+ * The request queue is drained on a lane with a single thread, so that only one connection processor runs at a time
+ * and stored requests are sent in order. Immediate requests run on the network lane and don't wait behind a long drain.
+ *
+ * The network and media lanes can be backed by an executor of the host app.
+ * The request queue and parallel sending always run on threads of the SDK, because the order of requests depends on them,
+ * and timers always run on a scheduled thread of the SDK.
+ */
+class CountlyScheduler {
+    enum Lane {
+        REQUEST_QUEUE("request-queue", 1, 1, Thread.NORM_PRIORITY - 1),
+        NETWORK("network", 3, 64, Thread.NORM_PRIORITY - 1),
+        PARALLEL_SEND("parallel-send", 2, 16, Thread.NORM_PRIORITY - 1),
+        MEDIA("media", 1, 16, Thread.MIN_PRIORITY),
+        TIMERS("timers", 1, 0, Thread.NORM_PRIORITY);
+
+        final String laneName;
+        final int threads;
+        final int queueCapacity;
+        final int priority;
+
+        Lane(String laneName, int threads, int queueCapacity, int priority) {
+            this.laneName = laneName;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+            this.priority = priority;
+        }
+    }
+
+    private final LaneExecutor[] lanes;
+    private final ScheduledThreadPoolExecutor timers;
+
+    CountlyScheduler() {
+        lanes = new LaneExecutor[] { new LaneExecutor(Lane.REQUEST_QUEUE), new LaneExecutor(Lane.NETWORK), new LaneExecutor(Lane.PARALLEL_SEND), new LaneExecutor(Lane.MEDIA) };
+        timers = new ScheduledThreadPoolExecutor(Lane.TIMERS.threads, threadFactory(Lane.TIMERS));
+        //deadlines are usually cancelled, they should not stay in the queue until they would have run
+        timers.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return the executor of the request queue, network, parallel send or media lane
+     */
+    @NonNull LaneExecutor lane(@NonNull Lane lane) {
+        if (lane == Lane.TIMERS) {
+            throw new IllegalArgumentException("Timers are scheduled through 'timers()'");
+        }
+        return lanes[lane.ordinal()];
+    }
+
+    @NonNull ScheduledExecutorService timers() {
+        return timers;
+    }
+
+    /**
+     * Runs the network and media lanes on the given executor, or on the SDK's own threads if it is null.
+     * Tasks that were already submitted keep running where they are.
+     */
+    void setExecutor(@Nullable Executor executor) {
+        lanes[Lane.NETWORK.ordinal()].hostExecutor = executor;
+        lanes[Lane.MEDIA.ordinal()].hostExecutor = executor;
+    }
+
+    /**
+     * Creates a thread for work that runs for the whole lifetime of a module and therefore can't be a task on a lane.
+     * It runs slightly below the priority of the UI thread.
+     */
+    @NonNull Thread newThread(@NonNull String name, @NonNull Runnable runnable) {
+        Thread thread = new Thread(runnable, "Countly-" + name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    }
+
+    @NonNull List<SchedulerLaneMetrics> getMetrics() {
+        List<SchedulerLaneMetrics> metrics = new ArrayList<>(lanes.length + 1);
+        for (LaneExecutor lane : lanes) {
+            metrics.add(lane.getMetrics());
+        }
+        metrics.add(new SchedulerLaneMetrics(Lane.TIMERS.laneName, timers.getCorePoolSize(), Integer.MAX_VALUE, timers.getTaskCount(), timers.getCompletedTaskCount(), 0,
+            timers.getQueue().size(), timers.getActiveCount(), 0, 0, 0));
+        return metrics;
+    }
+
+    static ThreadFactory threadFactory(@NonNull final Lane lane) {
+        return new ThreadFactory() {
+            final AtomicInteger count = new AtomicInteger();
+
+            @Override public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Countly-" + lane.laneName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(lane.priority);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * A lane that keeps count of its tasks and rejects new ones once all threads are busy and the queue is full.
+     * It lives as long as the process, so it can't be shut down.
+     */
+    static class LaneExecutor extends AbstractExecutorService {
+        final Lane lane;
+        private volatile int threads;
+        private ThreadPoolExecutor ownExecutor;
+        volatile Executor hostExecutor;
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxQueued = new AtomicInteger();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong runNanos = new AtomicLong();
+
+        LaneExecutor(@NonNull Lane lane) {
+            this.lane = lane;
+            this.threads = lane.threads;
+        }
+
+        /**
+         * Changes the amount of tasks that can run at the same time, it can't be less than the lane's default
+         */
+        synchronized void setThreads(int threads) {
+            this.threads = Math.max(threads, lane.threads);
+            if (ownExecutor != null) {
+                if (this.threads > ownExecutor.getMaximumPoolSize()) {
+                    ownExecutor.setMaximumPoolSize(this.threads);
+                    ownExecutor.setCorePoolSize(this.threads);
+                } else {
+                    ownExecutor.setCorePoolSize(this.threads);
+                    ownExecutor.setMaximumPoolSize(this.threads);
+                }
+            }
+        }
+
+        int getThreads() {
+            return threads;
+        }
+
+        private synchronized Executor executor() {
+            Executor host = hostExecutor;
+            if (host != null) {
+                return host;
+            }
+            if (ownExecutor == null) {
+                //queueing is limited by "pending", the queue itself doesn't need a bound
+                ownExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory(lane));
+                ownExecutor.allowCoreThreadTimeOut(true);
+            }
+            return ownExecutor;
+        }
+
+        @Override public void execute(@NonNull final Runnable command) {
+            int limit = threads + lane.queueCapacity;
+            int nowPending = pending.incrementAndGet();
+            if (nowPending > limit) {
+                pending.decrementAndGet();
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("The " + lane.laneName + " lane is full, " + limit + " tasks are already waiting or running");
+            }
+            submitted.incrementAndGet();
+
+            final long queuedAt = System.nanoTime();
+            Runnable task = new Runnable() {
+                @Override public void run() {
+                    long startedAt = System.nanoTime();
+                    waitNanos.addAndGet(startedAt - queuedAt);
+                    running.incrementAndGet();
+                    try {
+                        command.run();
+                    } finally {
+                        running.decrementAndGet();
+                        pending.decrementAndGet();
+                        runNanos.addAndGet(System.nanoTime() - startedAt);
+                        completed.incrementAndGet();
+                    }
+                }
+            };
+
+            int queued = nowPending - running.get();
+            int max;
+            while (queued > (max = maxQueued.get()) && !maxQueued.compareAndSet(max, queued)) {
+                //retry until the maximum is updated or a larger one was set
+            }
+
+            try {
+                executor().execute(task);
+            } catch (RejectedExecutionException ex) {
+                pending.decrementAndGet();
+                submitted.decrementAndGet();
+                rejected.incrementAndGet();
+                throw ex;
+            }
+        }
+
+        @NonNull SchedulerLaneMetrics getMetrics() {
+            int nowRunning = running.get();
+            return new SchedulerLaneMetrics(lane.laneName, threads, lane.queueCapacity, submitted.get(), completed.get(), rejected.get(),
+                Math.max(0, pending.get() - nowRunning), nowRunning, maxQueued.get(), waitNanos.get(), runNanos.get());
+        }
+
+        @Override public void shutdown() {
+            //lanes are shared by the whole SDK
+        }
+
+        @NonNull @Override public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+
+        @Override public boolean isShutdown() {
+            return false;
+        }
+
+        @Override public boolean isTerminated() {
+            return false;
+        }
+
+        @Override public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+            return false;
+        }
+    }
+}
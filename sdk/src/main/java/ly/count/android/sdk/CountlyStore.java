@@ -25,16 +25,18 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import java.io.UnsupportedEncodingException;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import org.json.JSONArray;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -56,10 +58,21 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
     private static final String PREFERENCES_PUSH = "ly.count.android.api.messaging";
     static final String DELIMITER = ":::";
     private static final String REQUEST_PREFERENCE = "CONNECTIONS";
+    private static final String REQUEST_JOURNAL_DIRECTORY = "countly_request_journal";
     private static final String EVENTS_PREFERENCE = "EVENTS";
+    private static final String EVENT_JOURNAL_DIRECTORY = "countly_event_journal";
     private static final String STAR_RATING_PREFERENCE = "STAR_RATING";
     private static final String CACHED_ADVERTISING_ID = "ADVERTISING_ID";
     private static final String REMOTE_CONFIG_VALUES = "REMOTE_CONFIG";
+    private static final String REMOTE_CONFIG_DELTA = "REMOTE_CONFIG_DELTA";
+    private static final String REMOTE_CONFIG_ETAG = "REMOTE_CONFIG_ETAG";
+    private static final String REMOTE_CONFIG_UPDATE_TIMESTAMP = "REMOTE_CONFIG_UPDATED";
+    private static final String REQUEST_BACKOFF_STATE = "REQUEST_BACKOFF";
+    private static final String QUARANTINE_PREFERENCE = "QUARANTINED_REQUESTS";
+    private static final String BAD_REQUEST_ATTEMPTS = "BAD_REQUEST_ATTEMPTS";
+    //only a few requests can fail at the same time, older counts are dropped
+    static final int MAX_BAD_REQUESTS = 16;
+    static final int MAX_QUARANTINED_REQUESTS = 100;
     private static final String STORAGE_SCHEMA_VERSION = "SCHEMA_VERSION";
     private static final String PREFERENCE_KEY_ID_ID = "ly.count.android.api.DeviceId.id";
     private static final String PREFERENCE_KEY_ID_TYPE = "ly.count.android.api.DeviceId.type";
@@ -73,12 +86,28 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
     private final SharedPreferences preferences_;
     private final SharedPreferences preferencesPush_;
 
+    //if the files dir is not available, the request queue falls back to the preferences
+    private final RequestJournal requestJournal_;
+
+    //if the files dir is not available, the event queue falls back to the preferences
+    private final EventStore eventStore_;
+
     private static final String CONSENT_GCM_PREFERENCES = "ly.count.android.api.messaging.consent.gcm";
 
     ModuleLog L;
 
     int maxRequestQueueSize = 1000;
 
+    //if set, queue depths, write durations and dropped requests are recorded in it
+    DiagnosticsMetrics diagnostics_ = null;
+
+    //journal writes are synced to disk in groups, this long after the first unsynced write
+    static final long JOURNAL_SYNC_DELAY_MS = 1000;
+
+    //if set, journal syncs are scheduled on it, otherwise the journals only sync on rollover and rewrites
+    ScheduledExecutorService journalSyncTimer_ = null;
+    boolean journalSyncScheduled_ = false;
+
     /**
      * Constructs a CountlyStore object.
      *
@@ -91,12 +120,61 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         preferences_ = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
         preferencesPush_ = createPreferencesPush(context);
         L = logModule;
+
+        File filesDir = context.getFilesDir();
+        if (filesDir != null) {
+            requestJournal_ = new RequestJournal(new File(filesDir, REQUEST_JOURNAL_DIRECTORY), logModule);
+            eventStore_ = new EventStore(new File(filesDir, EVENT_JOURNAL_DIRECTORY), MAX_EVENTS, logModule);
+        } else {
+            L.w("[CountlyStore] Files directory not available, request and event queue will be stored in preferences");
+            requestJournal_ = null;
+            eventStore_ = null;
+        }
     }
 
     public void setLimits(final int maxRequestQueueSize) {
         this.maxRequestQueueSize = maxRequestQueueSize;
     }
 
+    void setDiagnosticsMetrics(@Nullable DiagnosticsMetrics diagnostics) {
+        diagnostics_ = diagnostics;
+    }
+
+    void setJournalSyncTimer(@Nullable ScheduledExecutorService timer) {
+        journalSyncTimer_ = timer;
+    }
+
+    /**
+     * Syncs the pending journal writes to disk
+     */
+    synchronized void syncJournals() {
+        journalSyncScheduled_ = false;
+        if (requestJournal_ != null) {
+            requestJournal_.sync();
+        }
+        if (eventStore_ != null) {
+            eventStore_.sync();
+        }
+    }
+
+    private synchronized void scheduleJournalSync() {
+        if (journalSyncTimer_ == null || journalSyncScheduled_) {
+            return;
+        }
+
+        try {
+            journalSyncTimer_.schedule(new Runnable() {
+                @Override public void run() {
+                    syncJournals();
+                }
+            }, JOURNAL_SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            journalSyncScheduled_ = true;
+        } catch (RejectedExecutionException ex) {
+            //the SDK is shutting down, sync right away
+            syncJournals();
+        }
+    }
+
     static SharedPreferences createPreferencesPush(Context context) {
         return context.getSharedPreferences(PREFERENCES_PUSH, Context.MODE_PRIVATE);
     }
@@ -105,6 +183,10 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * Returns an unsorted array of the current stored connections.
      */
     public synchronized String[] getRequests() {
+        if (requestJournal_ != null) {
+            return requestJournal_.getRequests();
+        }
+
         final String joinedConnStr = preferences_.getString(REQUEST_PREFERENCE, "");
         return joinedConnStr.length() == 0 ? new String[0] : joinedConnStr.split(DELIMITER);
     }
@@ -113,6 +195,10 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * Returns an unsorted array of the current stored event JSON strings.
      */
     public synchronized String[] getEvents() {
+        if (eventStore_ != null) {
+            return eventStore_.getEvents();
+        }
+
         final String joinedEventsStr = preferences_.getString(EVENTS_PREFERENCE, "");
         return joinedEventsStr.length() == 0 ? new String[0] : joinedEventsStr.split(DELIMITER);
     }
@@ -125,13 +211,13 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         final List<Event> events = new ArrayList<>(array.length);
         for (String s : array) {
             try {
-                final Event event = Event.fromJSON(new JSONObject(s));
+                final Event event = EventJson.read(s);
                 if (event != null) {
                     events.add(event);
                 }
             } catch (JSONException ignored) {
-                // should not happen since JSONObject is being constructed from previously stringified JSONObject
-                // events -> json objects -> json strings -> storage -> json strings -> here
+                // should not happen since the JSON was written by the SDK
+                // events -> json strings -> storage -> json strings -> here
             }
         }
         // order the events from least to most recent
@@ -150,6 +236,10 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * @return the number of events in the local event queue
      */
     public synchronized int getEventQueueSize() {
+        if (eventStore_ != null) {
+            return eventStore_.getEventQueueSize();
+        }
+
         return getEvents().length;
     }
 
@@ -160,32 +250,53 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * @return URL-encoded JSON string of event data from the local event queue
      */
     public synchronized String getEventsForRequestAndEmptyEventQueue() {
-        String result;
+        if (diagnostics_ != null) {
+            diagnostics_.onEventQueueEmptied();
+        }
+
+        if (eventStore_ != null) {
+            return eventStore_.getEventsForRequestAndEmptyEventQueue();
+        }
 
         final List<Event> events = getEventList();
 
-        final JSONArray eventArray = new JSONArray();
-        for (Event e : events) {
-            eventArray.put(e.toJSON());
+        final StringBuilder json = new StringBuilder(128);
+        final StringBuilder result = new StringBuilder(events.size() * 256);
+        result.append("%5B");
+        for (int a = 0; a < events.size(); a++) {
+            if (a > 0) {
+                result.append("%2C");
+            }
+            json.setLength(0);
+            EventJson.write(events.get(a), json);
+            EventJson.appendUrlEncoded(json, result);
         }
-
-        result = eventArray.toString();
+        result.append("%5D");
 
         removeEvents(events);
 
-        try {
-            result = java.net.URLEncoder.encode(result, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // should never happen because Android guarantees UTF-8 support
-        }
-
-        return result;
+        return result.toString();
     }
 
     @NonNull public synchronized String getRequestQueueRaw() {
+        if (requestJournal_ != null) {
+            return Utils.joinCountlyStore(Arrays.asList(requestJournal_.getRequests()), DELIMITER);
+        }
+
         return preferences_.getString(REQUEST_PREFERENCE, "");
     }
 
+    /**
+     * Returns the amount of requests in the request queue
+     */
+    public synchronized int getRequestQueueSize() {
+        if (requestJournal_ != null) {
+            return requestJournal_.size();
+        }
+
+        return getRequests().length;
+    }
+
     /**
      * Adds a connection to the local store.
      *
@@ -193,11 +304,28 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      */
     public synchronized void addRequest(final String requestStr) {
         if (requestStr != null && requestStr.length() > 0) {
+            final long writeStart = System.nanoTime();
+            if (requestJournal_ != null) {
+                while (requestJournal_.size() >= maxRequestQueueSize) {
+                    L.w("[CountlyStore] Store reached it's limit, deleting oldest request");
+                    deleteOldestRequest();
+                }
+                requestJournal_.append(requestStr);
+                scheduleJournalSync();
+                if (diagnostics_ != null) {
+                    diagnostics_.onRequestStored(requestJournal_.size(), System.nanoTime() - writeStart);
+                }
+                return;
+            }
+
             final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
             if (connections.size() < maxRequestQueueSize) {
                 //request under max requests, add as normal
                 connections.add(requestStr);
                 preferences_.edit().putString(REQUEST_PREFERENCE, Utils.joinCountlyStore(connections, DELIMITER)).apply();
+                if (diagnostics_ != null) {
+                    diagnostics_.onRequestStored(connections.size(), System.nanoTime() - writeStart);
+                }
             } else {
                 //reached the limit, start deleting oldest requests
                 L.w("[CountlyStore] Store reached it's limit, deleting oldest request");
@@ -209,6 +337,16 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
     }
 
     synchronized void deleteOldestRequest() {
+        if (diagnostics_ != null) {
+            diagnostics_.onRequestDropped();
+        }
+
+        if (requestJournal_ != null) {
+            requestJournal_.removeFirst();
+            scheduleJournalSync();
+            return;
+        }
+
         final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
         connections.remove(0);
         preferences_.edit().putString(REQUEST_PREFERENCE, Utils.joinCountlyStore(connections, DELIMITER)).apply();
@@ -222,9 +360,56 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      */
     public synchronized void removeRequest(final String requestStr) {
         if (requestStr != null && requestStr.length() > 0) {
+            final long writeStart = System.nanoTime();
+            if (requestJournal_ != null) {
+                requestJournal_.remove(requestStr);
+                scheduleJournalSync();
+                if (diagnostics_ != null) {
+                    diagnostics_.onRequestsRemoved(requestJournal_.size(), System.nanoTime() - writeStart);
+                }
+                return;
+            }
+
             final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
             if (connections.remove(requestStr)) {
                 preferences_.edit().putString(REQUEST_PREFERENCE, Utils.joinCountlyStore(connections, DELIMITER)).apply();
+                if (diagnostics_ != null) {
+                    diagnostics_.onRequestsRemoved(connections.size(), System.nanoTime() - writeStart);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes multiple requests in a single storage update.
+     * If the given requests are at the start of the queue, this is done without rewriting the queue.
+     *
+     * @param requestsToRemove requests to remove, for each of them the first matching request is removed
+     */
+    public synchronized void removeRequests(@NonNull final List<String> requestsToRemove) {
+        if (requestsToRemove.isEmpty()) {
+            return;
+        }
+
+        final long writeStart = System.nanoTime();
+        if (requestJournal_ != null && requestJournal_.removeFirst(requestsToRemove)) {
+            scheduleJournalSync();
+            if (diagnostics_ != null) {
+                diagnostics_.onRequestsRemoved(requestJournal_.size(), System.nanoTime() - writeStart);
+            }
+            return;
+        }
+
+        final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
+        boolean removedAny = false;
+        for (String request : requestsToRemove) {
+            removedAny |= connections.remove(request);
+        }
+
+        if (removedAny) {
+            replaceRequestList(connections);
+            if (diagnostics_ != null) {
+                diagnostics_.onRequestsRemoved(connections.size(), System.nanoTime() - writeStart);
             }
         }
     }
@@ -238,6 +423,11 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
 
     public synchronized void replaceRequestList(final List<String> newConns) {
         if (newConns != null) {
+            if (requestJournal_ != null) {
+                requestJournal_.replace(newConns);
+                return;
+            }
+
             preferences_.edit().putString(REQUEST_PREFERENCE, Utils.joinCountlyStore(newConns, DELIMITER)).apply();
         }
     }
@@ -248,10 +438,23 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * @param event event to be added to the local store, must not be null
      */
     void addEvent(final Event event) {
+        final long writeStart = System.nanoTime();
+        if (eventStore_ != null) {
+            eventStore_.addEvent(event);
+            scheduleJournalSync();
+            if (diagnostics_ != null) {
+                diagnostics_.onEventStored(eventStore_.getEventQueueSize(), System.nanoTime() - writeStart);
+            }
+            return;
+        }
+
         final List<Event> events = getEventList();
         if (events.size() < MAX_EVENTS) {
             events.add(event);
             setEventData(joinEvents(events, DELIMITER));
+            if (diagnostics_ != null) {
+                diagnostics_.onEventStored(events.size(), System.nanoTime() - writeStart);
+            }
         }
     }
 
@@ -261,6 +464,11 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * @param eventData
      */
     void setEventData(String eventData) {
+        if (eventStore_ != null) {
+            eventStore_.replaceEventsRaw(eventData.length() == 0 ? new String[0] : eventData.split(DELIMITER));
+            return;
+        }
+
         preferences_.edit().putString(EVENTS_PREFERENCE, eventData).apply();
     }
 
@@ -278,14 +486,164 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         return preferences_.getString(STAR_RATING_PREFERENCE, "");
     }
 
+    /**
+     * Sets the remote config values, also removes the stored delta
+     */
     public synchronized void setRemoteConfigValues(String values) {
-        preferences_.edit().putString(REMOTE_CONFIG_VALUES, values).apply();
+        preferences_.edit().putString(REMOTE_CONFIG_VALUES, values).remove(REMOTE_CONFIG_DELTA).apply();
     }
 
     public synchronized String getRemoteConfigValues() {
         return preferences_.getString(REMOTE_CONFIG_VALUES, "");
     }
 
+    public synchronized void setRemoteConfigDelta(@NonNull String delta) {
+        preferences_.edit().putString(REMOTE_CONFIG_DELTA, delta).apply();
+    }
+
+    public synchronized @NonNull String getRemoteConfigDelta() {
+        return preferences_.getString(REMOTE_CONFIG_DELTA, "");
+    }
+
+    public synchronized void setRemoteConfigETag(@Nullable String eTag) {
+        if (eTag == null) {
+            preferences_.edit().remove(REMOTE_CONFIG_ETAG).apply();
+        } else {
+            preferences_.edit().putString(REMOTE_CONFIG_ETAG, eTag).apply();
+        }
+    }
+
+    public synchronized @Nullable String getRemoteConfigETag() {
+        return preferences_.getString(REMOTE_CONFIG_ETAG, null);
+    }
+
+    public synchronized void setRemoteConfigUpdateTimestamp(long timestamp) {
+        preferences_.edit().putLong(REMOTE_CONFIG_UPDATE_TIMESTAMP, timestamp).apply();
+    }
+
+    public synchronized long getRemoteConfigUpdateTimestamp() {
+        return preferences_.getLong(REMOTE_CONFIG_UPDATE_TIMESTAMP, 0);
+    }
+
+    /**
+     * Moves the given request from the request queue to the quarantine.
+     * If the quarantine is full, the oldest quarantined request is deleted.
+     *
+     * @param requestStr the request to be moved
+     */
+    public synchronized void quarantineRequest(@NonNull final String requestStr) {
+        final List<String> quarantined = new ArrayList<>(Arrays.asList(getQuarantinedRequests()));
+        while (quarantined.size() >= MAX_QUARANTINED_REQUESTS) {
+            L.w("[CountlyStore] Quarantine reached it's limit, deleting oldest request");
+            quarantined.remove(0);
+        }
+        quarantined.add(requestStr);
+
+        //the quarantine is written to disk before the request is removed from the queue, so that it can't get lost in between.
+        //If the process dies before the removal, the request is sent again and also stays in the quarantine
+        preferences_.edit().putString(QUARANTINE_PREFERENCE, Utils.joinCountlyStore(quarantined, DELIMITER)).commit();
+        removeRequest(requestStr);
+        removeBadRequestAttempts(requestStr);
+    }
+
+    /**
+     * Returns the quarantined requests, from the oldest to the most recent one
+     */
+    public synchronized @NonNull String[] getQuarantinedRequests() {
+        final String joined = preferences_.getString(QUARANTINE_PREFERENCE, "");
+        return joined.length() == 0 ? new String[0] : joined.split(DELIMITER);
+    }
+
+    public synchronized int getQuarantinedRequestCount() {
+        return getQuarantinedRequests().length;
+    }
+
+    /**
+     * Removes all quarantined requests and returns them
+     */
+    public synchronized @NonNull String[] drainQuarantinedRequests() {
+        final String[] quarantined = getQuarantinedRequests();
+        preferences_.edit().remove(QUARANTINE_PREFERENCE).apply();
+        return quarantined;
+    }
+
+    /**
+     * Counts a attempt of the given request that the server rejected as a bad request.
+     * The counts are kept by the hash of the request, in the order the requests first failed.
+     *
+     * @return amount of rejected attempts of the request, including this one
+     */
+    public synchronized int addBadRequestAttempt(@NonNull final String requestStr) {
+        final String hash = UtilsNetworking.sha256Hash(requestStr);
+        if (hash == null) {
+            return 0;
+        }
+
+        final JSONObject attempts = getBadRequestAttempts();
+        final int count = attempts.optInt(hash, 0) + 1;
+        try {
+            attempts.put(hash, count);
+            if (attempts.length() > MAX_BAD_REQUESTS) {
+                //only a new request can go over the limit, the request that failed first is dropped
+                attempts.remove(attempts.keys().next());
+            }
+        } catch (JSONException e) {
+            L.w("[CountlyStore] Failed to count the bad request attempt [" + e + "]");
+        }
+        preferences_.edit().putString(BAD_REQUEST_ATTEMPTS, attempts.toString()).apply();
+        return count;
+    }
+
+    /**
+     * Resets the attempt counts of all rejected requests
+     */
+    public synchronized void clearBadRequestAttempts() {
+        if (preferences_.contains(BAD_REQUEST_ATTEMPTS)) {
+            //nothing to reset most of the time, avoid writing to storage on every request
+            preferences_.edit().remove(BAD_REQUEST_ATTEMPTS).apply();
+        }
+    }
+
+    synchronized int getBadRequestAttemptCount() {
+        return getBadRequestAttempts().length();
+    }
+
+    private void removeBadRequestAttempts(@NonNull final String requestStr) {
+        final String hash = UtilsNetworking.sha256Hash(requestStr);
+        final JSONObject attempts = getBadRequestAttempts();
+        if (hash == null || attempts.remove(hash) == null) {
+            return;
+        }
+
+        if (attempts.length() == 0) {
+            preferences_.edit().remove(BAD_REQUEST_ATTEMPTS).apply();
+        } else {
+            preferences_.edit().putString(BAD_REQUEST_ATTEMPTS, attempts.toString()).apply();
+        }
+    }
+
+    private @NonNull JSONObject getBadRequestAttempts() {
+        final String stored = preferences_.getString(BAD_REQUEST_ATTEMPTS, "");
+        if (stored.isEmpty()) {
+            return new JSONObject();
+        }
+
+        try {
+            return new JSONObject(stored);
+        } catch (JSONException e) {
+            L.w("[CountlyStore] Failed to parse the stored bad request attempts [" + e + "]");
+            return new JSONObject();
+        }
+    }
+
+    public synchronized void setRequestBackoffState(@NonNull String state) {
+        preferences_.edit().putString(REQUEST_BACKOFF_STATE, state).apply();
+    }
+
+    public synchronized @NonNull String getRequestBackoffState() {
+        return preferences_.getString(REQUEST_BACKOFF_STATE, "");
+    }
+
     public synchronized void setCachedAdvertisingId(String advertisingId) {
         preferences_.edit().putString(CACHED_ADVERTISING_ID, advertisingId).apply();
     }
@@ -320,27 +678,19 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * NaN and infinity values will be quietly ignored.
      */
     public void recordEventToEventQueue(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, final long timestamp, final int hour, final int dow) {
-        Map<String, String> segmentationString = null;
-        Map<String, Integer> segmentationInt = null;
-        Map<String, Double> segmentationDouble = null;
-        Map<String, Boolean> segmentationBoolean = null;
-
-        if (segmentation != null && segmentation.size() > 0) {
-            segmentationString = new HashMap<>();
-            segmentationInt = new HashMap<>();
-            segmentationDouble = new HashMap<>();
-            segmentationBoolean = new HashMap<>();
-            Map<String, Object> segmentationReminder = new HashMap<>();
-
-            Utils.fillInSegmentation(segmentation, segmentationString, segmentationInt, segmentationDouble, segmentationBoolean, segmentationReminder);
-        }
+        addEvent(createEvent(key, segmentation, count, sum, dur, timestamp, hour, dow));
+    }
 
+    /**
+     * Creates the event object that is stored in the event queue.
+     * Segmentation values are stored unboxed, values of unsupported types are dropped.
+     */
+    static Event createEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, final long timestamp, final int hour, final int dow) {
         final Event event = new Event();
         event.key = key;
-        event.segmentation = segmentationString;
-        event.segmentationDouble = segmentationDouble;
-        event.segmentationInt = segmentationInt;
-        event.segmentationBoolean = segmentationBoolean;
+        if (segmentation != null && segmentation.size() > 0) {
+            event.segmentation = EventSegmentation.fromMap(segmentation);
+        }
         event.timestamp = timestamp;
         event.hour = hour;
         event.dow = dow;
@@ -348,7 +698,7 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         event.sum = sum;
         event.dur = dur;
 
-        addEvent(event);
+        return event;
     }
 
     /**
@@ -360,8 +710,13 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
     public synchronized void removeEvents(final Collection<Event> eventsToRemove) {
         if (eventsToRemove != null && eventsToRemove.size() > 0) {
             final List<Event> events = getEventList();
-            if (events.removeAll(eventsToRemove)) {
-                preferences_.edit().putString(EVENTS_PREFERENCE, joinEvents(events, DELIMITER)).apply();
+            //a hash set keeps this linear, events cache the hash of their segmentation
+            if (events.removeAll(new HashSet<>(eventsToRemove))) {
+                if (eventStore_ != null) {
+                    eventStore_.replaceEvents(events);
+                } else {
+                    preferences_.edit().putString(EVENTS_PREFERENCE, joinEvents(events, DELIMITER)).apply();
+                }
             }
         }
     }
@@ -376,8 +731,11 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
     @SuppressWarnings("SameParameterValue")
     static String joinEvents(final Collection<Event> collection, final String delimiter) {
         final List<String> strings = new ArrayList<>();
+        final StringBuilder json = new StringBuilder(128);
         for (Event e : collection) {
-            strings.add(e.toJSON().toString());
+            json.setLength(0);
+            EventJson.write(e, json);
+            strings.add(json.toString());
         }
         return Utils.joinCountlyStore(strings, delimiter);
     }
@@ -429,6 +787,14 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         prefsEditor.apply();
 
         preferencesPush_.edit().clear().apply();
+
+        if (requestJournal_ != null) {
+            requestJournal_.clear();
+        }
+
+        if (eventStore_ != null) {
+            eventStore_.clear();
+        }
     }
 
     @Nullable
@@ -465,6 +831,75 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         preferences_.edit().putInt(STORAGE_SCHEMA_VERSION, version).apply();
     }
 
+    /**
+     * Returns true if the request and event queues are stored in journal files.
+     * If the files directory was not available, they are stored in the preferences and the legacy queues can't be migrated.
+     */
+    public boolean isJournalAvailable() {
+        return requestJournal_ != null && eventStore_ != null;
+    }
+
+    /**
+     * Returns the requests that are still stored in the legacy preferences based request queue.
+     * If the request journal is not in use, there is nothing to migrate and an empty array is returned.
+     */
+    @NonNull public synchronized String[] getLegacyRequests() {
+        if (requestJournal_ == null) {
+            return new String[0];
+        }
+
+        final String joinedConnStr = preferences_.getString(REQUEST_PREFERENCE, "");
+        return joinedConnStr.length() == 0 ? new String[0] : joinedConnStr.split(DELIMITER);
+    }
+
+    /**
+     * Removes the legacy preferences based request queue.
+     * Does nothing if the request journal is not in use, because then the preferences are the request queue.
+     */
+    public synchronized void clearLegacyRequests() {
+        if (requestJournal_ == null) {
+            return;
+        }
+
+        preferences_.edit().remove(REQUEST_PREFERENCE).apply();
+    }
+
+    /**
+     * Returns the event JSON strings that are still stored in the legacy preferences based event queue.
+     * If the event journal is not in use, there is nothing to migrate and an empty array is returned.
+     */
+    @NonNull public synchronized String[] getLegacyEvents() {
+        if (eventStore_ == null) {
+            return new String[0];
+        }
+
+        final String joinedEventsStr = preferences_.getString(EVENTS_PREFERENCE, "");
+        return joinedEventsStr.length() == 0 ? new String[0] : joinedEventsStr.split(DELIMITER);
+    }
+
+    /**
+     * Removes the legacy preferences based event queue.
+     * Does nothing if the event journal is not in use, because then the preferences are the event queue.
+     */
+    public synchronized void clearLegacyEvents() {
+        if (eventStore_ == null) {
+            return;
+        }
+
+        preferences_.edit().remove(EVENTS_PREFERENCE).apply();
+    }
+
+    /**
+     * Replaces the current event queue with the provided events
+     */
+    public synchronized void replaceEventList(@NonNull final List<Event> events) {
+        if (eventStore_ != null) {
+            eventStore_.replaceEvents(events);
+        } else {
+            preferences_.edit().putString(EVENTS_PREFERENCE, joinEvents(events, DELIMITER)).apply();
+        }
+    }
+
     /**
      * Check all used preferences to see if any one of the has set some data
      * This would be an indicator that the SDK had been started before
@@ -476,10 +911,18 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
             return true;
         }
 
+        if (requestJournal_ != null && requestJournal_.exists()) {
+            return true;
+        }
+
         if (preferences_.getString(EVENTS_PREFERENCE, null) != null) {
             return true;
         }
 
+        if (eventStore_ != null && eventStore_.exists()) {
+            return true;
+        }
+
         if (preferences_.getString(STAR_RATING_PREFERENCE, null) != null) {
             return true;
         }
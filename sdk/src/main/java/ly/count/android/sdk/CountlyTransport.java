@@ -0,0 +1,98 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Executes the HTTP calls that the SDK makes.
+ *
+ * By default "java.net.HttpURLConnection" is used. A custom implementation can be provided
+ * with "CountlyConfig.setTransport" to run the SDK on a different HTTP engine.
+ *
+ * The SDK prepares the full request, including the checksum, headers and the already compressed body,
+ * and classifies the response itself. Implementations should only perform the call and return the response.
+ * They are called from background threads and have to be thread safe.
+ */
+public interface CountlyTransport {
+
+    /**
+     * Performs the given request and fully reads the response.
+     *
+     * @param request the request to perform
+     * @return the response of the server, also for non 2xx response codes
+     * @throws IOException if the request could not be performed
+     */
+    @NonNull Response execute(@NonNull Request request) throws IOException;
+
+    class Request {
+        /**
+         * HTTP method, "GET" or "POST"
+         */
+        @NonNull public final String method;
+        @NonNull public final URL url;
+        /**
+         * Request headers in the order they should be set
+         */
+        @NonNull public final Map<String, String> headers;
+        /**
+         * Request body, null if there is none
+         */
+        @Nullable public final byte[] body;
+        public final int connectTimeout;
+        public final int readTimeout;
+
+        public Request(@NonNull String method, @NonNull URL url, @Nullable Map<String, String> headers, @Nullable byte[] body, int connectTimeout, int readTimeout) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers == null ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+            this.body = body;
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+    }
+
+    class Response {
+        public final int code;
+        /**
+         * Response headers, multiple values of the same header are joined with ", "
+         */
+        @NonNull public final Map<String, String> headers;
+        /**
+         * Response body as it was received, it will be decoded by the SDK if the "Content-Encoding" header is "gzip"
+         */
+        @NonNull public final byte[] body;
+
+        public Response(int code, @Nullable Map<String, String> headers, @Nullable byte[] body) {
+            this.code = code;
+            this.headers = headers == null ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+            this.body = body == null ? new byte[0] : body;
+        }
+
+        /**
+         * Returns the value of the header with the given name, ignoring the case of the name
+         */
+        @Nullable public String getHeader(@NonNull String name) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                if (name.equalsIgnoreCase(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+
+        @NonNull public String getBodyString() {
+            try {
+                return new String(body, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // should never happen because Android guarantees UTF-8 support
+                return "";
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ package ly.count.android.sdk;
 
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.os.Build;
 import android.telephony.TelephonyManager;
 import android.util.DisplayMetrics;
@@ -30,6 +32,7 @@ import android.view.Display;
 import android.view.WindowManager;
 import java.io.UnsupportedEncodingException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
@@ -41,6 +44,22 @@ import org.json.JSONObject;
  * the current device and operating environment.
  */
 class DeviceInfo {
+    //metric values that can't change while the process is running, collected on the first "getMetrics" call
+    static String[] staticMetrics = null;
+
+    //metric values that depend on the device configuration (orientation, locale)
+    static String[] configurationMetrics = null;
+    //the configuration and default locale that "configurationMetrics" were collected with.
+    //They are compared on every call, so that the values are also refreshed without the configuration callbacks
+    static Configuration configurationMetricsConfiguration = null;
+    static Locale configurationMetricsLocale = null;
+
+    //the last result of "getMetrics" and the override and carrier it was created with.
+    //The carrier can change with the SIM or the network without a configuration change, so it is read on every call
+    static String encodedMetrics = null;
+    static Map<String, String> encodedMetricsOverride = null;
+    static String encodedMetricsCarrier = null;
+
     /**
      * Returns the display name of the current operating system.
      */
@@ -231,22 +250,46 @@ class DeviceInfo {
      * to be associated with a begin session event.
      * See the following link for more info:
      * https://count.ly/resources/reference/server-api
+     *
+     * The result is reused until the device configuration, the default locale, the carrier or the metric override changes.
      */
-    static String getMetrics(final Context context, final Map<String, String> metricOverride) {
+    static synchronized String getMetrics(final Context context, final Map<String, String> metricOverride) {
+        final Resources resources = context.getResources();
+        final Configuration configuration = resources == null ? null : resources.getConfiguration();
+        final Locale locale = Locale.getDefault();
+        if (!locale.equals(configurationMetricsLocale) || (configuration != null && !configuration.equals(configurationMetricsConfiguration))) {
+            onConfigurationChanged();
+        }
+
+        final String carrier = getCarrier(context);
+        if (encodedMetrics != null && carrier.equals(encodedMetricsCarrier) && (metricOverride == null ? encodedMetricsOverride == null : metricOverride.equals(encodedMetricsOverride))) {
+            return encodedMetrics;
+        }
+
+        if (staticMetrics == null) {
+            staticMetrics = new String[] { getDevice(), getOS(), getOSVersion(), getAppVersion(context), getStore(context), getManufacturer(), getDeviceType(context) };
+        }
+
+        if (configurationMetrics == null) {
+            configurationMetrics = new String[] { getResolution(context), getDensity(context), getLocale() };
+            configurationMetricsConfiguration = configuration == null ? null : new Configuration(configuration);
+            configurationMetricsLocale = locale;
+        }
+
         final JSONObject json = new JSONObject();
 
         fillJSONIfValuesNotEmpty(json,
-            "_device", getDevice(),
-            "_os", getOS(),
-            "_os_version", getOSVersion(),
-            "_carrier", getCarrier(context),
-            "_resolution", getResolution(context),
-            "_density", getDensity(context),
-            "_locale", getLocale(),
-            "_app_version", getAppVersion(context),
-            "_store", getStore(context),
-            "_manufacturer", getManufacturer(),
-            "_device_type", getDeviceType(context));
+            "_device", staticMetrics[0],
+            "_os", staticMetrics[1],
+            "_os_version", staticMetrics[2],
+            "_carrier", carrier,
+            "_resolution", configurationMetrics[0],
+            "_density", configurationMetrics[1],
+            "_locale", configurationMetrics[2],
+            "_app_version", staticMetrics[3],
+            "_store", staticMetrics[4],
+            "_manufacturer", staticMetrics[5],
+            "_device_type", staticMetrics[6]);
 
         //override metric values
         if (metricOverride != null) {
@@ -279,9 +322,22 @@ class DeviceInfo {
             // should never happen because Android guarantees UTF-8 support
         }
 
+        encodedMetrics = result;
+        encodedMetricsOverride = metricOverride == null ? null : new HashMap<>(metricOverride);
+        encodedMetricsCarrier = carrier;
+
         return result;
     }
 
+    /**
+     * Should be called when the device configuration has changed.
+     * The configuration dependent metrics are collected again on the next "getMetrics" call.
+     */
+    static synchronized void onConfigurationChanged() {
+        configurationMetrics = null;
+        encodedMetrics = null;
+    }
+
     /**
      * Utility method to fill JSONObject with supplied objects for supplied keys.
      * Fills json only with non-null and non-empty key/value pairs.
@@ -0,0 +1,149 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram with fixed bucket bounds that can be updated from multiple threads without locking.
+ *
+ * A value is counted in the first bucket whose upper bound is greater or equal to it,
+ * values above the last bound are counted in an additional overflow bucket.
+ */
+public class DiagnosticsHistogram {
+    private final long[] upperBounds;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param upperBounds inclusive upper bounds of the buckets, in ascending order
+     */
+    DiagnosticsHistogram(@NonNull long[] upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        bucketCounts = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    /**
+     * Creates bounds that start at "first" and are multiplied by 2 until they reach "last"
+     */
+    static long[] exponentialBounds(long first, long last) {
+        int size = 1;
+        for (long bound = first; bound < last; bound *= 2) {
+            size++;
+        }
+
+        long[] bounds = new long[size];
+        long bound = first;
+        for (int a = 0; a < size; a++) {
+            bounds[a] = Math.min(bound, last);
+            bound *= 2;
+        }
+        return bounds;
+    }
+
+    void record(long value) {
+        int index = 0;
+        while (index < upperBounds.length && value > upperBounds[index]) {
+            index++;
+        }
+
+        bucketCounts.incrementAndGet(index);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    void reset() {
+        for (int a = 0; a < bucketCounts.length(); a++) {
+            bucketCounts.set(a, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * @return the amount of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of all recorded values
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return the largest recorded value, 0 if nothing was recorded
+     */
+    public long getMax() {
+        long value = max.get();
+        return value == Long.MIN_VALUE ? 0 : value;
+    }
+
+    /**
+     * @return the average of the recorded values, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long values = count.get();
+        if (values == 0) {
+            return 0;
+        }
+        return (double) sum.get() / values;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given percentile.
+     * For values in the overflow bucket the largest recorded value is returned.
+     *
+     * @param percentile percentile from 0 to 100
+     * @return the approximated value, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long values = 0;
+        long[] counts = getBucketCounts();
+        for (long bucketCount : counts) {
+            values += bucketCount;
+        }
+        if (values == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(values * Math.min(Math.max(percentile, 0), 100) / 100.0);
+        long seen = 0;
+        for (int a = 0; a < upperBounds.length; a++) {
+            seen += counts[a];
+            if (seen >= Math.max(target, 1)) {
+                return upperBounds[a];
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return a copy of the inclusive upper bounds of the buckets, the overflow bucket has no bound
+     */
+    public @NonNull long[] getBucketUpperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * @return the amount of values in every bucket, the last entry is the overflow bucket
+     */
+    public @NonNull long[] getBucketCounts() {
+        long[] counts = new long[bucketCounts.length()];
+        for (int a = 0; a < counts.length; a++) {
+            counts[a] = bucketCounts.get(a);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,17 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives the SDK diagnostics while the SDK is running
+ */
+public interface DiagnosticsListener {
+    /**
+     * Called on the background thread of the request queue every time it has finished sending,
+     * if at least one request was attempted.
+     * It should return quickly, because the next requests are only sent after it returns.
+     *
+     * @param metrics the live metrics object, its values keep changing after this call
+     */
+    void onRequestQueueProcessed(@NonNull DiagnosticsMetrics metrics);
+}
@@ -0,0 +1,262 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and histograms that show where the SDK spends time and how the request queue behaves.
+ *
+ * The values are collected by the storage and the request queue while the SDK is running
+ * and can be read from any thread.
+ */
+public class DiagnosticsMetrics {
+    private final AtomicInteger requestQueueDepth = new AtomicInteger();
+    private final AtomicInteger eventQueueDepth = new AtomicInteger();
+
+    //sampled every time a request or event is stored
+    private final DiagnosticsHistogram requestQueueDepthHistogram = new DiagnosticsHistogram(DiagnosticsHistogram.exponentialBounds(1, 1024));
+    private final DiagnosticsHistogram eventQueueDepthHistogram = new DiagnosticsHistogram(DiagnosticsHistogram.exponentialBounds(1, 128));
+
+    //milliseconds from the creation of a request until the server accepted it
+    private final DiagnosticsHistogram deliveryLatencyHistogram = new DiagnosticsHistogram(DiagnosticsHistogram.exponentialBounds(16, 24L * 60 * 60 * 1000));
+
+    //microseconds spent writing to the storage
+    private final DiagnosticsHistogram storeWriteLatencyHistogram = new DiagnosticsHistogram(DiagnosticsHistogram.exponentialBounds(16, 1024 * 1024));
+
+    //bytes of the sent request bodies or queries
+    private final DiagnosticsHistogram requestPayloadHistogram = new DiagnosticsHistogram(DiagnosticsHistogram.exponentialBounds(256, 1024 * 1024));
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong requestAttemptCount = new AtomicLong();
+    private final AtomicLong failedAttemptCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong connectionErrorCount = new AtomicLong();
+    private final AtomicLong droppedRequestCount = new AtomicLong();
+
+    //HTTP status code -> amount of responses
+    private final Map<Integer, Long> statusCodeCounts = new TreeMap<>();
+
+    private volatile DiagnosticsListener listener = null;
+
+    void setListener(@Nullable DiagnosticsListener listener) {
+        this.listener = listener;
+    }
+
+    @Nullable DiagnosticsListener getListener() {
+        return listener;
+    }
+
+    void onRequestStored(int queueDepth, long writeDurationNs) {
+        requestQueueDepth.set(queueDepth);
+        requestQueueDepthHistogram.record(queueDepth);
+        storeWriteLatencyHistogram.record(writeDurationNs / 1000);
+    }
+
+    void onEventStored(int queueDepth, long writeDurationNs) {
+        eventQueueDepth.set(queueDepth);
+        eventQueueDepthHistogram.record(queueDepth);
+        storeWriteLatencyHistogram.record(writeDurationNs / 1000);
+    }
+
+    void onRequestsRemoved(int queueDepth, long writeDurationNs) {
+        requestQueueDepth.set(queueDepth);
+        storeWriteLatencyHistogram.record(writeDurationNs / 1000);
+    }
+
+    void onEventQueueEmptied() {
+        eventQueueDepth.set(0);
+    }
+
+    void onRequestDropped() {
+        droppedRequestCount.incrementAndGet();
+    }
+
+    /**
+     * Called for every HTTP call, also for the ones that are not made by the request queue
+     *
+     * @param requestBytes approximate size of the whole request
+     * @param payloadBytes size of the body, or of the query for HTTP GET requests
+     */
+    void onHttpRequestSent(long requestBytes, long payloadBytes) {
+        bytesSent.addAndGet(requestBytes);
+        requestPayloadHistogram.record(payloadBytes);
+    }
+
+    void onHttpResponseReceived(int statusCode, long responseBytes) {
+        bytesReceived.addAndGet(responseBytes);
+
+        synchronized (statusCodeCounts) {
+            Long current = statusCodeCounts.get(statusCode);
+            statusCodeCounts.put(statusCode, current == null ? 1 : current + 1);
+        }
+    }
+
+    void onAttemptSucceeded() {
+        requestAttemptCount.incrementAndGet();
+    }
+
+    /**
+     * @param requestTimestampMs timestamp of when the request was created, negative if not known
+     */
+    void onRequestDelivered(long requestTimestampMs, long nowMs) {
+        if (requestTimestampMs >= 0) {
+            deliveryLatencyHistogram.record(Math.max(nowMs - requestTimestampMs, 0));
+        }
+    }
+
+    /**
+     * @param willRetry true if the request stays in the queue and is attempted again
+     * @param connectionError true if no response was received
+     */
+    void onAttemptFailed(boolean willRetry, boolean connectionError) {
+        requestAttemptCount.incrementAndGet();
+        failedAttemptCount.incrementAndGet();
+        if (willRetry) {
+            retryCount.incrementAndGet();
+        }
+        if (connectionError) {
+            connectionErrorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the amount of requests in the request queue, as of the last change the SDK made to it
+     */
+    public int getRequestQueueDepth() {
+        return requestQueueDepth.get();
+    }
+
+    /**
+     * @return the amount of events in the event queue, as of the last change the SDK made to it
+     */
+    public int getEventQueueDepth() {
+        return eventQueueDepth.get();
+    }
+
+    /**
+     * @return the request queue depth, sampled every time a request is stored
+     */
+    public @NonNull DiagnosticsHistogram getRequestQueueDepthHistogram() {
+        return requestQueueDepthHistogram;
+    }
+
+    /**
+     * @return the event queue depth, sampled every time an event is stored
+     */
+    public @NonNull DiagnosticsHistogram getEventQueueDepthHistogram() {
+        return eventQueueDepthHistogram;
+    }
+
+    /**
+     * @return milliseconds from the creation of a request until the server accepted it
+     */
+    public @NonNull DiagnosticsHistogram getDeliveryLatencyHistogram() {
+        return deliveryLatencyHistogram;
+    }
+
+    /**
+     * @return microseconds spent storing and removing requests and events
+     */
+    public @NonNull DiagnosticsHistogram getStoreWriteLatencyHistogram() {
+        return storeWriteLatencyHistogram;
+    }
+
+    /**
+     * @return size in bytes of the request bodies, or of the queries of HTTP GET requests
+     */
+    public @NonNull DiagnosticsHistogram getRequestPayloadHistogram() {
+        return requestPayloadHistogram;
+    }
+
+    /**
+     * @return approximate amount of bytes sent, including the URL and headers
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return amount of response body bytes received, before decompression
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the amount of attempts to send a request from the request queue, a bulk request counts as one attempt
+     */
+    public long getRequestAttemptCount() {
+        return requestAttemptCount.get();
+    }
+
+    /**
+     * @return the amount of attempts that were not accepted by the server or failed to connect
+     */
+    public long getFailedAttemptCount() {
+        return failedAttemptCount.get();
+    }
+
+    /**
+     * @return the amount of failed attempts after which the request stayed in the queue to be sent again
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return the amount of attempts that did not receive a response
+     */
+    public long getConnectionErrorCount() {
+        return connectionErrorCount.get();
+    }
+
+    /**
+     * @return the share of failed attempts, from 0 to 1
+     */
+    public double getFailureRate() {
+        long attempts = requestAttemptCount.get();
+        if (attempts == 0) {
+            return 0;
+        }
+        return (double) failedAttemptCount.get() / attempts;
+    }
+
+    /**
+     * @return the amount of requests that were deleted because the request queue was full
+     */
+    public long getDroppedRequestCount() {
+        return droppedRequestCount.get();
+    }
+
+    /**
+     * @return a copy of the amount of responses for every received HTTP status code
+     */
+    public @NonNull Map<Integer, Long> getStatusCodeCounts() {
+        synchronized (statusCodeCounts) {
+            return new TreeMap<>(statusCodeCounts);
+        }
+    }
+
+    void reset() {
+        requestQueueDepthHistogram.reset();
+        eventQueueDepthHistogram.reset();
+        deliveryLatencyHistogram.reset();
+        storeWriteLatencyHistogram.reset();
+        requestPayloadHistogram.reset();
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        requestAttemptCount.set(0);
+        failedAttemptCount.set(0);
+        retryCount.set(0);
+        connectionErrorCount.set(0);
+        droppedRequestCount.set(0);
+        synchronized (statusCodeCounts) {
+            statusCodeCounts.clear();
+        }
+    }
+}
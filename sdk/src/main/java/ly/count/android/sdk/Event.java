@@ -22,9 +22,7 @@ THE SOFTWARE.
 package ly.count.android.sdk;
 
 import androidx.annotation.NonNull;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -45,10 +43,7 @@ class Event {
     private static final String HOUR = "hour";
 
     public String key;
-    public Map<String, String> segmentation;
-    public Map<String, Integer> segmentationInt;
-    public Map<String, Double> segmentationDouble;
-    public Map<String, Boolean> segmentationBoolean;
+    public EventSegmentation segmentation;
     public int count;
     public double sum;
     public double dur;
@@ -70,6 +65,7 @@ class Event {
 
     /**
      * Creates and returns a JSONObject containing the event data from this object.
+     * Stored events and requests are written with "EventJson", which produces the same JSON without the object tree.
      *
      * @return a JSONObject containing the event data from this object
      */
@@ -83,32 +79,11 @@ class Event {
             json.put(HOUR, hour);
             json.put(DAY_OF_WEEK, dow);
 
-            JSONObject jobj = new JSONObject();
             if (segmentation != null) {
-                for (Map.Entry<String, String> pair : segmentation.entrySet()) {
-                    jobj.put(pair.getKey(), pair.getValue());
+                JSONObject jobj = new JSONObject();
+                for (int a = 0; a < segmentation.size(); a++) {
+                    jobj.put(segmentation.keyAt(a), segmentation.valueAt(a));
                 }
-            }
-
-            if (segmentationInt != null) {
-                for (Map.Entry<String, Integer> pair : segmentationInt.entrySet()) {
-                    jobj.put(pair.getKey(), pair.getValue());
-                }
-            }
-
-            if (segmentationDouble != null) {
-                for (Map.Entry<String, Double> pair : segmentationDouble.entrySet()) {
-                    jobj.put(pair.getKey(), pair.getValue());
-                }
-            }
-
-            if (segmentationBoolean != null) {
-                for (Map.Entry<String, Boolean> pair : segmentationBoolean.entrySet()) {
-                    jobj.put(pair.getKey(), pair.getValue());
-                }
-            }
-
-            if (segmentation != null || segmentationInt != null || segmentationDouble != null || segmentationBoolean != null) {
                 json.put(SEGMENTATION_KEY, jobj);
             }
 
@@ -151,10 +126,7 @@ class Event {
             if (!json.isNull(SEGMENTATION_KEY)) {
                 JSONObject segm = json.getJSONObject(SEGMENTATION_KEY);
 
-                final HashMap<String, String> segmentation = new HashMap<>();
-                final HashMap<String, Integer> segmentationInt = new HashMap<>();
-                final HashMap<String, Double> segmentationDouble = new HashMap<>();
-                final HashMap<String, Boolean> segmentationBoolean = new HashMap<>();
+                final EventSegmentation segmentation = new EventSegmentation(segm.length());
 
                 final Iterator nameItr = segm.keys();
                 while (nameItr.hasNext()) {
@@ -164,13 +136,13 @@ class Event {
 
                         if (obj instanceof Double) {
                             //in case it's a double
-                            segmentationDouble.put(key, segm.getDouble(key));
+                            segmentation.put(key, segm.getDouble(key));
                         } else if (obj instanceof Integer) {
                             //in case it's a integer
-                            segmentationInt.put(key, segm.getInt(key));
+                            segmentation.put(key, segm.getInt(key));
                         } else if (obj instanceof Boolean) {
                             //in case it's a boolean
-                            segmentationBoolean.put(key, segm.getBoolean(key));
+                            segmentation.put(key, segm.getBoolean(key));
                         } else {
                             //assume it's String
                             segmentation.put(key, segm.getString(key));
@@ -178,9 +150,6 @@ class Event {
                     }
                 }
                 event.segmentation = segmentation;
-                event.segmentationDouble = segmentationDouble;
-                event.segmentationInt = segmentationInt;
-                event.segmentationBoolean = segmentationBoolean;
             }
         } catch (JSONException e) {
             Countly.sharedInstance().L.w("Got exception converting JSON to an Event", e);
@@ -207,8 +176,11 @@ class Event {
 
     @Override
     public int hashCode() {
-        return (key != null ? key.hashCode() : 1) ^
-            (segmentation != null ? segmentation.hashCode() : 1) ^
-            (timestamp != 0 ? (int) timestamp : 1);
+        int result = key != null ? key.hashCode() : 0;
+        result = 31 * result + (int) (timestamp ^ (timestamp >>> 32));
+        result = 31 * result + hour;
+        result = 31 * result + dow;
+        result = 31 * result + (segmentation != null ? segmentation.hashCode() : 0);
+        return result;
     }
 }
@@ -0,0 +1,193 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event queue stage that merges repeated events before they are stored.
+ *
+ * Custom events with the same key and the same segmentation that are recorded within the same hour
+ * are combined into a single event with the summed count, sum and duration.
+ * The combined event keeps the timestamp of the first recorded one.
+ * Internal "[CLY]_" events are passed through unchanged.
+ *
+ * Combined events are kept in memory until they are flushed to the underlying event queue,
+ * which happens before the event queue is sent, when too many different events are held,
+ * or when the count of a event would overflow.
+ *
+ * Access to this class is synchronized on the instance.
+ */
+class EventAggregator implements EventQueueProvider {
+    static final String INTERNAL_EVENT_PREFIX = "[CLY]_";
+
+    private static final long BUCKET_LENGTH_MS = 60L * 60L * 1000L;
+
+    private static class AggregateKey {
+        final String key;
+        final Map<String, Object> segmentation;
+        final long bucket;
+        final int hour;
+        final int dow;
+
+        AggregateKey(String key, Map<String, Object> segmentation, long bucket, int hour, int dow) {
+            this.key = key;
+            this.segmentation = segmentation;
+            this.bucket = bucket;
+            this.hour = hour;
+            this.dow = dow;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AggregateKey)) {
+                return false;
+            }
+            AggregateKey other = (AggregateKey) o;
+            if (bucket != other.bucket || hour != other.hour || dow != other.dow || !key.equals(other.key)) {
+                return false;
+            }
+            return segmentation == null ? other.segmentation == null : segmentation.equals(other.segmentation);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = key.hashCode();
+            result = 31 * result + (segmentation != null ? segmentation.hashCode() : 0);
+            result = 31 * result + (int) (bucket ^ (bucket >>> 32));
+            result = 31 * result + hour;
+            result = 31 * result + dow;
+            return result;
+        }
+    }
+
+    private static class Aggregate {
+        int count;
+        double sum;
+        double dur;
+        final long timestamp;
+
+        Aggregate(int count, double sum, double dur, long timestamp) {
+            this.count = count;
+            this.sum = sum;
+            this.dur = dur;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final EventQueueProvider eventQueue_;
+    private final int maxAggregates_;
+
+    //insertion ordered, so that flushed events are stored in the order they were first recorded
+    private final Map<AggregateKey, Aggregate> aggregates_ = new LinkedHashMap<>();
+
+    private long recordedCount_ = 0;
+    private long storedCount_ = 0;
+
+    ModuleLog L;
+
+    /**
+     * @param eventQueue event queue where the combined events are stored
+     * @param maxAggregates amount of different events that are held before all of them are flushed
+     */
+    EventAggregator(@NonNull EventQueueProvider eventQueue, int maxAggregates, @NonNull ModuleLog logModule) {
+        eventQueue_ = eventQueue;
+        maxAggregates_ = maxAggregates;
+        L = logModule;
+    }
+
+    @Override
+    public synchronized void recordEventToEventQueue(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, final long timestamp, final int hour, final int dow) {
+        recordedCount_++;
+
+        if (key.startsWith(INTERNAL_EVENT_PREFIX)) {
+            storedCount_++;
+            eventQueue_.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow);
+            return;
+        }
+
+        final Map<String, Object> segm = (segmentation == null || segmentation.isEmpty()) ? null : segmentation;
+        final AggregateKey lookupKey = new AggregateKey(key, segm, timestamp / BUCKET_LENGTH_MS, hour, dow);
+        final Aggregate existing = aggregates_.get(lookupKey);
+
+        if (existing != null) {
+            if ((long) existing.count + count <= Integer.MAX_VALUE) {
+                existing.count += count;
+                existing.sum += sum;
+                existing.dur += dur;
+                return;
+            }
+
+            //the combined count would overflow, store what has been combined so far and start over
+            aggregates_.remove(lookupKey);
+            store(lookupKey, existing);
+        } else if (aggregates_.size() >= maxAggregates_) {
+            L.d("[EventAggregator] Holding the maximum amount of different events [" + maxAggregates_ + "], flushing them");
+            flush();
+        }
+
+        //the caller could modify the segmentation afterwards, the stored key needs its own copy
+        final AggregateKey storedKey = new AggregateKey(key, segm == null ? null : new HashMap<>(segm), lookupKey.bucket, hour, dow);
+        aggregates_.put(storedKey, new Aggregate(count, sum, dur, timestamp));
+    }
+
+    /**
+     * Stores all combined events in the underlying event queue
+     *
+     * @return the amount of events that were stored
+     */
+    synchronized int flush() {
+        if (aggregates_.isEmpty()) {
+            return 0;
+        }
+
+        final List<Map.Entry<AggregateKey, Aggregate>> entries = new ArrayList<>(aggregates_.entrySet());
+        aggregates_.clear();
+
+        for (Map.Entry<AggregateKey, Aggregate> entry : entries) {
+            store(entry.getKey(), entry.getValue());
+        }
+
+        L.v("[EventAggregator] Flushed [" + entries.size() + "] events, recorded:[" + recordedCount_ + "], stored:[" + storedCount_ + "]");
+        return entries.size();
+    }
+
+    /**
+     * Returns the amount of combined events that have not been flushed yet
+     */
+    synchronized int getPendingCount() {
+        return aggregates_.size();
+    }
+
+    /**
+     * Returns the amount of events that have been recorded through this stage
+     */
+    synchronized long getRecordedCount() {
+        return recordedCount_;
+    }
+
+    /**
+     * Returns the amount of events that have been stored in the underlying event queue
+     */
+    synchronized long getStoredCount() {
+        return storedCount_;
+    }
+
+    /**
+     * Discards all combined events without storing them
+     */
+    synchronized void clear() {
+        aggregates_.clear();
+    }
+
+    private void store(AggregateKey key, Aggregate aggregate) {
+        storedCount_++;
+        eventQueue_.recordEventToEventQueue(key.key, key.segmentation, aggregate.count, aggregate.sum, aggregate.dur, aggregate.timestamp, key.hour, key.dow);
+    }
+}
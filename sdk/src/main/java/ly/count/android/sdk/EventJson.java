@@ -0,0 +1,531 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import org.json.JSONException;
+
+/**
+ * Streaming serialization of events, without building a "JSONObject" tree per event.
+ *
+ * The writer appends the event JSON straight into a caller provided, reusable buffer.
+ * The output is the same as the one of "Event.toJSON().toString()", including the field order,
+ * number formatting and string escaping, so that stored events and request payloads don't change.
+ * The reader parses a single event JSON string into a "Event" in one pass,
+ * with the same results as "Event.fromJSON".
+ */
+class EventJson {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] LOWER_HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private EventJson() {
+    }
+
+    /**
+     * Appends the JSON representation of the event to the buffer
+     */
+    static void write(@NonNull Event event, @NonNull StringBuilder out) {
+        out.append('{');
+        boolean first = true;
+
+        if (event.key != null) {
+            writeName("key", true, out);
+            writeString(event.key, out);
+            first = false;
+        }
+        writeName("count", first, out);
+        out.append(event.count);
+        writeName("timestamp", false, out);
+        out.append(event.timestamp);
+        writeName("hour", false, out);
+        out.append(event.hour);
+        writeName("dow", false, out);
+        out.append(event.dow);
+
+        final EventSegmentation segmentation = event.segmentation;
+        if (segmentation != null) {
+            //a non finite double can't be written, toJSON skips everything after it in that case
+            for (int a = 0; a < segmentation.size(); a++) {
+                if (segmentation.typeAt(a) == EventSegmentation.TYPE_DOUBLE && !isFinite(segmentation.doubleAt(a))) {
+                    out.append('}');
+                    return;
+                }
+            }
+
+            writeName("segmentation", false, out);
+            out.append('{');
+            for (int a = 0; a < segmentation.size(); a++) {
+                writeName(segmentation.keyAt(a), a == 0, out);
+                switch (segmentation.typeAt(a)) {
+                    case EventSegmentation.TYPE_STRING:
+                        writeString(segmentation.stringAt(a), out);
+                        break;
+                    case EventSegmentation.TYPE_INT:
+                        out.append(segmentation.intAt(a));
+                        break;
+                    case EventSegmentation.TYPE_DOUBLE:
+                        writeDouble(segmentation.doubleAt(a), out);
+                        break;
+                    default:
+                        out.append(segmentation.booleanAt(a));
+                        break;
+                }
+            }
+            out.append('}');
+        }
+
+        if (!isFinite(event.sum)) {
+            out.append('}');
+            return;
+        }
+        writeName("sum", false, out);
+        writeDouble(event.sum, out);
+
+        if (event.dur > 0) {
+            if (Double.isInfinite(event.dur)) {
+                out.append('}');
+                return;
+            }
+            writeName("dur", false, out);
+            writeDouble(event.dur, out);
+        }
+
+        out.append('}');
+    }
+
+    /**
+     * Returns the JSON representation of the event
+     */
+    @NonNull static String toJSONString(@NonNull Event event) {
+        StringBuilder sb = new StringBuilder(128);
+        write(event, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the value to the buffer, encoded the same way as "URLEncoder.encode(value, "UTF-8")"
+     */
+    static void appendUrlEncoded(@NonNull CharSequence value, @NonNull StringBuilder out) {
+        final int length = value.length();
+        for (int a = 0; a < length; a++) {
+            final char c = value.charAt(a);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_') {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                appendPercentEncoded(c, out);
+            } else if (c < 0x800) {
+                appendPercentEncoded(0xC0 | (c >> 6), out);
+                appendPercentEncoded(0x80 | (c & 0x3F), out);
+            } else if (Character.isHighSurrogate(c) && a + 1 < length && Character.isLowSurrogate(value.charAt(a + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(a + 1));
+                a++;
+                appendPercentEncoded(0xF0 | (codePoint >> 18), out);
+                appendPercentEncoded(0x80 | ((codePoint >> 12) & 0x3F), out);
+                appendPercentEncoded(0x80 | ((codePoint >> 6) & 0x3F), out);
+                appendPercentEncoded(0x80 | (codePoint & 0x3F), out);
+            } else if (Character.isSurrogate(c)) {
+                //a unpaired surrogate can't be encoded, the platform encoder replaces it with '?'
+                appendPercentEncoded('?', out);
+            } else {
+                appendPercentEncoded(0xE0 | (c >> 12), out);
+                appendPercentEncoded(0x80 | ((c >> 6) & 0x3F), out);
+                appendPercentEncoded(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    /**
+     * Parses a single event from its JSON representation
+     *
+     * @return the parsed event or null if the "key" value is not present or the empty string
+     * @throws JSONException if the value is not valid JSON or not a JSON object
+     */
+    static Event read(@NonNull String json) throws JSONException {
+        Reader reader = new Reader(json);
+        Event event = reader.readEvent();
+        return (event.key != null && event.key.length() > 0) ? event : null;
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    private static void writeName(@NonNull String name, boolean first, @NonNull StringBuilder out) {
+        if (!first) {
+            out.append(',');
+        }
+        writeString(name, out);
+        out.append(':');
+    }
+
+    /**
+     * Writes the number the same way as "JSONObject.numberToString"
+     */
+    private static void writeDouble(double value, @NonNull StringBuilder out) {
+        if (value == 0 && 1 / value < 0) {
+            out.append("-0");
+            return;
+        }
+        long longValue = (long) value;
+        if (value == (double) longValue) {
+            out.append(longValue);
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * Writes the string the same way as the platform "JSONStringer"
+     */
+    private static void writeString(@NonNull String value, @NonNull StringBuilder out) {
+        out.append('"');
+        final int length = value.length();
+        for (int a = 0; a < length; a++) {
+            final char c = value.charAt(a);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.append('\\').append(c);
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        out.append("\\u00").append(LOWER_HEX_DIGITS[(c >> 4) & 0xF]).append(LOWER_HEX_DIGITS[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        out.append('"');
+    }
+
+    private static void appendPercentEncoded(int b, @NonNull StringBuilder out) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Single pass parser for the event JSON
+     */
+    private static class Reader {
+        private final String in_;
+        private int pos_ = 0;
+
+        Reader(@NonNull String in) {
+            in_ = in;
+        }
+
+        Event readEvent() throws JSONException {
+            final Event event = new Event();
+
+            expectNext('{');
+            if (peekNext() == '}') {
+                pos_++;
+                return event;
+            }
+
+            while (true) {
+                final String name = readString();
+                expectNext(':');
+                final char next = peekNext();
+
+                if (next == 'n' && in_.startsWith("null", pos_)) {
+                    //null values are treated as missing
+                    pos_ += 4;
+                } else if ("key".equals(name)) {
+                    event.key = next == '"' ? readString() : readLiteral();
+                } else if ("segmentation".equals(name)) {
+                    if (next != '{') {
+                        throw syntaxError("Segmentation is not a JSON object");
+                    }
+                    readSegmentation(event);
+                } else if ("count".equals(name)) {
+                    event.count = (int) readNumber(0);
+                } else if ("sum".equals(name)) {
+                    event.sum = readNumber(0);
+                } else if ("dur".equals(name)) {
+                    event.dur = readNumber(0);
+                } else if ("timestamp".equals(name)) {
+                    event.timestamp = readLong();
+                } else if ("hour".equals(name)) {
+                    event.hour = (int) readNumber(0);
+                } else if ("dow".equals(name)) {
+                    event.dow = (int) readNumber(0);
+                } else {
+                    skipValue();
+                }
+
+                final char c = nextClean();
+                if (c == '}') {
+                    return event;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+            }
+        }
+
+        private void readSegmentation(@NonNull Event event) throws JSONException {
+            final EventSegmentation segmentation = new EventSegmentation();
+
+            expectNext('{');
+            if (peekNext() == '}') {
+                pos_++;
+            } else {
+                while (true) {
+                    final String name = readString();
+                    expectNext(':');
+                    final char next = peekNext();
+
+                    if (next == '"') {
+                        segmentation.put(name, readString());
+                    } else if (next == '{' || next == '[') {
+                        //not a supported segmentation type, keep it as text
+                        final int start = pos_;
+                        skipValue();
+                        segmentation.put(name, in_.substring(start, pos_));
+                    } else {
+                        final String literal = readLiteral();
+                        if ("null".equalsIgnoreCase(literal)) {
+                            //null values are treated as missing
+                        } else if ("true".equalsIgnoreCase(literal)) {
+                            segmentation.put(name, true);
+                        } else if ("false".equalsIgnoreCase(literal)) {
+                            segmentation.put(name, false);
+                        } else {
+                            final Number number = parseNumber(literal);
+                            if (number instanceof Integer) {
+                                segmentation.put(name, number.intValue());
+                            } else if (number instanceof Double) {
+                                segmentation.put(name, number.doubleValue());
+                            } else {
+                                segmentation.put(name, number == null ? literal : number.toString());
+                            }
+                        }
+                    }
+
+                    final char c = nextClean();
+                    if (c == '}') {
+                        break;
+                    } else if (c != ',') {
+                        throw syntaxError("Unterminated object");
+                    }
+                }
+            }
+
+            event.segmentation = segmentation;
+        }
+
+        /**
+         * Reads a number value, strings that contain a number are accepted, like "optDouble" does
+         */
+        private double readNumber(double fallback) throws JSONException {
+            final String literal = peekNext() == '"' ? readString() : readLiteral();
+            try {
+                return Double.parseDouble(literal.trim());
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
+        }
+
+        private long readLong() throws JSONException {
+            final String literal = peekNext() == '"' ? readString() : readLiteral();
+            final Number number = parseNumber(literal.trim());
+            if (number instanceof Integer || number instanceof Long) {
+                return number.longValue();
+            }
+            try {
+                return (long) Double.parseDouble(literal.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        /**
+         * Parses a number the way the platform JSON tokener does,
+         * whole numbers become Integer or Long, everything else Double
+         */
+        private static Number parseNumber(@NonNull String literal) {
+            if (literal.length() == 0) {
+                return null;
+            }
+            if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+                try {
+                    long value = Long.parseLong(literal);
+                    if (value <= Integer.MAX_VALUE && value >= Integer.MIN_VALUE) {
+                        return (int) value;
+                    }
+                    return value;
+                } catch (NumberFormatException ignored) {
+                    //could still be a double
+                }
+            }
+            try {
+                return Double.valueOf(literal);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private String readString() throws JSONException {
+            expectNext('"');
+            StringBuilder sb = null;
+            int start = pos_;
+
+            while (pos_ < in_.length()) {
+                final char c = in_.charAt(pos_++);
+                if (c == '"') {
+                    if (sb == null) {
+                        return in_.substring(start, pos_ - 1);
+                    }
+                    sb.append(in_, start, pos_ - 1);
+                    return sb.toString();
+                }
+
+                if (c == '\\') {
+                    if (pos_ >= in_.length()) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                    }
+                    sb.append(in_, start, pos_ - 1);
+
+                    final char escaped = in_.charAt(pos_++);
+                    switch (escaped) {
+                        case 'u':
+                            if (pos_ + 4 > in_.length()) {
+                                throw syntaxError("Unterminated escape sequence");
+                            }
+                            try {
+                                sb.append((char) Integer.parseInt(in_.substring(pos_, pos_ + 4), 16));
+                            } catch (NumberFormatException e) {
+                                throw syntaxError("Invalid escape sequence");
+                            }
+                            pos_ += 4;
+                            break;
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'b':
+                            sb.append('\b');
+                            break;
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        default:
+                            sb.append(escaped);
+                            break;
+                    }
+                    start = pos_;
+                }
+            }
+
+            throw syntaxError("Unterminated string");
+        }
+
+        /**
+         * Reads a unquoted value, like a number, boolean or null
+         */
+        private String readLiteral() throws JSONException {
+            final int start = pos_;
+            while (pos_ < in_.length()) {
+                final char c = in_.charAt(pos_);
+                if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '"' || c == '{' || c == '[') {
+                    break;
+                }
+                pos_++;
+            }
+            if (start == pos_) {
+                throw syntaxError("Expected literal value");
+            }
+            return in_.substring(start, pos_);
+        }
+
+        /**
+         * Skips over a value of any type, including nested objects and arrays
+         */
+        private void skipValue() throws JSONException {
+            final char next = peekNext();
+            if (next == '"') {
+                readString();
+            } else if (next == '{' || next == '[') {
+                final char close = next == '{' ? '}' : ']';
+                pos_++;
+                if (peekNext() == close) {
+                    pos_++;
+                    return;
+                }
+                while (true) {
+                    if (close == '}') {
+                        readString();
+                        expectNext(':');
+                    }
+                    skipValue();
+                    final char c = nextClean();
+                    if (c == close) {
+                        return;
+                    } else if (c != ',') {
+                        throw syntaxError("Unterminated value");
+                    }
+                }
+            } else {
+                readLiteral();
+            }
+        }
+
+        private char peekNext() throws JSONException {
+            skipWhitespace();
+            if (pos_ >= in_.length()) {
+                throw syntaxError("End of input");
+            }
+            return in_.charAt(pos_);
+        }
+
+        private char nextClean() throws JSONException {
+            final char c = peekNext();
+            pos_++;
+            return c;
+        }
+
+        private void expectNext(char expected) throws JSONException {
+            if (nextClean() != expected) {
+                throw syntaxError("Expected '" + expected + "'");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos_ < in_.length()) {
+                final char c = in_.charAt(pos_);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                pos_++;
+            }
+        }
+
+        private JSONException syntaxError(String message) {
+            return new JSONException(message + " at character " + pos_ + " of " + in_);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package ly.count.android.sdk;
+
+/**
+ * Controls what happens when a event is recorded while the event ring buffer is full
+ */
+public enum EventOverflowPolicy {
+    DROP_OLDEST,//the oldest buffered event is discarded to make space for the new one
+    DROP_NEWEST,//the new event is discarded
+    BLOCK,//the recording thread waits until there is space, but at most 1 second, after which the new event is discarded
+}
@@ -0,0 +1,234 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free queue of recorded events that sits in front of the event queue.
+ *
+ * Recording threads publish events into preallocated slots without taking a lock or allocating a slot,
+ * the only allocation per event is the segmentation copy that the caller makes before publishing.
+ * a single consumer takes them out in batches and does the more expensive work of
+ * validating, checking consent and persisting them.
+ *
+ * Every slot has a sequence number that tells if it is free to be written for a given position
+ * or if it holds a published event for that position (bounded queue design by Dmitry Vyukov).
+ * Removing is also done with a compare-and-set so that the "drop oldest" overflow policy
+ * can discard events from the recording threads.
+ */
+class EventRingBuffer {
+
+    /**
+     * Receives the events that are taken out of the buffer
+     */
+    interface Consumer {
+        void onEvent(@NonNull String key, Map<String, Object> segmentation, int count, double sum, double dur, long timestamp);
+    }
+
+    private static class Slot {
+        String key;
+        Map<String, Object> segmentation;
+        int count;
+        double sum;
+        double dur;
+        long timestamp;
+    }
+
+    //how long a blocked recording thread waits before checking again
+    private static final long BLOCK_PARK_NANOS = 100 * 1000L;
+    //how long a recording thread waits in total before the event is discarded, in case nothing is consuming
+    private static final long BLOCK_TIMEOUT_NANOS = 1000 * 1000 * 1000L;
+
+    private final Slot[] slots_;
+    private final AtomicLongArray sequences_;
+    private final int mask_;
+    private final EventOverflowPolicy overflowPolicy_;
+
+    private final AtomicLong tail_ = new AtomicLong();
+    private final AtomicLong head_ = new AtomicLong();
+    private final AtomicLong droppedCount_ = new AtomicLong();
+
+    //thread that should be woken up when something is published, null if nobody is waiting
+    private volatile Thread waitingConsumer_ = null;
+
+    /**
+     * @param capacity requested capacity, rounded up to the next power of two
+     */
+    EventRingBuffer(int capacity, @NonNull EventOverflowPolicy overflowPolicy) {
+        //with a single slot a published and a free slot would have the same sequence number
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        slots_ = new Slot[size];
+        sequences_ = new AtomicLongArray(size);
+        for (int a = 0; a < size; a++) {
+            slots_[a] = new Slot();
+            sequences_.set(a, a);
+        }
+        mask_ = size - 1;
+        overflowPolicy_ = overflowPolicy;
+    }
+
+    int capacity() {
+        return slots_.length;
+    }
+
+    /**
+     * Returns the amount of events that are currently buffered
+     */
+    int size() {
+        long size = tail_.get() - head_.get();
+        return (int) Math.max(0, Math.min(size, slots_.length));
+    }
+
+    /**
+     * Returns the amount of events that have been discarded because the buffer was full
+     */
+    long getDroppedCount() {
+        return droppedCount_.get();
+    }
+
+    @NonNull EventOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy_;
+    }
+
+    /**
+     * Publishes a event into the buffer. Safe to call from any thread.
+     *
+     * @return false if the event was discarded
+     */
+    boolean publish(@NonNull String key, Map<String, Object> segmentation, int count, double sum, double dur, long timestamp) {
+        long blockedSince = 0;
+        while (true) {
+            if (tryPublish(key, segmentation, count, sum, dur, timestamp)) {
+                wakeConsumer();
+                return true;
+            }
+
+            //the buffer is full
+            switch (overflowPolicy_) {
+                case DROP_NEWEST:
+                    droppedCount_.incrementAndGet();
+                    return false;
+                case DROP_OLDEST:
+                    if (poll(null)) {
+                        droppedCount_.incrementAndGet();
+                    }
+                    break;
+                case BLOCK:
+                    if (blockedSince == 0) {
+                        blockedSince = System.nanoTime();
+                    } else if (System.nanoTime() - blockedSince > BLOCK_TIMEOUT_NANOS) {
+                        droppedCount_.incrementAndGet();
+                        return false;
+                    }
+                    wakeConsumer();
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                    break;
+            }
+        }
+    }
+
+    private boolean tryPublish(String key, Map<String, Object> segmentation, int count, double sum, double dur, long timestamp) {
+        while (true) {
+            final long position = tail_.get();
+            final int index = (int) (position & mask_);
+            final long difference = sequences_.get(index) - position;
+
+            if (difference == 0) {
+                if (tail_.compareAndSet(position, position + 1)) {
+                    final Slot slot = slots_[index];
+                    slot.key = key;
+                    slot.segmentation = segmentation;
+                    slot.count = count;
+                    slot.sum = sum;
+                    slot.dur = dur;
+                    slot.timestamp = timestamp;
+                    //makes the slot visible to the consumer
+                    sequences_.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                //the slot still holds a event from the previous round
+                return false;
+            }
+            //another thread claimed this position, try the next one
+        }
+    }
+
+    /**
+     * Takes the oldest event out of the buffer
+     *
+     * @param consumer receives the event, if null the event is discarded
+     * @return false if the buffer was empty
+     */
+    boolean poll(Consumer consumer) {
+        while (true) {
+            final long position = head_.get();
+            final int index = (int) (position & mask_);
+            final long difference = sequences_.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head_.compareAndSet(position, position + 1)) {
+                    final Slot slot = slots_[index];
+                    final String key = slot.key;
+                    final Map<String, Object> segmentation = slot.segmentation;
+                    final int count = slot.count;
+                    final double sum = slot.sum;
+                    final double dur = slot.dur;
+                    final long timestamp = slot.timestamp;
+                    slot.key = null;
+                    slot.segmentation = null;
+                    //frees the slot for the next round
+                    sequences_.set(index, position + slots_.length);
+
+                    if (consumer != null) {
+                        consumer.onEvent(key, segmentation, count, sum, dur, timestamp);
+                    }
+                    return true;
+                }
+            } else if (difference < 0) {
+                //nothing has been published at this position yet
+                return false;
+            }
+            //another thread took this position, try the next one
+        }
+    }
+
+    /**
+     * Takes all currently buffered events out of the buffer
+     *
+     * @return the amount of events that were taken out
+     */
+    int drain(@NonNull Consumer consumer) {
+        int drained = 0;
+        while (poll(consumer)) {
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Parks the calling consumer thread until something is published or the timeout passes
+     */
+    void awaitEvents(long timeoutNanos) {
+        waitingConsumer_ = Thread.currentThread();
+        //checking again after registering so that a publish in between is not missed
+        if (size() == 0) {
+            LockSupport.parkNanos(this, timeoutNanos);
+        }
+        waitingConsumer_ = null;
+    }
+
+    private void wakeConsumer() {
+        final Thread consumer = waitingConsumer_;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact segmentation of a event.
+ *
+ * Every key is stored once, together with the type of its value.
+ * Integer, double and boolean values are kept unboxed in a primitive array,
+ * string values in a separate array that is only created once a string value is added.
+ * Entries keep the order in which they were added.
+ *
+ * Equality doesn't depend on the order of the entries. The hash code is cached until the segmentation is modified.
+ * This class is not thread safe.
+ */
+class EventSegmentation {
+    static final byte TYPE_STRING = 0;
+    static final byte TYPE_INT = 1;
+    static final byte TYPE_DOUBLE = 2;
+    static final byte TYPE_BOOLEAN = 3;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys_;
+    private byte[] types_;
+    //int and boolean values as they are, doubles as their raw bits
+    private long[] primitives_;
+    private String[] strings_ = null;
+    private int size_ = 0;
+
+    //0 means that it has to be calculated
+    private int hash_ = 0;
+
+    EventSegmentation() {
+        this(INITIAL_CAPACITY);
+    }
+
+    EventSegmentation(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys_ = new String[capacity];
+        types_ = new byte[capacity];
+        primitives_ = new long[capacity];
+    }
+
+    /**
+     * Creates a segmentation from the provided values.
+     * Values that are not a String, Integer, Double or Boolean are ignored.
+     */
+    @NonNull static EventSegmentation fromMap(@NonNull Map<String, Object> values) {
+        final EventSegmentation segmentation = new EventSegmentation(values.size());
+        for (Map.Entry<String, Object> pair : values.entrySet()) {
+            segmentation.putObject(pair.getKey(), pair.getValue());
+        }
+        return segmentation;
+    }
+
+    int size() {
+        return size_;
+    }
+
+    boolean isEmpty() {
+        return size_ == 0;
+    }
+
+    @NonNull String keyAt(int index) {
+        return keys_[index];
+    }
+
+    byte typeAt(int index) {
+        return types_[index];
+    }
+
+    String stringAt(int index) {
+        return strings_[index];
+    }
+
+    int intAt(int index) {
+        return (int) primitives_[index];
+    }
+
+    double doubleAt(int index) {
+        return Double.longBitsToDouble(primitives_[index]);
+    }
+
+    boolean booleanAt(int index) {
+        return primitives_[index] != 0;
+    }
+
+    /**
+     * Returns the index of the key or -1 if it's not present
+     */
+    int indexOf(@NonNull String key) {
+        for (int a = 0; a < size_; a++) {
+            if (keys_[a].equals(key)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    boolean containsKey(@NonNull String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the value of the key boxed into its type, or null if it's not present
+     */
+    Object get(@NonNull String key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    String getString(@NonNull String key) {
+        final int index = indexOf(key);
+        return (index >= 0 && types_[index] == TYPE_STRING) ? strings_[index] : null;
+    }
+
+    Integer getInt(@NonNull String key) {
+        final int index = indexOf(key);
+        return (index >= 0 && types_[index] == TYPE_INT) ? intAt(index) : null;
+    }
+
+    Double getDouble(@NonNull String key) {
+        final int index = indexOf(key);
+        return (index >= 0 && types_[index] == TYPE_DOUBLE) ? doubleAt(index) : null;
+    }
+
+    Boolean getBoolean(@NonNull String key) {
+        final int index = indexOf(key);
+        return (index >= 0 && types_[index] == TYPE_BOOLEAN) ? booleanAt(index) : null;
+    }
+
+    void put(@NonNull String key, @NonNull String value) {
+        final int index = slotFor(key, TYPE_STRING);
+        if (strings_ == null) {
+            strings_ = new String[keys_.length];
+        }
+        strings_[index] = value;
+        primitives_[index] = 0;
+    }
+
+    void put(@NonNull String key, int value) {
+        setPrimitive(slotFor(key, TYPE_INT), value);
+    }
+
+    void put(@NonNull String key, double value) {
+        setPrimitive(slotFor(key, TYPE_DOUBLE), Double.doubleToLongBits(value));
+    }
+
+    void put(@NonNull String key, boolean value) {
+        setPrimitive(slotFor(key, TYPE_BOOLEAN), value ? 1 : 0);
+    }
+
+    /**
+     * Adds the value if it's a String, Integer, Double or Boolean
+     *
+     * @return false if the value was not added
+     */
+    boolean putObject(String key, Object value) {
+        if (key == null) {
+            return false;
+        }
+
+        if (value instanceof String) {
+            put(key, (String) value);
+        } else if (value instanceof Integer) {
+            put(key, ((Integer) value).intValue());
+        } else if (value instanceof Double) {
+            put(key, ((Double) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            put(key, ((Boolean) value).booleanValue());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the entries as a map with boxed values
+     */
+    @NonNull Map<String, Object> toMap() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        for (int a = 0; a < size_; a++) {
+            map.put(keys_[a], valueAt(a));
+        }
+        return map;
+    }
+
+    Object valueAt(int index) {
+        switch (types_[index]) {
+            case TYPE_STRING:
+                return strings_[index];
+            case TYPE_INT:
+                return intAt(index);
+            case TYPE_DOUBLE:
+                return doubleAt(index);
+            default:
+                return booleanAt(index);
+        }
+    }
+
+    private void setPrimitive(int index, long value) {
+        primitives_[index] = value;
+        if (strings_ != null) {
+            strings_[index] = null;
+        }
+    }
+
+    /**
+     * Returns the index where the value of the key should be written, adding the key if needed
+     */
+    private int slotFor(@NonNull String key, byte type) {
+        hash_ = 0;
+        int index = indexOf(key);
+        if (index < 0) {
+            if (size_ == keys_.length) {
+                final int capacity = keys_.length * 2;
+                keys_ = Arrays.copyOf(keys_, capacity);
+                types_ = Arrays.copyOf(types_, capacity);
+                primitives_ = Arrays.copyOf(primitives_, capacity);
+                if (strings_ != null) {
+                    strings_ = Arrays.copyOf(strings_, capacity);
+                }
+            }
+            index = size_++;
+            keys_[index] = key;
+        }
+        types_[index] = type;
+        return index;
+    }
+
+    private boolean entryEquals(int index, @NonNull EventSegmentation other, int otherIndex) {
+        if (types_[index] != other.types_[otherIndex]) {
+            return false;
+        }
+        if (types_[index] == TYPE_STRING) {
+            return strings_[index].equals(other.strings_[otherIndex]);
+        }
+        return primitives_[index] == other.primitives_[otherIndex];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EventSegmentation)) {
+            return false;
+        }
+
+        final EventSegmentation other = (EventSegmentation) o;
+        if (size_ != other.size_ || hashCode() != other.hashCode()) {
+            return false;
+        }
+
+        for (int a = 0; a < size_; a++) {
+            //entries are usually added in the same order, check the same position first
+            int otherIndex = keys_[a].equals(other.keys_[a]) ? a : other.indexOf(keys_[a]);
+            if (otherIndex < 0 || !entryEquals(a, other, otherIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash_ == 0) {
+            int hash = 0;
+            for (int a = 0; a < size_; a++) {
+                final int valueHash = types_[a] == TYPE_STRING ? strings_[a].hashCode() : (int) (primitives_[a] ^ (primitives_[a] >>> 32));
+                //summed so that the order of the entries doesn't matter
+                hash += keys_[a].hashCode() ^ (31 * valueHash + types_[a]);
+            }
+            hash_ = hash == 0 ? 1 : hash;
+        }
+        return hash_;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
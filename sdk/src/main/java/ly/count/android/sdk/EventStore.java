@@ -0,0 +1,185 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event queue that is backed by a append-only journal.
+ *
+ * Every event is serialized once when it is recorded, with the streaming "EventJson" writer,
+ * and stored as a single record that is prefixed with the event timestamp. Recording a event therefore doesn't depend on
+ * the amount of events already in the queue.
+ * When the queue is emptied, the stored JSON is URL-encoded straight into the request payload
+ * without parsing it again, only the timestamp prefix is read to keep the events ordered.
+ * Recording a event only writes the record to the OS, syncing to disk is batched through 'sync'.
+ *
+ * Access to this class is synchronized on the instance.
+ */
+class EventStore implements EventQueueProvider {
+    //separates the timestamp prefix from the event JSON in a record
+    private static final char TIMESTAMP_SEPARATOR = ' ';
+
+    private final RequestJournal journal_;
+    private final int maxEvents_;
+
+    //reused for serializing events, guarded by the instance lock
+    private final StringBuilder recordBuilder_ = new StringBuilder(256);
+
+    ModuleLog L;
+
+    EventStore(@NonNull File directory, int maxEvents, @NonNull ModuleLog logModule) {
+        journal_ = new RequestJournal(directory, logModule);
+        maxEvents_ = maxEvents;
+        L = logModule;
+    }
+
+    private static class Record {
+        final long timestamp;
+        final String json;
+
+        Record(long timestamp, String json) {
+            this.timestamp = timestamp;
+            this.json = json;
+        }
+    }
+
+    @Override
+    public synchronized void recordEventToEventQueue(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, final long timestamp, final int hour, final int dow) {
+        addEvent(CountlyStore.createEvent(key, segmentation, count, sum, dur, timestamp, hour, dow));
+    }
+
+    /**
+     * Adds the event to the end of the queue if the queue is not full
+     */
+    synchronized void addEvent(@NonNull final Event event) {
+        if (journal_.size() >= maxEvents_) {
+            L.w("[EventStore] Event queue is full, dropping event [" + event.key + "]");
+            return;
+        }
+
+        journal_.append(encode(event));
+    }
+
+    /**
+     * Syncs the events that were recorded since the last sync to disk
+     */
+    synchronized void sync() {
+        journal_.sync();
+    }
+
+    synchronized int getEventQueueSize() {
+        return journal_.size();
+    }
+
+    /**
+     * Returns the JSON strings of the stored events in the order they were added
+     */
+    @NonNull synchronized String[] getEvents() {
+        String[] records = journal_.getRequests();
+        for (int a = 0; a < records.length; a++) {
+            records[a] = decode(records[a]).json;
+        }
+        return records;
+    }
+
+    /**
+     * Removes all stored events and returns them as a URL-encoded JSON array,
+     * ordered from the oldest to the most recent timestamp.
+     */
+    @NonNull synchronized String getEventsForRequestAndEmptyEventQueue() {
+        String[] records = journal_.getRequests();
+        List<Record> decoded = new ArrayList<>(records.length);
+        int length = 2;
+        for (String record : records) {
+            Record r = decode(record);
+            decoded.add(r);
+            length += r.json.length() + 1;
+        }
+
+        //the sort is stable, so events with the same timestamp keep their recording order
+        Collections.sort(decoded, new Comparator<Record>() {
+            @Override
+            public int compare(Record r1, Record r2) {
+                return r1.timestamp < r2.timestamp ? -1 : (r1.timestamp == r2.timestamp ? 0 : 1);
+            }
+        });
+
+        //the JSON array is URL-encoded while it's being built, the brackets and commas are encoded by hand
+        StringBuilder sb = new StringBuilder(length + length / 2);
+        sb.append("%5B");
+        for (int a = 0; a < decoded.size(); a++) {
+            if (a > 0) {
+                sb.append("%2C");
+            }
+            EventJson.appendUrlEncoded(decoded.get(a).json, sb);
+        }
+        sb.append("%5D");
+
+        journal_.clear();
+
+        return sb.toString();
+    }
+
+    /**
+     * Replaces the stored events with the provided ones
+     */
+    synchronized void replaceEvents(@NonNull final Collection<Event> events) {
+        List<String> records = new ArrayList<>(events.size());
+        for (Event event : events) {
+            records.add(encode(event));
+        }
+        journal_.replace(records);
+    }
+
+    /**
+     * Replaces the stored events with the provided, already serialized, events.
+     * Their timestamp is not known, so they are ordered as provided.
+     */
+    synchronized void replaceEventsRaw(@NonNull final String[] eventJSONs) {
+        List<String> records = new ArrayList<>(eventJSONs.length);
+        for (String json : eventJSONs) {
+            records.add(encode(0, json));
+        }
+        journal_.replace(records);
+    }
+
+    synchronized void clear() {
+        journal_.clear();
+    }
+
+    /**
+     * Returns true if the event queue has been written at least once and not been cleared since
+     */
+    synchronized boolean exists() {
+        return journal_.exists();
+    }
+
+    private String encode(@NonNull Event event) {
+        recordBuilder_.setLength(0);
+        recordBuilder_.append(event.timestamp).append(TIMESTAMP_SEPARATOR);
+        EventJson.write(event, recordBuilder_);
+        return recordBuilder_.toString();
+    }
+
+    private static String encode(long timestamp, @NonNull String json) {
+        return timestamp + String.valueOf(TIMESTAMP_SEPARATOR) + json;
+    }
+
+    private static Record decode(@NonNull String record) {
+        int separator = record.indexOf(TIMESTAMP_SEPARATOR);
+        if (separator > 0) {
+            try {
+                return new Record(Long.parseLong(record.substring(0, separator)), record.substring(separator + 1));
+            } catch (NumberFormatException ignored) {
+                //not a valid prefix, treat the whole record as the event
+            }
+        }
+        return new Record(0, record);
+    }
+}
@@ -0,0 +1,152 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Default transport that performs requests with "java.net.HttpURLConnection".
+ *
+ * Connections of successful responses are not disconnected after the body has been read,
+ * so that the platform can return them to its pool and reuse them for following requests.
+ */
+class HttpURLConnectionTransport implements CountlyTransport {
+    private final SSLSocketFactory sslSocketFactory_;
+
+    /**
+     * @param sslSocketFactory factory used for HTTPS connections, if null the platform default is used
+     */
+    HttpURLConnectionTransport(@Nullable SSLSocketFactory sslSocketFactory) {
+        sslSocketFactory_ = sslSocketFactory;
+    }
+
+    @NonNull @Override
+    public Response execute(@NonNull Request request) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) request.url.openConnection();
+        if (sslSocketFactory_ != null && conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory_);
+        }
+
+        try {
+            prepareConnection(conn, request);
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+
+        return readResponse(conn);
+    }
+
+    /**
+     * Applies the given request to the connection and writes the request body, if there is one
+     */
+    static void prepareConnection(@NonNull HttpURLConnection conn, @NonNull Request request) throws IOException {
+        conn.setConnectTimeout(request.connectTimeout);
+        conn.setReadTimeout(request.readTimeout);
+        conn.setUseCaches(false);
+        conn.setDoInput(true);
+        conn.setRequestMethod(request.method);
+
+        for (Map.Entry<String, String> entry : request.headers.entrySet()) {
+            conn.addRequestProperty(entry.getKey(), entry.getValue());
+        }
+
+        if (request.body != null) {
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(request.body.length);
+            OutputStream os = conn.getOutputStream();
+            try {
+                os.write(request.body);
+                os.flush();
+            } finally {
+                os.close();
+            }
+        } else {
+            conn.setDoOutput(false);
+        }
+    }
+
+    /**
+     * Connects, if that has not happened yet, and fully reads the response of the connection.
+     * The connection is disconnected unless the response was successful or not modified,
+     * in which case the fully read connection is left to the platform pool.
+     */
+    @NonNull static Response readResponse(@NonNull HttpURLConnection conn) throws IOException {
+        InputStream stream = null;
+        boolean keepConnection = false;
+        try {
+            conn.connect();
+
+            try {
+                //assume there will be no error
+                stream = conn.getInputStream();
+            } catch (Exception ex) {
+                //in case of exception, assume there was a error in the request and change streams
+                stream = conn.getErrorStream();
+            }
+
+            final int code = conn.getResponseCode();
+            final byte[] body = readFully(stream);
+
+            final Map<String, String> headers = new LinkedHashMap<>();
+            final Map<String, List<String>> headerFields = conn.getHeaderFields();
+            if (headerFields != null) {
+                for (Map.Entry<String, List<String>> entry : headerFields.entrySet()) {
+                    //the status line is returned with a null key
+                    if (entry.getKey() != null && entry.getValue() != null) {
+                        headers.put(entry.getKey(), join(entry.getValue()));
+                    }
+                }
+            }
+
+            //a "304 Not Modified" response has no body, so its connection can be reused as well
+            keepConnection = (code >= 200 && code < 300) || code == HttpURLConnection.HTTP_NOT_MODIFIED;
+            return new Response(code, headers, body);
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (Throwable ignored) {
+                }
+            }
+
+            if (!keepConnection) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    private static byte[] readFully(@Nullable InputStream stream) throws IOException {
+        if (stream == null) {
+            return new byte[0];
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        return bos.toByteArray();
+    }
+
+    private static String join(@NonNull List<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+}
@@ -1,17 +1,33 @@
 package ly.count.android.sdk;
 
-import android.os.AsyncTask;
-import java.io.BufferedReader;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import org.json.JSONObject;
 
 /**
- * Async task for making immediate server requests
+ * Makes immediate server requests, the ones that are not stored in the request queue.
+ *
+ * Requests run on the network lane of the SDK scheduler, which has a bounded queue, the callback is called on the main thread.
+ * Every request has a deadline, after which the callback is called with a null response.
+ * Identical requests that are made while one of them is in progress are combined into a single server request.
  */
-class ImmediateRequestMaker extends AsyncTask<Object, Void, JSONObject> {
+class ImmediateRequestMaker {
+    static final long DEFAULT_TIMEOUT_MS = 60 * 1000;
+    static final long DELAY_MS = 500;
 
     /**
      * Used for callback from async task
@@ -20,115 +36,315 @@ class ImmediateRequestMaker extends AsyncTask<Object, Void, JSONObject> {
         void callback(JSONObject checkResponse);
     }
 
-    InternalFeedbackRatingCallback callback;
-    ModuleLog L;
+    /**
+     * Used for conditional requests. Holds the entity tag that is sent with "If-None-Match"
+     * and the result of the request, which can be read in the callback.
+     */
+    static class ConditionalRequest {
+        @Nullable final String ifNoneMatch;
+        //set after the request has finished
+        boolean notModified = false;
+        @Nullable String eTag = null;
+
+        ConditionalRequest(@Nullable String ifNoneMatch) {
+            this.ifNoneMatch = ifNoneMatch;
+        }
+    }
 
     /**
-     * params fields:
-     * 0 - requestData
-     * 1 - custom endpoint
-     * 2 - connection processor
-     * 3 - requestShouldBeDelayed
-     * 4 - callback
+     * A single server request and the requests that receive its response
      */
-    protected JSONObject doInBackground(Object... params) {
-        final String requestData = (String) params[0];
-        final String customEndpoint = (String) params[1];
-        final ConnectionProcessor cp = (ConnectionProcessor) params[2];
-        final boolean requestShouldBeDelayed = (boolean) params[3];
-        callback = (InternalFeedbackRatingCallback) params[4];
-        L = (ModuleLog) params[5];
+    private static class Call implements Runnable {
+        @Nullable final String key;
+        @NonNull final String requestData;
+        @NonNull final String customEndpoint;
+        @NonNull final ConnectionProcessor cp;
+        @Nullable final ConditionalRequest conditional;
+        @NonNull final ModuleLog L;
 
-        L.v("[ImmediateRequestMaker] Starting request");
+        final List<ImmediateRequestMaker> receivers = new ArrayList<>();
+        Future<?> future = null;
+        ScheduledFuture<?> deadline = null;
+        boolean finished = false;
+
+        Call(@Nullable String key, @NonNull String requestData, @NonNull String customEndpoint, @NonNull ConnectionProcessor cp, @Nullable ConditionalRequest conditional, @NonNull ModuleLog L) {
+            this.key = key;
+            this.requestData = requestData;
+            this.customEndpoint = customEndpoint;
+            this.cp = cp;
+            this.conditional = conditional;
+            this.L = L;
+        }
 
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
-        boolean wasSuccess = true;
+        @Override public void run() {
+            finish(this, performRequest(requestData, customEndpoint, cp, conditional, L));
+        }
+    }
 
-        try {
-            L.d("[ImmediateRequestMaker] delayed[" + requestShouldBeDelayed + "] hasCallback[" + (callback != null) + "] endpoint[" + customEndpoint + "] request[" + requestData + "]");
+    //lanes of the SDK scheduler, set on the first request
+    private static ExecutorService workers = null;
+    //used for delayed requests and deadlines, it does not make requests itself
+    private static ScheduledExecutorService scheduler = null;
+    private static Handler mainHandler = null;
+    //calls that can be combined, by their key
+    private static final Map<String, Call> callsInProgress = new HashMap<>();
+    private static final List<Call> calls = new ArrayList<>();
 
-            if (requestShouldBeDelayed) {
-                //used in cases after something has to be done after a device id change
-                L.v("[ImmediateRequestMaker] request should be delayed, waiting for 0.5 seconds");
+    private final long timeoutMs;
+    private InternalFeedbackRatingCallback callback;
+    private Call call = null;
+    private volatile boolean cancelled = false;
 
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    L.w("[ImmediateRequestMaker] While waiting for 0.5 seconds in ImmediateRequestMaker, sleep was interrupted");
+    ImmediateRequestMaker() {
+        this(DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * @param timeoutMs time after which the callback is called with a null response, if the request has not finished
+     */
+    ImmediateRequestMaker(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    void execute(@NonNull String requestData, @NonNull String customEndpoint, @NonNull ConnectionProcessor cp, boolean requestShouldBeDelayed, @Nullable InternalFeedbackRatingCallback callback, @NonNull ModuleLog L) {
+        execute(requestData, customEndpoint, cp, requestShouldBeDelayed, callback, L, null);
+    }
+
+    /**
+     * Starts the request, or joins an identical one that is in progress
+     *
+     * @param requestShouldBeDelayed used in cases after something has to be done after a device id change, the request is started after a short delay
+     * @param conditional used for conditional requests, these are never combined
+     */
+    void execute(@NonNull String requestData, @NonNull String customEndpoint, @NonNull ConnectionProcessor cp, boolean requestShouldBeDelayed, @Nullable InternalFeedbackRatingCallback callback,
+        @NonNull final ModuleLog L, @Nullable ConditionalRequest conditional) {
+        this.callback = callback;
+        L.d("[ImmediateRequestMaker] delayed[" + requestShouldBeDelayed + "] hasCallback[" + (callback != null) + "] endpoint[" + customEndpoint + "] request[" + requestData + "]");
+
+        final String key = requestShouldBeDelayed || conditional != null ? null : callKey(customEndpoint, requestData);
+
+        synchronized (ImmediateRequestMaker.class) {
+            if (key != null) {
+                final Call existing = callsInProgress.get(key);
+                if (existing != null) {
+                    L.d("[ImmediateRequestMaker] An identical request is in progress, waiting for its response");
+                    existing.receivers.add(this);
+                    call = existing;
+                    return;
                 }
             }
 
-            //getting connection ready
-            try {
-                connection = (HttpURLConnection) cp.urlConnectionForServerRequest(requestData, customEndpoint);
-            } catch (IOException e) {
-                L.e("[ImmediateRequestMaker] IOException while preparing remote config update request :[" + e.toString() + "]");
+            final Call newCall = new Call(key, requestData, customEndpoint, cp, conditional, L);
+            newCall.receivers.add(this);
+            call = newCall;
+            if (key != null) {
+                callsInProgress.put(key, newCall);
+            }
+            calls.add(newCall);
+            startExecutors();
 
-                return null;
+            final long delayMs = requestShouldBeDelayed ? DELAY_MS : 0;
+            if (delayMs > 0) {
+                L.v("[ImmediateRequestMaker] request should be delayed, starting it in [" + delayMs + "] ms");
+                scheduler.schedule(new Runnable() {
+                    @Override public void run() {
+                        submit(newCall);
+                    }
+                }, delayMs, TimeUnit.MILLISECONDS);
+            } else {
+                submit(newCall);
+            }
+
+            if (newCall.finished) {
+                //the request was dropped
+                return;
+            }
+
+            newCall.deadline = scheduler.schedule(new Runnable() {
+                @Override public void run() {
+                    L.w("[ImmediateRequestMaker] Request did not finish in [" + timeoutMs + "] ms, cancelling it");
+                    cancelCall(newCall);
+                    finish(newCall, null);
+                }
+            }, delayMs + timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels this request, its callback will not be called.
+     * The server request is only cancelled if no other identical request is waiting for it.
+     */
+    void cancel() {
+        cancelled = true;
+
+        synchronized (ImmediateRequestMaker.class) {
+            if (call == null || call.finished) {
+                return;
+            }
+
+            call.receivers.remove(this);
+            if (call.receivers.isEmpty()) {
+                call.L.d("[ImmediateRequestMaker] Cancelling request");
+                cancelCall(call);
+                if (call.deadline != null) {
+                    call.deadline.cancel(false);
+                }
+                removeCall(call);
             }
+        }
+    }
 
-            //connecting
-            connection.connect();
+    /**
+     * Cancels all requests in progress, their callbacks will not be called
+     */
+    static void cancelAll() {
+        final List<ImmediateRequestMaker> requests = new ArrayList<>();
+        synchronized (ImmediateRequestMaker.class) {
+            for (Call call : calls) {
+                requests.addAll(call.receivers);
+            }
+        }
 
-            InputStream stream;
+        for (ImmediateRequestMaker request : requests) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Returns the key used to find identical requests. The parameters that are different for every request are left out.
+     */
+    static @NonNull String callKey(@NonNull String customEndpoint, @NonNull String requestData) {
+        final StringBuilder key = new StringBuilder(customEndpoint.length() + requestData.length()).append(customEndpoint).append('?');
+        for (String param : requestData.split("&")) {
+            if (param.startsWith("timestamp=") || param.startsWith("hour=") || param.startsWith("dow=")) {
+                continue;
+            }
+            key.append(param).append('&');
+        }
+        return key.toString();
+    }
+
+    private static void startExecutors() {
+        if (workers != null) {
+            return;
+        }
+
+        final CountlyScheduler countlyScheduler = Countly.sharedInstance().getScheduler();
+        workers = countlyScheduler.lane(CountlyScheduler.Lane.NETWORK);
+        scheduler = countlyScheduler.timers();
+
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    private static void submit(@NonNull Call call) {
+        synchronized (ImmediateRequestMaker.class) {
+            if (call.finished) {
+                return;
+            }
 
             try {
-                //assume there will be no error
-                stream = connection.getInputStream();
-            } catch (Exception ex) {
-                //in case of exception, assume there was a error in the request
-                //and change streams
-                stream = connection.getErrorStream();
-                wasSuccess = false;
+                call.future = workers.submit(call);
+                return;
+            } catch (RejectedExecutionException e) {
+                call.L.e("[ImmediateRequestMaker] Too many immediate requests in progress, dropping request");
+            }
+        }
+        finish(call, null);
+    }
+
+    private static void cancelCall(@NonNull Call call) {
+        if (call.future != null) {
+            call.future.cancel(true);
+        }
+    }
+
+    private static void removeCall(@NonNull Call call) {
+        call.finished = true;
+        calls.remove(call);
+        if (call.key != null && callsInProgress.get(call.key) == call) {
+            callsInProgress.remove(call.key);
+        }
+    }
+
+    /**
+     * Delivers the response to every request that is waiting for it, only the first response of a call is delivered
+     */
+    private static void finish(@NonNull final Call call, @Nullable final JSONObject result) {
+        final List<ImmediateRequestMaker> receivers;
+        synchronized (ImmediateRequestMaker.class) {
+            if (call.finished) {
+                return;
+            }
+            removeCall(call);
+            if (call.deadline != null) {
+                call.deadline.cancel(false);
+            }
+            receivers = new ArrayList<>(call.receivers);
+        }
+
+        call.L.v("[ImmediateRequestMaker] Finished request, delivering the response to [" + receivers.size() + "] callbacks");
+        mainHandler.post(new Runnable() {
+            @Override public void run() {
+                for (ImmediateRequestMaker receiver : receivers) {
+                    if (!receiver.cancelled && receiver.callback != null) {
+                        receiver.callback.callback(result);
+                    }
+                }
             }
+        });
+    }
+
+    /**
+     * Makes the request and parses the response
+     *
+     * @return the received JSON object, null if the request failed or the response was "Not Modified"
+     */
+    static @Nullable JSONObject performRequest(@NonNull String requestData, @NonNull String customEndpoint, @NonNull ConnectionProcessor cp, @Nullable ConditionalRequest conditional, @NonNull ModuleLog L) {
+        L.v("[ImmediateRequestMaker] Starting request");
+
+        try {
+            Map<String, String> extraHeaders = null;
+            if (conditional != null && conditional.ifNoneMatch != null) {
+                extraHeaders = Collections.singletonMap("If-None-Match", conditional.ifNoneMatch);
+            }
+
+            //making the request
+            final CountlyTransport.Response response;
+            try {
+                response = cp.executeRequest(requestData, customEndpoint, extraHeaders);
+            } catch (IOException e) {
+                L.e("[ImmediateRequestMaker] IOException while making a immediate server request :[" + e.toString() + "]");
 
-            if (stream == null) {
-                L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, received stream was null");
                 return null;
             }
 
-            //getting result
-            reader = new BufferedReader(new InputStreamReader(stream));
+            if (conditional != null) {
+                conditional.eTag = response.getHeader("ETag");
 
-            StringBuilder buffer = new StringBuilder();
-            String line = "";
+                if (response.code == 304) {
+                    //nothing changed, there is no body to parse
+                    L.d("[ImmediateRequestMaker] Received 'Not Modified' response");
+                    conditional.notModified = true;
+                    return null;
+                }
+            }
 
-            while ((line = reader.readLine()) != null) {
-                buffer.append(line).append("\n");
+            //error response codes are the ones for which HttpURLConnection would not provide a input stream
+            if (response.code >= 400) {
+                L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, :[" + response.getBodyString() + "]");
+                return null;
             }
 
-            if (wasSuccess) {
-                return new JSONObject(buffer.toString());
-            } else {
-                L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, :[" + buffer.toString() + "]");
+            if (response.body.length == 0) {
+                L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, received response was empty");
                 return null;
             }
+
+            return new JSONObject(response.getBodyString());
         } catch (Exception e) {
             L.e("[ImmediateRequestMaker] Received exception while making a immediate server request", e);
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
-            try {
-                if (reader != null) {
-                    reader.close();
-                }
-            } catch (IOException e) {
-                L.e("[ImmediateRequestMaker] ", e);
-            }
         }
         L.v("[ImmediateRequestMaker] Finished request");
         return null;
     }
-
-    @Override
-    protected void onPostExecute(JSONObject result) {
-        super.onPostExecute(result);
-        L.v("[ImmediateRequestMaker] onPostExecute");
-
-        if (callback != null) {
-            callback.callback(result);
-        }
-    }
 }
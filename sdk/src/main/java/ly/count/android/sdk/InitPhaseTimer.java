@@ -0,0 +1,56 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the start and end timestamps of the SDK init phases
+ */
+class InitPhaseTimer {
+    static class Phase {
+        @NonNull final String name;
+        final long startMs;
+        final long endMs;
+
+        Phase(@NonNull String name, long startMs, long endMs) {
+            this.name = name;
+            this.startMs = startMs;
+            this.endMs = endMs;
+        }
+
+        long getDurationMs() {
+            return endMs - startMs;
+        }
+    }
+
+    private final List<Phase> phases = new ArrayList<>();
+    private long phaseStartMs;
+
+    InitPhaseTimer() {
+        phaseStartMs = UtilsTime.currentTimestampMs();
+    }
+
+    /**
+     * Ends the current phase and starts the next one
+     *
+     * @param name name of the phase that ended
+     */
+    synchronized void phaseFinished(@NonNull String name) {
+        final long now = UtilsTime.currentTimestampMs();
+        phases.add(new Phase(name, phaseStartMs, now));
+        phaseStartMs = now;
+    }
+
+    /**
+     * Starts a phase without recording the time since the previous one,
+     * used when the work continues on a different thread
+     */
+    synchronized void restart() {
+        phaseStartMs = UtilsTime.currentTimestampMs();
+    }
+
+    synchronized @NonNull List<Phase> getPhases() {
+        return new ArrayList<>(phases);
+    }
+}
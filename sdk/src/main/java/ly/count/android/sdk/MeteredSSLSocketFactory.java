@@ -0,0 +1,70 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Socket factory that is shared by all SDK connections and counts the sockets it creates.
+ *
+ * The connection pool of HttpURLConnection only reuses a connection if it was created with the same
+ * socket factory instance, so the factory has to be created once and not for every request.
+ * Every created socket performs a new handshake, which is reported to the provided metrics.
+ */
+class MeteredSSLSocketFactory extends SSLSocketFactory {
+    private final SSLSocketFactory delegate_;
+    private final ConnectionMetrics metrics_;
+
+    MeteredSSLSocketFactory(@NonNull SSLSocketFactory delegate, @NonNull ConnectionMetrics metrics) {
+        delegate_ = delegate;
+        metrics_ = metrics;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate_.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate_.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        metrics_.onHandshake();
+        return delegate_.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        metrics_.onHandshake();
+        return delegate_.createSocket(s, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        metrics_.onHandshake();
+        return delegate_.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        metrics_.onHandshake();
+        return delegate_.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        metrics_.onHandshake();
+        return delegate_.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        metrics_.onHandshake();
+        return delegate_.createSocket(address, port, localAddress, localPort);
+    }
+}
@@ -1,16 +1,22 @@
 package ly.count.android.sdk;
 
 import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import org.json.JSONException;
 
 class MigrationHelper {
     /**
      * 0 - legacy version. State of the SDK before the first migration was introduced
      * 1 - adding device ID to all requests
+     * 2 - moving the request queue from preferences to the request journal
+     * 3 - moving the event queue from preferences to the event journal
      */
-    final int DATA_SCHEMA_VERSIONS = 1;
+    final int DATA_SCHEMA_VERSIONS = 3;
 
 
     static final public String key_from_0_to_1_custom_id_set = "0_1_custom_id_set";
@@ -39,7 +45,12 @@ class MigrationHelper {
         while (currentVersion < DATA_SCHEMA_VERSIONS) {
             performMigrationStep(currentVersion, migrationParams);
 
-            currentVersion = getCurrentSchemaVersion();
+            int newVersion = getCurrentSchemaVersion();
+            if (newVersion == currentVersion) {
+                L.w("[MigrationHelper] doWork, migration from version [" + currentVersion + "] could not be performed, it will be retried on the next init");
+                return;
+            }
+            currentVersion = newVersion;
         }
     }
 
@@ -75,6 +86,18 @@ class MigrationHelper {
                 performMigration0To1(migrationParams);
                 newVersion = newVersion + 1;
                 break;
+            case 1:
+                L.w("[MigrationHelper] performMigrationStep, performing migration from version [1] -> [2]");
+                if (performMigration1To2()) {
+                    newVersion = newVersion + 1;
+                }
+                break;
+            case 2:
+                L.w("[MigrationHelper] performMigrationStep, performing migration from version [2] -> [3]");
+                if (performMigration2To3()) {
+                    newVersion = newVersion + 1;
+                }
+                break;
             case DATA_SCHEMA_VERSIONS:
                 L.w("[MigrationHelper] performMigrationStep, attempting to perform migration while already having the latest schema version, skipping [" + currentVersion + "]");
                 break;
@@ -104,6 +127,12 @@ class MigrationHelper {
             return;
         }
 
+        if (!storage.isJournalAvailable()) {
+            //the queues are stored in the preferences for now, they still have to be moved to the journals once they are available
+            storage.setDataSchemaVersion(1);
+            return;
+        }
+
         //no data means new install, apply the latest schema version
         storage.setDataSchemaVersion(DATA_SCHEMA_VERSIONS);
     }
@@ -159,4 +188,74 @@ class MigrationHelper {
             }
         }
     }
+
+    /**
+     * Specific migration from schema version 1 to 2
+     * Moves the requests from the preferences based request queue to the request journal.
+     * Legacy requests are older than anything in the journal, so they are put in front of them.
+     *
+     * @return false if the request journal is not available and the requests were left in the preferences
+     */
+    boolean performMigration1To2() {
+        if (!storage.isJournalAvailable()) {
+            L.w("[MigrationHelper] performMigration1To2, request journal is not available, keeping the requests in the preferences");
+            return false;
+        }
+
+        String[] legacyRequests = storage.getLegacyRequests();
+
+        if (legacyRequests.length == 0) {
+            L.d("[MigrationHelper] performMigration1To2, no legacy requests to move");
+            storage.clearLegacyRequests();
+            return true;
+        }
+
+        List<String> requests = new ArrayList<>(Arrays.asList(legacyRequests));
+        requests.addAll(Arrays.asList(storage.getRequests()));
+
+        L.d("[MigrationHelper] performMigration1To2, moving [" + legacyRequests.length + "] requests to the request journal");
+        storage.replaceRequestList(requests);
+        storage.clearLegacyRequests();
+        return true;
+    }
+
+    /**
+     * Specific migration from schema version 2 to 3
+     * Moves the events from the preferences based event queue to the event journal.
+     * Stored events are merged with anything that is already in the journal.
+     *
+     * @return false if the event journal is not available and the events were left in the preferences
+     */
+    boolean performMigration2To3() {
+        if (!storage.isJournalAvailable()) {
+            L.w("[MigrationHelper] performMigration2To3, event journal is not available, keeping the events in the preferences");
+            return false;
+        }
+
+        String[] legacyEvents = storage.getLegacyEvents();
+
+        if (legacyEvents.length == 0) {
+            L.d("[MigrationHelper] performMigration2To3, no legacy events to move");
+            storage.clearLegacyEvents();
+            return true;
+        }
+
+        List<Event> events = new ArrayList<>(legacyEvents.length);
+        for (String eventJSON : legacyEvents) {
+            try {
+                Event event = EventJson.read(eventJSON);
+                if (event != null) {
+                    events.add(event);
+                }
+            } catch (JSONException ex) {
+                L.w("[MigrationHelper] performMigration2To3, failed to parse stored event, skipping it [" + ex.toString() + "]");
+            }
+        }
+        events.addAll(storage.getEventList());
+
+        L.d("[MigrationHelper] performMigration2To3, moving [" + events.size() + "] events to the event journal");
+        storage.replaceEventList(events);
+        storage.clearLegacyEvents();
+        return true;
+    }
 }
@@ -11,6 +11,8 @@ public class ModuleAPM extends ModuleBase {
 
     final static String[] reservedKeys = new String[] { "response_time", "response_payload_size", "response_code", "request_payload_size", "duration", "slow_rendering_frames", "frozen_frames" };
 
+    final static String initPhaseTraceKeyPrefix = "countly_init_";
+
     Apm apmInterface = null;
 
     Map<String, Long> codeTraces;
@@ -344,6 +346,17 @@ public class ModuleAPM extends ModuleBase {
         }
     }
 
+    /**
+     * Records every init phase as a custom trace
+     */
+    void recordInitPhases(@NonNull List<InitPhaseTimer.Phase> phases) {
+        L.d("[ModuleAPM] Calling 'recordInitPhases', phase count:[" + phases.size() + "]");
+
+        for (InitPhaseTimer.Phase phase : phases) {
+            requestQueueProvider.sendAPMCustomTrace(initPhaseTraceKeyPrefix + phase.name, phase.getDurationMs(), phase.startMs, phase.endMs, "");
+        }
+    }
+
     void calculateAppRunningTimes(int previousCount, int newCount) {
         boolean goingToBackground = (previousCount == 1 && newCount == 0);
         boolean goingToForeground = (previousCount == 0 && newCount == 1);
@@ -464,10 +477,16 @@ public class ModuleAPM extends ModuleBase {
          * @param traceKey key by which this action is identified
          */
         public void startTrace(String traceKey) {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'startTrace' with key:[" + traceKey + "]");
+            final CallTrace trace = callTracer.begin("Apm.startTrace");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'startTrace' with key:[" + traceKey + "]");
 
-                startTraceInternal(traceKey);
+                    startTraceInternal(traceKey);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -477,27 +496,45 @@ public class ModuleAPM extends ModuleBase {
          * @param traceKey key by which this action is identified
          */
         public void endTrace(String traceKey, Map<String, Integer> customMetrics) {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'endTrace' with key:[" + traceKey + "]");
+            final CallTrace trace = callTracer.begin("Apm.endTrace");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'endTrace' with key:[" + traceKey + "]");
 
-                endTraceInternal(traceKey, customMetrics);
+                    endTraceInternal(traceKey, customMetrics);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
         public void cancelTrace(String traceKey) {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'cancelTrace' with key:[" + traceKey + "]");
+            final CallTrace trace = callTracer.begin("Apm.cancelTrace");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'cancelTrace' with key:[" + traceKey + "]");
 
-                cancelTraceInternal(traceKey);
+                    cancelTraceInternal(traceKey);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
         public void cancelAllTraces() {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'cancelAllTraces'");
-
-                cancelAllTracesInternal();
-                clearNetworkTraces();
+            final CallTrace trace = callTracer.begin("Apm.cancelAllTraces");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'cancelAllTraces'");
+
+                    cancelAllTracesInternal();
+                    clearNetworkTraces();
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -509,10 +546,16 @@ public class ModuleAPM extends ModuleBase {
          * for the same trace. This helps to distinguish them.
          */
         public void startNetworkRequest(String networkTraceKey, String uniqueId) {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'startNetworkRequest' with key:[" + networkTraceKey + "], uniqueID:[" + uniqueId + "]");
+            final CallTrace trace = callTracer.begin("Apm.startNetworkRequest");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'startNetworkRequest' with key:[" + networkTraceKey + "], uniqueID:[" + uniqueId + "]");
 
-                startNetworkRequestInternal(networkTraceKey, uniqueId);
+                    startNetworkRequestInternal(networkTraceKey, uniqueId);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -527,10 +570,16 @@ public class ModuleAPM extends ModuleBase {
          * @param responsePayloadSize received response payload size in bytes
          */
         public void endNetworkRequest(String networkTraceKey, String uniqueId, int responseCode, int requestPayloadSize, int responsePayloadSize) {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'endNetworkRequest' with key:[" + networkTraceKey + "], uniqueID:[" + uniqueId + "]");
+            final CallTrace trace = callTracer.begin("Apm.endNetworkRequest");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'endNetworkRequest' with key:[" + networkTraceKey + "], uniqueID:[" + uniqueId + "]");
 
-                endNetworkRequestInternal(networkTraceKey, uniqueId, responseCode, requestPayloadSize, responsePayloadSize);
+                    endNetworkRequestInternal(networkTraceKey, uniqueId, responseCode, requestPayloadSize, responsePayloadSize);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -545,10 +594,16 @@ public class ModuleAPM extends ModuleBase {
          * @param requestEndTimestampMs network request end timestamp in milliseconds
          */
         public void recordNetworkTrace(String networkTraceKey, int responseCode, int requestPayloadSize, int responsePayloadSize, long requestStartTimestampMs, long requestEndTimestampMs) {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'recordNetworkTrace' with key:[" + networkTraceKey + "]");
+            final CallTrace trace = callTracer.begin("Apm.recordNetworkTrace");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'recordNetworkTrace' with key:[" + networkTraceKey + "]");
 
-                recordNetworkRequestInternal(networkTraceKey, responseCode, requestPayloadSize, responsePayloadSize, requestStartTimestampMs, requestEndTimestampMs);
+                    recordNetworkRequestInternal(networkTraceKey, responseCode, requestPayloadSize, responsePayloadSize, requestStartTimestampMs, requestEndTimestampMs);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -557,43 +612,61 @@ public class ModuleAPM extends ModuleBase {
          * Should only be used if manual app loading trigger is enabled
          */
         public void setAppIsLoaded() {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'setAppIsLoaded'");
+            final CallTrace trace = callTracer.begin("Apm.setAppIsLoaded");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'setAppIsLoaded'");
 
-                long timestamp = System.currentTimeMillis();
+                    long timestamp = System.currentTimeMillis();
 
-                if (!useManualAppLoadedTrigger) {
-                    L.w("[Apm] trying to record that app has finished loading without enabling manual trigger");
-                    return;
-                }
+                    if (!useManualAppLoadedTrigger) {
+                        L.w("[Apm] trying to record that app has finished loading without enabling manual trigger");
+                        return;
+                    }
 
-                recordAppStart(timestamp);
+                    recordAppStart(timestamp);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
         public void triggerForeground() {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'triggerForeground'");
-
-                if (!manualForegroundBackgroundTriggers) {
-                    L.w("[Apm] trying to use manual foreground triggers without enabling them");
-                    return;
+            final CallTrace trace = callTracer.begin("Apm.triggerForeground");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'triggerForeground'");
+
+                    if (!manualForegroundBackgroundTriggers) {
+                        L.w("[Apm] trying to use manual foreground triggers without enabling them");
+                        return;
+                    }
+
+                    goToForeground();
                 }
-
-                goToForeground();
+            } finally {
+                callTracer.end(trace);
             }
         }
 
         public void triggerBackground() {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'triggerBackground'");
-
-                if (!manualForegroundBackgroundTriggers) {
-                    L.w("[Apm] trying to use manual background triggers without enabling them");
-                    return;
+            final CallTrace trace = callTracer.begin("Apm.triggerBackground");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Apm] Calling 'triggerBackground'");
+
+                    if (!manualForegroundBackgroundTriggers) {
+                        L.w("[Apm] trying to use manual background triggers without enabling them");
+                        return;
+                    }
+
+                    goToBackground();
                 }
-
-                goToBackground();
+            } finally {
+                callTracer.end(trace);
             }
         }
     }
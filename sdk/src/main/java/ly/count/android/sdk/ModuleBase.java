@@ -14,6 +14,7 @@ abstract class ModuleBase {
     RequestQueueProvider requestQueueProvider;
     DeviceIdProvider deviceIdProvider;
     BaseInfoProvider baseInfoProvider;
+    final CallTracer callTracer;
 
     ModuleBase(@NonNull Countly cly, @NonNull CountlyConfig config) {
         _cly = cly;
@@ -24,6 +25,7 @@ abstract class ModuleBase {
         requestQueueProvider = config.requestQueueProvider;
         deviceIdProvider = config.deviceIdProvider;
         baseInfoProvider = config.baseInfoProvider;
+        callTracer = cly.callTracer;
     }
 
     void halt() {
@@ -78,4 +80,12 @@ abstract class ModuleBase {
 
     void initFinished(@NonNull CountlyConfig config) {
     }
+
+    /**
+     * Called after "initFinished" of all modules, for init work that is not needed to record data.
+     * This is called without holding the SDK lock, with deferred init on a background thread,
+     * so modules have to synchronize on the Countly instance themselves for any state that app calls can change.
+     */
+    void initDeferred(@NonNull CountlyConfig config) {
+    }
 }
@@ -42,7 +42,8 @@ public class ModuleCrash extends ModuleBase {
     }
 
     /**
-     * Called during init to check if there are any crash dumps saved
+     * Called during init to check if there are any crash dumps saved.
+     * The dump files are read without the SDK lock, it is only taken to record each crash
      *
      * @param context android context
      */
@@ -69,7 +70,10 @@ public class ModuleCrash extends ModuleBase {
             if (dumpFiles != null) {
                 for (File dumpFile : dumpFiles) {
                     //record crash
-                    recordNativeException(dumpFile);
+                    if (!recordNativeException(dumpFile)) {
+                        L.d("[ModuleCrash] SDK was halted, keeping the remaining dumps");
+                        return;
+                    }
 
                     //delete dump file
                     dumpFile.delete();
@@ -80,12 +84,15 @@ public class ModuleCrash extends ModuleBase {
         }
     }
 
-    private void recordNativeException(File dumpFile) {
+    /**
+     * @return false if the SDK was halted and the dump was not handled
+     */
+    private boolean recordNativeException(File dumpFile) {
         L.d("[ModuleCrash] Recording native crash dump: [" + dumpFile.getName() + "]");
 
         //check for consent
         if (!consentProvider.getConsent(Countly.CountlyFeatureNames.crashes)) {
-            return;
+            return true;
         }
 
         //read bytes
@@ -99,14 +106,20 @@ public class ModuleCrash extends ModuleBase {
         } catch (Exception e) {
             L.e("[ModuleCrash] Failed to read dump file bytes");
             e.printStackTrace();
-            return;
+            return true;
         }
 
         //convert to base64
         String dumpString = Base64.encodeToString(bytes, Base64.NO_WRAP);
 
         //record crash
-        sendCrashReportToQueue(dumpString, false, true, null);
+        synchronized (_cly) {
+            if (!_cly.isInitialized()) {
+                return false;
+            }
+            sendCrashReportToQueue(dumpString, false, true, null);
+        }
+        return true;
     }
 
     public void sendCrashReportToQueue(String error, boolean nonfatal, boolean isNativeCrash, @Nullable final Map<String, Object> customSegmentation) {
@@ -307,11 +320,14 @@ public class ModuleCrash extends ModuleBase {
         if (config.enableUnhandledCrashReporting) {
             enableCrashReporting();
         }
+    }
 
+    @Override
+    void initDeferred(@NonNull CountlyConfig config) {
         //check for previous native crash dumps
         if (config.checkForNativeCrashDumps) {
             //flag so that this can be turned off during testing
-            _cly.moduleCrash.checkForNativeCrashDumps(config.context);
+            checkForNativeCrashDumps(config.context);
         }
     }
 
@@ -328,10 +344,16 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly addCrashBreadcrumb(String record) {
-            synchronized (_cly) {
-                L.i("[Crashes] Adding crash breadcrumb");
+            final CallTrace trace = callTracer.begin("Crashes.addCrashBreadcrumb");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Crashes] Adding crash breadcrumb");
 
-                return addBreadcrumbInternal(record);
+                    return addBreadcrumbInternal(record);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -342,8 +364,14 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordHandledException(Exception exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, true, null);
+            final CallTrace trace = callTracer.begin("Crashes.recordHandledException");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return recordExceptionInternal(exception, true, null);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -354,8 +382,14 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordHandledException(Throwable exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, true, null);
+            final CallTrace trace = callTracer.begin("Crashes.recordHandledException");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return recordExceptionInternal(exception, true, null);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -366,8 +400,14 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordUnhandledException(Exception exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, false, null);
+            final CallTrace trace = callTracer.begin("Crashes.recordUnhandledException");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return recordExceptionInternal(exception, false, null);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -378,8 +418,14 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordUnhandledException(Throwable exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, false, null);
+            final CallTrace trace = callTracer.begin("Crashes.recordUnhandledException");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return recordExceptionInternal(exception, false, null);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -390,8 +436,14 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordHandledException(final Throwable exception, final Map<String, Object> customSegmentation) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, true, customSegmentation);
+            final CallTrace trace = callTracer.begin("Crashes.recordHandledException");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return recordExceptionInternal(exception, true, customSegmentation);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -402,8 +454,14 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordUnhandledException(final Throwable exception, final Map<String, Object> customSegmentation) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, false, customSegmentation);
+            final CallTrace trace = callTracer.begin("Crashes.recordUnhandledException");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return recordExceptionInternal(exception, false, customSegmentation);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
     }
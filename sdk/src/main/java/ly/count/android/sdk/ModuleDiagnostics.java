@@ -0,0 +1,126 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.List;
+import org.json.JSONException;
+
+public class ModuleDiagnostics extends ModuleBase {
+    Diagnostics diagnosticsInterface;
+
+    @NonNull final DiagnosticsMetrics metrics;
+
+    ModuleDiagnostics(@NonNull Countly cly, @NonNull CountlyConfig config) {
+        super(cly, config);
+        L.v("[ModuleDiagnostics] Initialising");
+
+        DiagnosticsMetrics queueMetrics = requestQueueProvider.getDiagnosticsMetrics();
+        //a custom request queue provider might not collect anything
+        metrics = queueMetrics != null ? queueMetrics : new DiagnosticsMetrics();
+
+        if (config.diagnosticsListener != null) {
+            L.d("[ModuleDiagnostics] Setting diagnostics listener");
+            metrics.setListener(config.diagnosticsListener);
+        }
+
+        diagnosticsInterface = new Diagnostics();
+    }
+
+    void setListenerInternal(@Nullable DiagnosticsListener listener) {
+        L.d("[ModuleDiagnostics] Setting diagnostics listener, removing:[" + (listener == null) + "]");
+        metrics.setListener(listener);
+    }
+
+    @NonNull String exportCallTracesInternal() {
+        try {
+            return callTracer.exportTraceEvents();
+        } catch (JSONException e) {
+            L.e("[ModuleDiagnostics] Failed to export call traces [" + e + "]");
+            return "{\"traceEvents\":[]}";
+        }
+    }
+
+    @Override
+    void halt() {
+        metrics.setListener(null);
+        diagnosticsInterface = null;
+    }
+
+    public class Diagnostics {
+        /**
+         * Returns the counters and histograms that the SDK collects about itself.
+         * The returned object is updated as the SDK stores and sends data.
+         */
+        public @NonNull DiagnosticsMetrics getMetrics() {
+            synchronized (_cly) {
+                L.i("[Diagnostics] Calling 'getMetrics'");
+                return metrics;
+            }
+        }
+
+        /**
+         * Sets all counters and histograms back to zero
+         */
+        public void reset() {
+            synchronized (_cly) {
+                L.i("[Diagnostics] Calling 'reset'");
+                metrics.reset();
+            }
+        }
+
+        /**
+         * Returns the counters of the network, storage, media and timers lanes that run the background work of the SDK.
+         * Unlike "getMetrics", the returned values are not updated afterwards.
+         */
+        public @NonNull List<SchedulerLaneMetrics> getSchedulerMetrics() {
+            synchronized (_cly) {
+                L.i("[Diagnostics] Calling 'getSchedulerMetrics'");
+                return _cly.getScheduler().getMetrics();
+            }
+        }
+
+        /**
+         * Returns the kept call traces, from the oldest to the most recent one.
+         * Calls are only traced if it was enabled with "enableCallTracing" in the config.
+         */
+        public @NonNull List<CallTrace> getCallTraces() {
+            synchronized (_cly) {
+                L.i("[Diagnostics] Calling 'getCallTraces'");
+                return callTracer.getTraces();
+            }
+        }
+
+        /**
+         * Returns the kept call traces as JSON in the Trace Event Format,
+         * it can be opened with "chrome://tracing" or Perfetto for offline analysis
+         */
+        public @NonNull String exportCallTraces() {
+            synchronized (_cly) {
+                L.i("[Diagnostics] Calling 'exportCallTraces'");
+                return exportCallTracesInternal();
+            }
+        }
+
+        /**
+         * Removes all kept call traces
+         */
+        public void clearCallTraces() {
+            synchronized (_cly) {
+                L.i("[Diagnostics] Calling 'clearCallTraces'");
+                callTracer.clear();
+            }
+        }
+
+        /**
+         * Sets the listener that is notified every time the request queue has finished sending.
+         *
+         * @param listener the listener to notify, null to remove the current one
+         */
+        public void setListener(@Nullable DiagnosticsListener listener) {
+            synchronized (_cly) {
+                L.i("[Diagnostics] Calling 'setListener'");
+                setListenerInternal(listener);
+            }
+        }
+    }
+}
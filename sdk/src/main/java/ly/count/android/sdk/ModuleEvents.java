@@ -15,6 +15,21 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
 
     EventQueueProvider eventQueueProvider;
 
+    //if not null, public recordEvent calls are published here and persisted by the consumer thread
+    EventRingBuffer eventRingBuffer = null;
+    Thread eventConsumerThread = null;
+    volatile boolean eventConsumerRunning = false;
+    //set while the ring buffer is being drained, recording a event also tries to drain it
+    boolean drainingEventRingBuffer = false;
+
+    //how long the consumer thread waits for new events before checking again
+    static final long EVENT_CONSUMER_PARK_NANOS = 500 * 1000 * 1000L;
+    //how long halting waits for the consumer thread to stop
+    static final long EVENT_CONSUMER_JOIN_MS = 1000L;
+
+    //if not null, repeated custom events are combined here before they reach the event queue
+    EventAggregator eventAggregator = null;
+
     ModuleEvents(Countly cly, CountlyConfig config) {
         super(cly, config);
         L.v("[ModuleEvents] Initialising");
@@ -71,6 +86,9 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
             throw new IllegalStateException("Countly.sharedInstance().init must be called before recordEvent");
         }
 
+        //events that were recorded earlier but are still in the ring buffer should be persisted first
+        drainEventRingBuffer();
+
         if (segmentation != null) {
             Utils.removeUnsupportedDataTypes(segmentation);
         }
@@ -190,13 +208,124 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
         return event != null;
     }
 
+    /**
+     * Persists all events that are currently in the ring buffer.
+     * Safe to call if the ring buffer is not enabled.
+     */
+    void drainEventRingBuffer() {
+        final EventRingBuffer ringBuffer = eventRingBuffer;
+        if (ringBuffer == null) {
+            return;
+        }
+
+        synchronized (_cly) {
+            if (drainingEventRingBuffer || eventRingBuffer != ringBuffer) {
+                //already draining, or the module was halted while waiting for the lock and the store may be cleared
+                return;
+            }
+
+            drainingEventRingBuffer = true;
+            try {
+                ringBuffer.drain(ringBufferConsumer);
+            } finally {
+                drainingEventRingBuffer = false;
+            }
+        }
+    }
+
+    final EventRingBuffer.Consumer ringBufferConsumer = new EventRingBuffer.Consumer() {
+        @Override
+        public void onEvent(@NonNull String key, Map<String, Object> segmentation, int count, double sum, double dur, long timestamp) {
+            try {
+                Utils.truncateSegmentationValues(segmentation, _cly.config_.maxSegmentationValues, "[Events] recordEvent,", L);
+                recordEventInternal(key, segmentation, count, sum, dur, UtilsTime.Instant.get(timestamp));
+            } catch (Exception e) {
+                //a single bad event should not prevent the rest from being recorded
+                L.e("[ModuleEvents] Failed to record buffered event [" + key + "], [" + e + "]");
+            }
+        }
+    };
+
+    void startEventConsumer() {
+        final EventRingBuffer ringBuffer = eventRingBuffer;
+        eventConsumerRunning = true;
+        eventConsumerThread = _cly.getScheduler().newThread("event-consumer", new Runnable() {
+            @Override
+            public void run() {
+                while (eventConsumerRunning) {
+                    ringBuffer.awaitEvents(EVENT_CONSUMER_PARK_NANOS);
+                    if (eventConsumerRunning && ringBuffer.size() > 0) {
+                        drainEventRingBuffer();
+                    }
+                }
+            }
+        });
+        eventConsumerThread.start();
+    }
+
+    /**
+     * Stops the consumer thread and waits for it to finish.
+     * If it is waiting for the SDK lock that the caller holds, it can't finish,
+     * it then stops without draining once it gets the lock, because the ring buffer is gone by then.
+     */
+    void stopEventConsumer() {
+        eventConsumerRunning = false;
+        final Thread consumerThread = eventConsumerThread;
+        eventConsumerThread = null;
+        if (consumerThread == null) {
+            return;
+        }
+
+        consumerThread.interrupt();
+        if (Thread.holdsLock(_cly) && consumerThread.getState() == Thread.State.BLOCKED) {
+            //waiting for the lock of the caller, joining would only wait for the timeout
+            return;
+        }
+        try {
+            consumerThread.join(EVENT_CONSUMER_JOIN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (consumerThread.isAlive()) {
+            L.w("[ModuleEvents] The event consumer thread did not stop in time");
+        }
+    }
+
+    /**
+     * Stores the events that have been combined so far in the event queue.
+     * Safe to call if event aggregation is not enabled.
+     */
+    void flushAggregatedEvents() {
+        if (eventAggregator != null) {
+            eventAggregator.flush();
+        }
+    }
+
     @Override
     void initFinished(@NonNull CountlyConfig config) {
+        if (config.eventAggregationEnabled) {
+            L.d("[ModuleEvents] Enabling event aggregation");
+            eventAggregator = new EventAggregator(eventQueueProvider, Countly.EVENT_QUEUE_SIZE_THRESHOLD, L);
+            eventQueueProvider = eventAggregator;
+        }
+
+        if (config.eventRingBufferCapacity > 0) {
+            L.d("[ModuleEvents] Using a event ring buffer with capacity [" + config.eventRingBufferCapacity + "] and overflow policy [" + config.eventOverflowPolicy + "]");
+            eventRingBuffer = new EventRingBuffer(config.eventRingBufferCapacity, config.eventOverflowPolicy);
+            startEventConsumer();
+        }
+
         checkCachedPushData(_cly.countlyStore);
     }
 
     @Override
     void halt() {
+        stopEventConsumer();
+        eventRingBuffer = null;
+        if (eventAggregator != null) {
+            eventAggregator.clear();
+            eventAggregator = null;
+        }
         timedEvents.clear();
     }
 
@@ -211,12 +340,18 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @param timestamp unix timestamp in milliseconds of when the event occurred
          */
         public void recordPastEvent(final String key, final Map<String, Object> segmentation, long timestamp) {
-            synchronized (_cly) {
-                if (timestamp == 0) {
-                    throw new IllegalStateException("Provided timestamp has to be greater that zero");
+            final CallTrace trace = callTracer.begin("Events.recordPastEvent");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    if (timestamp == 0) {
+                        throw new IllegalStateException("Provided timestamp has to be greater that zero");
+                    }
+
+                    recordPastEvent(key, segmentation, 1, 0, 0, timestamp);
                 }
-
-                recordPastEvent(key, segmentation, 1, 0, 0, timestamp);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -233,15 +368,21 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @param timestamp unix timestamp in milliseconds of when the event occurred
          */
         public void recordPastEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, long timestamp) {
-            synchronized (_cly) {
-                L.i("[Events] Calling recordPastEvent: [" + key + "]");
-
-                if (timestamp == 0) {
-                    throw new IllegalStateException("Provided timestamp has to be greater that zero");
+            final CallTrace trace = callTracer.begin("Events.recordPastEvent");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Events] Calling recordPastEvent: [" + key + "]");
+
+                    if (timestamp == 0) {
+                        throw new IllegalStateException("Provided timestamp has to be greater that zero");
+                    }
+
+                    UtilsTime.Instant instant = UtilsTime.Instant.get(timestamp);
+                    recordEventInternal(key, segmentation, count, sum, dur, instant);
                 }
-
-                UtilsTime.Instant instant = UtilsTime.Instant.get(timestamp);
-                recordEventInternal(key, segmentation, count, sum, dur, instant);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -252,12 +393,18 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @return true if no event with this key existed before and event is started, false otherwise
          */
         public boolean startEvent(final String key) {
-            synchronized (_cly) {
-                if (!_cly.isInitialized()) {
-                    throw new IllegalStateException("Countly.sharedInstance().init must be called before startEvent");
+            final CallTrace trace = callTracer.begin("Events.startEvent");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    if (!_cly.isInitialized()) {
+                        throw new IllegalStateException("Countly.sharedInstance().init must be called before startEvent");
+                    }
+
+                    return startEventInternal(key);
                 }
-
-                return startEventInternal(key);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -268,8 +415,14 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @return true if event with this key has been previously started, false otherwise
          */
         public boolean endEvent(final String key) {
-            synchronized (_cly) {
-                return endEvent(key, null, 1, 0);
+            final CallTrace trace = callTracer.begin("Events.endEvent");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return endEvent(key, null, 1, 0);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -285,12 +438,18 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty, count is less than 1, or if segmentation contains null or empty keys or values
          */
         public boolean endEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum) {
-            synchronized (_cly) {
-                if (!_cly.isInitialized()) {
-                    throw new IllegalStateException("Countly.sharedInstance().init must be called before endEvent");
+            final CallTrace trace = callTracer.begin("Events.endEvent");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    if (!_cly.isInitialized()) {
+                        throw new IllegalStateException("Countly.sharedInstance().init must be called before endEvent");
+                    }
+
+                    return endEventInternal(key, segmentation, count, sum);
                 }
-
-                return endEventInternal(key, segmentation, count, sum);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -300,10 +459,16 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @return true if event with this key has been previously started, false otherwise
          **/
         public boolean cancelEvent(final String key) {
-            synchronized (_cly) {
-                L.i("[Events] Calling cancelEvent: [" + key + "]");
+            final CallTrace trace = callTracer.begin("Events.cancelEvent");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Events] Calling cancelEvent: [" + key + "]");
 
-                return cancelEventInternal(key);
+                    return cancelEventInternal(key);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -315,9 +480,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key) {
-            synchronized (_cly) {
-                recordEvent(key, null, 1, 0);
-            }
+            recordEvent(key, null, 1, 0);
         }
 
         /**
@@ -329,9 +492,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final int count) {
-            synchronized (_cly) {
-                recordEvent(key, null, count, 0);
-            }
+            recordEvent(key, null, count, 0);
         }
 
         /**
@@ -344,9 +505,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final int count, final double sum) {
-            synchronized (_cly) {
-                recordEvent(key, null, count, sum);
-            }
+            recordEvent(key, null, count, sum);
         }
 
         /**
@@ -358,9 +517,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation) {
-            synchronized (_cly) {
-                recordEvent(key, segmentation, 1, 0);
-            }
+            recordEvent(key, segmentation, 1, 0);
         }
 
         /**
@@ -373,9 +530,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation, final int count) {
-            synchronized (_cly) {
-                recordEvent(key, segmentation, count, 0);
-            }
+            recordEvent(key, segmentation, count, 0);
         }
 
         /**
@@ -389,9 +544,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty, count is less than 1, or if segmentation contains null or empty keys or values
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum) {
-            synchronized (_cly) {
-                recordEvent(key, segmentation, count, sum, 0);
-            }
+            recordEvent(key, segmentation, count, sum, 0);
         }
 
         /**
@@ -406,16 +559,42 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty, count is less than 1, or if segmentation contains null or empty keys or values
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur) {
-            synchronized (_cly) {
-                if (!_cly.isInitialized()) {
-                    throw new IllegalStateException("Countly.sharedInstance().init must be called before recordEvent");
+            final CallTrace trace = callTracer.begin("Events.recordEvent");
+            try {
+                final EventRingBuffer ringBuffer = eventRingBuffer;
+                if (ringBuffer != null) {
+                    //fast path, the rest of the validation and the persisting is done by the consumer thread
+                    if (!_cly.isInitialized()) {
+                        throw new IllegalStateException("Countly.sharedInstance().init must be called before recordEvent");
+                    }
+                    if (key == null || key.length() == 0) {
+                        throw new IllegalArgumentException("Valid Countly event key is required");
+                    }
+                    if (count < 1) {
+                        throw new IllegalArgumentException("Countly event count should be greater than zero");
+                    }
+
+                    //the consumer thread changes the segmentation later, the caller may already reuse or change its map by then.
+                    //this copy is the one allocation per event on the fast path
+                    final Map<String, Object> segmentationCopy = segmentation == null ? null : new HashMap<>(segmentation);
+                    ringBuffer.publish(key, segmentationCopy, count, sum, dur, System.currentTimeMillis());
+                    return;
                 }
 
-                L.i("[Events] Calling recordEvent: [" + key + "]");
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    if (!_cly.isInitialized()) {
+                        throw new IllegalStateException("Countly.sharedInstance().init must be called before recordEvent");
+                    }
 
-                Utils.truncateSegmentationValues(segmentation, _cly.config_.maxSegmentationValues, "[Events] recordEvent,", L);
+                    L.i("[Events] Calling recordEvent: [" + key + "]");
+
+                    Utils.truncateSegmentationValues(segmentation, _cly.config_.maxSegmentationValues, "[Events] recordEvent,", L);
 
-                eventProvider.recordEventInternal(key, segmentation, count, sum, dur, null);
+                    eventProvider.recordEventInternal(key, segmentation, count, sum, dur, null);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
     }
@@ -1,8 +1,12 @@
 package ly.count.android.sdk;
 
+import android.app.Activity;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -17,6 +21,24 @@ public class ModuleRemoteConfig extends ModuleBase {
     boolean remoteConfigAutomaticUpdateEnabled = false;
     RemoteConfigCallback remoteConfigInitCallback = null;
 
+    //the current values, null until they are loaded from storage
+    volatile RemoteConfigSnapshot snapshot = null;
+    //the values as they were last saved to storage, without the delta
+    String savedValues = null;
+    //the values that changed with partial updates since the values were last saved, they are stored separately
+    JSONObject savedDelta = null;
+    //once the delta has more values than this fraction of all values, all values are saved again
+    final static double maxDeltaFraction = 0.5;
+
+    //background refresh, values older than the TTL are updated, disabled if the TTL is 0
+    long refreshTtlMs = 0;
+    long minimumFetchIntervalMs = 0;
+    long lastFetchAttemptMs = 0;
+
+    //full updates that are started while one is running wait for that one instead of making their own request
+    boolean fullUpdateInProgress = false;
+    final List<RemoteConfigCallback> fullUpdateCallbacks = new ArrayList<>();
+
     ModuleRemoteConfig(Countly cly, final CountlyConfig config) {
         super(cly, config);
         L.v("[ModuleRemoteConfig] Initialising");
@@ -38,6 +60,20 @@ public class ModuleRemoteConfig extends ModuleBase {
             }
         }
 
+        if (config.remoteConfigRefreshTtl != 0) {
+            if (config.remoteConfigRefreshTtl < 1) {
+                L.e("[ModuleRemoteConfig] provided remote config TTL is less than 1. Replacing it with 1.");
+                config.remoteConfigRefreshTtl = 1;
+            }
+            if (config.remoteConfigMinimumFetchInterval < 0) {
+                L.e("[ModuleRemoteConfig] provided remote config minimum fetch interval is less than 0. Replacing it with 0.");
+                config.remoteConfigMinimumFetchInterval = 0;
+            }
+            L.d("[ModuleRemoteConfig] Enabling background refresh, TTL:[" + config.remoteConfigRefreshTtl + " s], minimum fetch interval:[" + config.remoteConfigMinimumFetchInterval + " s]");
+            refreshTtlMs = config.remoteConfigRefreshTtl * 1000;
+            minimumFetchIntervalMs = config.remoteConfigMinimumFetchInterval * 1000;
+        }
+
         remoteConfigInterface = new RemoteConfig();
     }
 
@@ -74,61 +110,175 @@ public class ModuleRemoteConfig extends ModuleBase {
             return;
         }
 
+        //only full updates are conditional, the entity tag belongs to the full set of values
+        final boolean clearOldValues = keysExcept == null && keysOnly == null;
+        //updates after a device ID change are not combined, a running update could still be for the previous ID
+        final boolean combineUpdates = clearOldValues && !requestShouldBeDelayed;
+        if (combineUpdates && !startFullUpdate(callback)) {
+            L.d("[ModuleRemoteConfig] A full update is already in progress, waiting for it");
+            return;
+        }
+
         String[] preparedKeys = prepareKeysIncludeExclude(keysOnly, keysExcept);
         String requestData = requestQueueProvider.prepareRemoteConfigRequest(preparedKeys[0], preparedKeys[1]);
         L.d("[ModuleRemoteConfig] RemoteConfig requestData:[" + requestData + "]");
 
         ConnectionProcessor cp = requestQueueProvider.createConnectionProcessor();
 
+        final ImmediateRequestMaker.ConditionalRequest conditional = clearOldValues ? new ImmediateRequestMaker.ConditionalRequest(storageProvider.getRemoteConfigETag()) : null;
+
         (new ImmediateRequestMaker()).execute(requestData, "/o/sdk", cp, requestShouldBeDelayed, new ImmediateRequestMaker.InternalFeedbackRatingCallback() {
             @Override
             public void callback(JSONObject checkResponse) {
-                L.d("[ModuleRemoteConfig] Processing remote config received response, received response is null:[" + (checkResponse == null) + "]");
-                if (checkResponse == null) {
-                    if (callback != null) {
-                        callback.callback("Encountered problem while trying to reach the server, possibly no internet connection");
+                String error = null;
+
+                if (conditional != null && conditional.notModified) {
+                    L.d("[ModuleRemoteConfig] Remote config values have not changed on the server");
+                } else {
+                    L.d("[ModuleRemoteConfig] Processing remote config received response, received response is null:[" + (checkResponse == null) + "]");
+                    if (checkResponse == null) {
+                        error = "Encountered problem while trying to reach the server, possibly no internet connection";
+                    } else {
+                        try {
+                            mergeCheckResponseIntoCurrentValues(clearOldValues, checkResponse);
+                            if (conditional != null) {
+                                storageProvider.setRemoteConfigETag(conditional.eTag);
+                            }
+                        } catch (Exception ex) {
+                            L.e("[ModuleRemoteConfig] updateRemoteConfigValues - execute, Encountered critical issue while trying to download remote config information from the server, [" + ex.toString() + "]");
+                            error = "Encountered critical issue while trying to download remote config information from the server, [" + ex.toString() + "]";
+                        }
                     }
-                    return;
                 }
 
-                String error = null;
-                try {
-                    boolean clearOldValues = keysExcept == null && keysOnly == null;
-                    mergeCheckResponseIntoCurrentValues(clearOldValues, checkResponse);
-                } catch (Exception ex) {
-                    L.e("[ModuleRemoteConfig] updateRemoteConfigValues - execute, Encountered critical issue while trying to download remote config information from the server, [" + ex.toString() + "]");
-                    error = "Encountered critical issue while trying to download remote config information from the server, [" + ex.toString() + "]";
+                if (clearOldValues && error == null) {
+                    storageProvider.setRemoteConfigUpdateTimestamp(UtilsTime.currentTimestampMs());
                 }
 
-                if (callback != null) {
+                if (combineUpdates) {
+                    finishFullUpdate(error);
+                } else if (callback != null) {
                     callback.callback(error);
                 }
             }
-        }, L);
+        }, L, conditional);
+    }
+
+    /**
+     * Marks the start of a full update, if there is none in progress.
+     * The callback is called once the update in progress has finished.
+     *
+     * @return true if a new update should be started
+     */
+    synchronized boolean startFullUpdate(@Nullable RemoteConfigCallback callback) {
+        if (callback != null) {
+            fullUpdateCallbacks.add(callback);
+        }
+
+        if (fullUpdateInProgress) {
+            return false;
+        }
+
+        fullUpdateInProgress = true;
+        lastFetchAttemptMs = UtilsTime.currentTimestampMs();
+        return true;
+    }
+
+    void finishFullUpdate(@Nullable String error) {
+        final List<RemoteConfigCallback> callbacks;
+        synchronized (this) {
+            fullUpdateInProgress = false;
+            callbacks = new ArrayList<>(fullUpdateCallbacks);
+            fullUpdateCallbacks.clear();
+        }
+
+        for (RemoteConfigCallback callback : callbacks) {
+            callback.callback(error);
+        }
+    }
+
+    /**
+     * Starts a full update in the background if background refresh is enabled and the values are older than the TTL.
+     * Nothing is done if the minimum fetch interval has not passed since the last update was started.
+     *
+     * @param reason what triggered the check, used for logging
+     */
+    void refreshIfStale(@NonNull String reason) {
+        if (refreshTtlMs == 0 || !consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
+            return;
+        }
+
+        final long now = UtilsTime.currentTimestampMs();
+        final long age = now - storageProvider.getRemoteConfigUpdateTimestamp();
+        if (age < refreshTtlMs) {
+            return;
+        }
+
+        synchronized (this) {
+            if (fullUpdateInProgress || now - lastFetchAttemptMs < minimumFetchIntervalMs) {
+                return;
+            }
+        }
+
+        L.d("[ModuleRemoteConfig] Values are stale, updating them in the background, reason:[" + reason + "] age:[" + age + " ms]");
+        updateRemoteConfigValues(null, null, false, null);
     }
 
     /**
      * Merge the values acquired from the server into the current values.
      * Clear if needed.
+     * The values are only saved if they changed. For partial updates only the changed values are saved.
      *
      * @throws Exception it throws an exception so that it is escalated upwards
      */
-    void mergeCheckResponseIntoCurrentValues(boolean clearOldValues, JSONObject checkResponse) throws Exception {
-        //merge the new values into the current ones
-        RemoteConfigValueStore rcvs = loadConfig();
+    synchronized void mergeCheckResponseIntoCurrentValues(boolean clearOldValues, JSONObject checkResponse) throws Exception {
+        final RemoteConfigSnapshot current = getSnapshotInternal();
+
         if (clearOldValues) {
-            //in case of full updates, clear old values
-            rcvs.values = new JSONObject();
+            //in case of full updates, the received values replace the old ones
+            String rcvsString = checkResponse.toString();
+            if (rcvsString.equals(savedValues) && savedDelta.length() == 0) {
+                L.d("[ModuleRemoteConfig] Remote config values did not change, skipping saving");
+                return;
+            }
+
+            L.d("[ModuleRemoteConfig] Finished remote config processing, starting saving");
+            saveValues(rcvsString);
+            snapshot = RemoteConfigSnapshot.fromJSON(checkResponse);
+            L.d("[ModuleRemoteConfig] Finished remote config saving");
+            return;
+        }
+
+        JSONObject changedValues = current.changedValues(checkResponse);
+        if (changedValues.length() == 0) {
+            L.d("[ModuleRemoteConfig] Remote config values did not change, skipping saving");
+            return;
         }
-        rcvs.mergeValues(checkResponse);
 
-        L.d("[ModuleRemoteConfig] Finished remote config processing, starting saving");
+        L.d("[ModuleRemoteConfig] Finished remote config processing, saving [" + changedValues.length() + "] changed values");
+        RemoteConfigSnapshot updated = current.withValues(changedValues);
+        new RemoteConfigValueStore(savedDelta).mergeValues(changedValues);
 
-        saveConfig(rcvs);
+        if (savedDelta.length() > updated.size() * maxDeltaFraction) {
+            //the delta is no longer small compared to all values, save all of them again
+            saveValues(updated.toJSON().toString());
+        } else {
+            storageProvider.setRemoteConfigDelta(savedDelta.toString());
+        }
+        snapshot = updated;
 
         L.d("[ModuleRemoteConfig] Finished remote config saving");
     }
 
+    /**
+     * Saves all values, this also removes the saved delta
+     */
+    private void saveValues(@NonNull String rcvsString) {
+        storageProvider.setRemoteConfigValues(rcvsString);
+        savedValues = rcvsString;
+        savedDelta = new JSONObject();
+    }
+
     String[] prepareKeysIncludeExclude(final String[] keysOnly, final String[] keysExcept) {
         String[] res = new String[2];//0 - include, 1 - exclude
 
@@ -157,42 +307,41 @@ public class ModuleRemoteConfig extends ModuleBase {
     }
 
     Object getValue(String key) {
-        try {
-            RemoteConfigValueStore rcvs = loadConfig();
-            return rcvs.getValue(key);
-        } catch (Exception ex) {
-            L.e("[ModuleRemoteConfig] getValue, Call failed:[" + ex.toString() + "]");
-            return null;
-        }
-    }
-
-    void saveConfig(RemoteConfigValueStore rcvs) throws Exception {
-        storageProvider.setRemoteConfigValues(rcvs.dataToString());
+        return getSnapshotInternal().getValue(key);
     }
 
     /**
-     * @return
-     * @throws Exception For some reason this might be throwing an exception
+     * Returns the current values, they are loaded from storage on the first call.
+     * Lookups don't take a lock, the snapshot is replaced as a whole when the values change.
      */
-    RemoteConfigValueStore loadConfig() throws Exception {
-        String rcvsString = storageProvider.getRemoteConfigValues();
-        //noinspection UnnecessaryLocalVariable
-        RemoteConfigValueStore rcvs = RemoteConfigValueStore.dataFromString(rcvsString);
-        return rcvs;
+    @NonNull RemoteConfigSnapshot getSnapshotInternal() {
+        RemoteConfigSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        return loadSnapshot();
     }
 
-    void clearValueStoreInternal() {
-        storageProvider.setRemoteConfigValues("");
+    private synchronized @NonNull RemoteConfigSnapshot loadSnapshot() {
+        if (snapshot == null) {
+            String rcvsString = storageProvider.getRemoteConfigValues();
+            RemoteConfigValueStore rcvs = RemoteConfigValueStore.dataFromString(rcvsString);
+            savedValues = rcvsString;
+            savedDelta = RemoteConfigValueStore.dataFromString(storageProvider.getRemoteConfigDelta()).values;
+            snapshot = RemoteConfigSnapshot.fromJSON(rcvs.values).withValues(savedDelta);
+        }
+        return snapshot;
+    }
+
+    synchronized void clearValueStoreInternal() {
+        saveValues("");
+        storageProvider.setRemoteConfigETag(null);
+        storageProvider.setRemoteConfigUpdateTimestamp(0);
+        snapshot = RemoteConfigSnapshot.EMPTY;
     }
 
     Map<String, Object> getAllRemoteConfigValuesInternal() {
-        try {
-            RemoteConfigValueStore rcvs = loadConfig();
-            return rcvs.getAllValues();
-        } catch (Exception ex) {
-            Countly.sharedInstance().L.e("[ModuleRemoteConfig] getAllRemoteConfigValuesInternal, Call failed:[" + ex.toString() + "]");
-            return null;
-        }
+        return new HashMap<>(getSnapshotInternal().getAllValues());
     }
 
     static class RemoteConfigValueStore {
@@ -216,7 +365,7 @@ public class ModuleRemoteConfig extends ModuleBase {
             }
         }
 
-        private RemoteConfigValueStore(JSONObject values) {
+        RemoteConfigValueStore(JSONObject values) {
             this.values = values;
         }
 
@@ -282,11 +431,28 @@ public class ModuleRemoteConfig extends ModuleBase {
     }
 
     @Override
-    public void initFinished(@NonNull CountlyConfig config) {
-        //update remote config_ values if automatic update is enabled and we are not in temporary id mode
-        if (remoteConfigAutomaticUpdateEnabled && consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig) && !deviceIdProvider.isTemporaryIdEnabled()) {
-            L.d("[Init] Automatically updating remote config values");
-            updateRemoteConfigValues(null, null, false, remoteConfigInitCallback);
+    void initDeferred(@NonNull CountlyConfig config) {
+        //this can run on the deferred init thread, the update itself is asynchronous and only preparing it needs the lock
+        synchronized (_cly) {
+            if (!_cly.isInitialized()) {
+                return;
+            }
+
+            //update remote config_ values if automatic update is enabled and we are not in temporary id mode
+            if (remoteConfigAutomaticUpdateEnabled && consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig) && !deviceIdProvider.isTemporaryIdEnabled()) {
+                L.d("[Init] Automatically updating remote config values");
+                updateRemoteConfigValues(null, null, false, remoteConfigInitCallback);
+            } else {
+                refreshIfStale("init");
+            }
+        }
+    }
+
+    @Override
+    void onActivityStarted(Activity activity) {
+        if (_cly.getActivityCount() == 1) {
+            //the app came to the foreground
+            refreshIfStale("foreground");
         }
     }
 
@@ -300,15 +466,23 @@ public class ModuleRemoteConfig extends ModuleBase {
          * Clear all stored remote config_ values
          */
         public void clearStoredValues() {
-            synchronized (_cly) {
-                L.i("[RemoteConfig] Calling 'clearStoredValues'");
+            final CallTrace trace = callTracer.begin("RemoteConfig.clearStoredValues");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[RemoteConfig] Calling 'clearStoredValues'");
 
-                clearValueStoreInternal();
+                    clearValueStoreInternal();
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
         public Map<String, Object> getAllValues() {
-            synchronized (_cly) {
+            final CallTrace trace = callTracer.begin("RemoteConfig.getAllValues");
+            try {
+                //values are read from the current snapshot, so no lock is needed and no lock wait is traced
                 L.i("[RemoteConfig] Calling 'getAllValues'");
 
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
@@ -316,6 +490,30 @@ public class ModuleRemoteConfig extends ModuleBase {
                 }
 
                 return getAllRemoteConfigValuesInternal();
+            } finally {
+                callTracer.end(trace);
+            }
+        }
+
+        /**
+         * Get an immutable snapshot of the current remote config_ values.
+         * The snapshot does not change when new values are downloaded, call this again to get the new ones.
+         * Lookups from the snapshot don't block on the SDK and can be used from any thread.
+         *
+         * @return the current values, an empty snapshot if there is no consent
+         */
+        public @NonNull RemoteConfigSnapshot getSnapshot() {
+            final CallTrace trace = callTracer.begin("RemoteConfig.getSnapshot");
+            try {
+                L.v("[RemoteConfig] Calling 'getSnapshot'");
+
+                if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
+                    return RemoteConfigSnapshot.EMPTY;
+                }
+
+                return getSnapshotInternal();
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -326,7 +524,9 @@ public class ModuleRemoteConfig extends ModuleBase {
          * @return
          */
         public Object getValueForKey(String key) {
-            synchronized (_cly) {
+            final CallTrace trace = callTracer.begin("RemoteConfig.getValueForKey");
+            try {
+                //values are read from the current snapshot, so no lock is needed and no lock wait is traced
                 L.i("[RemoteConfig] Calling remoteConfigValueForKey, " + key);
 
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
@@ -334,6 +534,8 @@ public class ModuleRemoteConfig extends ModuleBase {
                 }
 
                 return getValue(key);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -344,19 +546,25 @@ public class ModuleRemoteConfig extends ModuleBase {
          * @param callback
          */
         public void updateExceptKeys(String[] keysToExclude, RemoteConfigCallback callback) {
-            synchronized (_cly) {
-                L.i("[RemoteConfig] Manually calling to updateRemoteConfig with exclude keys");
-
-                if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
-                    if (callback != null) {
-                        callback.callback("No consent given");
+            final CallTrace trace = callTracer.begin("RemoteConfig.updateExceptKeys");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[RemoteConfig] Manually calling to updateRemoteConfig with exclude keys");
+
+                    if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
+                        if (callback != null) {
+                            callback.callback("No consent given");
+                        }
+                        return;
                     }
-                    return;
-                }
-                if (keysToExclude == null) {
-                    L.w("[RemoteConfig] updateRemoteConfigExceptKeys passed 'keys to ignore' array is null");
+                    if (keysToExclude == null) {
+                        L.w("[RemoteConfig] updateRemoteConfigExceptKeys passed 'keys to ignore' array is null");
+                    }
+                    updateRemoteConfigValues(null, keysToExclude, false, callback);
                 }
-                updateRemoteConfigValues(null, keysToExclude, false, callback);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -367,18 +575,24 @@ public class ModuleRemoteConfig extends ModuleBase {
          * @param callback
          */
         public void updateForKeysOnly(String[] keysToInclude, RemoteConfigCallback callback) {
-            synchronized (_cly) {
-                L.i("[RemoteConfig] Manually calling to updateRemoteConfig with include keys");
-                if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
-                    if (callback != null) {
-                        callback.callback("No consent given");
+            final CallTrace trace = callTracer.begin("RemoteConfig.updateForKeysOnly");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[RemoteConfig] Manually calling to updateRemoteConfig with include keys");
+                    if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
+                        if (callback != null) {
+                            callback.callback("No consent given");
+                        }
+                        return;
                     }
-                    return;
-                }
-                if (keysToInclude == null) {
-                    L.w("[RemoteConfig] updateRemoteConfigExceptKeys passed 'keys to include' array is null");
+                    if (keysToInclude == null) {
+                        L.w("[RemoteConfig] updateRemoteConfigExceptKeys passed 'keys to include' array is null");
+                    }
+                    updateRemoteConfigValues(keysToInclude, null, false, callback);
                 }
-                updateRemoteConfigValues(keysToInclude, null, false, callback);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -388,14 +602,20 @@ public class ModuleRemoteConfig extends ModuleBase {
          * @param callback
          */
         public void update(RemoteConfigCallback callback) {
-            synchronized (_cly) {
-                L.i("[RemoteConfig] Manually calling to updateRemoteConfig");
+            final CallTrace trace = callTracer.begin("RemoteConfig.update");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[RemoteConfig] Manually calling to updateRemoteConfig");
 
-                if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
-                    return;
-                }
+                    if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
+                        return;
+                    }
 
-                updateRemoteConfigValues(null, null, false, callback);
+                    updateRemoteConfigValues(null, null, false, callback);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
     }
@@ -129,6 +129,15 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
      * They will be sent either if the exceed the Threshold size or if their sending is forced
      */
     protected void sendEventsIfNeeded(boolean forceSendingEvents) {
+        if (_cly.moduleEvents != null) {
+            //events that are still in the ring buffer have to be in the event queue before it's read
+            _cly.moduleEvents.drainEventRingBuffer();
+
+            if (forceSendingEvents) {
+                _cly.moduleEvents.flushAggregatedEvents();
+            }
+        }
+
         int eventsInEventQueue = storageProvider.getEventQueueSize();
         L.v("[Countly] forceSendingEvents, forced:[" + forceSendingEvents + "], event count:[" + eventsInEventQueue + "]");
 
@@ -217,6 +226,40 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
         attemptToSendStoredRequestsInternal();
     }
 
+    @NonNull ConnectionMetrics getConnectionMetricsInternal() {
+        return requestQueueProvider.getConnectionMetrics();
+    }
+
+    int getQuarantinedRequestCountInternal() {
+        return storageProvider.getQuarantinedRequestCount();
+    }
+
+    @NonNull String[] getQuarantinedRequestsInternal() {
+        return storageProvider.getQuarantinedRequests();
+    }
+
+    @NonNull String[] drainQuarantinedRequestsInternal() {
+        String[] drained = storageProvider.drainQuarantinedRequests();
+        L.d("[ModuleRequestQueue] Removed [" + drained.length + "] quarantined requests");
+        return drained;
+    }
+
+    /**
+     * Moves all quarantined requests back to the end of the request queue and attempts to send them
+     */
+    void retryQuarantinedRequestsInternal() {
+        String[] drained = storageProvider.drainQuarantinedRequests();
+        L.d("[ModuleRequestQueue] Moving [" + drained.length + "] quarantined requests back to the request queue");
+
+        for (String request : drained) {
+            storageProvider.addRequest(request);
+        }
+
+        if (drained.length > 0) {
+            requestQueueProvider.tick();
+        }
+    }
+
     @Override
     void halt() {
         requestQueueInterface = null;
@@ -300,5 +343,58 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
                 requestQueueEraseAppKeysRequestsInternal();
             }
         }
+
+        /**
+         * Returns the counters that show how often server connections are reused.
+         * The returned object is updated as requests are sent.
+         */
+        public ConnectionMetrics getConnectionMetrics() {
+            synchronized (_cly) {
+                L.i("[RequestQueue] Calling 'getConnectionMetrics'");
+                return getConnectionMetricsInternal();
+            }
+        }
+
+        /**
+         * Returns the amount of requests that were moved out of the request queue
+         * because the server kept rejecting them
+         */
+        public int getQuarantinedRequestCount() {
+            synchronized (_cly) {
+                L.i("[RequestQueue] Calling 'getQuarantinedRequestCount'");
+                return getQuarantinedRequestCountInternal();
+            }
+        }
+
+        /**
+         * Returns the quarantined requests without removing them, from the oldest to the most recent one
+         */
+        public @NonNull String[] getQuarantinedRequests() {
+            synchronized (_cly) {
+                L.i("[RequestQueue] Calling 'getQuarantinedRequests'");
+                return getQuarantinedRequestsInternal();
+            }
+        }
+
+        /**
+         * Removes all quarantined requests and returns them.
+         * They will not be sent to the server.
+         */
+        public @NonNull String[] drainQuarantinedRequests() {
+            synchronized (_cly) {
+                L.i("[RequestQueue] Calling 'drainQuarantinedRequests'");
+                return drainQuarantinedRequestsInternal();
+            }
+        }
+
+        /**
+         * Moves all quarantined requests back to the end of the request queue, so that they are sent again
+         */
+        public void retryQuarantinedRequests() {
+            synchronized (_cly) {
+                L.i("[RequestQueue] Calling 'retryQuarantinedRequests'");
+                retryQuarantinedRequestsInternal();
+            }
+        }
     }
 }
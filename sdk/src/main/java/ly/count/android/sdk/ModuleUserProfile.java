@@ -325,8 +325,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name to increment
          */
         public void increment(String key) {
-            synchronized (_cly) {
-                Countly.userData.increment(key);
+            final CallTrace trace = callTracer.begin("UserProfile.increment");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.increment(key);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -337,8 +343,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value int value by which to increment
          */
         public void incrementBy(String key, int value) {
-            synchronized (_cly) {
-                Countly.userData.incrementBy(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.incrementBy");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.incrementBy(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -349,8 +361,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value int value by which to multiply
          */
         public void multiply(String key, int value) {
-            synchronized (_cly) {
-                Countly.userData.multiply(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.multiply");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.multiply(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -361,8 +379,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value int value to check for max
          */
         public void saveMax(String key, int value) {
-            synchronized (_cly) {
-                Countly.userData.saveMax(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.saveMax");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.saveMax(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -373,8 +397,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value int value to check for min
          */
         public void saveMin(String key, int value) {
-            synchronized (_cly) {
-                Countly.userData.saveMin(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.saveMin");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.saveMin(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -385,8 +415,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value String value to set
          */
         public void setOnce(String key, String value) {
-            synchronized (_cly) {
-                Countly.userData.setOnce(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.setOnce");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.setOnce(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -396,8 +432,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value String with value to add to array
          */
         public void push(String key, String value) {
-            synchronized (_cly) {
-                Countly.userData.pushValue(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.push");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.pushValue(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -407,8 +449,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value String with value to add to array
          */
         public void pushUnique(String key, String value) {
-            synchronized (_cly) {
-                Countly.userData.pushUniqueValue(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.pushUnique");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.pushUniqueValue(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -418,8 +466,14 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value String with value to remove from array
          */
         public void pull(String key, String value) {
-            synchronized (_cly) {
-                Countly.userData.pullValue(key, value);
+            final CallTrace trace = callTracer.begin("UserProfile.pull");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    Countly.userData.pullValue(key, value);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -436,13 +490,19 @@ public class ModuleUserProfile extends ModuleBase {
          * @param value the value for the user property to be set. The value should be the allowed data type.
          */
         public void setProperty(String key, Object value) {
-            synchronized (_cly) {
-                L.i("[UserProfile] Calling 'setProperty'");
+            final CallTrace trace = callTracer.begin("UserProfile.setProperty");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[UserProfile] Calling 'setProperty'");
 
-                Map<String, Object> data = new HashMap<>();
-                data.put(key, value);
+                    Map<String, Object> data = new HashMap<>();
+                    data.put(key, value);
 
-                setPropertiesInternal(data);
+                    setPropertiesInternal(data);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -452,14 +512,20 @@ public class ModuleUserProfile extends ModuleBase {
          * @param data
          */
         public void setProperties(Map<String, Object> data) {
-            synchronized (_cly) {
-                L.i("[UserProfile] Calling 'setProperties'");
-
-                if(data == null) {
-                    L.i("[UserProfile] Provided data can not be 'null'");
-                    return;
+            final CallTrace trace = callTracer.begin("UserProfile.setProperties");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[UserProfile] Calling 'setProperties'");
+
+                    if(data == null) {
+                        L.i("[UserProfile] Provided data can not be 'null'");
+                        return;
+                    }
+                    setPropertiesInternal(data);
                 }
-                setPropertiesInternal(data);
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -467,9 +533,15 @@ public class ModuleUserProfile extends ModuleBase {
          * Send provided values to server
          */
         public void save() {
-            synchronized (_cly) {
-                L.i("[UserProfile] Calling 'save'");
-                saveInternal();
+            final CallTrace trace = callTracer.begin("UserProfile.save");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[UserProfile] Calling 'save'");
+                    saveInternal();
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -477,9 +549,15 @@ public class ModuleUserProfile extends ModuleBase {
          * Clear all submitted information
          */
         public void clear() {
-            synchronized (_cly) {
-                L.i("[UserProfile] Calling 'clear'");
-                clearInternal();
+            final CallTrace trace = callTracer.begin("UserProfile.clear");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[UserProfile] Calling 'clear'");
+                    clearInternal();
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
     }
@@ -288,10 +288,16 @@ public class ModuleViews extends ModuleBase {
          * @return boolean - true if enabled, false if disabled
          */
         public boolean isAutomaticViewTrackingEnabled() {
-            synchronized (_cly) {
-                L.i("[Views] Calling isAutomaticViewTrackingEnabled");
+            final CallTrace trace = callTracer.begin("Views.isAutomaticViewTrackingEnabled");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    L.i("[Views] Calling isAutomaticViewTrackingEnabled");
 
-                return autoViewTracker;
+                    return autoViewTracker;
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -304,8 +310,14 @@ public class ModuleViews extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordView(String viewName) {
-            synchronized (_cly) {
-                return recordView(viewName, null);
+            final CallTrace trace = callTracer.begin("Views.recordView");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    return recordView(viewName, null);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
 
@@ -318,15 +330,21 @@ public class ModuleViews extends ModuleBase {
          * @param viewSegmentation Map<String, Object> - segmentation that will be added to the view, set 'null' if none should be added
          */
         public Countly recordView(String viewName, Map<String, Object> viewSegmentation) {
-            synchronized (_cly) {
-                if (!_cly.isInitialized()) {
-                    L.e("Countly.sharedInstance().init must be called before recordView");
-                    return _cly;
-                }
+            final CallTrace trace = callTracer.begin("Views.recordView");
+            try {
+                synchronized (_cly) {
+                    callTracer.lockAcquired(trace);
+                    if (!_cly.isInitialized()) {
+                        L.e("Countly.sharedInstance().init must be called before recordView");
+                        return _cly;
+                    }
 
-                L.i("[Views] Calling recordView [" + viewName + "]");
+                    L.i("[Views] Calling recordView [" + viewName + "]");
 
-                return recordViewInternal(viewName, viewSegmentation);
+                    return recordViewInternal(viewName, viewSegmentation);
+                }
+            } finally {
+                callTracer.end(trace);
             }
         }
     }
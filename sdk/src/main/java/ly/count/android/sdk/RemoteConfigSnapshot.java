@@ -0,0 +1,237 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An immutable view of the remote config values at one point in time.
+ * A new snapshot is created every time the values change, so lookups never need a lock.
+ *
+ * Values that are JSON objects or arrays are handed out as copies, so changing them doesn't change the snapshot.
+ */
+public final class RemoteConfigSnapshot {
+    static final RemoteConfigSnapshot EMPTY = new RemoteConfigSnapshot(Collections.<String, Object>emptyMap());
+
+    @NonNull private final Map<String, Object> values;
+
+    //if there are no JSON objects or arrays, "getAllValues" can return the values without copying them
+    private final boolean hasJSONValues;
+
+    private RemoteConfigSnapshot(@NonNull Map<String, Object> values) {
+        this.values = values;
+
+        boolean json = false;
+        for (Object value : values.values()) {
+            if (value instanceof JSONObject || value instanceof JSONArray) {
+                json = true;
+                break;
+            }
+        }
+        hasJSONValues = json;
+    }
+
+    static @NonNull RemoteConfigSnapshot fromJSON(@NonNull JSONObject json) {
+        if (json.length() == 0) {
+            return EMPTY;
+        }
+
+        final Map<String, Object> values = new HashMap<>(json.length() * 2);
+        final Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            values.put(key, json.opt(key));
+        }
+        return new RemoteConfigSnapshot(Collections.unmodifiableMap(values));
+    }
+
+    @NonNull JSONObject toJSON() {
+        return new JSONObject(values);
+    }
+
+    /**
+     * @return the values from "newValues" that are missing from this snapshot or are different
+     */
+    @NonNull JSONObject changedValues(@NonNull JSONObject newValues) {
+        final JSONObject changed = new JSONObject();
+        final Iterator<String> keys = newValues.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            final Object value = newValues.opt(key);
+            if (!values.containsKey(key) || !isSameValue(values.get(key), value)) {
+                try {
+                    changed.put(key, value);
+                } catch (Exception ignored) {
+                    //can't happen with values that come from another JSON object
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return a new snapshot with the given values added to or replacing the ones of this snapshot
+     */
+    @NonNull RemoteConfigSnapshot withValues(@NonNull JSONObject changedValues) {
+        if (changedValues.length() == 0) {
+            return this;
+        }
+
+        final Map<String, Object> newValues = new HashMap<>((values.size() + changedValues.length()) * 2);
+        newValues.putAll(values);
+        final Iterator<String> keys = changedValues.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            newValues.put(key, changedValues.opt(key));
+        }
+        return new RemoteConfigSnapshot(Collections.unmodifiableMap(newValues));
+    }
+
+    private static boolean isSameValue(@Nullable Object current, @Nullable Object value) {
+        if (current == null || value == null) {
+            return current == value;
+        }
+        if (current instanceof JSONObject || current instanceof JSONArray) {
+            //JSON objects and arrays don't implement equals, they are compared by their contents
+            return current.getClass() == value.getClass() && current.toString().equals(value.toString());
+        }
+        return current.equals(value);
+    }
+
+    /**
+     * @return the value for the key as it was received from the server, "JSONObject.NULL" for a JSON null like in "getAllValues", null if there is none
+     */
+    public @Nullable Object getValue(@Nullable String key) {
+        return copyValue(values.get(key));
+    }
+
+    public boolean containsKey(@Nullable String key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * @return the value as a boolean, "defaultValue" if there is none or it is not a boolean or a "true"/"false" string
+     */
+    public boolean getBoolean(@Nullable String key, boolean defaultValue) {
+        final Object value = values.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof String) {
+            if ("true".equalsIgnoreCase((String) value)) {
+                return true;
+            }
+            if ("false".equalsIgnoreCase((String) value)) {
+                return false;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the value as a long, "defaultValue" if there is none or it is not a number or a numeric string
+     */
+    public long getLong(@Nullable String key, long defaultValue) {
+        final Object value = values.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return (long) Double.parseDouble((String) value);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the value as a double, "defaultValue" if there is none or it is not a number or a numeric string
+     */
+    public double getDouble(@Nullable String key, double defaultValue) {
+        final Object value = values.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the value as a string, other values are converted to their string form, "defaultValue" if there is none
+     */
+    public @Nullable String getString(@Nullable String key, @Nullable String defaultValue) {
+        final Object value = values.get(key);
+        if (value == null || value == JSONObject.NULL) {
+            return defaultValue;
+        }
+        return value instanceof String ? (String) value : value.toString();
+    }
+
+    /**
+     * @return the value if it is a JSON object, null otherwise
+     */
+    public @Nullable JSONObject getJSONObject(@Nullable String key) {
+        final Object value = values.get(key);
+        return value instanceof JSONObject ? (JSONObject) copyValue(value) : null;
+    }
+
+    /**
+     * @return the value if it is a JSON array, null otherwise
+     */
+    public @Nullable JSONArray getJSONArray(@Nullable String key) {
+        final Object value = values.get(key);
+        return value instanceof JSONArray ? (JSONArray) copyValue(value) : null;
+    }
+
+    /**
+     * @return all values, the returned map can't be modified and JSON objects and arrays in it are copies
+     */
+    public @NonNull Map<String, Object> getAllValues() {
+        if (!hasJSONValues) {
+            return values;
+        }
+
+        final Map<String, Object> copy = new HashMap<>(values.size() * 2);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * JSON objects and arrays are mutable, they are copied by parsing their string form
+     */
+    private static @Nullable Object copyValue(@Nullable Object value) {
+        try {
+            if (value instanceof JSONObject) {
+                return new JSONObject(value.toString());
+            }
+            if (value instanceof JSONArray) {
+                return new JSONArray(value.toString());
+            }
+        } catch (JSONException ignored) {
+            //can't happen, the string form of a JSON value is valid JSON
+        }
+        return value;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+}
@@ -0,0 +1,184 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Decides when the request queue may be sent again after a failed request.
+ *
+ * Every consecutive failure doubles the backoff window, up to the maximum delay.
+ * The actual delay is picked at random from that window ("full jitter") so that devices
+ * that failed at the same time, for example during a server outage, don't retry in lockstep.
+ * A "Retry-After" value provided by the server is used as the lower bound of the delay.
+ *
+ * The state is persisted in the storage provider so that it survives process restarts.
+ * Access to this class is synchronized on the instance.
+ */
+class RequestBackoff {
+    private static final String KEY_FAILURE_COUNT = "f";
+    private static final String KEY_NEXT_ATTEMPT = "n";
+
+    //doubling beyond this would overflow the window
+    private static final int MAX_EXPONENT = 30;
+
+    private final StorageProvider storageProvider_;
+    private final long baseDelayMs_;
+    private final long maxDelayMs_;
+    private final Random random_;
+
+    private int failureCount_ = 0;
+    private long nextAttemptTimestamp_ = 0;
+
+    ModuleLog L;
+
+    RequestBackoff(@NonNull StorageProvider storageProvider, long baseDelayMs, long maxDelayMs, @NonNull Random random, @NonNull ModuleLog logModule) {
+        storageProvider_ = storageProvider;
+        baseDelayMs_ = baseDelayMs;
+        maxDelayMs_ = maxDelayMs;
+        random_ = random;
+        L = logModule;
+
+        loadState();
+    }
+
+    /**
+     * Returns true if requests may be sent at the given time
+     */
+    synchronized boolean canAttempt(long now) {
+        if (nextAttemptTimestamp_ <= now) {
+            return true;
+        }
+
+        if (nextAttemptTimestamp_ - now > maxDelayMs_) {
+            //the device clock has been moved back, don't wait longer than the maximum delay
+            L.d("[RequestBackoff] Next attempt is further away than the maximum delay, ignoring it");
+            nextAttemptTimestamp_ = now;
+            saveState();
+            return true;
+        }
+
+        return false;
+    }
+
+    synchronized long getNextAttemptTimestamp() {
+        return nextAttemptTimestamp_;
+    }
+
+    synchronized int getFailureCount() {
+        return failureCount_;
+    }
+
+    /**
+     * Resets the backoff after a request was accepted by the server
+     */
+    synchronized void onSuccess() {
+        if (failureCount_ == 0 && nextAttemptTimestamp_ == 0) {
+            //nothing to reset, avoid writing to storage on every request
+            return;
+        }
+
+        failureCount_ = 0;
+        nextAttemptTimestamp_ = 0;
+        saveState();
+    }
+
+    /**
+     * Registers a failure after which the request should be retried, like a server error or a network problem
+     *
+     * @param now current timestamp in milliseconds
+     * @param retryAfterMs delay requested by the server, negative if none was provided
+     * @return the delay in milliseconds before the next attempt
+     */
+    synchronized long onFailure(long now, long retryAfterMs) {
+        failureCount_++;
+
+        long delay = (long) (random_.nextDouble() * getBackoffWindow(failureCount_));
+        if (retryAfterMs > delay) {
+            delay = Math.min(retryAfterMs, maxDelayMs_);
+        }
+
+        nextAttemptTimestamp_ = now + delay;
+        saveState();
+
+        L.d("[RequestBackoff] Failure [" + failureCount_ + "], retry-after:[" + retryAfterMs + "], next attempt in [" + delay + " ms]");
+        return delay;
+    }
+
+    /**
+     * Returns the upper bound of the random delay after the given amount of consecutive failures
+     */
+    long getBackoffWindow(int failureCount) {
+        int exponent = Math.min(Math.max(failureCount - 1, 0), MAX_EXPONENT);
+        long window = baseDelayMs_ << exponent;
+        if (window <= 0 || window > maxDelayMs_) {
+            return maxDelayMs_;
+        }
+        return window;
+    }
+
+    /**
+     * Parses the value of a "Retry-After" header, which is either a amount of seconds or a HTTP date
+     *
+     * @return the delay in milliseconds, or -1 if the value could not be parsed
+     */
+    static long parseRetryAfter(@Nullable String value, long now) {
+        if (value == null) {
+            return -1;
+        }
+
+        value = value.trim();
+        if (value.isEmpty()) {
+            return -1;
+        }
+
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : seconds * 1000L;
+        } catch (NumberFormatException ignored) {
+            //not a amount of seconds, check if it's a date
+        }
+
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            Date date = format.parse(value);
+            if (date == null) {
+                return -1;
+            }
+            return Math.max(date.getTime() - now, 0);
+        } catch (Exception ignored) {
+            return -1;
+        }
+    }
+
+    private void loadState() {
+        final String state = storageProvider_.getRequestBackoffState();
+        if (state == null || state.isEmpty()) {
+            return;
+        }
+
+        try {
+            JSONObject json = new JSONObject(state);
+            failureCount_ = json.optInt(KEY_FAILURE_COUNT, 0);
+            nextAttemptTimestamp_ = json.optLong(KEY_NEXT_ATTEMPT, 0);
+        } catch (JSONException e) {
+            L.w("[RequestBackoff] Failed to parse the stored backoff state [" + e + "]");
+        }
+    }
+
+    private void saveState() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put(KEY_FAILURE_COUNT, failureCount_);
+            json.put(KEY_NEXT_ATTEMPT, nextAttemptTimestamp_);
+            storageProvider_.setRequestBackoffState(json.toString());
+        } catch (JSONException e) {
+            L.w("[RequestBackoff] Failed to store the backoff state [" + e + "]");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ly.count.android.sdk;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import androidx.annotation.NonNull;
+import java.util.TimeZone;
+
+/**
+ * Creates the common part of every request.
+ *
+ * The parameters that don't change between requests are encoded once and reused until one of them changes.
+ * The time zone offset is reused until the next 15 minute boundary or until the time zone of the device changes,
+ * daylight saving time transitions only happen on such boundaries.
+ * Every thread reuses its own StringBuilder, so a request has to be turned into a String
+ * before the next one is started on the same thread.
+ */
+class RequestBuilder {
+    static final long TIME_ZONE_PERIOD_MS = 15 * 60 * 1000L;
+    static final int INITIAL_CAPACITY = 512;
+    //larger builders are not kept, so that a single large request does not stay in memory
+    static final int MAX_POOLED_CAPACITY = 16 * 1024;
+
+    //increased every time the time zone of the device changes
+    static volatile int timeZoneChangeCount = 0;
+    private static boolean timeZoneReceiverRegistered = false;
+
+    private static class CommonParts {
+        @NonNull final String appKey;
+        @NonNull final String sdkVersion;
+        @NonNull final String sdkName;
+        final int timeZoneChangeCount;
+        final long periodStartMs;
+        final long offsetMs;
+
+        //"app_key=...&timestamp="
+        @NonNull final String prefix;
+        //"&tz=...&sdk_version=...&sdk_name=..."
+        @NonNull final String suffix;
+
+        CommonParts(@NonNull String appKey, @NonNull String sdkVersion, @NonNull String sdkName, long timestampMs) {
+            this.appKey = appKey;
+            this.sdkVersion = sdkVersion;
+            this.sdkName = sdkName;
+            timeZoneChangeCount = RequestBuilder.timeZoneChangeCount;
+            periodStartMs = timestampMs - timestampMs % TIME_ZONE_PERIOD_MS;
+            offsetMs = TimeZone.getDefault().getOffset(timestampMs);
+
+            prefix = "app_key=" + UtilsNetworking.urlEncodeString(appKey) + "&timestamp=";
+            suffix = "&tz=" + (offsetMs / 60000) + "&sdk_version=" + sdkVersion + "&sdk_name=" + sdkName;
+        }
+
+        boolean isValidFor(@NonNull String appKey, @NonNull String sdkVersion, @NonNull String sdkName, long timestampMs) {
+            return timeZoneChangeCount == RequestBuilder.timeZoneChangeCount
+                && timestampMs >= periodStartMs && timestampMs < periodStartMs + TIME_ZONE_PERIOD_MS
+                && this.appKey.equals(appKey) && this.sdkVersion.equals(sdkVersion) && this.sdkName.equals(sdkName);
+        }
+    }
+
+    private volatile CommonParts commonParts = null;
+
+    private final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+    };
+
+    /**
+     * Starts a new request with the common request data
+     *
+     * @return the builder of the current thread, filled with the common request data
+     */
+    @NonNull StringBuilder startRequest(@NonNull String appKey, @NonNull String sdkVersion, @NonNull String sdkName) {
+        final long timestampMs = UtilsTime.currentTimestampMs();
+
+        CommonParts parts = commonParts;
+        if (parts == null || !parts.isValidFor(appKey, sdkVersion, sdkName, timestampMs)) {
+            parts = new CommonParts(appKey, sdkVersion, sdkName, timestampMs);
+            commonParts = parts;
+        }
+
+        StringBuilder builder = builders.get();
+        if (builder.capacity() > MAX_POOLED_CAPACITY) {
+            builder = new StringBuilder(INITIAL_CAPACITY);
+            builders.set(builder);
+        }
+        builder.setLength(0);
+
+        //1970-01-01 was a thursday, Countly days start with sunday as 0
+        final long localMs = timestampMs + parts.offsetMs;
+        return builder.append(parts.prefix).append(timestampMs)
+            .append("&hour=").append((localMs / 3600000L) % 24)
+            .append("&dow=").append((localMs / 86400000L + 4) % 7)
+            .append(parts.suffix);
+    }
+
+    /**
+     * Registers a receiver that invalidates the cached time zone offset when the time zone of the device changes
+     */
+    static synchronized void registerTimeZoneReceiver(@NonNull Context context) {
+        if (timeZoneReceiverRegistered) {
+            return;
+        }
+
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override public void onReceive(Context context, Intent intent) {
+                onTimeZoneChanged();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+        timeZoneReceiverRegistered = true;
+    }
+
+    static void onTimeZoneChanged() {
+        timeZoneChangeCount++;
+    }
+}
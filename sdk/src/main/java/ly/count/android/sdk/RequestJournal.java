@@ -0,0 +1,630 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only, segmented request journal that backs the request queue.
+ *
+ * Every request is written to the tail segment as a length-prefixed UTF-8 record.
+ * Removing the oldest request only moves the persisted head pointer forward, so enqueue and
+ * dequeue don't have to rewrite the whole queue. Segments that are fully behind the head are deleted.
+ * A copy of the live requests is kept in memory so that reads don't touch the disk.
+ * Every append and head move is flushed to the OS before returning, so it survives the process dying.
+ * Syncing to the disk is grouped: it happens on segment rollover, once per rewrite and whenever 'sync' is called,
+ * so a burst of appends costs a single fsync instead of one per request.
+ *
+ * Removing a request from the middle of the queue and replacing the queue are rare operations
+ * and they rewrite the journal into a single fresh segment. The new segment is written to a separate file
+ * and the head is switched to it before the old segments are deleted, so a crash during the rewrite
+ * leaves either the old or the new queue on disk, never a partial one.
+ *
+ * This class is not thread safe, access to it is synchronized by CountlyStore.
+ */
+class RequestJournal {
+    static final String SEGMENT_PREFIX = "segment_";
+    static final String HEAD_FILE_NAME = "head";
+    //a rewritten segment before it's renamed into place
+    static final String COMPACT_FILE_NAME = "compact";
+
+    //after a segment exceeds this size, a new one is started
+    static final int SEGMENT_MAX_BYTES = 256 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static class Entry {
+        final String request;
+        final int segment;
+        final long endOffset;//offset right after this record in its segment
+
+        Entry(String request, int segment, long endOffset) {
+            this.request = request;
+            this.segment = segment;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private final File directory_;
+    private final ArrayDeque<Entry> entries_ = new ArrayDeque<>();
+
+    private int tailSegment_ = 0;
+    private long tailOffset_ = 0;
+    private DataOutputStream tailStream_ = null;
+    private FileOutputStream tailFile_ = null;
+
+    //true if something was written since the last sync
+    private boolean dirty_ = false;
+
+    ModuleLog L;
+
+    RequestJournal(@NonNull File directory, @NonNull ModuleLog logModule) {
+        directory_ = directory;
+        L = logModule;
+
+        load();
+    }
+
+    /**
+     * Returns true if the journal has been written at least once and not been cleared since
+     */
+    boolean exists() {
+        return new File(directory_, HEAD_FILE_NAME).exists() || listSegments().length > 0;
+    }
+
+    int size() {
+        return entries_.size();
+    }
+
+    boolean isEmpty() {
+        return entries_.isEmpty();
+    }
+
+    /**
+     * Returns the current requests ordered from oldest to newest
+     */
+    @NonNull String[] getRequests() {
+        String[] res = new String[entries_.size()];
+        int a = 0;
+        for (Entry entry : entries_) {
+            res[a++] = entry.request;
+        }
+        return res;
+    }
+
+    /**
+     * Returns the oldest request or null if the journal is empty
+     */
+    String peek() {
+        Entry head = entries_.peekFirst();
+        return head == null ? null : head.request;
+    }
+
+    void append(@NonNull String request) {
+        byte[] data = request.getBytes(UTF8);
+
+        if (tailOffset_ > 0 && tailOffset_ + 4 + data.length > SEGMENT_MAX_BYTES) {
+            //current segment is full, sync it and roll over to the next one
+            sync();
+            closeTail();
+            tailSegment_++;
+            tailOffset_ = 0;
+        }
+
+        long startOffset = tailOffset_;
+
+        try {
+            DataOutputStream out = tailStream();
+            out.writeInt(data.length);
+            out.write(data);
+            out.flush();
+            tailOffset_ += 4 + data.length;
+            dirty_ = true;
+        } catch (IOException ex) {
+            //keep the request only in memory so that it's not lost while the process is alive
+            //and cut off anything that was partially written
+            L.e("[RequestJournal] Failed to append request to journal, [" + ex.toString() + "]");
+            closeTail();
+            truncate(segmentFile(tailSegment_), tailOffset_);
+        }
+
+        entries_.addLast(new Entry(request, tailSegment_, tailOffset_));
+
+        if (entries_.size() == 1) {
+            //journal had no live entries, the head has to point at the new entry
+            writeHead(tailSegment_, startOffset);
+        }
+    }
+
+    /**
+     * Removes the oldest request
+     *
+     * @return the removed request or null if the journal was empty
+     */
+    String removeFirst() {
+        Entry removed = entries_.pollFirst();
+        if (removed == null) {
+            return null;
+        }
+
+        writeHead(removed.segment, removed.endOffset);
+
+        Entry next = entries_.peekFirst();
+        if (removed.segment != tailSegment_ && (next == null || next.segment != removed.segment)) {
+            //every record of that segment is consumed
+            deleteSegment(removed.segment);
+        }
+
+        return removed.request;
+    }
+
+    /**
+     * Removes the given requests if they are the oldest requests in the journal, in the same order.
+     * The head is moved only once, so either all of them are removed or none of them.
+     *
+     * @return true if the requests were removed
+     */
+    boolean removeFirst(@NonNull List<String> requests) {
+        if (requests.isEmpty() || requests.size() > entries_.size()) {
+            return false;
+        }
+
+        int a = 0;
+        Entry last = null;
+        for (Entry entry : entries_) {
+            if (a == requests.size()) {
+                break;
+            }
+            if (!entry.request.equals(requests.get(a))) {
+                return false;
+            }
+            last = entry;
+            a++;
+        }
+
+        writeHead(last.segment, last.endOffset);
+
+        int firstSegment = entries_.peekFirst().segment;
+        for (a = 0; a < requests.size(); a++) {
+            entries_.pollFirst();
+        }
+
+        Entry next = entries_.peekFirst();
+        int nextSegment = next == null ? tailSegment_ : next.segment;
+        for (int segment = firstSegment; segment < nextSegment; segment++) {
+            //every record of these segments is consumed
+            deleteSegment(segment);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the first occurrence of the given request
+     *
+     * @return true if something was removed
+     */
+    boolean remove(@NonNull String request) {
+        Entry head = entries_.peekFirst();
+        if (head == null) {
+            return false;
+        }
+
+        if (head.request.equals(request)) {
+            removeFirst();
+            return true;
+        }
+
+        List<String> remaining = new ArrayList<>(entries_.size());
+        boolean found = false;
+        for (Entry entry : entries_) {
+            if (!found && entry.request.equals(request)) {
+                found = true;
+                continue;
+            }
+            remaining.add(entry.request);
+        }
+
+        if (found) {
+            replace(remaining);
+        }
+
+        return found;
+    }
+
+    /**
+     * Rewrites the journal so that it contains only the provided requests.
+     * The requests are written into a new segment that is synced once and then made current by moving the head to it.
+     */
+    void replace(@NonNull Collection<String> requests) {
+        int newSegment = tailSegment_ + 1;
+        File compactFile = new File(directory_, COMPACT_FILE_NAME);
+        List<Entry> newEntries = new ArrayList<>(requests.size());
+        long offset = 0;
+
+        FileOutputStream file = null;
+        try {
+            if (!directory_.exists() && !directory_.mkdirs()) {
+                throw new IOException("Could not create journal directory");
+            }
+            file = new FileOutputStream(compactFile, false);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            for (String request : requests) {
+                byte[] data = request.getBytes(UTF8);
+                out.writeInt(data.length);
+                out.write(data);
+                offset += 4 + data.length;
+                newEntries.add(new Entry(request, newSegment, offset));
+            }
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException ex) {
+            //the old journal stays on disk as it is, only the in memory queue is replaced
+            L.e("[RequestJournal] Failed to rewrite journal, [" + ex.toString() + "]");
+            closeQuietly(file);
+            //noinspection ResultOfMethodCallIgnored
+            compactFile.delete();
+            entries_.clear();
+            for (String request : requests) {
+                entries_.addLast(new Entry(request, tailSegment_, tailOffset_));
+            }
+            return;
+        }
+        closeQuietly(file);
+
+        //once the head points at the new segment, the rewrite is committed
+        closeTail();
+        writeHead(newSegment, 0);
+        syncHead();
+        commitCompactFile(newSegment);
+
+        for (int segment : segmentIds()) {
+            if (segment < newSegment) {
+                deleteSegment(segment);
+            }
+        }
+
+        entries_.clear();
+        entries_.addAll(newEntries);
+        tailSegment_ = newSegment;
+        tailOffset_ = offset;
+        dirty_ = false;
+    }
+
+    /**
+     * Syncs everything that was written since the last sync to the disk
+     */
+    void sync() {
+        if (!dirty_) {
+            return;
+        }
+        dirty_ = false;
+
+        if (tailFile_ != null) {
+            try {
+                tailStream_.flush();
+                tailFile_.getFD().sync();
+            } catch (IOException ex) {
+                L.e("[RequestJournal] Failed to sync journal segment, [" + ex.toString() + "]");
+            }
+        }
+        syncHead();
+    }
+
+    /**
+     * Removes all journal files and in memory entries
+     */
+    void clear() {
+        closeTail();
+        entries_.clear();
+
+        for (File segment : listSegments()) {
+            //noinspection ResultOfMethodCallIgnored
+            segment.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory_, HEAD_FILE_NAME).delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory_, COMPACT_FILE_NAME).delete();
+
+        tailSegment_ = 0;
+        tailOffset_ = 0;
+        dirty_ = false;
+    }
+
+    private void load() {
+        recoverCompactFile();
+
+        int[] segments = segmentIds();
+        if (segments.length == 0) {
+            return;
+        }
+
+        long[] head = readHead();
+        int headSegment = (int) head[0];
+        long headOffset = head[1];
+
+        if (headSegment < segments[0]) {
+            //head points to a deleted segment, start from the first available one
+            headSegment = segments[0];
+            headOffset = 0;
+        }
+
+        for (int segment : segments) {
+            if (segment < headSegment) {
+                //leftover from a removal that was interrupted
+                deleteSegment(segment);
+                continue;
+            }
+
+            long startOffset = segment == headSegment ? headOffset : 0;
+            long validEnd = readSegment(segment, startOffset);
+
+            tailSegment_ = segment;
+            tailOffset_ = validEnd;
+        }
+
+        L.d("[RequestJournal] Loaded [" + entries_.size() + "] requests from [" + segments.length + "] segments");
+    }
+
+    /**
+     * Reads all records of a segment starting from the given offset.
+     * A incomplete record at the end of the segment (the process died during a write) is cut off.
+     *
+     * @return the offset after the last valid record
+     */
+    private long readSegment(int segment, long startOffset) {
+        File file = segmentFile(segment);
+        long fileLength = file.length();
+        if (startOffset > fileLength) {
+            //head points past the end of the segment, nothing left to read
+            startOffset = fileLength;
+        }
+        long offset = startOffset;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            long skipped = 0;
+            while (skipped < startOffset) {
+                long s = in.skip(startOffset - skipped);
+                if (s <= 0) {
+                    break;
+                }
+                skipped += s;
+            }
+
+            while (offset < fileLength) {
+                int length = in.readInt();
+                if (length < 0 || offset + 4 + length > fileLength) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                offset += 4 + length;
+                entries_.addLast(new Entry(new String(data, UTF8), segment, offset));
+            }
+        } catch (EOFException ignored) {
+            //partial record, will be truncated below
+        } catch (IOException ex) {
+            L.e("[RequestJournal] Failed to read journal segment [" + segment + "], [" + ex.toString() + "]");
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        if (offset < fileLength) {
+            L.w("[RequestJournal] Journal segment [" + segment + "] contained a incomplete record, truncating it");
+            truncate(file, offset);
+        }
+
+        return offset;
+    }
+
+    /**
+     * Finishes or rolls back a rewrite that was interrupted.
+     * If the head already points past every existing segment, the rewrite was committed and only the rename is missing.
+     * Otherwise the old segments are still current and the partial rewrite is dropped.
+     */
+    private void recoverCompactFile() {
+        File compactFile = new File(directory_, COMPACT_FILE_NAME);
+        if (!compactFile.exists()) {
+            return;
+        }
+
+        int headSegment = (int) readHead()[0];
+        int[] segments = segmentIds();
+        if (new File(directory_, HEAD_FILE_NAME).exists() && (segments.length == 0 || headSegment > segments[segments.length - 1])) {
+            L.w("[RequestJournal] Finishing an interrupted journal rewrite");
+            commitCompactFile(headSegment);
+        } else {
+            L.w("[RequestJournal] Dropping an interrupted journal rewrite");
+            //noinspection ResultOfMethodCallIgnored
+            compactFile.delete();
+        }
+    }
+
+    private void commitCompactFile(int segment) {
+        if (!new File(directory_, COMPACT_FILE_NAME).renameTo(segmentFile(segment))) {
+            L.e("[RequestJournal] Failed to move the rewritten journal segment into place");
+        }
+    }
+
+    private DataOutputStream tailStream() throws IOException {
+        if (tailStream_ == null) {
+            if (!directory_.exists() && !directory_.mkdirs()) {
+                throw new IOException("Could not create journal directory");
+            }
+            tailFile_ = new FileOutputStream(segmentFile(tailSegment_), true);
+            tailStream_ = new DataOutputStream(new BufferedOutputStream(tailFile_));
+        }
+        return tailStream_;
+    }
+
+    private void closeTail() {
+        if (tailStream_ != null) {
+            try {
+                tailStream_.close();
+            } catch (IOException ignored) {
+            }
+            tailStream_ = null;
+            tailFile_ = null;
+        }
+    }
+
+    private void writeHead(int segment, long offset) {
+        RandomAccessFile raf = null;
+        try {
+            if (!directory_.exists() && !directory_.mkdirs()) {
+                throw new IOException("Could not create journal directory");
+            }
+            raf = new RandomAccessFile(new File(directory_, HEAD_FILE_NAME), "rw");
+            raf.seek(0);
+            raf.writeInt(segment);
+            raf.writeLong(offset);
+            dirty_ = true;
+        } catch (IOException ex) {
+            L.e("[RequestJournal] Failed to write journal head, [" + ex.toString() + "]");
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void syncHead() {
+        File file = new File(directory_, HEAD_FILE_NAME);
+        if (!file.exists()) {
+            return;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.getFD().sync();
+        } catch (IOException ex) {
+            L.e("[RequestJournal] Failed to sync journal head, [" + ex.toString() + "]");
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private long[] readHead() {
+        File file = new File(directory_, HEAD_FILE_NAME);
+        if (!file.exists()) {
+            return new long[] { 0, 0 };
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            int segment = in.readInt();
+            long offset = in.readLong();
+            return new long[] { segment, offset };
+        } catch (IOException ex) {
+            L.w("[RequestJournal] Failed to read journal head, reading from the start, [" + ex.toString() + "]");
+            return new long[] { 0, 0 };
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void truncate(File file, long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException ex) {
+            L.e("[RequestJournal] Failed to truncate journal segment, [" + ex.toString() + "]");
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(FileOutputStream file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void deleteSegment(int segment) {
+        if (!segmentFile(segment).delete()) {
+            L.w("[RequestJournal] Failed to delete consumed journal segment [" + segment + "]");
+        }
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory_, SEGMENT_PREFIX + segment);
+    }
+
+    private File[] listSegments() {
+        File[] files = directory_.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+
+        List<File> segments = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().startsWith(SEGMENT_PREFIX)) {
+                segments.add(file);
+            }
+        }
+        return segments.toArray(new File[0]);
+    }
+
+    private int[] segmentIds() {
+        File[] files = listSegments();
+        int[] ids = new int[files.length];
+        int count = 0;
+        for (File file : files) {
+            try {
+                ids[count] = Integer.parseInt(file.getName().substring(SEGMENT_PREFIX.length()));
+                count++;
+            } catch (NumberFormatException ignored) {
+                //not a journal segment
+            }
+        }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        return ids;
+    }
+}
@@ -28,6 +28,8 @@ interface RequestQueueProvider {
     boolean queueContainsTemporaryIdItems();
     void tick();
     ConnectionProcessor createConnectionProcessor();
+    @NonNull ConnectionMetrics getConnectionMetrics();
+    @NonNull DiagnosticsMetrics getDiagnosticsMetrics();
     String prepareRemoteConfigRequest(String keysInclude, String keysExclude);
     String prepareRatingWidgetRequest(String widgetId);
     String prepareFeedbackListRequest();
@@ -0,0 +1,102 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counters of a single lane of the SDK scheduler at the time they were requested
+ */
+public class SchedulerLaneMetrics {
+    @NonNull final String name;
+    final int threads;
+    final int queueCapacity;
+    final long submittedTasks;
+    final long completedTasks;
+    final long rejectedTasks;
+    final int queuedTasks;
+    final int runningTasks;
+    final int maxQueuedTasks;
+    final long totalWaitNanos;
+    final long totalRunNanos;
+
+    SchedulerLaneMetrics(@NonNull String name, int threads, int queueCapacity, long submittedTasks, long completedTasks, long rejectedTasks, int queuedTasks, int runningTasks, int maxQueuedTasks,
+        long totalWaitNanos, long totalRunNanos) {
+        this.name = name;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.submittedTasks = submittedTasks;
+        this.completedTasks = completedTasks;
+        this.rejectedTasks = rejectedTasks;
+        this.queuedTasks = queuedTasks;
+        this.runningTasks = runningTasks;
+        this.maxQueuedTasks = maxQueuedTasks;
+        this.totalWaitNanos = totalWaitNanos;
+        this.totalRunNanos = totalRunNanos;
+    }
+
+    /**
+     * @return "network", "parallel-send", "media" or "timers"
+     */
+    public @NonNull String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return how many tasks can wait for a thread, before new ones are rejected
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getSubmittedTasks() {
+        return submittedTasks;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /**
+     * @return tasks that were not run because the queue was full
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks;
+    }
+
+    /**
+     * @return tasks that are waiting for a thread
+     */
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public int getRunningTasks() {
+        return runningTasks;
+    }
+
+    public int getMaxQueuedTasks() {
+        return maxQueuedTasks;
+    }
+
+    /**
+     * @return the time all completed tasks spent waiting for a thread, not collected for the timers lane
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return the time all completed tasks spent running, not collected for the timers lane
+     */
+    public long getTotalRunNanos() {
+        return totalRunNanos;
+    }
+
+    @Override public String toString() {
+        return "SchedulerLaneMetrics{" + name + ", threads=" + threads + ", submitted=" + submittedTasks + ", completed=" + completedTasks + ", rejected=" + rejectedTasks
+            + ", queued=" + queuedTasks + ", running=" + runningTasks + ", maxQueued=" + maxQueuedTasks + "}";
+    }
+}
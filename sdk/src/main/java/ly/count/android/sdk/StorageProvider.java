@@ -15,10 +15,14 @@ interface StorageProvider {
 
     @NonNull String getRequestQueueRaw();
 
+    int getRequestQueueSize();
+
     void addRequest(final String requestStr);
 
     void removeRequest(final String requestStr);
 
+    void removeRequests(@NonNull final List<String> requestsToRemove);
+
     void replaceRequests(final String[] newConns);
 
     void replaceRequestList(final List<String> newConns);
@@ -49,10 +53,62 @@ interface StorageProvider {
 
     String getRemoteConfigValues();//not integrated
 
+    /**
+     * Stores the values that changed since the remote config values were last set,
+     * they are replaced when the remote config values are set
+     */
+    void setRemoteConfigDelta(@NonNull String delta);
+
+    @NonNull String getRemoteConfigDelta();
+
+    void setRemoteConfigETag(@Nullable String eTag);
+
+    @Nullable String getRemoteConfigETag();
+
+    /**
+     * @param timestamp time of the last successful full remote config update, 0 if there was none
+     */
+    void setRemoteConfigUpdateTimestamp(long timestamp);
+
+    long getRemoteConfigUpdateTimestamp();
+
+    void setRequestBackoffState(@NonNull String state);
+
+    @NonNull String getRequestBackoffState();
+
+    /**
+     * Counts a attempt of the given request that the server rejected as a bad request
+     *
+     * @return amount of rejected attempts of the request, including this one
+     */
+    int addBadRequestAttempt(@NonNull String requestStr);
+
+    void clearBadRequestAttempts();
+
     //fields for data migration
     int getDataSchemaVersion();
 
     void setDataSchemaVersion(int version);
 
     boolean anythingSetInStorage();
+
+    boolean isJournalAvailable();
+
+    @NonNull String[] getLegacyRequests();
+
+    void clearLegacyRequests();
+
+    @NonNull String[] getLegacyEvents();
+
+    void clearLegacyEvents();
+
+    void replaceEventList(@NonNull final List<Event> events);
+
+    void quarantineRequest(@NonNull final String requestStr);
+
+    @NonNull String[] getQuarantinedRequests();
+
+    int getQuarantinedRequestCount();
+
+    @NonNull String[] drainQuarantinedRequests();
 }
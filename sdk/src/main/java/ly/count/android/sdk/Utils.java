@@ -11,25 +11,53 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import static android.content.Context.UI_MODE_SERVICE;
 
 public class Utils {
-    private static final ExecutorService bg = Executors.newSingleThreadExecutor();
-
+    /**
+     * Runs the task on the media lane of the SDK scheduler, it is meant for slow work like downloading push media.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if too many tasks are already waiting
+     */
     public static Future<?> runInBackground(Runnable runnable) {
-        return bg.submit(runnable);
+        return Countly.sharedInstance().getScheduler().lane(CountlyScheduler.Lane.MEDIA).submit(runnable);
     }
 
     public static <T> Future<T> runInBackground(Callable<T> runnable) {
-        return bg.submit(runnable);
+        return Countly.sharedInstance().getScheduler().lane(CountlyScheduler.Lane.MEDIA).submit(runnable);
+    }
+
+    /**
+     * Runs the task on the network lane of the SDK scheduler, it is meant for blocking network calls that are not part of the request queue.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if too many tasks are already waiting
+     */
+    public static Future<?> runNetworkTask(Runnable runnable) {
+        return Countly.sharedInstance().getScheduler().lane(CountlyScheduler.Lane.NETWORK).submit(runnable);
+    }
+
+    /**
+     * Downloads the given URL with the transport of the SDK, it is meant for push media
+     *
+     * @param url address to download
+     * @param timeout connect and read timeout in milliseconds
+     * @return the body of the response
+     * @throws IOException if the download failed or the server responded with an error
+     */
+    public static byte[] download(@NonNull URL url, int timeout) throws IOException {
+        CountlyTransport.Request request = new CountlyTransport.Request("GET", url, null, null, timeout, timeout);
+        CountlyTransport.Response response = Countly.sharedInstance().getTransport().execute(request);
+        if (response.code >= 400) {
+            throw new IOException("Received response code " + response.code);
+        }
+        return response.body;
     }
 
     /**
@@ -201,7 +229,7 @@ public class Utils {
      * @param segmDouble
      * @param segmBoolean
      */
-    protected static synchronized void fillInSegmentation(Map<String, Object> allSegm, Map<String, String> segmStr, Map<String, Integer> segmInt, Map<String, Double> segmDouble, Map<String, Boolean> segmBoolean,
+    protected static void fillInSegmentation(Map<String, Object> allSegm, Map<String, String> segmStr, Map<String, Integer> segmInt, Map<String, Double> segmDouble, Map<String, Boolean> segmBoolean,
         Map<String, Object> reminder) {
         for (Map.Entry<String, Object> pair : allSegm.entrySet()) {
             String key = pair.getKey();
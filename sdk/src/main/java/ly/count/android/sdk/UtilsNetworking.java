@@ -1,9 +1,14 @@
 package ly.count.android.sdk;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.MessageDigest;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class UtilsNetworking {
     // http://stackoverflow.com/questions/9655181/convert-from-byte-array-to-hex-string-in-java
@@ -33,6 +38,43 @@ public class UtilsNetworking {
         return decodedResult;
     }
 
+    /**
+     * Compresses the given data with gzip
+     */
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 32);
+        GZIPOutputStream gzip = new GZIPOutputStream(bos);
+        try {
+            gzip.write(data);
+        } finally {
+            gzip.close();
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * If the server responded with a gzip encoded body, returns the decoded body.
+     * Otherwise the body is returned as is.
+     */
+    static byte[] decodeResponseBody(CountlyTransport.Response response) throws IOException {
+        if (!"gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"))) {
+            return response.body;
+        }
+
+        GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(response.body));
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(response.body.length * 4);
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+            return bos.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
     protected static String sha256Hash(String toHash) {
         String hash = null;
         try {
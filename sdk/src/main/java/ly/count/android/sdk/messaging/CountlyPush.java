@@ -28,14 +28,11 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import androidx.annotation.DrawableRes;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import ly.count.android.sdk.Countly;
 import ly.count.android.sdk.CountlyStore;
 import ly.count.android.sdk.ModuleLog;
@@ -844,15 +841,20 @@ public class CountlyPush {
         if (provider == Countly.CountlyMessagingProvider.HMS && getPushConsent(application)) {
             String version = getEMUIVersion();
             if (version.startsWith("10")) {
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        String token = getToken(application, Countly.CountlyMessagingProvider.HMS, Countly.sharedInstance().L);
-                        if (token != null && !"".equals(token)) {
-                            onTokenRefresh(token, Countly.CountlyMessagingProvider.HMS);
+                try {
+                    Utils.runNetworkTask(new Runnable() {
+                        @Override
+                        public void run() {
+                            String token = getToken(application, Countly.CountlyMessagingProvider.HMS, Countly.sharedInstance().L);
+                            if (token != null && !"".equals(token)) {
+                                onTokenRefresh(token, Countly.CountlyMessagingProvider.HMS);
+                            }
                         }
-                    }
-                }).start();
+                    });
+                } catch (RejectedExecutionException e) {
+                    //HMS also delivers the token through "onNewToken" later
+                    Countly.sharedInstance().L.w("[CountlyPush] init, too many network tasks are waiting, not requesting the HMS token now");
+                }
             }
         }
 
@@ -936,29 +938,27 @@ public class CountlyPush {
     }
 
     private static void loadImage(final Context context, final Message msg, final BitmapCallback callback, final int attempt) {
+        try {
+            loadImageInBackground(context, msg, callback, attempt);
+        } catch (RejectedExecutionException e) {
+            Countly.sharedInstance().L.w("[CountlyPush] loadImage, too many media downloads are waiting, showing the message without media");
+            new Handler(context.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.call(null);
+                }
+            });
+        }
+    }
+
+    private static void loadImageInBackground(final Context context, final Message msg, final BitmapCallback callback, final int attempt) {
         Utils.runInBackground(new Runnable() {
             @Override public void run() {
                 final Bitmap[] bitmap = new Bitmap[] { null };
 
                 if (msg.media() != null) {
-                    HttpURLConnection connection = null;
-                    InputStream input = null;
                     try {
-                        connection = (HttpURLConnection) msg.media().openConnection();
-                        connection.setDoInput(true);
-                        connection.setConnectTimeout(MEDIA_DOWNLOAD_TIMEOUT);
-                        connection.setReadTimeout(MEDIA_DOWNLOAD_TIMEOUT);
-                        connection.connect();
-                        input = connection.getInputStream();
-                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-                        byte[] buf = new byte[16384];
-                        int read;
-                        while ((read = input.read(buf, 0, buf.length)) != -1) {
-                            bytes.write(buf, 0, read);
-                        }
-                        bytes.flush();
-
-                        byte[] data = bytes.toByteArray();
+                        byte[] data = Utils.download(msg.media(), MEDIA_DOWNLOAD_TIMEOUT);
                         bitmap[0] = BitmapFactory.decodeByteArray(data, 0, data.length);
                     } catch (Exception e) {
                         Countly.sharedInstance().L.e("[CountlyPush] loadImage, Cannot download message media ", e);
@@ -966,19 +966,6 @@ public class CountlyPush {
                             loadImage(context, msg, callback, attempt + 1);
                             return;
                         }
-                    } finally {
-                        if (input != null) {
-                            try {
-                                input.close();
-                            } catch (IOException ignored) {
-                            }
-                        }
-                        if (connection != null) {
-                            try {
-                                connection.disconnect();
-                            } catch (Throwable ignored) {
-                            }
-                        }
                     }
                 }
 
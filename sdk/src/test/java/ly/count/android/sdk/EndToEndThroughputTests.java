@@ -0,0 +1,132 @@
+package ly.count.android.sdk;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End to end tests that run on the JVM and send everything to a local fake server.
+ * Every test prints a throughput report.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EndToEndThroughputTests {
+    FakeCountlyServer server;
+    ThroughputHarness harness;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeCountlyServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (harness != null) {
+            harness.halt();
+        }
+        server.stop();
+    }
+
+    CountlyConfig createConfig() {
+        return new CountlyConfig(ApplicationProvider.getApplicationContext(), "appkey", server.getUrl())
+            .setDeviceId("1234")
+            .enableManualSessionControl()
+            .enableCrashReporting();
+    }
+
+    @Test
+    public void eventWorkload() throws Exception {
+        harness = new ThroughputHarness(server, createConfig());
+        ThroughputHarness.Report report = harness.run("events", ThroughputHarness.events(1000));
+
+        assertEquals(1000, report.events);
+        assertEquals(report.requests, report.httpCalls);
+        assertEquals(0, harness.getCountly().countlyStore.getRequestQueueSize());
+
+        //every received request is a complete request
+        for (Map<String, String> request : server.getReceivedRequests()) {
+            assertEquals("appkey", request.get("app_key"));
+            assertEquals("1234", request.get("device_id"));
+        }
+    }
+
+    @Test
+    public void eventWorkload_bulkRequests() throws Exception {
+        harness = new ThroughputHarness(server, createConfig().enableBulkRequests(50, 1024 * 1024));
+        ThroughputHarness.Report report = harness.run("events bulk", ThroughputHarness.events(1000));
+
+        assertEquals(1000, report.events);
+        //requests that are queued at the same time are combined
+        assertTrue(report.httpCalls <= report.requests);
+        assertEquals(0, harness.getCountly().countlyStore.getRequestQueueSize());
+    }
+
+    @Test
+    public void eventWorkload_compressed() throws Exception {
+        harness = new ThroughputHarness(server, createConfig().setHttpPostForced(true));
+        ThroughputHarness.Report plain = harness.run("events POST", ThroughputHarness.events(500));
+        harness.halt();
+
+        harness = new ThroughputHarness(server, createConfig().setHttpPostForced(true).enableRequestCompression(0));
+        ThroughputHarness.Report compressed = harness.run("events POST gzip", ThroughputHarness.events(500));
+
+        assertEquals(500, plain.events);
+        assertEquals(500, compressed.events);
+        assertTrue(compressed.bytesReceived < plain.bytesReceived);
+    }
+
+    @Test
+    public void sessionWorkload() throws Exception {
+        harness = new ThroughputHarness(server, createConfig());
+        ThroughputHarness.Report report = harness.run("sessions", ThroughputHarness.sessions(20, 5));
+
+        assertEquals(20, server.getSessionBeginCount());
+        assertEquals(20, server.getSessionEndCount());
+        assertEquals(100, report.events);
+    }
+
+    @Test
+    public void crashWorkload() throws Exception {
+        harness = new ThroughputHarness(server, createConfig());
+        ThroughputHarness.Report report = harness.run("crashes", ThroughputHarness.crashes(20));
+
+        assertEquals(20, server.getCrashCount());
+        assertEquals(20, report.requests);
+    }
+
+    @Test
+    public void remoteConfigUpdate() throws Exception {
+        server.setRemoteConfig(new JSONObject("{\"color\":\"red\",\"count\":5}"));
+        harness = new ThroughputHarness(server, createConfig());
+
+        final AtomicReference<String> result = new AtomicReference<>();
+        harness.getCountly().remoteConfig().update(new RemoteConfigCallback() {
+            @Override
+            public void callback(String error) {
+                result.set(error == null ? "ok" : error);
+            }
+        });
+        harness.idleUntil(new ThroughputHarness.Condition() {
+            @Override
+            public boolean isMet() {
+                return result.get() != null;
+            }
+        }, ThroughputHarness.DEFAULT_TIMEOUT_MS);
+
+        assertEquals("ok", result.get());
+        assertEquals(1, server.getSdkCallCount());
+        assertEquals("red", harness.getCountly().remoteConfig().getValueForKey("color"));
+        assertEquals(5, harness.getCountly().remoteConfig().getValueForKey("count"));
+        assertNull(harness.getCountly().remoteConfig().getValueForKey("missing"));
+    }
+}
@@ -0,0 +1,309 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * In-process HTTP server that answers like a Countly server.
+ *
+ * Implements "/i" and "/i/bulk", which accept every request, and "/o/sdk", which returns the set remote config.
+ * Requests can be sent with HTTP GET or POST, compressed bodies are decoded.
+ * Counts what it received, including the amount of bytes that went over the connection.
+ */
+class FakeCountlyServer {
+    private static final String SUCCESS_RESPONSE = "{\"result\":\"Success\"}";
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile JSONObject remoteConfig = new JSONObject();
+
+    private final ConcurrentLinkedQueue<Map<String, String>> receivedRequests = new ConcurrentLinkedQueue<>();
+
+    //HTTP calls, one bulk call contains multiple requests
+    private final AtomicLong httpCallCount = new AtomicLong();
+    private final AtomicLong bulkCallCount = new AtomicLong();
+    private final AtomicLong sdkCallCount = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong sessionBeginCount = new AtomicLong();
+    private final AtomicLong sessionEndCount = new AtomicLong();
+    private final AtomicLong crashCount = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /**
+     * Starts the server on a free local port
+     */
+    void start() throws IOException {
+        //without it, small responses wait for delayed TCP acknowledgements and every call takes tens of milliseconds
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+
+        server.createContext("/i", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleExchange(exchange);
+            }
+        });
+        server.createContext("/o/sdk", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleExchange(exchange);
+            }
+        });
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Returns the URL that should be used as the Countly server URL
+     */
+    @NonNull String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Sets the values that are returned for remote config requests
+     */
+    void setRemoteConfig(@NonNull JSONObject values) {
+        remoteConfig = values;
+    }
+
+    /**
+     * Resets all counters and forgets the received requests
+     */
+    void reset() {
+        receivedRequests.clear();
+        httpCallCount.set(0);
+        bulkCallCount.set(0);
+        sdkCallCount.set(0);
+        requestCount.set(0);
+        eventCount.set(0);
+        sessionBeginCount.set(0);
+        sessionEndCount.set(0);
+        crashCount.set(0);
+        bytesReceived.set(0);
+        bytesSent.set(0);
+    }
+
+    /**
+     * Returns the parameters of all received requests, requests in a bulk call are returned one by one
+     */
+    @NonNull List<Map<String, String>> getReceivedRequests() {
+        return new ArrayList<>(receivedRequests);
+    }
+
+    long getHttpCallCount() {
+        return httpCallCount.get();
+    }
+
+    long getBulkCallCount() {
+        return bulkCallCount.get();
+    }
+
+    long getSdkCallCount() {
+        return sdkCallCount.get();
+    }
+
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    long getEventCount() {
+        return eventCount.get();
+    }
+
+    long getSessionBeginCount() {
+        return sessionBeginCount.get();
+    }
+
+    long getSessionEndCount() {
+        return sessionEndCount.get();
+    }
+
+    long getCrashCount() {
+        return crashCount.get();
+    }
+
+    /**
+     * Bytes of the request lines, headers and bodies, as they were sent
+     */
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private void handleExchange(@NonNull HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            final byte[] body = readFully(exchange.getRequestBody());
+
+            long requestBytes = exchange.getRequestMethod().length() + exchange.getRequestURI().toString().length() + " HTTP/1.1\r\n".length() + 2 + body.length;
+            for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+                for (String value : header.getValue()) {
+                    requestBytes += header.getKey().length() + 2 + value.length() + 2;
+                }
+            }
+            bytesReceived.addAndGet(requestBytes);
+            httpCallCount.incrementAndGet();
+
+            final Map<String, String> params = parseParameters(exchange, body);
+
+            final String response;
+            if ("/i".equals(path)) {
+                onRequest(params);
+                response = SUCCESS_RESPONSE;
+            } else if (ConnectionProcessor.BULK_ENDPOINT.equals(path)) {
+                bulkCallCount.incrementAndGet();
+                final String bulkData = params.get("requests");
+                if (bulkData == null) {
+                    throw new JSONException("Bulk call without requests");
+                }
+                final JSONArray requests = new JSONArray(bulkData);
+                for (int a = 0; a < requests.length(); a++) {
+                    onRequest(toParameters(requests.getJSONObject(a)));
+                }
+                response = SUCCESS_RESPONSE;
+            } else if ("/o/sdk".equals(path)) {
+                sdkCallCount.incrementAndGet();
+                response = "fetch_remote_config".equals(params.get("method")) ? remoteConfig.toString() : "{}";
+            } else {
+                respond(exchange, 404, "{\"result\":\"Unknown endpoint\"}");
+                return;
+            }
+
+            respond(exchange, 200, response);
+        } catch (JSONException e) {
+            respond(exchange, 400, "{\"result\":\"Invalid request\"}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void onRequest(@NonNull Map<String, String> params) throws JSONException {
+        receivedRequests.add(params);
+        requestCount.incrementAndGet();
+
+        final String events = params.get("events");
+        if (events != null) {
+            eventCount.addAndGet(new JSONArray(events).length());
+        }
+        if (params.containsKey("begin_session")) {
+            sessionBeginCount.incrementAndGet();
+        }
+        if (params.containsKey("end_session")) {
+            sessionEndCount.incrementAndGet();
+        }
+        if (params.containsKey("crash")) {
+            crashCount.incrementAndGet();
+        }
+    }
+
+    private void respond(@NonNull HttpExchange exchange, int code, @NonNull String response) throws IOException {
+        final byte[] bytes = response.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        final OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+        bytesSent.addAndGet(bytes.length);
+    }
+
+    /**
+     * Returns the query parameters, together with the form parameters of a POST body
+     */
+    @NonNull private static Map<String, String> parseParameters(@NonNull HttpExchange exchange, @NonNull byte[] body) throws IOException {
+        final Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+
+        if (body.length > 0) {
+            final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null && contentType.startsWith("multipart/")) {
+                //profile picture uploads, only the query is of interest
+                return params;
+            }
+
+            byte[] decoded = body;
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                decoded = readFully(new GZIPInputStream(new ByteArrayInputStream(body)));
+            }
+            parseForm(new String(decoded, "UTF-8"), params);
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, @NonNull Map<String, String> params) throws IOException {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int idx = pair.indexOf('=');
+            if (idx < 0) {
+                params.put(URLDecoder.decode(pair, "UTF-8"), "");
+            } else {
+                params.put(URLDecoder.decode(pair.substring(0, idx), "UTF-8"), URLDecoder.decode(pair.substring(idx + 1), "UTF-8"));
+            }
+        }
+    }
+
+    @NonNull private static Map<String, String> toParameters(@NonNull JSONObject request) throws JSONException {
+        final Map<String, String> params = new HashMap<>();
+        final Iterator<String> keys = request.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            params.put(key, request.get(key).toString());
+        }
+        return params;
+    }
+
+    @NonNull private static byte[] readFully(@NonNull InputStream is) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        is.close();
+        return bos.toByteArray();
+    }
+}
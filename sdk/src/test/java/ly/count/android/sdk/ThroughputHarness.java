@@ -0,0 +1,214 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * Drives the initialized SDK through a workload and measures how fast the created requests reach the server.
+ *
+ * The SDK sends everything to a "FakeCountlyServer" over a local connection, so the whole path
+ * from recording to the server response is measured: storing, batching, serializing, compressing and the HTTP calls.
+ */
+class ThroughputHarness {
+    static final String[] EVENT_KEYS = new String[] { "purchase", "level_up", "button_click", "share", "search" };
+
+    interface Workload {
+        void run(@NonNull Countly countly);
+    }
+
+    interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * Results of a single workload run
+     */
+    static class Report {
+        final String name;
+        //time spent in the workload calls
+        final long workloadMs;
+        //time from the end of the workload until the request queue was empty
+        final long drainLatencyMs;
+        //time from the start of the workload until the request queue was empty
+        final long totalMs;
+        final long httpCalls;
+        final long requests;
+        final long events;
+        final long bytesReceived;
+        final long bytesSent;
+
+        Report(String name, long workloadMs, long drainLatencyMs, long totalMs, @NonNull FakeCountlyServer server) {
+            this.name = name;
+            this.workloadMs = workloadMs;
+            this.drainLatencyMs = drainLatencyMs;
+            this.totalMs = totalMs;
+            this.httpCalls = server.getHttpCallCount();
+            this.requests = server.getRequestCount();
+            this.events = server.getEventCount();
+            this.bytesReceived = server.getBytesReceived();
+            this.bytesSent = server.getBytesSent();
+        }
+
+        double requestsPerSecond() {
+            return requests * 1000.0 / Math.max(totalMs, 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "[%s] requests:[%d] http calls:[%d] events:[%d] requests/s:[%.1f] bytes received:[%d] bytes sent:[%d] workload:[%d ms] drain latency:[%d ms] total:[%d ms]",
+                name, requests, httpCalls, events, requestsPerSecond(), bytesReceived, bytesSent, workloadMs, drainLatencyMs, totalMs);
+        }
+    }
+
+    static final long DEFAULT_TIMEOUT_MS = 60 * 1000;
+
+    private final FakeCountlyServer server;
+    private final Countly countly;
+
+    /**
+     * Initializes the shared SDK instance with the provided config.
+     * The shared instance is used because the request queue only sends requests if it is initialized.
+     * The server URL of the config should point to the provided server.
+     */
+    ThroughputHarness(@NonNull FakeCountlyServer server, @NonNull CountlyConfig config) {
+        this.server = server;
+        countly = Countly.sharedInstance();
+        countly.halt();
+        countly.init(config);
+    }
+
+    @NonNull Countly getCountly() {
+        return countly;
+    }
+
+    /**
+     * Runs the workload and waits until everything it recorded has been sent
+     *
+     * @throws TimeoutException if the queues were not empty after the default timeout
+     */
+    @NonNull Report run(@NonNull String name, @NonNull Workload workload) throws TimeoutException {
+        //requests created during init are not part of the workload
+        drain();
+        server.reset();
+
+        final long start = System.nanoTime();
+        workload.run(countly);
+        final long workloadEnd = System.nanoTime();
+        drain();
+        final long end = System.nanoTime();
+
+        Report report = new Report(name, (workloadEnd - start) / (1000 * 1000), (end - workloadEnd) / (1000 * 1000), (end - start) / (1000 * 1000), server);
+        System.out.println(report);
+        return report;
+    }
+
+    /**
+     * Sends the queued events and requests until both queues are empty
+     */
+    void drain() throws TimeoutException {
+        final CountlyStore store = countly.countlyStore;
+        idleUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                if (store.getRequestQueueSize() == 0 && store.getEventQueueSize() == 0) {
+                    return true;
+                }
+                //it only starts sending if the previous attempt has finished
+                countly.requestQueue().attemptToSendStoredRequests();
+                return false;
+            }
+        }, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Runs the tasks posted to the main thread until the condition is met.
+     * Callbacks of immediate requests, like remote config updates, are delivered on the main thread.
+     *
+     * @throws TimeoutException if the condition was not met in time
+     */
+    void idleUntil(@NonNull Condition condition, long timeoutMs) throws TimeoutException {
+        final long deadline = System.nanoTime() + timeoutMs * 1000 * 1000;
+        while (true) {
+            ShadowLooper.idleMainLooper();
+            if (condition.isMet()) {
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("Condition not met after [" + timeoutMs + "] ms");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted while waiting");
+            }
+        }
+    }
+
+    /**
+     * Stops the SDK instance, the stored requests and events are deleted
+     */
+    void halt() {
+        countly.halt();
+    }
+
+    /**
+     * Records events with a small segmentation, rotating through a few event keys
+     */
+    @NonNull static Workload events(final int eventCount) {
+        return new Workload() {
+            @Override
+            public void run(@NonNull Countly countly) {
+                for (int a = 0; a < eventCount; a++) {
+                    countly.events().recordEvent(EVENT_KEYS[a % EVENT_KEYS.length], createSegmentation(a), 1, a * 0.5);
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs through manually controlled sessions, each with a few events and a session update
+     */
+    @NonNull static Workload sessions(final int sessionCount, final int eventsPerSession) {
+        return new Workload() {
+            @Override
+            public void run(@NonNull Countly countly) {
+                for (int a = 0; a < sessionCount; a++) {
+                    countly.sessions().beginSession();
+                    for (int b = 0; b < eventsPerSession; b++) {
+                        countly.events().recordEvent(EVENT_KEYS[b % EVENT_KEYS.length], createSegmentation(b), 1, b);
+                    }
+                    countly.sessions().updateSession();
+                    countly.sessions().endSession();
+                }
+            }
+        };
+    }
+
+    /**
+     * Records handled exceptions, each one creates a crash request with the device state
+     */
+    @NonNull static Workload crashes(final int crashCount) {
+        return new Workload() {
+            @Override
+            public void run(@NonNull Countly countly) {
+                for (int a = 0; a < crashCount; a++) {
+                    countly.crashes().recordHandledException(new IllegalStateException("Harness crash " + a));
+                }
+            }
+        };
+    }
+
+    @NonNull static Map<String, Object> createSegmentation(int index) {
+        Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("screen", "screen_" + (index % 7));
+        segmentation.put("level", index % 50);
+        segmentation.put("price", (index % 20) * 0.99);
+        segmentation.put("premium", index % 3 == 0);
+        return segmentation;
+    }
+}